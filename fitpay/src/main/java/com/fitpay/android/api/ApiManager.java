@@ -1,6 +1,7 @@
 package com.fitpay.android.api;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
 import com.fitpay.android.api.callbacks.ApiCallback;
 import com.fitpay.android.api.callbacks.ApiCallbackExt;
@@ -25,17 +26,23 @@ import com.fitpay.android.api.services.UserClient;
 import com.fitpay.android.api.services.UserService;
 import com.fitpay.android.configs.FitpayConfig;
 import com.fitpay.android.utils.Constants;
+import com.fitpay.android.utils.FPLog;
 import com.fitpay.android.utils.KeysManager;
 import com.fitpay.android.utils.ObjectConverter;
 import com.fitpay.android.utils.StringUtils;
 import com.google.gson.JsonArray;
-import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
 
+import java.io.IOException;
 import java.lang.reflect.Type;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executor;
 
+import io.reactivex.Single;
+import okhttp3.ResponseBody;
 import retrofit2.Call;
 
 /*
@@ -43,6 +50,8 @@ import retrofit2.Call;
  */
 public class ApiManager {
 
+    private static final String ACCEPT_V2 = "application/vnd.fitpay-v2+json";
+
     private static volatile ApiManager sInstance;
 
     public static ApiManager getInstance() {
@@ -72,14 +81,34 @@ public class ApiManager {
     private UserService userService;
     private AuthService authService;
 
+    private final SingleFlight singleFlight;
+    private final ValidationCache validationCache;
+
     private ApiManager() {
         apiService = new FitPayService(FitpayConfig.apiURL);
+        singleFlight = FitpayConfig.Http.collapseConcurrentReads ? new SingleFlight() : null;
+        validationCache = FitpayConfig.Http.validationCacheSize > 0 ? new ValidationCache(FitpayConfig.Http.validationCacheSize) : null;
     }
 
+    /**
+     * Get the last known platform config. It's refreshed in the background when the API manager is created,
+     * a changed config is posted to {@link com.fitpay.android.utils.RxBus}
+     *
+     * @return platform config, defaults if it was never received
+     */
     public PlatformConfig getPlatformConfig() {
         return apiService.getPlatformConfig();
     }
 
+    /**
+     * Get the platform config, waits for the platform only if no config was received before
+     *
+     * @return platform config
+     */
+    public Single<PlatformConfig> getKnownPlatformConfig() {
+        return apiService.getKnownPlatformConfig();
+    }
+
     public FitPayService getApiService() {
         return apiService;
     }
@@ -252,8 +281,12 @@ public class ApiManager {
         if (isAuthorized(callback)) {
 
             Runnable onSuccess = () -> {
-                Call<User> getUserCall = getClient().getUser(apiService.getUserId());
-                getUserCall.enqueue(new CallbackWrapper<>(callback));
+                String userId = apiService.getUserId();
+                ApiCallback<User> flight = joinFlight(getFlightKey(null, FitpayConfig.apiURL + "/users/" + userId, null, User.class), callback);
+                if (flight != null) {
+                    Call<User> getUserCall = getClient().getUser(userId);
+                    getUserCall.enqueue(new CallbackWrapper<>(flight));
+                }
             };
 
             checkKeyAndMakeCall(onSuccess, callback);
@@ -305,7 +338,7 @@ public class ApiManager {
         if (isAuthorized(callback)) {
             Runnable onSuccess = () -> {
                 Call<ResetDeviceResult> resetDeviceCall = getClient().resetPaymentDevice(userId, deviceId);
-                resetDeviceCall.enqueue(new CallbackWrapper<>(callback));
+                resetDeviceCall.enqueue(new CallbackWrapper<>(new WriteCallback<>(callback)));
             };
 
             checkKeyAndMakeCall(onSuccess, callback);
@@ -340,43 +373,217 @@ public class ApiManager {
         getCountriesCall.enqueue(new CallbackWrapper<>(callback));
     }
 
-    private <T> void makeCall(final Call<JsonElement> call, final Type type, final ApiCallback<T> callback) {
-        call.enqueue(new CallbackWrapper<>(new ApiCallbackExt<JsonElement>() {
-            @Override
-            public void onSuccess(JsonElement result) {
-                T response = Constants.getGson().fromJson(result, type);
-                callback.onSuccess(response);
+    /**
+     * Client of the generic calls. Their callbacks run on the network thread: the body is streamed
+     * from the connection straight into the model, decrypted fields included, no JSON tree is built in between
+     * and the main thread only gets the result.
+     */
+    private FitPayClient getParsingClient() {
+        return apiService.getNetworkThreadClient();
+    }
+
+    private <T> void makeCall(final Call<ResponseBody> call, final Type type, final ApiCallback<T> callback) {
+        call.enqueue(new CallbackWrapper<>(new ParsingCallback<>(type, callback, apiService.getCallbackExecutor())));
+    }
+
+    /**
+     * Parses the body of a successful response into the model of the result callback on the network thread,
+     * then passes the result on with the callback executor
+     */
+    static final class ParsingCallback<T> extends ApiCallbackExt<ResponseBody> {
+        private final Type type;
+        private final ApiCallback<T> callback;
+        private final Executor callbackExecutor;
+
+        /**
+         * @param type             model type
+         * @param callback         result callback
+         * @param callbackExecutor thread of the result callback, null to call back on the network thread
+         */
+        ParsingCallback(Type type, ApiCallback<T> callback, @Nullable Executor callbackExecutor) {
+            this.type = type;
+            this.callback = callback;
+            this.callbackExecutor = callbackExecutor;
+        }
+
+        @Override
+        public void onSuccess(ResponseBody result) {
+            final T response;
+            try {
+                response = fromBody(result, type);
+            } catch (IOException | JsonParseException e) {
+                FPLog.e(e);
+                onFailure(ResultCode.REQUEST_FAILED, e.getMessage());
+                return;
             }
 
-            @Override
-            public void onFailure(ErrorResponse apiErrorResponse) {
+            deliver(() -> callback.onSuccess(response));
+        }
+
+        @Override
+        public void onFailure(final ErrorResponse apiErrorResponse) {
+            deliver(() -> {
                 if (callback instanceof ApiCallbackExt) {
                     ((ApiCallbackExt) callback).onFailure(apiErrorResponse);
                 } else {
                     callback.onFailure(apiErrorResponse.getStatus(), apiErrorResponse.getError());
                 }
+            });
+        }
+
+        private void deliver(Runnable result) {
+            if (callbackExecutor != null) {
+                callbackExecutor.execute(result);
+            } else {
+                result.run();
             }
-        }));
+        }
+    }
+
+    /**
+     * Parse a response body with the type adapters of {@link Constants#getGson()}
+     *
+     * @param body response body, closed when it's parsed
+     * @param type model type
+     * @return model or null if the body is empty
+     */
+    static <T> T fromBody(ResponseBody body, Type type) throws IOException {
+        if (body == null) {
+            return null;
+        }
+
+        try {
+            return Constants.getGson().fromJson(body.charStream(), type);
+        } finally {
+            body.close();
+        }
     }
 
+    /**
+     * With {@link FitpayConfig.Http#collapseConcurrentReads} set, concurrent calls for the same url, parameters,
+     * type and user share one request and one parse, see {@link SingleFlight}. With
+     * {@link FitpayConfig.Http#validationCacheSize} set the result is revalidated, see {@link ValidationCache}
+     */
     public <T> void get(final String url, final Map<String, Object> queryMap, final Type type, final ApiCallback<T> callback) {
-        Call<JsonElement> getDataCall = queryMap != null ? getClient().get(url, queryMap) : getClient().get(url);
-        makeCall(getDataCall, type, callback);
+        String key = getFlightKey(null, url, queryMap, type);
+        ApiCallback<T> flight = joinFlight(key, callback);
+        if (flight == null) {
+            return;
+        }
+
+        if (validationCache != null) {
+            makeConditionalCall(key, null, url, queryMap, type, flight);
+            return;
+        }
+
+        Call<ResponseBody> getDataCall = queryMap != null ? getParsingClient().get(url, queryMap) : getParsingClient().get(url);
+        makeCall(getDataCall, type, flight);
     }
 
     public <T> void getV2(final String url, final Map<String, Object> queryMap, final Type type, final ApiCallback<T> callback) {
-        Call<JsonElement> getDataCall = queryMap != null ? getClient().get("application/vnd.fitpay-v2+json", url, queryMap) : getClient().get("application/vnd.fitpay-v2+json", url);
-        makeCall(getDataCall, type, callback);
+        String key = getFlightKey(ACCEPT_V2, url, queryMap, type);
+        ApiCallback<T> flight = joinFlight(key, callback);
+        if (flight == null) {
+            return;
+        }
+
+        if (validationCache != null) {
+            makeConditionalCall(key, ACCEPT_V2, url, queryMap, type, flight);
+            return;
+        }
+
+        Call<ResponseBody> getDataCall = queryMap != null ? getParsingClient().get(ACCEPT_V2, url, queryMap) : getParsingClient().get(ACCEPT_V2, url);
+        makeCall(getDataCall, type, flight);
+    }
+
+    /**
+     * Drop the revalidated results, e.g. after a logout
+     */
+    public void clearValidationCache() {
+        if (validationCache != null) {
+            validationCache.clear();
+        }
+    }
+
+    private <T> void makeConditionalCall(String key, String accept, String url, Map<String, Object> queryMap, Type type, ApiCallback<T> callback) {
+        ValidationCache.Entry entry = validationCache.get(key);
+        Map<String, String> headers = ValidationCache.getHeaders(accept, entry);
+        Map<String, Object> query = queryMap != null ? queryMap : new HashMap<String, Object>();
+
+        getParsingClient().get(headers, url, query)
+                .enqueue(validationCache.newCallback(key, entry, type, callback, apiService.getCallbackExecutor()));
+    }
+
+    /**
+     * @return callback to make the call with or null if the caller joined a call in flight
+     */
+    private <T> ApiCallback<T> joinFlight(String key, ApiCallback<T> callback) {
+        return singleFlight != null ? singleFlight.join(key, callback) : callback;
+    }
+
+    private void invalidateFlights() {
+        if (singleFlight != null) {
+            singleFlight.invalidate();
+        }
+    }
+
+    /**
+     * Keeps the reads made after a write from joining the reads in flight before it, see {@link SingleFlight#invalidate()}
+     */
+    private final class WriteCallback<T> extends ApiCallbackExt<T> {
+        private final ApiCallback<T> callback;
+
+        private WriteCallback(ApiCallback<T> callback) {
+            this.callback = callback;
+            invalidateFlights();
+        }
+
+        @Override
+        public void onSuccess(T result) {
+            invalidateFlights();
+            callback.onSuccess(result);
+        }
+
+        @Override
+        public void onFailure(@ResultCode.Code int errorCode, String errorMessage) {
+            invalidateFlights();
+            callback.onFailure(errorCode, errorMessage);
+        }
+
+        @Override
+        public void onFailure(ErrorResponse apiErrorResponse) {
+            invalidateFlights();
+            if (callback instanceof ApiCallbackExt) {
+                ((ApiCallbackExt) callback).onFailure(apiErrorResponse);
+            } else {
+                callback.onFailure(apiErrorResponse.getStatus(), apiErrorResponse.getError());
+            }
+        }
+    }
+
+    private String getFlightKey(String accept, String url, Map<String, Object> queryMap, Type type) {
+        StringBuilder key = new StringBuilder("GET ").append(url);
+
+        if (queryMap != null && !queryMap.isEmpty()) {
+            key.append(' ').append(new TreeMap<>(queryMap));
+        }
+
+        OAuthToken token = apiService.getToken();
+
+        return key.append(' ').append(accept)
+                .append(' ').append(type)
+                .append(' ').append(token != null ? token.getAccessToken() : null)
+                .toString();
     }
 
     public <T, U> void post(final String url, final U data, final Type type, final ApiCallback<T> callback) {
-        Call<JsonElement> postDataCall = data != null ? getClient().post(url, data) : getClient().post(url);
-        makeCall(postDataCall, type, callback);
+        Call<ResponseBody> postDataCall = data != null ? getParsingClient().post(url, data) : getParsingClient().post(url);
+        makeCall(postDataCall, type, new WriteCallback<>(callback));
     }
 
     public <U> void post(String url, final U data, final ApiCallback<Void> callback) {
         Call<Void> postDataCall = data != null ? getClient().postNoResponse(url, data) : getClient().postNoResponse(url);
-        postDataCall.enqueue(new CallbackWrapper<>(callback));
+        postDataCall.enqueue(new CallbackWrapper<>(new WriteCallback<>(callback)));
     }
 
     public <T, U> void patch(final String url, final U data, final boolean add, final boolean encrypt, final Type type, final ApiCallback<T> callback) {
@@ -392,7 +599,7 @@ public class ApiManager {
             updateData.add(item);
         }
 
-        Call<JsonElement> patchDataCall;
+        Call<ResponseBody> patchDataCall;
 
         if (encrypt) {
             String userString = updateData.toString();
@@ -400,22 +607,22 @@ public class ApiManager {
             JsonObject jsonObject = new JsonObject();
             jsonObject.addProperty("encryptedData", StringUtils.getEncryptedString(KeysManager.KEY_API, userString));
 
-            patchDataCall = getClient().patch(url, jsonObject);
+            patchDataCall = getParsingClient().patch(url, jsonObject);
         } else {
-            patchDataCall = getClient().patch(url, updateData);
+            patchDataCall = getParsingClient().patch(url, updateData);
         }
 
-        makeCall(patchDataCall, type, callback);
+        makeCall(patchDataCall, type, new WriteCallback<>(callback));
     }
 
     public <T> void put(final String url, final T data, final Type type, final ApiCallback<T> callback) {
-        Call<JsonElement> putDataCall = getClient().put(url, data);
-        makeCall(putDataCall, type, callback);
+        Call<ResponseBody> putDataCall = getParsingClient().put(url, data);
+        makeCall(putDataCall, type, new WriteCallback<>(callback));
     }
 
     public void delete(String url, final ApiCallback<Void> callback) {
         Call<Void> deleteDataCall = getClient().delete(url);
-        deleteDataCall.enqueue(new CallbackWrapper<>(callback));
+        deleteDataCall.enqueue(new CallbackWrapper<>(new WriteCallback<>(callback)));
     }
 
 }
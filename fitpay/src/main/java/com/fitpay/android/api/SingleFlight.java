@@ -0,0 +1,150 @@
+package com.fitpay.android.api;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.fitpay.android.api.callbacks.ApiCallback;
+import com.fitpay.android.api.callbacks.ApiCallbackExt;
+import com.fitpay.android.api.enums.ResultCode;
+import com.fitpay.android.api.models.ErrorResponse;
+import com.fitpay.android.utils.FPLog;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Collapses identical calls that are in flight at the same time.
+ * <p>
+ * The first caller of a key makes the call with the callback returned by {@link #join(String, ApiCallback)},
+ * the callers joining while it's in flight wait for the same result. All of them receive the same
+ * model instance, so it's only used with {@link com.fitpay.android.configs.FitpayConfig.Http#collapseConcurrentReads} set.
+ * <p>
+ * {@link #invalidate()} is called around every write: a call made after a write doesn't join a call that may
+ * have been answered before it.
+ */
+final class SingleFlight {
+
+    private static final String TAG = SingleFlight.class.getSimpleName();
+
+    // guarded by this
+    private final Map<String, Flight<?>> flights = new HashMap<>();
+    // guarded by this, part of the flight keys
+    private long writeEpoch;
+
+    private final AtomicLong calls = new AtomicLong();
+    private final AtomicLong collapsed = new AtomicLong();
+
+    /**
+     * @param key      call identity: method, url, parameters, result type and auth context
+     * @param callback result callback of the caller
+     * @return callback to make the call with or null if the caller joined a call in flight
+     */
+    @Nullable
+    synchronized <T> ApiCallback<T> join(@NonNull String key, @NonNull ApiCallback<T> callback) {
+        String flightKey = key + " #" + writeEpoch;
+
+        @SuppressWarnings("unchecked")
+        Flight<T> flight = (Flight<T>) flights.get(flightKey);
+
+        if (flight != null) {
+            flight.callbacks.add(callback);
+            collapsed.incrementAndGet();
+            return null;
+        }
+
+        flight = new Flight<>(flightKey);
+        flight.callbacks.add(callback);
+        flights.put(flightKey, flight);
+        calls.incrementAndGet();
+        return flight;
+    }
+
+    /**
+     * Calls in flight are not joined anymore, they still complete their callers.
+     * Call it when a write starts and when it completes.
+     */
+    synchronized void invalidate() {
+        writeEpoch++;
+    }
+
+    /**
+     * @return number of calls in flight
+     */
+    synchronized int getInFlight() {
+        return flights.size();
+    }
+
+    /**
+     * @return number of calls made
+     */
+    long getCalls() {
+        return calls.get();
+    }
+
+    /**
+     * @return number of callers served by a call made for another caller
+     */
+    long getCollapsed() {
+        return collapsed.get();
+    }
+
+    private synchronized <T> List<ApiCallback<T>> complete(Flight<T> flight) {
+        if (flights.get(flight.key) != flight) {
+            // completed already, a new call for the key may be in flight
+            return new ArrayList<>();
+        }
+
+        flights.remove(flight.key);
+        return flight.callbacks;
+    }
+
+    private final class Flight<T> extends ApiCallbackExt<T> {
+        private final String key;
+        // guarded by SingleFlight.this until completed
+        private final List<ApiCallback<T>> callbacks = new ArrayList<>(1);
+
+        private Flight(String key) {
+            this.key = key;
+        }
+
+        @Override
+        public void onSuccess(T result) {
+            for (ApiCallback<T> callback : complete(this)) {
+                try {
+                    callback.onSuccess(result);
+                } catch (Exception e) {
+                    FPLog.e(TAG, e);
+                }
+            }
+        }
+
+        @Override
+        public void onFailure(@ResultCode.Code int errorCode, String errorMessage) {
+            for (ApiCallback<T> callback : complete(this)) {
+                try {
+                    callback.onFailure(errorCode, errorMessage);
+                } catch (Exception e) {
+                    FPLog.e(TAG, e);
+                }
+            }
+        }
+
+        @Override
+        public void onFailure(ErrorResponse apiErrorResponse) {
+            for (ApiCallback<T> callback : complete(this)) {
+                try {
+                    if (callback instanceof ApiCallbackExt) {
+                        ((ApiCallbackExt) callback).onFailure(apiErrorResponse);
+                    } else {
+                        callback.onFailure(apiErrorResponse.getStatus(), apiErrorResponse.getError());
+                    }
+                } catch (Exception e) {
+                    FPLog.e(TAG, e);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,219 @@
+package com.fitpay.android.api;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.fitpay.android.api.callbacks.ApiCallback;
+import com.fitpay.android.api.callbacks.CallbackWrapper;
+import com.fitpay.android.api.enums.ResultCode;
+
+import java.lang.reflect.Type;
+import java.net.HttpURLConnection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+
+import okhttp3.ResponseBody;
+import retrofit2.Call;
+import retrofit2.Callback;
+import retrofit2.Response;
+
+/**
+ * Revalidates GET results with the server instead of downloading them again.
+ * <p>
+ * Parsed models are kept in memory with the ETag and Last-Modified of their response, the next GET
+ * of the same resource sends them as If-None-Match and If-Modified-Since. A 304 response is served
+ * with the model parsed before: no body is transferred, decrypted or parsed.
+ * Callers of a revalidated resource share one model instance and must not modify it.
+ */
+final class ValidationCache {
+
+    static final String ETAG = "ETag";
+    static final String LAST_MODIFIED = "Last-Modified";
+    static final String IF_NONE_MATCH = "If-None-Match";
+    static final String IF_MODIFIED_SINCE = "If-Modified-Since";
+
+    // guarded by this
+    private final LinkedHashMap<String, Entry> entries;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * @param capacity max number of models kept, the least recently used ones are dropped first
+     */
+    ValidationCache(final int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+
+        entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    @Nullable
+    synchronized Entry get(@NonNull String key) {
+        return entries.get(key);
+    }
+
+    synchronized void put(@NonNull String key, @NonNull Entry entry) {
+        entries.put(key, entry);
+    }
+
+    synchronized void remove(@NonNull String key) {
+        entries.remove(key);
+    }
+
+    synchronized void clear() {
+        entries.clear();
+    }
+
+    synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return number of responses served from the cache after a 304
+     */
+    long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * @return number of responses downloaded and parsed
+     */
+    long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Request headers for a GET of a resource
+     *
+     * @param accept accept header or null for the default one
+     * @param entry  cached entry of the resource or null
+     * @return headers, conditional ones if the resource is cached
+     */
+    static Map<String, String> getHeaders(@Nullable String accept, @Nullable Entry entry) {
+        Map<String, String> headers = new HashMap<>();
+
+        if (accept != null) {
+            headers.put("Accept", accept);
+        }
+
+        if (entry != null) {
+            if (entry.etag != null) {
+                headers.put(IF_NONE_MATCH, entry.etag);
+            }
+            if (entry.lastModified != null) {
+                headers.put(IF_MODIFIED_SINCE, entry.lastModified);
+            }
+        }
+
+        return headers;
+    }
+
+    /**
+     * Callback of a GET sent with {@link #getHeaders(String, Entry)}
+     *
+     * @param key      resource key
+     * @param entry    cached entry the request was made with or null
+     * @param type             model type
+     * @param callback         result callback
+     * @param callbackExecutor thread of the result callback, null to call back on the thread of the response
+     * @return retrofit callback, the body is parsed on the thread it's called on
+     */
+    <T> Callback<ResponseBody> newCallback(final String key, @Nullable final Entry entry, final Type type, final ApiCallback<T> callback,
+                                           @Nullable final Executor callbackExecutor) {
+        return new Callback<ResponseBody>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public void onResponse(Call<ResponseBody> call, Response<ResponseBody> response) {
+                if (entry != null && response.code() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                    hits.incrementAndGet();
+
+                    Runnable result = () -> callback.onSuccess((T) entry.model);
+                    if (callbackExecutor != null) {
+                        callbackExecutor.execute(result);
+                    } else {
+                        result.run();
+                    }
+                    return;
+                }
+
+                ApiCallback<T> target = callback;
+
+                if (response.isSuccessful()) {
+                    misses.incrementAndGet();
+
+                    String etag = response.headers().get(ETAG);
+                    String lastModified = response.headers().get(LAST_MODIFIED);
+
+                    if (etag != null || lastModified != null) {
+                        target = new Store<>(key, etag, lastModified, callback);
+                    } else {
+                        remove(key);
+                    }
+                }
+
+                new CallbackWrapper<>(new ApiManager.ParsingCallback<>(type, target, callbackExecutor)).onResponse(call, response);
+            }
+
+            @Override
+            public void onFailure(Call<ResponseBody> call, Throwable t) {
+                new CallbackWrapper<>(new ApiManager.ParsingCallback<>(type, callback, callbackExecutor)).onFailure(call, t);
+            }
+        };
+    }
+
+    static final class Entry {
+        final String etag;
+        final String lastModified;
+        final Object model;
+
+        Entry(String etag, String lastModified, Object model) {
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.model = model;
+        }
+    }
+
+    /**
+     * Keeps a parsed model before passing it on
+     */
+    private final class Store<T> implements ApiCallback<T> {
+        private final String key;
+        private final String etag;
+        private final String lastModified;
+        private final ApiCallback<T> callback;
+
+        private Store(String key, String etag, String lastModified, ApiCallback<T> callback) {
+            this.key = key;
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.callback = callback;
+        }
+
+        @Override
+        public void onSuccess(T result) {
+            if (result != null) {
+                put(key, new Entry(etag, lastModified, result));
+            } else {
+                remove(key);
+            }
+
+            callback.onSuccess(result);
+        }
+
+        @Override
+        public void onFailure(@ResultCode.Code int errorCode, String errorMessage) {
+            remove(key);
+            callback.onFailure(errorCode, errorMessage);
+        }
+    }
+}
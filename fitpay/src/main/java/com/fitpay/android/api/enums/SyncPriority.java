@@ -0,0 +1,22 @@
+package com.fitpay.android.api.enums;
+
+import androidx.annotation.IntDef;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+
+/**
+ * Sync priorities enum.
+ * Waiting syncs with a higher priority run first, a running sync yields to them at the next commit boundary.
+ */
+public final class SyncPriority {
+
+    public static final int BACKGROUND = 0;
+    public static final int NORMAL = 1;
+    public static final int INTERACTIVE = 2;
+
+    @Retention(RetentionPolicy.SOURCE)
+    @IntDef({BACKGROUND, NORMAL, INTERACTIVE})
+    public @interface Priority {
+    }
+}
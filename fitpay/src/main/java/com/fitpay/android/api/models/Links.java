@@ -3,6 +3,13 @@ package com.fitpay.android.api.models;
 import android.os.Parcel;
 import android.os.Parcelable;
 
+import com.fitpay.android.utils.StreamingTypeAdapterFactory;
+import com.google.gson.Gson;
+import com.google.gson.annotations.JsonAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -11,6 +18,7 @@ import io.reactivex.annotations.Nullable;
 /**
  * Generated server links. HATEOAS representation
  */
+@JsonAdapter(Links.Adapter.class)
 public final class Links implements Parcelable {
 
     private final Map<String, Link> links;
@@ -81,6 +89,57 @@ public final class Links implements Parcelable {
         }
     }
 
+    /**
+     * Reads the HAL form: {"rel": {"href": "...", "templated": false}}
+     */
+    static final class Adapter extends StreamingTypeAdapterFactory<Links> {
+
+        Adapter() {
+            super(Links.class);
+        }
+
+        @Override
+        protected Links read(Gson gson, JsonReader in) throws IOException {
+            Links links = new Links();
+
+            in.beginObject();
+            while (in.hasNext()) {
+                String rel = in.nextName();
+
+                if (in.peek() != JsonToken.BEGIN_OBJECT) {
+                    in.skipValue();
+                    continue;
+                }
+
+                String href = null;
+                boolean templated = false;
+
+                in.beginObject();
+                while (in.hasNext()) {
+                    switch (in.nextName()) {
+                        case "href":
+                            href = nextString(in);
+                            break;
+                        case "templated":
+                            templated = nextBoolean(in, false);
+                            break;
+                        default:
+                            in.skipValue();
+                            break;
+                    }
+                }
+                in.endObject();
+
+                if (href != null) {
+                    links.setLink(rel, new Link(href, templated));
+                }
+            }
+            in.endObject();
+
+            return links;
+        }
+    }
+
     public static final Parcelable.Creator<Links> CREATOR = new Parcelable.Creator<Links>() {
         @Override
         public Links createFromParcel(Parcel source) {
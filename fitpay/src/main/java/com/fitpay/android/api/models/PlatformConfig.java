@@ -29,6 +29,24 @@ public class PlatformConfig {
         this.userEventStreamsEnabled = userEventStreamsEnabled;
     }
 
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+
+        PlatformConfig that = (PlatformConfig) o;
+        return userEventStreamsEnabled == that.userEventStreamsEnabled;
+    }
+
+    @Override
+    public int hashCode() {
+        return userEventStreamsEnabled ? 1 : 0;
+    }
+
     @Override
     public String toString() {
         return "PlatformConfig{" + "userEventStreamsEnabled=" + userEventStreamsEnabled + "}";
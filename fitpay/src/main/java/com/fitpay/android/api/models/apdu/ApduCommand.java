@@ -1,10 +1,17 @@
 package com.fitpay.android.api.models.apdu;
 
 import com.fitpay.android.utils.Hex;
+import com.fitpay.android.utils.StreamingTypeAdapterFactory;
+import com.google.gson.Gson;
+import com.google.gson.annotations.JsonAdapter;
+import com.google.gson.stream.JsonReader;
+
+import java.io.IOException;
 
 /**
  * Apdu command
  */
+@JsonAdapter(ApduCommand.Adapter.class)
 public final class ApduCommand {
 
     private String commandId;
@@ -106,6 +113,51 @@ public final class ApduCommand {
         }
     }
 
+    static final class Adapter extends StreamingTypeAdapterFactory<ApduCommand> {
+
+        Adapter() {
+            super(ApduCommand.class);
+        }
+
+        @Override
+        protected ApduCommand read(Gson gson, JsonReader in) throws IOException {
+            ApduCommand apduCommand = new ApduCommand();
+
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "commandId":
+                        apduCommand.commandId = nextString(in);
+                        break;
+                    case "groupId":
+                        apduCommand.groupId = nextInt(in, 0);
+                        break;
+                    case "sequence":
+                        apduCommand.sequence = nextInt(in, 0);
+                        break;
+                    case "command":
+                        apduCommand.command = nextString(in);
+                        break;
+                    case "type":
+                        apduCommand.type = nextString(in);
+                        break;
+                    case "injected":
+                        apduCommand.injected = nextBoolean(in, false);
+                        break;
+                    case "continueOnFailure":
+                        apduCommand.continueOnFailure = nextBoolean(in, false);
+                        break;
+                    default:
+                        in.skipValue();
+                        break;
+                }
+            }
+            in.endObject();
+
+            return apduCommand;
+        }
+    }
+
     @Override
     public String toString() {
         return "ApduCommand{" +
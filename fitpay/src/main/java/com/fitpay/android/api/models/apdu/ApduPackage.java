@@ -3,12 +3,14 @@ package com.fitpay.android.api.models.apdu;
 import androidx.annotation.NonNull;
 
 import com.fitpay.android.api.callbacks.ApiCallback;
+import com.google.gson.annotations.JsonAdapter;
 
 import java.util.List;
 
 /**
  * Apdu package
  */
+@JsonAdapter(ApduPackageModel.Adapter.class)
 public final class ApduPackage extends ApduPackageModel {
     private static final String APDU_RESPONSE = "apduResponse";
 
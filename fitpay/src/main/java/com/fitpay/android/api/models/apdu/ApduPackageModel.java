@@ -3,8 +3,14 @@ package com.fitpay.android.api.models.apdu;
 import com.fitpay.android.api.enums.APDUPackageCategory;
 import com.fitpay.android.api.enums.APDUPackageOperation;
 import com.fitpay.android.api.models.BaseModel;
+import com.fitpay.android.api.models.Links;
+import com.fitpay.android.utils.StreamingTypeAdapterFactory;
+import com.google.gson.Gson;
 import com.google.gson.annotations.SerializedName;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
 
+import java.io.IOException;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -71,6 +77,75 @@ abstract class ApduPackageModel extends BaseModel {
 
     public Map<String, Object> getMetadata() { return metadata; }
 
+    static final class Adapter extends StreamingTypeAdapterFactory<ApduPackage> {
+
+        private static final TypeToken<HashMap<String, Object>> METADATA_TYPE = new TypeToken<HashMap<String, Object>>() {
+        };
+        private static final TypeToken<List<ApduCommand>> COMMANDS_TYPE = new TypeToken<List<ApduCommand>>() {
+        };
+
+        Adapter() {
+            super(ApduPackage.class);
+        }
+
+        @Override
+        protected ApduPackage read(Gson gson, JsonReader in) throws IOException {
+            ApduPackage apduPackage = new ApduPackage();
+            ApduPackageModel model = apduPackage;
+
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "seIdType":
+                        model.seIdType = nextString(in);
+                        break;
+                    case "targetDeviceType":
+                        model.targetDeviceType = nextString(in);
+                        break;
+                    case "targetDeviceId":
+                        model.targetDeviceId = nextString(in);
+                        break;
+                    case "packageId":
+                        model.packageId = nextString(in);
+                        break;
+                    case "seId":
+                        model.seId = nextString(in);
+                        break;
+                    case "targetAid":
+                        model.targetAid = nextString(in);
+                        break;
+                    case "validUntil":
+                        model.validUntil = nextString(in);
+                        break;
+                    case "apduPackageUrl":
+                        model.apduPackageUrl = nextString(in);
+                        break;
+                    case "category":
+                        model.category = nextString(in);
+                        break;
+                    case "operation":
+                        model.operation = nextString(in);
+                        break;
+                    case "metadata":
+                        model.metadata = gson.getAdapter(METADATA_TYPE).read(in);
+                        break;
+                    case "commandApdus":
+                        model.apduCommands = gson.getAdapter(COMMANDS_TYPE).read(in);
+                        break;
+                    case "_links":
+                        model.links = gson.getAdapter(Links.class).read(in);
+                        break;
+                    default:
+                        in.skipValue();
+                        break;
+                }
+            }
+            in.endObject();
+
+            return apduPackage;
+        }
+    }
+
     @Override
     public String toString() {
         return "ApduPackage{" +
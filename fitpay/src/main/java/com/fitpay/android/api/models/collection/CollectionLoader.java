@@ -0,0 +1,211 @@
+package com.fitpay.android.api.models.collection;
+
+import androidx.annotation.NonNull;
+
+import com.fitpay.android.api.ApiManager;
+import com.fitpay.android.api.callbacks.ApiCallback;
+import com.fitpay.android.api.enums.ResultCode;
+import com.fitpay.android.paymentdevice.DeviceOperationException;
+
+import java.util.Iterator;
+import java.util.List;
+
+import io.reactivex.Flowable;
+import io.reactivex.Single;
+import okhttp3.HttpUrl;
+
+/**
+ * Loads the pages of a collection.
+ * <p>
+ * {@link #getAll(ResultCollection, int)} and {@link #getPages(ResultCollection, int)} load all pages of an offset
+ * based collection: once the first page tells the number of results, the remaining pages are requested
+ * at the same time, at most {@code parallelism} of them in flight, and delivered in offset order.
+ * <p>
+ * {@link #getResults(ResultCollection)} and {@link #getIterator(ResultCollection)} follow the next links lazily,
+ * a page is loaded only when its results are asked for, see {@link CollectionPager}.
+ * <pre>
+ * user.getCreditCards(20, 0, new ApiCallback&lt;Collections.CreditCardCollection&gt;() {
+ *     public void onSuccess(Collections.CreditCardCollection result) {
+ *         CollectionLoader.getAll(result, CollectionLoader.DEFAULT_PARALLELISM, callback);
+ *     }
+ *     ...
+ * });
+ * </pre>
+ */
+public final class CollectionLoader {
+
+    /**
+     * Default number of pages requested at the same time, below the per host limit of the http client
+     */
+    public static final int DEFAULT_PARALLELISM = 4;
+
+    /**
+     * Number of results the iterator asks for at a time
+     */
+    private static final int ITERATOR_BATCH = 16;
+
+    private static final String SELF = "self";
+    private static final String LIMIT = "limit";
+    private static final String OFFSET = "offset";
+
+    private CollectionLoader() {
+    }
+
+    /**
+     * Source of the pages of a collection
+     */
+    interface PageSource<C> {
+        void getPage(int offset, int limit, ApiCallback<C> callback);
+    }
+
+    /**
+     * Get the pages of a collection
+     *
+     * @param first       first page, its self link is used for the other ones
+     * @param parallelism max number of pages requested at the same time
+     * @return pages in offset order, starting with the first one
+     */
+    public static <T, C extends ResultCollection<T>> Flowable<C> getPages(@NonNull C first, int parallelism) {
+        return getPages(first, parallelism, new LinkSource<>(first));
+    }
+
+    /**
+     * Get all results of a collection
+     *
+     * @param first       first page, its self link is used for the other ones
+     * @param parallelism max number of pages requested at the same time
+     * @return collection with the results of all pages in offset order
+     */
+    public static <T, C extends ResultCollection<T>> Single<C> getAll(@NonNull C first, int parallelism) {
+        return getAll(first, parallelism, new LinkSource<>(first));
+    }
+
+    /**
+     * Get all results of a collection
+     *
+     * @param first       first page, its self link is used for the other ones
+     * @param parallelism max number of pages requested at the same time
+     * @param callback    result callback, receives a collection with the results of all pages in offset order
+     */
+    public static <T, C extends ResultCollection<T>> void getAll(@NonNull C first, int parallelism, @NonNull ApiCallback<C> callback) {
+        getAll(first, parallelism).subscribe(
+                callback::onSuccess,
+                throwable -> {
+                    if (throwable instanceof DeviceOperationException) {
+                        callback.onFailure(((DeviceOperationException) throwable).getErrorCode(), throwable.getMessage());
+                    } else {
+                        callback.onFailure(ResultCode.REQUEST_FAILED, throwable.getMessage());
+                    }
+                });
+    }
+
+    /**
+     * Get the results of a collection, the pages are loaded as the results are consumed.
+     * A page is requested once the subscriber starts on the previous one, so at most two pages are held
+     * and long collections, e.g. transactions, can be processed in bounded memory
+     *
+     * @param first first page
+     * @return results in page order
+     */
+    public static <T, C extends ResultCollection<T>> Flowable<T> getResults(@NonNull C first) {
+        return getResults(first, (page, callback) -> page.getNext(callback));
+    }
+
+    /**
+     * Iterate over the results of a collection, the pages are loaded as the results are consumed.
+     * Waits for the pages to load, don't use it on the main thread: page results are delivered there.
+     *
+     * @param first first page
+     * @return results iterator, it throws the failure of a page load as a runtime exception
+     */
+    public static <T, C extends ResultCollection<T>> Iterator<T> getIterator(@NonNull C first) {
+        return CollectionLoader.<T, C>getResults(first).blockingIterable(ITERATOR_BATCH).iterator();
+    }
+
+    static <T, C extends ResultCollection<T>> Flowable<T> getResults(final C first, final CollectionPager.NextPageSource<C> source) {
+        return Flowable.fromPublisher(subscriber -> subscriber.onSubscribe(new CollectionPager<T, C>(first, source, subscriber)));
+    }
+
+    static <T, C extends ResultCollection<T>> Flowable<C> getPages(final C first, int parallelism, final PageSource<C> source) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be positive: " + parallelism);
+        }
+
+        final int limit = first.getLimit() > 0 ? first.getLimit() : size(first);
+        final int from = first.getOffset() + limit;
+
+        if (limit <= 0 || from >= first.getTotalResults()) {
+            return Flowable.just(first);
+        }
+
+        int pages = (first.getTotalResults() - from + limit - 1) / limit;
+
+        return Flowable.just(first)
+                .concatWith(Flowable.range(0, pages)
+                        .concatMapEager(page -> getPage(source, from + page * limit, limit).toFlowable(), parallelism, 1));
+    }
+
+    @SuppressWarnings("unchecked")
+    static <T, C extends ResultCollection<T>> Single<C> getAll(final C first, int parallelism, final PageSource<C> source) {
+        return getPages(first, parallelism, source)
+                .toList()
+                .map(pages -> {
+                    C all = (C) first.getClass().newInstance();
+                    all.setPages(pages);
+                    return all;
+                });
+    }
+
+    private static <C> Single<C> getPage(final PageSource<C> source, final int offset, final int limit) {
+        return Single.create(emitter -> source.getPage(offset, limit, new ApiCallback<C>() {
+            @Override
+            public void onSuccess(C result) {
+                if (result == null) {
+                    emitter.tryOnError(new Exception("page result is null, offset: " + offset));
+                } else {
+                    emitter.onSuccess(result);
+                }
+            }
+
+            @Override
+            public void onFailure(@ResultCode.Code int errorCode, String errorMessage) {
+                emitter.tryOnError(new DeviceOperationException(errorMessage, errorCode));
+            }
+        }));
+    }
+
+    private static int size(ResultCollectionModel<?> page) {
+        List<?> results = page.getResults();
+        return results != null ? results.size() : 0;
+    }
+
+    /**
+     * Requests pages with the self link of the first one, its limit and offset replaced
+     */
+    private static final class LinkSource<C extends ResultCollection<?>> implements PageSource<C> {
+        private final C first;
+
+        private LinkSource(C first) {
+            this.first = first;
+        }
+
+        @Override
+        public void getPage(int offset, int limit, ApiCallback<C> callback) {
+            String self = first.getLinkUrl(SELF);
+            HttpUrl url = self != null ? HttpUrl.parse(self) : null;
+
+            if (url == null) {
+                callback.onFailure(ResultCode.NOT_FOUND, "The hypermedia link relationship [self] was not found for: " + first);
+                return;
+            }
+
+            String pageUrl = url.newBuilder()
+                    .setQueryParameter(LIMIT, String.valueOf(limit))
+                    .setQueryParameter(OFFSET, String.valueOf(offset))
+                    .build()
+                    .toString();
+
+            ApiManager.getInstance().get(pageUrl, null, first.getClass(), callback);
+        }
+    }
+}
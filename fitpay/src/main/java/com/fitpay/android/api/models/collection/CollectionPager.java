@@ -0,0 +1,196 @@
+package com.fitpay.android.api.models.collection;
+
+import com.fitpay.android.api.callbacks.ApiCallback;
+import com.fitpay.android.api.enums.ResultCode;
+import com.fitpay.android.paymentdevice.DeviceOperationException;
+
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Emits the results of a collection page by page, following the next links.
+ * <p>
+ * A page is requested only once the subscriber asks for results past the ones loaded, and one page ahead:
+ * when the subscriber starts on a page the next one is requested. Only the page being emitted and the one
+ * loaded ahead are referenced, the consumed ones can be collected.
+ */
+final class CollectionPager<T, C extends ResultCollection<T>> implements Subscription {
+
+    /**
+     * Source of the page after a page
+     */
+    interface NextPageSource<C> {
+        void getNext(C page, ApiCallback<C> callback);
+    }
+
+    private final Subscriber<? super T> subscriber;
+    private final NextPageSource<C> source;
+
+    private final AtomicLong requested = new AtomicLong();
+    private final AtomicInteger wip = new AtomicInteger();
+
+    private volatile boolean cancelled;
+
+    // page loaded and not started yet
+    private volatile C loaded;
+    private volatile boolean loading;
+    private volatile boolean lastPage;
+    private volatile Throwable error;
+
+    // accessed by the drain loop only
+    private Iterator<T> current;
+
+    CollectionPager(C first, NextPageSource<C> source, Subscriber<? super T> subscriber) {
+        this.subscriber = subscriber;
+        this.source = source;
+        this.loaded = first;
+    }
+
+    @Override
+    public void request(long n) {
+        if (n <= 0) {
+            cancel();
+            subscriber.onError(new IllegalArgumentException("§3.9 violated: positive request amount required but it was " + n));
+            return;
+        }
+
+        for (;;) {
+            long r = requested.get();
+            long u = r + n;
+            if (u < 0L) {
+                u = Long.MAX_VALUE;
+            }
+            if (requested.compareAndSet(r, u)) {
+                break;
+            }
+        }
+
+        drain();
+    }
+
+    @Override
+    public void cancel() {
+        cancelled = true;
+
+        if (wip.getAndIncrement() == 0) {
+            clear();
+        }
+    }
+
+    private void drain() {
+        if (wip.getAndIncrement() != 0) {
+            return;
+        }
+
+        int missed = 1;
+
+        for (;;) {
+            long r = requested.get();
+            long e = 0L;
+
+            for (;;) {
+                if (cancelled) {
+                    clear();
+                    return;
+                }
+
+                if (current != null && current.hasNext()) {
+                    if (e == r) {
+                        break;
+                    }
+
+                    T item = current.next();
+                    if (item != null) {
+                        subscriber.onNext(item);
+                        e++;
+                    }
+                    continue;
+                }
+
+                current = null;
+
+                C page = loaded;
+                if (page != null) {
+                    if (e == r) {
+                        // no demand, don't start the page and don't load the next one yet
+                        break;
+                    }
+
+                    loaded = null;
+                    current = results(page);
+                    loadNext(page);
+                    continue;
+                }
+
+                Throwable ex = error;
+                if (ex != null) {
+                    cancelled = true;
+                    subscriber.onError(ex);
+                    return;
+                }
+
+                if (lastPage && !loading) {
+                    cancelled = true;
+                    subscriber.onComplete();
+                    return;
+                }
+
+                // waiting for the next page
+                break;
+            }
+
+            if (e != 0L && r != Long.MAX_VALUE) {
+                requested.addAndGet(-e);
+            }
+
+            missed = wip.addAndGet(-missed);
+            if (missed == 0) {
+                break;
+            }
+        }
+    }
+
+    private void loadNext(C page) {
+        if (!page.hasNext()) {
+            lastPage = true;
+            return;
+        }
+
+        loading = true;
+
+        source.getNext(page, new ApiCallback<C>() {
+            @Override
+            public void onSuccess(C result) {
+                if (result == null) {
+                    error = new Exception("next page result is null");
+                } else if (!cancelled) {
+                    loaded = result;
+                }
+                loading = false;
+                drain();
+            }
+
+            @Override
+            public void onFailure(@ResultCode.Code int errorCode, String errorMessage) {
+                error = new DeviceOperationException(errorMessage, errorCode);
+                loading = false;
+                drain();
+            }
+        });
+    }
+
+    private void clear() {
+        current = null;
+        loaded = null;
+    }
+
+    private Iterator<T> results(C page) {
+        List<T> results = page.getResults();
+        return results != null ? results.iterator() : null;
+    }
+}
@@ -46,4 +46,24 @@ public class ResultCollectionModel<T> extends BaseModel {
         offset += collection.getOffset();
         totalResults = collection.getTotalResults();
     }
+
+    /**
+     * Replace the content with consecutive pages, e.g. pages loaded in parallel
+     *
+     * @param pages pages in offset order
+     */
+    void setPages(List<? extends ResultCollectionModel<T>> pages) {
+        results = new ArrayList<>();
+        links = null;
+
+        for (ResultCollectionModel<T> page : pages) {
+            if (page.getResults() != null) {
+                results.addAll(page.getResults());
+            }
+        }
+
+        offset = pages.isEmpty() ? 0 : pages.get(0).getOffset();
+        limit = results.size();
+        totalResults = pages.isEmpty() ? 0 : pages.get(pages.size() - 1).getTotalResults();
+    }
 }
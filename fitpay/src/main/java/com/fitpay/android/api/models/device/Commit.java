@@ -5,10 +5,12 @@ import androidx.annotation.NonNull;
 import com.fitpay.android.api.callbacks.ApiCallback;
 import com.fitpay.android.api.models.apdu.ApduExecutionResult;
 import com.fitpay.android.utils.FPLog;
+import com.google.gson.annotations.JsonAdapter;
 
 /**
  * Commit
  */
+@JsonAdapter(CommitModel.Adapter.class)
 public final class Commit extends CommitModel {
 
     private static final String REL_APDU_RESPONSE = "apduResponse";
@@ -2,8 +2,14 @@ package com.fitpay.android.api.models.device;
 
 import com.fitpay.android.api.enums.CommitTypes;
 import com.fitpay.android.api.models.BaseModel;
+import com.fitpay.android.api.models.Links;
 import com.fitpay.android.api.models.Payload;
+import com.fitpay.android.utils.StreamingTypeAdapterFactory;
+import com.google.gson.Gson;
 import com.google.gson.annotations.SerializedName;
+import com.google.gson.stream.JsonReader;
+
+import java.io.IOException;
 
 /**
  * Commit model
@@ -35,6 +41,45 @@ abstract class CommitModel extends BaseModel {
         return payload.getData(commitType);
     }
 
+    static final class Adapter extends StreamingTypeAdapterFactory<Commit> {
+
+        Adapter() {
+            super(Commit.class);
+        }
+
+        @Override
+        protected Commit read(Gson gson, JsonReader in) throws IOException {
+            Commit commit = new Commit();
+
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "commitId":
+                        commit.commitId = nextString(in);
+                        break;
+                    case "commitType":
+                        commit.commitType = nextString(in);
+                        break;
+                    case "createdTs":
+                        commit.createdTs = nextLong(in);
+                        break;
+                    case "encryptedData":
+                        commit.payload = gson.getAdapter(Payload.class).read(in);
+                        break;
+                    case "_links":
+                        commit.links = gson.getAdapter(Links.class).read(in);
+                        break;
+                    default:
+                        in.skipValue();
+                        break;
+                }
+            }
+            in.endObject();
+
+            return commit;
+        }
+    }
+
     @Override
     public String toString() {
         return "Commit{" +
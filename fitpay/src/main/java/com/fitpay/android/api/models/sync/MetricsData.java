@@ -41,6 +41,18 @@ public final class MetricsData {
         this.errorDescription = errorDescription;
     }
 
+    public String getCommitId() {
+        return commitId;
+    }
+
+    public long getProcessingTimeMS() {
+        return processingTimeMS;
+    }
+
+    public String getError() {
+        return error;
+    }
+
     @Override
     public String toString() {
         return "MetricsData{" +
@@ -17,7 +17,9 @@ import javax.net.ssl.TrustManagerFactory;
 import javax.net.ssl.X509TrustManager;
 
 import okhttp3.Cache;
+import okhttp3.ConnectionPool;
 import okhttp3.ConnectionSpec;
+import okhttp3.Dispatcher;
 import okhttp3.OkHttpClient;
 import okhttp3.TlsVersion;
 import okhttp3.logging.HttpLoggingInterceptor;
@@ -35,33 +37,140 @@ public class BaseClient {
     protected static final int HTTP_READ_TIMEOUT = 60;
     protected static final int HTTP_WRITE_TIMEOUT = 60;
 
+    private static volatile OkHttpClient sharedClient;
+
+    // opened once and kept across resets, two caches over the same directory would overwrite each other's entries
+    private static Cache sharedCache; // guarded by BaseClient.class
+
+    private static Dispatcher streamDispatcher; // guarded by BaseClient.class
+
     public static OkHttpClient.Builder getOkHttpClient() {
         return getOkHttpClient(FPLog.showHttpLogs());
     }
 
+    /**
+     * Builder of a service client. Clients built from it share the connection pool, the dispatcher
+     * and the cache of {@link #getSharedClient()}.
+     *
+     * @param enabledLogging add the http logging interceptor
+     * @return client builder
+     */
     public static OkHttpClient.Builder getOkHttpClient(boolean enabledLogging) {
-        OkHttpClient.Builder builder = getDefaultOkHttpClient();
+        OkHttpClient.Builder builder = getSharedClient().newBuilder();
+
+        if (enabledLogging) {
+            HttpLoggingInterceptor logging = new HttpLoggingInterceptor(BaseClient::printLog);
+            logging.setLevel(HttpLoggingInterceptor.Level.BODY);
+
+            builder = builder.addInterceptor(logging);
+        }
+
+        return builder;
+    }
+
+    /**
+     * Builder of an event stream client. It shares the connection pool and the cache of {@link #getSharedClient()}
+     * but not the dispatcher: a stream call runs as long as the stream is open, it would hold one of the
+     * {@link FitpayConfig.Http#maxRequestsPerHost} API call slots for good.
+     *
+     * @return client builder without logging, the logging interceptor doesn't work with streams
+     */
+    public static OkHttpClient.Builder getStreamOkHttpClient() {
+        Dispatcher dispatcher;
+
+        synchronized (BaseClient.class) {
+            if (streamDispatcher == null) {
+                streamDispatcher = new Dispatcher();
+            }
+            dispatcher = streamDispatcher;
+        }
+
+        return getOkHttpClient(false).dispatcher(dispatcher);
+    }
+
+    /**
+     * Base client of every API and event stream call. It's created on the first use with the
+     * {@link FitpayConfig.Http} settings.
+     *
+     * @return shared client
+     */
+    public static OkHttpClient getSharedClient() {
+        OkHttpClient client = sharedClient;
+
+        if (client == null) {
+            synchronized (BaseClient.class) {
+                client = sharedClient;
+                if (client == null) {
+                    client = createSharedClient();
+                    sharedClient = client;
+                }
+            }
+        }
 
-        builder = builder.connectTimeout(HTTP_CONNECT_TIMEOUT, TimeUnit.SECONDS)
+        return client;
+    }
+
+    /**
+     * Drop the shared client, the next service client gets a new one with the current {@link FitpayConfig.Http} settings.
+     * Calls of the existing clients are not affected, only their idle connections are closed.
+     * The disk cache is kept, the new client uses the same one.
+     */
+    public static void resetSharedClient() {
+        OkHttpClient client;
+
+        synchronized (BaseClient.class) {
+            client = sharedClient;
+            sharedClient = null;
+        }
+
+        if (client != null) {
+            client.connectionPool().evictAll();
+        }
+    }
+
+    /**
+     * @return connection pool, dispatcher and cache statistics of the shared client
+     */
+    public static HttpStats getHttpStats() {
+        return new HttpStats(getSharedClient());
+    }
+
+    private static OkHttpClient createSharedClient() {
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(FitpayConfig.Http.maxRequests);
+        dispatcher.setMaxRequestsPerHost(FitpayConfig.Http.maxRequestsPerHost);
+
+        OkHttpClient.Builder builder = new OkHttpClient.Builder()
+                .connectionPool(new ConnectionPool(FitpayConfig.Http.maxIdleConnections,
+                        FitpayConfig.Http.keepAliveDuration, TimeUnit.SECONDS))
+                .dispatcher(dispatcher)
+                .connectTimeout(HTTP_CONNECT_TIMEOUT, TimeUnit.SECONDS)
                 .readTimeout(HTTP_READ_TIMEOUT, TimeUnit.SECONDS)
                 .writeTimeout(HTTP_WRITE_TIMEOUT, TimeUnit.SECONDS)
                 .followRedirects(true)
                 .followSslRedirects(true)
                 .retryOnConnectionFailure(true);
 
-        if (enabledLogging) {
-            HttpLoggingInterceptor logging = new HttpLoggingInterceptor(BaseClient::printLog);
-            logging.setLevel(HttpLoggingInterceptor.Level.BODY);
-
-            builder = builder.addInterceptor(logging);
+        Cache cache = getSharedCache();
+        if (cache != null) {
+            builder.cache(cache);
         }
 
-        return enableTls12OnPreLollipop(builder);
+        return enableTls12OnPreLollipop(builder).build();
     }
 
-    private static OkHttpClient.Builder getDefaultOkHttpClient() {
-        int cacheSize = 20 * 1024 * 1024; // 20MB
-        return new OkHttpClient.Builder().cache(new Cache(FitpayConfig.appContext.getCacheDir(), cacheSize));
+    private static Cache getSharedCache() {
+        if (FitpayConfig.appContext == null || FitpayConfig.Http.cacheSize <= 0) {
+            return null;
+        }
+
+        if (sharedCache == null) {
+            sharedCache = new Cache(FitpayConfig.appContext.getCacheDir(), FitpayConfig.Http.cacheSize);
+        } else if (sharedCache.maxSize() != FitpayConfig.Http.cacheSize) {
+            FPLog.w(TAG, "http cache is already open with " + sharedCache.maxSize() + " bytes, the new size applies after a restart");
+        }
+
+        return sharedCache;
     }
 
     private static OkHttpClient.Builder enableTls12OnPreLollipop(OkHttpClient.Builder client) {
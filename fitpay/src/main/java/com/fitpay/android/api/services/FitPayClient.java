@@ -11,17 +11,20 @@ import com.google.gson.JsonElement;
 
 import java.util.Map;
 
+import okhttp3.ResponseBody;
 import retrofit2.Call;
 import retrofit2.http.Body;
 import retrofit2.http.DELETE;
 import retrofit2.http.GET;
 import retrofit2.http.Header;
+import retrofit2.http.HeaderMap;
 import retrofit2.http.PATCH;
 import retrofit2.http.POST;
 import retrofit2.http.PUT;
 import retrofit2.http.Path;
 import retrofit2.http.Query;
 import retrofit2.http.QueryMap;
+import retrofit2.http.Streaming;
 import retrofit2.http.Url;
 
 public interface FitPayClient {
@@ -137,22 +140,32 @@ public interface FitPayClient {
     Call<ResetDeviceResult> getResetPaymentDeviceStatus(@Path("resetId") String resetId);
 
     @GET
-    Call<JsonElement> get(@Url String url);
+    @Streaming
+    Call<ResponseBody> get(@Url String url);
 
     @GET
-    Call<JsonElement> get(@Url String url, @QueryMap Map<String, Object> queryMap);
+    @Streaming
+    Call<ResponseBody> get(@Url String url, @QueryMap Map<String, Object> queryMap);
 
     @GET
-    Call<JsonElement> get(@Header("Accept") String accept, @Url String url);
+    @Streaming
+    Call<ResponseBody> get(@Header("Accept") String accept, @Url String url);
 
     @GET
-    Call<JsonElement> get(@Header("Accept") String accept, @Url String url, @QueryMap Map<String, Object> queryMap);
+    @Streaming
+    Call<ResponseBody> get(@Header("Accept") String accept, @Url String url, @QueryMap Map<String, Object> queryMap);
+
+    @GET
+    @Streaming
+    Call<ResponseBody> get(@HeaderMap Map<String, String> headers, @Url String url, @QueryMap Map<String, Object> queryMap);
 
     @POST
-    Call<JsonElement> post(@Url String url);
+    @Streaming
+    Call<ResponseBody> post(@Url String url);
 
     @POST
-    Call<JsonElement> post(@Url String url, @Body Object data);
+    @Streaming
+    Call<ResponseBody> post(@Url String url, @Body Object data);
 
     @POST
     Call<Void> postNoResponse(@Url String url, @Body Object data);
@@ -161,10 +174,12 @@ public interface FitPayClient {
     Call<Void> postNoResponse(@Url String url);
 
     @PUT
-    Call<JsonElement> put(@Url String url, @Body Object data);
+    @Streaming
+    Call<ResponseBody> put(@Url String url, @Body Object data);
 
     @PATCH
-    Call<JsonElement> patch(@Url String url, @Body JsonElement data);
+    @Streaming
+    Call<ResponseBody> patch(@Url String url, @Body JsonElement data);
 
     @DELETE
     Call<Void> delete(@Url String url);
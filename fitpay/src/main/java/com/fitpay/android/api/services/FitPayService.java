@@ -1,8 +1,12 @@
 package com.fitpay.android.api.services;
 
+import android.content.Context;
+import android.content.SharedPreferences;
+
 import com.fitpay.android.api.models.PlatformConfig;
 import com.fitpay.android.api.models.security.AccessDenied;
 import com.fitpay.android.api.models.security.OAuthToken;
+import com.fitpay.android.configs.FitpayConfig;
 import com.fitpay.android.utils.Constants;
 import com.fitpay.android.utils.ExpiredTokenException;
 import com.fitpay.android.utils.FPLog;
@@ -15,6 +19,7 @@ import java.io.IOException;
 import java.util.Locale;
 
 import io.reactivex.Completable;
+import io.reactivex.Single;
 import io.reactivex.schedulers.Schedulers;
 import okhttp3.Interceptor;
 import okhttp3.Request;
@@ -29,11 +34,19 @@ final public class FitPayService extends GenericClient<FitPayClient> {
     private OAuthToken mAuthToken;
     private boolean expiredNotificationSent;
 
-    private PlatformConfig platformConfig = new PlatformConfig();
+    private static final String PLATFORM_CONFIG_PREFS = "fitpay_platform_config";
+
+    private final String apiBaseUrl;
+
+    // last known config until the platform answers: persisted one or defaults
+    private volatile PlatformConfig platformConfig = new PlatformConfig();
+    private volatile boolean platformConfigKnown;
+    private final Completable platformConfigRefresh;
 
     public FitPayService(String apiBaseUrl) {
         super(apiBaseUrl);
-        constructPlatformConfig();
+        this.apiBaseUrl = apiBaseUrl;
+        platformConfigRefresh = constructPlatformConfig();
     }
 
     @Override
@@ -101,29 +114,85 @@ final public class FitPayService extends GenericClient<FitPayClient> {
         };
     }
 
-    private void constructPlatformConfig() {
+    /**
+     * Start with the persisted config and refresh it in the background,
+     * a changed config is persisted and posted to {@link RxBus}
+     */
+    private Completable constructPlatformConfig() {
         if (client == null) {
             throw new IllegalStateException("invalid state, not okhttp client is currently set");
         }
 
-        Completable.fromAction(() -> {
+        PlatformConfig persisted = readPlatformConfig();
+        if (persisted != null) {
+            platformConfig = persisted;
+            platformConfigKnown = true;
+        }
+
+        FPLog.d("platformConfiguration: " + platformConfig + (persisted != null ? ", persisted" : ", defaults"));
+
+        Completable refresh = Completable.fromAction(() -> {
             try {
                 retrofit2.Response<JsonElement> response = client.getPlatformConfig().execute();
 
                 if (response.isSuccessful() && response.errorBody() == null) {
                     JsonObject body = response.body().getAsJsonObject();
                     if (body.has("android")) {
-                        platformConfig = Constants.getGson().fromJson(body.getAsJsonObject("android"), PlatformConfig.class);
+                        updatePlatformConfig(body.getAsJsonObject("android"));
                     }
                 } else {
-                    FPLog.e("error getting platform configuration from platform, using defaults");
+                    FPLog.e("error getting platform configuration from platform, using " + platformConfig);
                 }
             } catch (Exception e) {
-                FPLog.e("error getting platform configuration from platform, using defaults", e);
+                FPLog.e("error getting platform configuration from platform, using " + platformConfig, e);
             }
-        }).subscribeOn(Schedulers.io()).blockingAwait();
 
-        FPLog.d("platformConfiguration: " + platformConfig);
+            platformConfigKnown = true;
+        }).subscribeOn(Schedulers.io()).cache();
+
+        refresh.subscribe();
+
+        return refresh;
+    }
+
+    private void updatePlatformConfig(JsonObject json) {
+        PlatformConfig config = Constants.getGson().fromJson(json, PlatformConfig.class);
+        if (config.equals(platformConfig)) {
+            return;
+        }
+
+        platformConfig = config;
+        FPLog.d("platformConfiguration changed: " + config);
+
+        writePlatformConfig(json.toString());
+        RxBus.getInstance().post(config);
+    }
+
+    private PlatformConfig readPlatformConfig() {
+        SharedPreferences preferences = getPlatformConfigPreferences();
+        String json = preferences != null ? preferences.getString(apiBaseUrl, null) : null;
+        if (json == null) {
+            return null;
+        }
+
+        try {
+            return Constants.getGson().fromJson(json, PlatformConfig.class);
+        } catch (Exception e) {
+            FPLog.e("can't read the persisted platform configuration", e);
+            return null;
+        }
+    }
+
+    private void writePlatformConfig(String json) {
+        SharedPreferences preferences = getPlatformConfigPreferences();
+        if (preferences != null) {
+            preferences.edit().putString(apiBaseUrl, json).apply();
+        }
+    }
+
+    private static SharedPreferences getPlatformConfigPreferences() {
+        Context context = FitpayConfig.appContext;
+        return context != null ? context.getSharedPreferences(PLATFORM_CONFIG_PREFS, Context.MODE_PRIVATE) : null;
     }
 
     public void updateToken(OAuthToken token) {
@@ -143,7 +212,21 @@ final public class FitPayService extends GenericClient<FitPayClient> {
         return mAuthToken != null;
     }
 
+    /**
+     * @return last known platform config, defaults before the first answer of the platform
+     */
     public PlatformConfig getPlatformConfig() {
         return platformConfig;
     }
+
+    /**
+     * @return platform config, once persisted or received from the platform
+     */
+    public Single<PlatformConfig> getKnownPlatformConfig() {
+        if (platformConfigKnown) {
+            return Single.just(platformConfig);
+        }
+
+        return platformConfigRefresh.andThen(Single.fromCallable(() -> platformConfig));
+    }
 }
@@ -18,7 +18,7 @@ import okhttp3.Response;
 public class FitpayHealth {
     public static void getApiStatus(ApiCallbackExt<ApiStatus> callback) {
         final Gson gson = new Gson();
-        OkHttpClient client = new OkHttpClient();
+        OkHttpClient client = BaseClient.getSharedClient();
 
         Request request = new Request.Builder()
                 .url(FitpayConfig.apiURL + "/health")
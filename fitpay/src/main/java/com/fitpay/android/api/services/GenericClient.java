@@ -4,6 +4,7 @@ import com.fitpay.android.BuildConfig;
 import com.fitpay.android.utils.Constants;
 
 import java.lang.reflect.ParameterizedType;
+import java.util.concurrent.Executor;
 
 import okhttp3.Interceptor;
 import okhttp3.OkHttpClient;
@@ -22,6 +23,10 @@ public abstract class GenericClient<T> extends BaseClient {
 
     protected T client;
 
+    // same client, its callbacks run on the network thread
+    private T networkThreadClient;
+    private Executor callbackExecutor;
+
     public GenericClient(String baseUrl) {
         OkHttpClient.Builder clientBuilder = getOkHttpClient();
         Interceptor interceptor = getInterceptor();
@@ -45,15 +50,42 @@ public abstract class GenericClient<T> extends BaseClient {
                 .getGenericSuperclass())
                 .getActualTypeArguments()[0];
 
+        Retrofit retrofit = getRetrofitBuilder(apiBaseUrl, okHttpClient).build();
+
+        callbackExecutor = retrofit.callbackExecutor();
+        networkThreadClient = getRetrofitBuilder(apiBaseUrl, okHttpClient)
+                .callbackExecutor(Runnable::run)
+                .build()
+                .create(t);
+
+        return retrofit.create(t);
+    }
+
+    private static Retrofit.Builder getRetrofitBuilder(String apiBaseUrl, OkHttpClient okHttpClient) {
         return new Retrofit.Builder()
                 .baseUrl(apiBaseUrl)
                 .addConverterFactory(GsonConverterFactory.create(Constants.getGson()))
-                .client(okHttpClient)
-                .build()
-                .create(t);
+                .client(okHttpClient);
     }
 
     public T getClient() {
         return client;
     }
+
+    /**
+     * Client for calls that process their response before handing it over, e.g. parse a large body.
+     * Its callbacks run on the network thread, pass the result on with {@link #getCallbackExecutor()}.
+     *
+     * @return client with callbacks on the network thread
+     */
+    public T getNetworkThreadClient() {
+        return networkThreadClient;
+    }
+
+    /**
+     * @return executor of the {@link #getClient()} callbacks, the main thread on Android, null to call back directly
+     */
+    public Executor getCallbackExecutor() {
+        return callbackExecutor;
+    }
 }
\ No newline at end of file
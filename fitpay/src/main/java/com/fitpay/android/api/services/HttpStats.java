@@ -0,0 +1,123 @@
+package com.fitpay.android.api.services;
+
+import java.io.IOException;
+
+import okhttp3.Cache;
+import okhttp3.OkHttpClient;
+
+/**
+ * Snapshot of the connection pool, dispatcher and cache of the shared http client.
+ * Use it to check that connections are reused, e.g. a growing connection count with few idle
+ * connections means the TLS handshakes aren't saved.
+ */
+public final class HttpStats {
+
+    private final int connectionCount;
+    private final int idleConnectionCount;
+    private final int runningCallsCount;
+    private final int queuedCallsCount;
+
+    private final int cacheRequestCount;
+    private final int cacheNetworkCount;
+    private final int cacheHitCount;
+    private final long cacheSize;
+    private final long cacheMaxSize;
+
+    HttpStats(OkHttpClient client) {
+        connectionCount = client.connectionPool().connectionCount();
+        idleConnectionCount = client.connectionPool().idleConnectionCount();
+        runningCallsCount = client.dispatcher().runningCallsCount();
+        queuedCallsCount = client.dispatcher().queuedCallsCount();
+
+        Cache cache = client.cache();
+        if (cache != null) {
+            cacheRequestCount = cache.requestCount();
+            cacheNetworkCount = cache.networkCount();
+            cacheHitCount = cache.hitCount();
+            cacheMaxSize = cache.maxSize();
+
+            long size;
+            try {
+                size = cache.size();
+            } catch (IOException e) {
+                size = -1;
+            }
+            cacheSize = size;
+        } else {
+            cacheRequestCount = 0;
+            cacheNetworkCount = 0;
+            cacheHitCount = 0;
+            cacheSize = 0;
+            cacheMaxSize = 0;
+        }
+    }
+
+    /**
+     * @return number of open connections, idle and in use
+     */
+    public int getConnectionCount() {
+        return connectionCount;
+    }
+
+    public int getIdleConnectionCount() {
+        return idleConnectionCount;
+    }
+
+    public int getRunningCallsCount() {
+        return runningCallsCount;
+    }
+
+    public int getQueuedCallsCount() {
+        return queuedCallsCount;
+    }
+
+    /**
+     * @return number of requests passed through the cache
+     */
+    public int getCacheRequestCount() {
+        return cacheRequestCount;
+    }
+
+    /**
+     * @return number of requests that went to the network
+     */
+    public int getCacheNetworkCount() {
+        return cacheNetworkCount;
+    }
+
+    /**
+     * @return number of responses served or revalidated by the cache
+     */
+    public int getCacheHitCount() {
+        return cacheHitCount;
+    }
+
+    /**
+     * @return bytes used by the cache, -1 if unknown
+     */
+    public long getCacheSize() {
+        return cacheSize;
+    }
+
+    /**
+     * @return cache capacity in bytes, 0 if the cache is disabled
+     */
+    public long getCacheMaxSize() {
+        return cacheMaxSize;
+    }
+
+    @Override
+    public String toString() {
+        return "HttpStats{" +
+                "connectionCount=" + connectionCount +
+                ", idleConnectionCount=" + idleConnectionCount +
+                ", runningCallsCount=" + runningCallsCount +
+                ", queuedCallsCount=" + queuedCallsCount +
+                ", cacheRequestCount=" + cacheRequestCount +
+                ", cacheNetworkCount=" + cacheNetworkCount +
+                ", cacheHitCount=" + cacheHitCount +
+                ", cacheSize=" + cacheSize +
+                ", cacheMaxSize=" + cacheMaxSize +
+                '}';
+    }
+}
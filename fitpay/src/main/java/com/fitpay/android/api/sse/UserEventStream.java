@@ -140,7 +140,7 @@ public class UserEventStream {
 
                     Request request = new Request.Builder().url(eventStreamUrl.getHref()).build();
                     OkSse okSse = new OkSse(BaseClient
-                            .getOkHttpClient(false) // don't enable logging, that interceptor doesn't work with SSE streams
+                            .getStreamOkHttpClient()
                             .readTimeout(0, TimeUnit.MILLISECONDS)
                             .retryOnConnectionFailure(true)
                             .build());
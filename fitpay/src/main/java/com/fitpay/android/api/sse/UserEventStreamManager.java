@@ -4,22 +4,41 @@ import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
 import com.fitpay.android.api.ApiManager;
+import com.fitpay.android.api.models.PlatformConfig;
 import com.fitpay.android.utils.FPLog;
+import com.fitpay.android.utils.RxBus;
 
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import io.reactivex.disposables.Disposable;
+import io.reactivex.observers.DisposableSingleObserver;
+import io.reactivex.schedulers.Schedulers;
 
 /**
  * This class manages the subscribing and unsubscribing from the user event stream of the FitPay platform.  The subscription
  * is encapsulated in a {@link UserEventStream}.
+ * <p>
+ * Streams follow the platform config: they're closed when the platform turns them off and opened again
+ * for the subscribed users when it turns them on.
  */
 public class UserEventStreamManager {
     private final static String TAG = UserEventStreamManager.class.getName();
 
     private static ConcurrentHashMap<String, UserEventStream> streams = new ConcurrentHashMap<>();
 
+    // users subscribed and not unsubscribed yet, with or without an open stream
+    private static final Set<String> users = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    // subscriptions waiting for the first platform config
+    private static final ConcurrentHashMap<String, Disposable> pending = new ConcurrentHashMap<>();
+
+    private static final AtomicBoolean listening = new AtomicBoolean();
+
     public static boolean isSubscribed(String userId) {
         UserEventStream stream = streams.get(userId);
 
@@ -35,27 +54,11 @@ public class UserEventStreamManager {
      * method returns a Future for that subscription task.
      *
      * @param userId users Id
-     * @return null is possible if not supported
+     * @return future of the stream, its result is null until the stream is opened or if not supported
      */
     @Deprecated
     public static Future<UserEventStream> subscribe(final String userId) {
-        // if at the platform level SSE subscriptions are turned off, then this method will simply
-        // return null
-        if (!ApiManager.getInstance().getPlatformConfig().isUserEventStreamsEnabled()) {
-            FPLog.i(TAG, "userEventStreamsEnabled has been disabled at the platform level, skipping user event stream subscription");
-            return null;
-        }
-
-        final AtomicReference<UserEventStream> ref = new AtomicReference<>(streams.get(userId));
-
-        // why this background execution, well android.. we don't want these network calls to
-        // occur on the UI thread, therefore they're backgrounded.
-        if (ref.get() == null) {
-            UserEventStream stream = new UserEventStream(userId);
-            stream.subscribe();
-            ref.set(stream);
-            streams.put(userId, stream);
-        }
+        subscribeUser(userId);
 
         return new Future<UserEventStream>() {
             @Override
@@ -75,12 +78,12 @@ public class UserEventStreamManager {
 
             @Override
             public UserEventStream get() {
-                return ref.get();
+                return streams.get(userId);
             }
 
             @Override
             public UserEventStream get(long timeout, @NonNull TimeUnit unit) {
-                return ref.get();
+                return streams.get(userId);
             }
         };
     }
@@ -106,17 +109,36 @@ public class UserEventStreamManager {
      * @param userId users Id
      */
     public static void subscribeUser(final String userId) {
-        if (!ApiManager.getInstance().getPlatformConfig().isUserEventStreamsEnabled()) {
-            FPLog.i(TAG, "userEventStreamsEnabled has been disabled at the platform level, skipping user event stream subscription");
-            return;
-        }
+        users.add(userId);
+        listenForPlatformConfig();
 
-        UserEventStream stream = streams.get(userId);
-        if (stream == null) {
-            stream = new UserEventStream(userId);
-            stream.subscribe();
-            streams.put(userId, stream);
+        // waits for the platform config only on the first start, before any config was received
+        DisposableSingleObserver<PlatformConfig> subscription = new DisposableSingleObserver<PlatformConfig>() {
+            @Override
+            public void onSuccess(PlatformConfig config) {
+                pending.remove(userId, this);
+
+                if (!config.isUserEventStreamsEnabled()) {
+                    FPLog.i(TAG, "userEventStreamsEnabled has been disabled at the platform level, skipping user event stream subscription");
+                    return;
+                }
+
+                openStream(userId);
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                pending.remove(userId, this);
+                FPLog.e(TAG, throwable);
+            }
+        };
+
+        Disposable previous = pending.put(userId, subscription);
+        if (previous != null) {
+            previous.dispose();
         }
+
+        ApiManager.getInstance().getKnownPlatformConfig().subscribe(subscription);
     }
 
     /**
@@ -125,11 +147,14 @@ public class UserEventStreamManager {
      * @param userId users Id
      */
     public static void unsubscribeUser(final String userId) {
-        UserEventStream stream = streams.remove(userId);
+        users.remove(userId);
 
-        if (stream != null) {
-            stream.unsubscribe();
+        Disposable subscription = pending.remove(userId);
+        if (subscription != null) {
+            subscription.dispose();
         }
+
+        closeStream(userId);
     }
 
     /**
@@ -142,4 +167,47 @@ public class UserEventStreamManager {
     public static UserEventStream getUserEventStream(final String userId){
         return streams.get(userId);
     }
+
+    private static void openStream(String userId) {
+        // unsubscribed or turned off while the platform config was on its way
+        if (!users.contains(userId) || streams.containsKey(userId)
+                || !ApiManager.getInstance().getPlatformConfig().isUserEventStreamsEnabled()) {
+            return;
+        }
+
+        UserEventStream stream = new UserEventStream(userId);
+        if (streams.putIfAbsent(userId, stream) == null) {
+            stream.subscribe();
+        }
+    }
+
+    private static void closeStream(String userId) {
+        UserEventStream stream = streams.remove(userId);
+
+        if (stream != null) {
+            stream.unsubscribe();
+        }
+    }
+
+    /**
+     * Follows the platform config posted by the API manager when it changes
+     */
+    private static void listenForPlatformConfig() {
+        if (!listening.compareAndSet(false, true)) {
+            return;
+        }
+
+        RxBus.getInstance().register(PlatformConfig.class, Schedulers.io(), config -> {
+            if (config.isUserEventStreamsEnabled()) {
+                for (String userId : users) {
+                    openStream(userId);
+                }
+            } else {
+                FPLog.i(TAG, "userEventStreamsEnabled has been disabled at the platform level, closing user event streams");
+                for (Map.Entry<String, UserEventStream> entry : streams.entrySet()) {
+                    closeStream(entry.getKey());
+                }
+            }
+        });
+    }
 }
@@ -4,6 +4,7 @@ import android.content.Context;
 import androidx.annotation.NonNull;
 
 import com.fitpay.android.api.ApiManager;
+import com.fitpay.android.api.services.BaseClient;
 import com.fitpay.android.utils.Constants;
 import com.fitpay.android.utils.FPLog;
 
@@ -98,6 +99,7 @@ public final class FitpayConfig {
         Web.automaticallySyncFromUserEventStream = configModel.getWebConfig().automaticallySyncFromUserEventStream;
 
         ApiManager.clean();
+        BaseClient.resetSharedClient();
     }
 
     /**
@@ -172,6 +174,53 @@ public final class FitpayConfig {
         public static boolean automaticallySyncFromUserEventStream;
     }
 
+    /**
+     * Http config. Settings of the connection pool, dispatcher and cache shared by all API calls.
+     * Applied when the shared client is created, call {@link BaseClient#resetSharedClient()} after a change
+     */
+    public static class Http {
+        /**
+         * Max number of idle connections kept for reuse
+         */
+        public static int maxIdleConnections = 5;
+
+        /**
+         * Time in seconds an idle connection is kept for reuse
+         */
+        public static long keepAliveDuration = 5 * 60;
+
+        /**
+         * Max number of calls executed at the same time
+         */
+        public static int maxRequests = 64;
+
+        /**
+         * Max number of calls to the same host executed at the same time. Event streams have a dispatcher
+         * of their own and don't count
+         */
+        public static int maxRequestsPerHost = 5;
+
+        /**
+         * Size of the http disk cache in bytes, 0 disables it.
+         * Read when the cache is opened with the first shared client, it's kept across resets
+         */
+        public static long cacheSize = 20 * 1024 * 1024;
+
+        /**
+         * Number of parsed GET results kept in memory and revalidated with ETag / Last-Modified
+         * instead of being downloaded again, 0 disables it. Read when the API manager is created.
+         * Revalidated results are shared between callers and must not be modified
+         */
+        public static int validationCacheSize = 0;
+
+        /**
+         * Concurrent GET calls for the same url, parameters, result type and user share one request and one parse.
+         * Read when the API manager is created. Every caller of a shared call receives the same model instance,
+         * which must not be modified
+         */
+        public static boolean collapseConcurrentReads = false;
+    }
+
     /**
      * User config. Configuration options related to the user
      */
@@ -6,11 +6,11 @@ import com.fitpay.android.paymentdevice.callbacks.DeviceSyncManagerCallback;
 import com.fitpay.android.paymentdevice.models.SyncInfo;
 import com.fitpay.android.paymentdevice.models.SyncRequest;
 import com.fitpay.android.paymentdevice.utils.sync.SyncThreadExecutor;
+import com.fitpay.android.utils.DedupeCache;
 import com.fitpay.android.utils.FPLog;
 import com.fitpay.android.utils.Listener;
 import com.fitpay.android.utils.NotificationManager;
 
-import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
@@ -30,10 +30,12 @@ public class DeviceSyncManager {
 
     private int queueSize;
     private int threadsCount;
+    private boolean coalesceRequests;
+    private boolean preemptiveSyncs = true;
 
     private SyncThreadExecutor worker;
 
-    private List<String> dedupeSyncIds = new ArrayList<>(DEDUPE_LIMIT);
+    private final DedupeCache<String> dedupeSyncIds = new DedupeCache<>(DEDUPE_LIMIT);
 
     private MessageListener mSyncListener;
 
@@ -81,9 +83,72 @@ public class DeviceSyncManager {
             NotificationManager.getInstance().addListenerToCurrentThread(mSyncListener);
 
             worker = new SyncThreadExecutor(FitpayConfig.appContext, syncManagerCallbacks, queueSize, threadsCount, 5, TimeUnit.MINUTES, requests);
+            worker.setCoalescing(coalesceRequests);
+            worker.setPreemptive(preemptiveSyncs);
         }
     }
 
+    /**
+     * Coalesce sync requests.
+     * When enabled, any number of requests for a device arriving while a sync of that device is running
+     * collapse into a single sync after the current one, if they use the same connector, commit pointer
+     * and pipelined mode. Every coalesced syncId is acknowledged, started and completed by that sync.
+     *
+     * @param coalesceRequests true/false
+     */
+    public void setCoalesceRequests(boolean coalesceRequests) {
+        this.coalesceRequests = coalesceRequests;
+
+        if (worker != null) {
+            worker.setCoalescing(coalesceRequests);
+        }
+    }
+
+    public boolean isCoalesceRequests() {
+        return coalesceRequests;
+    }
+
+    /**
+     * Preemptive syncs.
+     * When enabled, a running sync stops at the next commit boundary if a sync with a higher
+     * {@link com.fitpay.android.api.enums.SyncPriority priority} is waiting, and continues after it.
+     * Enabled by default.
+     *
+     * @param preemptiveSyncs true/false
+     */
+    public void setPreemptiveSyncs(boolean preemptiveSyncs) {
+        this.preemptiveSyncs = preemptiveSyncs;
+
+        if (worker != null) {
+            worker.setPreemptive(preemptiveSyncs);
+        }
+    }
+
+    public boolean isPreemptiveSyncs() {
+        return preemptiveSyncs;
+    }
+
+    /**
+     * Configure the window used to dedupe syncIds arriving through multiple channels
+     *
+     * @param maxSize    max number of remembered syncIds
+     * @param timeToLive time after which a syncId is forgotten, 0 to keep it until it's evicted
+     * @param unit       time unit of timeToLive
+     */
+    public void setDedupeWindow(int maxSize, long timeToLive, TimeUnit unit) {
+        dedupeSyncIds.setMaxSize(maxSize);
+        dedupeSyncIds.setTimeToLive(timeToLive, unit);
+    }
+
+    /**
+     * Get syncId dedupe cache. Can be used to read hit and eviction metrics
+     *
+     * @return dedupe cache
+     */
+    public DedupeCache<String> getDedupeCache() {
+        return dedupeSyncIds;
+    }
+
     /**
      * Unsubscribe from sync request events.
      * Stop sync worker.
@@ -117,18 +182,9 @@ public class DeviceSyncManager {
         }
 
         // if we have a syncId, dedupe it to avoid re-running syncs arriving through multiple channels
-        if (request.getSyncId() != null) {
-            if (dedupeSyncIds.contains(request.getSyncId())) {
-                FPLog.i("duplicated sync received, skipping: " + request);
-                return;
-            }
-
-            dedupeSyncIds.add(request.getSyncId());
-
-            // ensure the dedupe size remains consistent and doesn't grow unbounded
-            while (dedupeSyncIds.size() > DEDUPE_LIMIT) {
-                dedupeSyncIds.remove(0);
-            }
+        if (request.getSyncId() != null && !dedupeSyncIds.add(request.getSyncId())) {
+            FPLog.i("duplicated sync received, skipping: " + request);
+            return;
         }
 
         SyncInfo syncInfo = request.getSyncInfo();
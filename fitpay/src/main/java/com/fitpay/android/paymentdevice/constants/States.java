@@ -28,6 +28,10 @@ public final class States {
     public static final int COMPLETED_NO_UPDATES = 6;
     public static final int SKIPPED = 7;
     public static final int TIMEOUT = 8;
+    /**
+     * A sync that has yielded to a sync of a higher priority continues, it's not a new sync
+     */
+    public static final int RESUMED = 9;
 
     public static String toSyncString(int state) {
         switch (state) {
@@ -49,6 +53,8 @@ public final class States {
                 return "SKIPPED";
             case TIMEOUT:
                 return "TIMEOUT";
+            case RESUMED:
+                return "RESUMED";
             default:
                 return String.valueOf(state);
         }
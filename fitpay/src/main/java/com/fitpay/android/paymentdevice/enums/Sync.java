@@ -23,7 +23,8 @@ public final class Sync {
             States.TIMEOUT,
             States.INC_PROGRESS,
             States.COMMIT_COMPLETED,
-            States.COMPLETED_NO_UPDATES
+            States.COMPLETED_NO_UPDATES,
+            States.RESUMED
     })
     public @interface State {
     }
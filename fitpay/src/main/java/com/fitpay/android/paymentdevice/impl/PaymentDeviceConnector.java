@@ -20,9 +20,11 @@ import com.fitpay.android.paymentdevice.callbacks.ApduExecutionListener;
 import com.fitpay.android.paymentdevice.constants.States;
 import com.fitpay.android.paymentdevice.enums.CommitResult;
 import com.fitpay.android.paymentdevice.enums.Connection;
+import com.fitpay.android.paymentdevice.enums.Sync;
 import com.fitpay.android.paymentdevice.events.CommitFailed;
 import com.fitpay.android.paymentdevice.events.CommitSkipped;
 import com.fitpay.android.paymentdevice.events.CommitSuccess;
+import com.fitpay.android.paymentdevice.interfaces.ISecureMessage;
 import com.fitpay.android.paymentdevice.interfaces.PaymentDeviceConnectable;
 import com.fitpay.android.paymentdevice.models.SyncInfo;
 import com.fitpay.android.paymentdevice.models.SyncRequest;
@@ -82,6 +84,13 @@ public abstract class PaymentDeviceConnector implements PaymentDeviceConnectable
 
     private Properties properties;
 
+    static {
+        // late subscribers such as WebView bridges and UI screens get the current state without polling the device
+        RxBus.getInstance().addStickyType(Connection.class);
+        RxBus.getInstance().addStickyType(ISecureMessage.class);
+        RxBus.getInstance().addStickyType(Sync.class);
+    }
+
     public PaymentDeviceConnector(@NonNull Context context) {
         this(context, UUID.randomUUID().toString());
     }
@@ -278,6 +287,24 @@ public abstract class PaymentDeviceConnector implements PaymentDeviceConnectable
                 .send();
     }
 
+    /**
+     * Latest sticky data posted for current {@link #id()}: connection state, security state or sync event
+     *
+     * @param type sticky type, e.g. {@link Connection}, {@link ISecureMessage} or {@link Sync}
+     * @return latest data or null if nothing has been posted yet
+     */
+    @Nullable
+    public <T> T getStickyData(@NonNull Class<T> type) {
+        return RxBus.getInstance().getStickyEvent(type, connectorId);
+    }
+
+    /**
+     * Forget the sticky data posted for current {@link #id()}, call it when the connector is not used anymore
+     */
+    public void clearStickyData() {
+        RxBus.getInstance().removeStickyEvents(connectorId);
+    }
+
     /**
      * Post data for everyone who is listening for current {@link #id()}
      *
@@ -31,7 +31,9 @@ class ContinuationPayload {
             FPLog.w("received duplicate continuation packet #" + message.getSortOrder());
         }
 
-        FPLog.d("received packet #" + message.getSortOrder() + ": [" + Hex.bytesToHexString(message.getData()) + "]");
+        if (FPLog.isLoggable(FPLog.DEBUG)) {
+            FPLog.d("received packet #" + message.getSortOrder() + ": [" + Hex.bytesToHexString(message.getData()) + "]");
+        }
         data.put(message.getSortOrder(), message.getData());
     }
 
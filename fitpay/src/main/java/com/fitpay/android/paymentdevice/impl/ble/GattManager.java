@@ -23,8 +23,8 @@ import com.fitpay.android.paymentdevice.interfaces.ISecureMessage;
 import com.fitpay.android.paymentdevice.interfaces.PaymentDeviceConnectable;
 import com.fitpay.android.paymentdevice.utils.Crc32;
 import com.fitpay.android.utils.FPLog;
-import com.fitpay.android.utils.Hex;
 import com.fitpay.android.utils.RxBus;
+import com.fitpay.android.utils.TimerService;
 
 import java.io.IOException;
 import java.util.UUID;
@@ -32,8 +32,6 @@ import java.util.concurrent.TimeUnit;
 
 import io.reactivex.Completable;
 import io.reactivex.CompletableEmitter;
-import io.reactivex.Single;
-import io.reactivex.disposables.Disposable;
 
 /**
  * Manager that works with Bluetooth GATT Profile.
@@ -54,7 +52,7 @@ final class GattManager {
     private ContinuationPayload mContinuationPayload = null;
     private int mLastApduSequenceId;
 
-    private Disposable mCurrentOperationTimeout;
+    private TimerService.Timeout mCurrentOperationTimeout;
 
     public GattManager(PaymentDeviceConnectable paymentDeviceConnector, Context context, BluetoothDevice device) {
         this.paymentDeviceConnector = paymentDeviceConnector;
@@ -68,9 +66,7 @@ final class GattManager {
     }
 
     public synchronized void disconnect() {
-        if (mCurrentOperationTimeout != null) {
-            mCurrentOperationTimeout.dispose();
-        }
+        cancelTimer();
 
         setCurrentOperation(null);
 
@@ -112,9 +108,7 @@ final class GattManager {
         if (mQueue.size() == 0) {
             FPLog.i(TAG, "Queue empty, drive loop stopped.");
             mCurrentOperation = null;
-            if (mCurrentOperationTimeout != null) {
-                mCurrentOperationTimeout.dispose();
-            }
+            cancelTimer();
             return;
         }
 
@@ -197,7 +191,7 @@ final class GattManager {
                 public void onCharacteristicWrite(BluetoothGatt gatt, BluetoothGattCharacteristic characteristic, int status) {
                     super.onCharacteristicWrite(gatt, characteristic, status);
 
-                    FPLog.d(TAG, "Characteristic " + characteristic.getUuid() + "written to on device " + mDevice.getAddress());
+                    FPLog.d(TAG, "Characteristic {} written to on device {}", characteristic.getUuid(), mDevice.getAddress());
 
                     driveNext();
                 }
@@ -209,7 +203,7 @@ final class GattManager {
                     UUID uuid = characteristic.getUuid();
                     byte[] value = characteristic.getValue();
 
-                    FPLog.d(TAG, "Characteristic changed: " + uuid);
+                    FPLog.d(TAG, "Characteristic changed: {}", uuid);
 
                     if (PaymentServiceConstants.CHARACTERISTIC_SECURITY_STATE.equals(uuid)) {
                         ISecureMessage securityStateMessage = new SecurityStateMessage().withData(value);
@@ -231,9 +225,9 @@ final class GattManager {
                             processError(ApduExecutionError.WRONG_SEQUENCE);
                         }
                     } else if (PaymentServiceConstants.CHARACTERISTIC_CONTINUATION_CONTROL.equals(uuid)) {
-                        FPLog.d(TAG, "continuation control write received [" + Hex.bytesToHexString(value) + "], length [" + value.length + "]");
+                        FPLog.d(TAG, "continuation control write received [{}], length [{}]", value, value.length);
                         ContinuationControlMessage continuationControlMessage = ContinuationControlMessageFactory.withMessage(value);
-                        FPLog.d(TAG, "continuation control message: " + continuationControlMessage);
+                        FPLog.d(TAG, "continuation control message: {}", continuationControlMessage);
 
                         // start continuation packet
                         if (continuationControlMessage instanceof ContinuationControlBeginMessage) {
@@ -245,14 +239,14 @@ final class GattManager {
 
                             FPLog.d(TAG, "continuation start control received, ready to receive continuation data");
                         } else if (continuationControlMessage instanceof ContinuationControlEndMessage) {
-                            FPLog.d(TAG, "continuation control end received.  process update to characteristic: " + mContinuationPayload.getTargetUuid());
+                            FPLog.d(TAG, "continuation control end received.  process update to characteristic: {}", mContinuationPayload.getTargetUuid());
 
                             UUID targetUuid = mContinuationPayload.getTargetUuid();
                             byte[] payloadValue;
                             try {
                                 payloadValue = mContinuationPayload.getValue();
                                 mContinuationPayload = null;
-                                FPLog.d(TAG, "complete continuation data [" + Hex.bytesToHexString(payloadValue) + "]");
+                                FPLog.d(TAG, "complete continuation data [{}]", payloadValue);
                             } catch (IOException e) {
                                 FPLog.e(TAG, "error parsing continuation data" + e.getMessage());
                                 processError(ApduExecutionError.CONTINUATION_ERROR);
@@ -287,9 +281,9 @@ final class GattManager {
                         }
                     } else if (PaymentServiceConstants.CHARACTERISTIC_CONTINUATION_PACKET.equals(uuid)) {
 
-                        FPLog.d(TAG, "continuation data packet received [" + Hex.bytesToHexString(value) + "]");
+                        FPLog.d(TAG, "continuation data packet received [{}]", value);
                         ContinuationPacketMessage continuationPacketMessage = new ContinuationPacketMessage().withMessage(value);
-                        FPLog.d(TAG, "parsed continuation packet message: " + continuationPacketMessage);
+                        FPLog.d(TAG, "parsed continuation packet message: {}", continuationPacketMessage);
 
                         if (mContinuationPayload == null) {
                             FPLog.e(TAG, "invalid continuation, no start received on control characteristic");
@@ -369,15 +363,18 @@ final class GattManager {
     }
 
     private void resetTimer(final long timeout) {
-        if (mCurrentOperationTimeout != null) {
-            mCurrentOperationTimeout.dispose();
+        cancelTimer();
+
+        mCurrentOperationTimeout = TimerService.getInstance().schedule(() -> {
+            FPLog.i(TAG, "Timeout ran to completion, time to cancel the entire operation bundle. Abort, abort!");
+            cancelCurrentOperationBundle();
+        }, timeout, TimeUnit.MILLISECONDS);
+    }
+
+    private void cancelTimer() {
+        if (mCurrentOperationTimeout != null && mCurrentOperationTimeout.cancel()) {
+            FPLog.i(TAG, "The timeout was cancelled, so we do nothing.");
         }
-        mCurrentOperationTimeout = Single.timer(timeout, TimeUnit.MILLISECONDS)
-                .doOnDispose(() -> FPLog.i(TAG, "The timeout was cancelled, so we do nothing."))
-                .subscribe(x -> {
-                    FPLog.i(TAG, "Timeout ran to completion, time to cancel the entire operation bundle. Abort, abort!");
-                    cancelCurrentOperationBundle();
-                });
     }
 
     @SuppressWarnings("CheckResult")
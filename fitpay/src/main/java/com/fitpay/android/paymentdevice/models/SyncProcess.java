@@ -3,10 +3,11 @@ package com.fitpay.android.paymentdevice.models;
 import com.fitpay.android.api.models.device.Commit;
 import com.fitpay.android.api.models.sync.MetricsData;
 import com.fitpay.android.api.models.sync.SyncMetricsData;
+import com.fitpay.android.paymentdevice.utils.sync.AdaptiveCommitTimeouts;
+import com.fitpay.android.paymentdevice.utils.sync.CommitSource;
 import com.fitpay.android.utils.FPLog;
 
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -19,8 +20,8 @@ public final class SyncProcess {
     private static final String TAG = SyncProcess.class.getSimpleName();
 
     private final SyncRequest request;
-    private List<Commit> commits;
-    private Set<String> processedCommitIds;
+    private CommitSource commitSource;
+    private final Set<String> processedCommitIds = new HashSet<>();
     private List<MetricsData> commitsData;
 
     private long syncStartTime;
@@ -37,54 +38,85 @@ public final class SyncProcess {
     }
 
     public void finish() {
-        if (commits != null) {
-            commits.clear();
+        if (commitSource != null) {
+            commitSource.close();
         }
 
-        if(processedCommitIds != null) {
-            processedCommitIds.clear();
+        processedCommitIds.clear();
+
+        final long totalProcessingTime = System.currentTimeMillis() - syncStartTime;
+
+        sendMetrics(request, totalProcessingTime);
+
+        // requests merged into this sync have been completed by it as well
+        for (SyncRequest coalescedRequest : request.getCoalescedRequests()) {
+            sendMetrics(coalescedRequest, totalProcessingTime);
         }
+    }
 
+    private void sendMetrics(SyncRequest syncRequest, long totalProcessingTime) {
         final SyncMetricsData smd = new SyncMetricsData.Builder()
-                .readDataFromRequest(request)
+                .readDataFromRequest(syncRequest)
                 .setMetricsData(commitsData)
-                .setTotalProcessingTime(System.currentTimeMillis() - syncStartTime)
+                .setTotalProcessingTime(totalProcessingTime)
                 .build();
 
-        smd.sendData(request);
+        smd.sendData(syncRequest);
     }
 
-    public void setCommits(List<Commit> commits) {
-        this.commits = commits == null ? Collections.emptyList() : commits;
-        commitsData = new ArrayList<>(this.commits.size());
-        processedCommitIds = new HashSet<>(this.commits.size());
+    public void setCommitSource(CommitSource commitSource) {
+        this.commitSource = commitSource;
+        commitsData = new ArrayList<>();
     }
 
-    public Commit startCommitProcessing() {
-        pendingCommit = commits.remove(0);
+    public CommitSource getCommitSource() {
+        return commitSource;
+    }
+
+    public void startCommitProcessing(Commit commit) {
+        pendingCommit = commit;
         pendingCommitMD = new MetricsData(pendingCommit.getCommitId());
-        return pendingCommit;
     }
 
     public void finishCommitProcessing() {
         finishCommitProcessing(null, null);
     }
 
+    /**
+     * Finish a commit the device has applied, its processing time feeds the adaptive commit timeouts
+     */
+    public void finishAppliedCommitProcessing() {
+        MetricsData commitMD = pendingCommitMD;
+        finishCommitProcessing(null, null);
+
+        // skipped and failed commits are answered right away, only applied ones tell how long the device takes.
+        // Timeouts are recorded by the commit timer
+        AdaptiveCommitTimeouts.getInstance().record(getDeviceId(), pendingCommit.getCommitType(), commitMD.getProcessingTimeMS());
+    }
+
     public void finishCommitProcessing(String error, String errorDescription) {
         pendingCommitMD.setEndTime();
         pendingCommitMD.setError(error);
         pendingCommitMD.setErrorDescription(errorDescription);
         commitsData.add(pendingCommitMD);
+
         pendingCommitMD = null;
         processedCommitIds.add(pendingCommit.getCommitId());
     }
 
+    private String getDeviceId() {
+        return request.getDevice() != null ? request.getDevice().getDeviceIdentifier() : null;
+    }
+
     public String getPendingCommitId() {
         return pendingCommit != null ? pendingCommit.getCommitId() : "";
     }
 
+    /**
+     * @return estimated number of commits waiting to be processed
+     */
     public int size() {
-        return commits.size();
+        return commitSource != null ? commitSource.getRemaining() : 0;
     }
 
     public boolean isCommitProcessed(String commitId){
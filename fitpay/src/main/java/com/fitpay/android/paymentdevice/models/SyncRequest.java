@@ -2,13 +2,18 @@ package com.fitpay.android.paymentdevice.models;
 
 import androidx.annotation.NonNull;
 
+import com.fitpay.android.api.enums.SyncInitiator;
+import com.fitpay.android.api.enums.SyncPriority;
 import com.fitpay.android.api.models.device.Device;
 import com.fitpay.android.api.models.user.User;
 import com.fitpay.android.paymentdevice.interfaces.PaymentDeviceConnectable;
 import com.fitpay.android.utils.RxBus;
 import com.fitpay.android.utils.StringUtils;
 
+import java.util.Collections;
+import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * Data for sync request
@@ -18,20 +23,27 @@ public final class SyncRequest {
     private final User user;
     private final Device device;
     private final boolean useLastAckCommit;
+    private final boolean pipelined;
+    private volatile int priority;
     private final PaymentDeviceConnectable connector;
     private final SyncInfo syncInfo;
+    private final List<SyncRequest> coalescedRequests = new CopyOnWriteArrayList<>();
 
     private SyncRequest(
             String syncId,
             User user,
             Device device,
             boolean useLastAckCommit,
+            boolean pipelined,
+            @SyncPriority.Priority int priority,
             PaymentDeviceConnectable connector,
             SyncInfo syncInfo) {
         this.syncId = !StringUtils.isEmpty(syncId) ? syncId : UUID.randomUUID().toString();
         this.user = user;
         this.device = device;
         this.useLastAckCommit = useLastAckCommit;
+        this.pipelined = pipelined;
+        this.priority = priority;
         this.connector = connector;
         this.syncInfo = syncInfo;
     }
@@ -56,10 +68,64 @@ public final class SyncRequest {
         return useLastAckCommit;
     }
 
+    /**
+     * Pipelined syncs confirm a commit and persist the commit pointer in the background
+     * while the next commit is already being executed on the device.
+     *
+     * @return true if pipelined mode is enabled
+     */
+    public boolean isPipelined() {
+        return pipelined;
+    }
+
+    /**
+     * Waiting syncs with a higher priority run first, a running sync yields to them at the next commit boundary
+     *
+     * @return sync priority
+     */
+    @SyncPriority.Priority
+    public int getPriority() {
+        return priority;
+    }
+
     public SyncInfo getSyncInfo() {
         return syncInfo;
     }
 
+    /**
+     * A request can only be served by the sync of another one that runs the same way
+     *
+     * @param request pending sync request for the same device
+     * @return true if both requests use the same connector, commit pointer and pipelined mode
+     */
+    public boolean canCoalesce(@NonNull SyncRequest request) {
+        return connector == request.getConnector()
+                && useLastAckCommit == request.useLastAckCommit()
+                && pipelined == request.isPipelined();
+    }
+
+    /**
+     * Merge another pending request for the same device into this one.
+     * The merged request will be completed by the sync of this request, which takes the higher priority of the two.
+     *
+     * @param request pending sync request
+     */
+    public void coalesce(@NonNull SyncRequest request) {
+        coalescedRequests.add(request);
+        coalescedRequests.addAll(request.getCoalescedRequests());
+
+        if (request.getPriority() > priority) {
+            priority = request.getPriority();
+        }
+    }
+
+    /**
+     * @return requests that have been merged into this one
+     */
+    public List<SyncRequest> getCoalescedRequests() {
+        return Collections.unmodifiableList(coalescedRequests);
+    }
+
     @Override
     public String toString() {
         return "SyncRequest{" +
@@ -67,8 +133,11 @@ public final class SyncRequest {
                 ", user=" + user +
                 ", device=" + device +
                 ", useLastAckCommit=" + useLastAckCommit +
+                ", pipelined=" + pipelined +
+                ", priority=" + priority +
                 ", connector=" + connector +
                 ", links=" + syncInfo +
+                ", coalesced=" + coalescedRequests.size() +
                 '}';
     }
 
@@ -85,6 +154,8 @@ public final class SyncRequest {
         private User user;
         private Device device;
         private boolean useLastAckCommit = true;
+        private boolean pipelined = false;
+        private Integer priority;
         private PaymentDeviceConnectable connector;
         private SyncInfo syncInfo;
 
@@ -132,6 +203,34 @@ public final class SyncRequest {
             return this;
         }
 
+        /**
+         * Use pipelined commit execution.
+         * Commit confirmation and commit pointer persistence of the previous commit will
+         * overlap with the execution of the next commit. Commits are still executed on the device
+         * in order and confirmed exactly once. The final sync state is posted once every commit pointer
+         * is stored and every confirmation is answered.
+         *
+         * @param pipelined true/false
+         * @return this
+         */
+        public Builder setPipelined(boolean pipelined) {
+            this.pipelined = pipelined;
+            return this;
+        }
+
+        /**
+         * Set sync priority.
+         * Default is {@link SyncPriority#INTERACTIVE} for syncs initiated by the web view and
+         * {@link SyncPriority#NORMAL} for all other syncs.
+         *
+         * @param priority sync priority
+         * @return this
+         */
+        public Builder setPriority(@SyncPriority.Priority int priority) {
+            this.priority = priority;
+            return this;
+        }
+
         /**
          * Set current connector {@link PaymentDeviceConnectable}
          *
@@ -160,7 +259,17 @@ public final class SyncRequest {
         }
 
         public SyncRequest build() {
-            return new SyncRequest(syncId, user, device, useLastAckCommit, connector, syncInfo);
+            int syncPriority;
+            if (priority != null) {
+                syncPriority = priority;
+            } else if (syncInfo != null && SyncInitiator.WEB_VIEW.equals(syncInfo.getInitiator())) {
+                // the user is waiting for the result in the web view
+                syncPriority = SyncPriority.INTERACTIVE;
+            } else {
+                syncPriority = SyncPriority.NORMAL;
+            }
+
+            return new SyncRequest(syncId, user, device, useLastAckCommit, pipelined, syncPriority, connector, syncInfo);
         }
     }
 }
@@ -4,20 +4,34 @@ import android.content.Context;
 import android.content.SharedPreferences;
 
 import com.fitpay.android.paymentdevice.interfaces.IRemoteCommitPtrHandler;
+import com.fitpay.android.utils.FPLog;
 import com.fitpay.android.utils.StringUtils;
 
+import java.io.IOException;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 
 import me.alexrs.prefs.lib.Prefs;
 
 /**
  * Created by tgs on 5/14/16.
+ * <p>
+ * Device data is kept in memory and persisted through {@link DeviceStateJournal}, stores are
+ * group committed with the stores of other devices. Shared preferences are used to migrate the data
+ * stored by previous versions and as a fallback if the journal is not available.
  */
 public class DevicePreferenceData {
 
-    private static final String[] KEY_VALUES = {"lastCommitId", "paymentDeviceServiceType", "paymentDeviceConfig"};
+    private static final String TAG = DevicePreferenceData.class.getSimpleName();
+
+    private static final String LAST_COMMIT_ID = "lastCommitId";
+    private static final String PAYMENT_DEVICE_SERVICE_TYPE = "paymentDeviceServiceType";
+    private static final String PAYMENT_DEVICE_CONFIG = "paymentDeviceConfig";
+
+    private static final Set<String> KEY_VALUES = new HashSet<>(Arrays.asList(LAST_COMMIT_ID, PAYMENT_DEVICE_SERVICE_TYPE, PAYMENT_DEVICE_CONFIG));
     private static IRemoteCommitPtrHandler remoteCommitPtrHandler;
 
     private String deviceIdentifier;
@@ -35,27 +49,43 @@ public class DevicePreferenceData {
     }
 
     public static DevicePreferenceData load(Context context, String deviceIdentifier) {
-        SharedPreferences prefs = getPreferences(context, deviceIdentifier);
+        DeviceStateJournal journal = DeviceStateJournal.getInstance(context);
+        Map<String, String> storedValues = journal != null && !journal.isFailed() && deviceIdentifier != null ? journal.get(deviceIdentifier) : null;
+
+        if (storedValues == null) {
+            storedValues = readPreferences(context, deviceIdentifier);
+        }
+
         Map<String, String> values = new HashMap<>();
-        for (String key : prefs.getAll().keySet()) {
-            if (!Arrays.asList(KEY_VALUES).contains(key)) {
-                values.put(key, prefs.getString(key, null));
+        for (Map.Entry<String, String> entry : storedValues.entrySet()) {
+            if (!KEY_VALUES.contains(entry.getKey())) {
+                values.put(entry.getKey(), entry.getValue());
             }
         }
 
         String lastCommitId = remoteCommitPtrHandler != null ?
-                remoteCommitPtrHandler.getLastCommitId(deviceIdentifier) : prefs.getString("lastCommitId", null);
+                remoteCommitPtrHandler.getLastCommitId(deviceIdentifier) : storedValues.get(LAST_COMMIT_ID);
 
         DevicePreferenceData data = new Builder()
                 .deviceIdentifier(deviceIdentifier)
                 .lastCommitId(lastCommitId)
-                .paymentDeviceServiceType(prefs.getString("paymentDeviceServiceType", null))
-                .paymentDeviceConfig(prefs.getString("paymentDeviceConfig", null))
+                .paymentDeviceServiceType(storedValues.get(PAYMENT_DEVICE_SERVICE_TYPE))
+                .paymentDeviceConfig(storedValues.get(PAYMENT_DEVICE_CONFIG))
                 .additionalValues(values)
                 .build();
         return data;
     }
 
+    private static Map<String, String> readPreferences(Context context, String deviceIdentifier) {
+        Map<String, String> values = new HashMap<>();
+        for (Map.Entry<String, ?> entry : getPreferences(context, deviceIdentifier).getAll().entrySet()) {
+            if (entry.getValue() instanceof String) {
+                values.put(entry.getKey(), (String) entry.getValue());
+            }
+        }
+        return values;
+    }
+
     /**
      * Remove current device prefs.
      * Call this method when watch app was deleted and you need to resync the data.
@@ -67,12 +97,34 @@ public class DevicePreferenceData {
         Prefs prefs = Prefs.with(context);
         String devId = prefs.getString(deviceId, null);
         if (!StringUtils.isEmpty(devId)) {
+            DeviceStateJournal journal = DeviceStateJournal.getInstance(context);
+            if (journal != null && !journal.isFailed()) {
+                try {
+                    journal.remove(devId);
+                } catch (IOException e) {
+                    FPLog.e(TAG, "can't remove device data from the journal: " + e.getMessage());
+                    moveToPreferences(context, journal);
+                }
+            }
+
             getPreferences(context, devId).edit().clear().apply();
             prefs.save(deviceId, "");
         }
     }
 
     public static void store(Context context, DevicePreferenceData data) {
+        store(context, data, false);
+    }
+
+    /**
+     * Store device data
+     *
+     * @param context  context
+     * @param data     device data
+     * @param deferred return after the memory write, the data is synced to disk shortly after.
+     *                 A crash may lose it, don't use it for data the platform is told about, e.g. the commit pointer
+     */
+    public static void store(Context context, DevicePreferenceData data, boolean deferred) {
         if (null == data.deviceIdentifier) {
             return;
         }
@@ -81,17 +133,70 @@ public class DevicePreferenceData {
             remoteCommitPtrHandler.setLastCommitId(data.deviceIdentifier, data.lastCommitId);
         }
 
-        SharedPreferences prefs = getPreferences(context, data.deviceIdentifier);
-        SharedPreferences.Editor editor = prefs.edit();
-        editor.putString("lastCommitId", data.lastCommitId);
-        editor.putString("paymentDeviceServiceType", data.paymentDeviceServiceType);
-        editor.putString("paymentDeviceConfig", data.paymentDeviceConfig);
+        Map<String, String> values = new HashMap<>();
         if (null != data.additionalValues) {
-            for (String key : data.additionalValues.keySet()) {
-                editor.putString(key, data.additionalValues.get(key));
+            values.putAll(data.additionalValues);
+        }
+        values.put(LAST_COMMIT_ID, data.lastCommitId);
+        values.put(PAYMENT_DEVICE_SERVICE_TYPE, data.paymentDeviceServiceType);
+        values.put(PAYMENT_DEVICE_CONFIG, data.paymentDeviceConfig);
+
+        DeviceStateJournal journal = DeviceStateJournal.getInstance(context);
+        if (journal != null && !journal.isFailed()) {
+            try {
+                if (deferred) {
+                    final Context appContext = context.getApplicationContext() != null ? context.getApplicationContext() : context;
+                    journal.putDeferred(data.deviceIdentifier, values, () -> {
+                        FPLog.e(TAG, "deferred device data journal flush failed, falling back to shared preferences");
+                        moveToPreferences(appContext, journal);
+                    });
+                } else {
+                    journal.put(data.deviceIdentifier, values);
+                }
+                return;
+            } catch (IOException e) {
+                FPLog.e(TAG, "device data journal write failed, falling back to shared preferences: " + e.getMessage());
+                moveToPreferences(context, journal);
+            }
+        }
+
+        writePreferences(context, data.deviceIdentifier, values);
+    }
+
+    /**
+     * Sync the deferred device data writes to disk
+     *
+     * @param context context
+     */
+    public static void flush(Context context) {
+        DeviceStateJournal journal = DeviceStateJournal.getInstance(context);
+        if (journal != null && !journal.isFailed()) {
+            try {
+                journal.flush();
+            } catch (IOException e) {
+                FPLog.e(TAG, "device data journal flush failed, falling back to shared preferences: " + e.getMessage());
+                moveToPreferences(context, journal);
             }
         }
-        boolean success = editor.commit();
+    }
+
+    /**
+     * The journal holds newer data than shared preferences, copy it over before the journal is dropped
+     */
+    private static void moveToPreferences(Context context, DeviceStateJournal journal) {
+        for (Map.Entry<String, Map<String, String>> entry : journal.getAll().entrySet()) {
+            writePreferences(context, entry.getKey(), entry.getValue());
+        }
+
+        journal.delete();
+    }
+
+    private static void writePreferences(Context context, String deviceIdentifier, Map<String, String> values) {
+        SharedPreferences.Editor editor = getPreferences(context, deviceIdentifier).edit();
+        for (Map.Entry<String, String> entry : values.entrySet()) {
+            editor.putString(entry.getKey(), entry.getValue());
+        }
+        editor.commit();
     }
 
     protected static SharedPreferences getPreferences(Context context, String deviceIdentifier) {
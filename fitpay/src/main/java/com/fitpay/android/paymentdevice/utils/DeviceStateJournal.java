@@ -0,0 +1,518 @@
+package com.fitpay.android.paymentdevice.utils;
+
+import android.content.Context;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.fitpay.android.utils.FPLog;
+import com.fitpay.android.utils.TimerService;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.CRC32;
+
+/**
+ * In-memory device state backed by an append-only journal file.
+ * <p>
+ * Every change is applied to memory and appended to the journal as a checksummed record. Writers
+ * that arrive while another writer is syncing the file are flushed together with a single fsync
+ * (group commit), so the cost of an fsync is shared by all concurrent updates. {@link #put} and
+ * {@link #remove} return only once their record is on disk, an acknowledged value is never lost.
+ * {@link #putDeferred} returns after the memory write, its record is synced by the next durable update
+ * or at the latest after {@link #FLUSH_DELAY_MS}, so frequent updates of a single writer share an fsync too.
+ * <p>
+ * A torn record at the end of the file, left by a crash in the middle of a write, is dropped on open.
+ * Once the journal holds too many records it's compacted into a snapshot of the current state.
+ */
+final class DeviceStateJournal {
+
+    private static final String TAG = DeviceStateJournal.class.getSimpleName();
+
+    private static final String FILE_NAME = "fitpay_device_state.journal";
+    private static final int DEFAULT_COMPACTION_THRESHOLD = 1000;
+
+    /**
+     * Max time a deferred update stays in memory only
+     */
+    static final long FLUSH_DELAY_MS = 200;
+
+    private static final byte OP_PUT = 1;
+    private static final byte OP_REMOVE = 2;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static DeviceStateJournal sInstance;
+
+    /**
+     * @param context context
+     * @return shared journal or null if it can't be opened, callers should fall back to shared preferences
+     */
+    @Nullable
+    static synchronized DeviceStateJournal getInstance(Context context) {
+        if (sInstance == null && context != null) {
+            Context appContext = context.getApplicationContext() != null ? context.getApplicationContext() : context;
+            File filesDir = appContext.getFilesDir();
+
+            if (filesDir == null) {
+                return null;
+            }
+
+            try {
+                sInstance = new DeviceStateJournal(new File(filesDir, FILE_NAME), DEFAULT_COMPACTION_THRESHOLD);
+            } catch (IOException e) {
+                FPLog.e(TAG, "device state journal is not available: " + e.getMessage());
+                return null;
+            }
+        }
+
+        return sInstance;
+    }
+
+    private final File file;
+    private final int compactionThreshold;
+
+    // guarded by stateLock
+    private final Object stateLock = new Object();
+    private final Map<String, Map<String, String>> state = new HashMap<>();
+    private List<byte[]> pendingRecords = new ArrayList<>();
+    private long appendedSeq;
+
+    // guarded by flushLock
+    private final Object flushLock = new Object();
+    private FileOutputStream out;
+    private int recordsInFile;
+    private long attemptedSeq;
+
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    private volatile Runnable flushFailureHandler;
+
+    private volatile long durableSeq;
+    private volatile boolean failed;
+    private volatile long syncCount;
+    private volatile long compactionCount;
+
+    /**
+     * Open the journal and replay its records
+     *
+     * @param file                journal file
+     * @param compactionThreshold number of records after which the journal is compacted
+     */
+    DeviceStateJournal(@NonNull File file, int compactionThreshold) throws IOException {
+        if (compactionThreshold <= 0) {
+            throw new IllegalArgumentException("compactionThreshold must be greater than 0: " + compactionThreshold);
+        }
+
+        this.file = file;
+        this.compactionThreshold = compactionThreshold;
+
+        replay();
+
+        out = new FileOutputStream(file, true);
+    }
+
+    /**
+     * @param deviceId device id
+     * @return copy of the device values or null if the device is unknown
+     */
+    @Nullable
+    Map<String, String> get(@NonNull String deviceId) {
+        synchronized (stateLock) {
+            Map<String, String> values = state.get(deviceId);
+            return values != null ? new HashMap<>(values) : null;
+        }
+    }
+
+    /**
+     * Replace the device values. Returns once the change is durable.
+     *
+     * @param deviceId device id
+     * @param values   device values, null values are skipped
+     */
+    void put(@NonNull String deviceId, @NonNull Map<String, String> values) throws IOException {
+        awaitDurable(putInMemory(deviceId, values));
+    }
+
+    /**
+     * Replace the device values without waiting for the disk. A crash may lose the updates of the
+     * last {@link #FLUSH_DELAY_MS}, use it for values that are safe to go back to.
+     *
+     * @param deviceId  device id
+     * @param values    device values, null values are skipped
+     * @param onFailure called on the timer thread if the scheduled flush fails, the journal can't be used anymore
+     *                  and its state has to be moved elsewhere. The handler of the latest update is used.
+     */
+    void putDeferred(@NonNull String deviceId, @NonNull Map<String, String> values, @NonNull Runnable onFailure) throws IOException {
+        if (failed) {
+            throw new IOException("device state journal write failed");
+        }
+
+        flushFailureHandler = onFailure;
+        putInMemory(deviceId, values);
+        scheduleFlush();
+    }
+
+    /**
+     * Sync every update made so far
+     */
+    void flush() throws IOException {
+        long seq;
+        synchronized (stateLock) {
+            seq = appendedSeq;
+        }
+
+        awaitDurable(seq);
+    }
+
+    private long putInMemory(String deviceId, Map<String, String> values) throws IOException {
+        Map<String, String> copy = new HashMap<>();
+        for (Map.Entry<String, String> entry : values.entrySet()) {
+            if (entry.getKey() != null && entry.getValue() != null) {
+                copy.put(entry.getKey(), entry.getValue());
+            }
+        }
+
+        byte[] record = encode(OP_PUT, deviceId, copy);
+
+        synchronized (stateLock) {
+            state.put(deviceId, copy);
+            return append(record);
+        }
+    }
+
+    private void scheduleFlush() {
+        if (!flushScheduled.compareAndSet(false, true)) {
+            return;
+        }
+
+        TimerService.getInstance().schedule(() -> {
+            flushScheduled.set(false);
+            try {
+                flush();
+            } catch (IOException e) {
+                FPLog.e(TAG, "deferred device state journal flush failed: " + e.getMessage());
+
+                Runnable handler = flushFailureHandler;
+                if (handler != null) {
+                    handler.run();
+                }
+            }
+        }, FLUSH_DELAY_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Forget the device. Returns once the change is durable.
+     *
+     * @param deviceId device id
+     */
+    void remove(@NonNull String deviceId) throws IOException {
+        byte[] record = encode(OP_REMOVE, deviceId, null);
+
+        long seq;
+        synchronized (stateLock) {
+            state.remove(deviceId);
+            seq = append(record);
+        }
+
+        awaitDurable(seq);
+    }
+
+    /**
+     * @return number of fsyncs, each of them covers one or more updates
+     */
+    long getSyncCount() {
+        return syncCount;
+    }
+
+    /**
+     * @return number of compactions
+     */
+    long getCompactionCount() {
+        return compactionCount;
+    }
+
+    /**
+     * @return copy of the state of all devices
+     */
+    Map<String, Map<String, String>> getAll() {
+        synchronized (stateLock) {
+            Map<String, Map<String, String>> snapshot = new HashMap<>();
+            for (Map.Entry<String, Map<String, String>> entry : state.entrySet()) {
+                snapshot.put(entry.getKey(), new HashMap<>(entry.getValue()));
+            }
+            return snapshot;
+        }
+    }
+
+    /**
+     * @return true if a write has failed and the journal can't be used anymore
+     */
+    boolean isFailed() {
+        return failed;
+    }
+
+    /**
+     * Close and delete the journal file, the in-memory state is kept
+     */
+    void delete() {
+        synchronized (flushLock) {
+            failed = true;
+            closeQuietly();
+
+            if (!file.delete()) {
+                FPLog.w(TAG, "can't delete device state journal " + file);
+            }
+        }
+    }
+
+    void close() {
+        synchronized (flushLock) {
+            failed = true;
+            closeQuietly();
+        }
+    }
+
+    private long append(byte[] record) {
+        pendingRecords.add(record);
+        return ++appendedSeq;
+    }
+
+    /**
+     * Group commit: the first writer to get the flush lock writes and syncs every pending record,
+     * writers waiting behind it usually find their record already durable.
+     */
+    private void awaitDurable(long seq) throws IOException {
+        synchronized (flushLock) {
+            if (durableSeq >= seq) {
+                return;
+            }
+
+            if (failed || attemptedSeq >= seq) {
+                throw new IOException("device state journal write failed");
+            }
+
+            List<byte[]> batch;
+            long batchSeq;
+
+            synchronized (stateLock) {
+                batch = pendingRecords;
+                batchSeq = appendedSeq;
+                pendingRecords = new ArrayList<>();
+            }
+
+            attemptedSeq = batchSeq;
+
+            try {
+                ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+                for (byte[] record : batch) {
+                    buffer.write(record);
+                }
+
+                out.write(buffer.toByteArray());
+                out.getFD().sync();
+            } catch (IOException e) {
+                FPLog.e(TAG, "device state journal write failed: " + e.getMessage());
+                failed = true;
+                closeQuietly();
+                throw e;
+            }
+
+            syncCount++;
+            recordsInFile += batch.size();
+            durableSeq = batchSeq;
+
+            if (recordsInFile >= compactionThreshold) {
+                compact();
+            }
+        }
+    }
+
+    /**
+     * Rewrite the journal as a snapshot of the current state. Records appended meanwhile are flushed
+     * to the new file later, replaying them on top of the snapshot is harmless.
+     */
+    private void compact() {
+        Map<String, Map<String, String>> snapshot = getAll();
+
+        File tmpFile = new File(file.getPath() + ".tmp");
+
+        try {
+            FileOutputStream tmpOut = new FileOutputStream(tmpFile);
+            try {
+                ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+                for (Map.Entry<String, Map<String, String>> entry : snapshot.entrySet()) {
+                    buffer.write(encode(OP_PUT, entry.getKey(), entry.getValue()));
+                }
+
+                tmpOut.write(buffer.toByteArray());
+                tmpOut.getFD().sync();
+            } finally {
+                tmpOut.close();
+            }
+
+            if (!tmpFile.renameTo(file)) {
+                throw new IOException("can't replace " + file);
+            }
+
+            closeQuietly();
+            out = new FileOutputStream(file, true);
+            recordsInFile = snapshot.size();
+            compactionCount++;
+        } catch (IOException e) {
+            // the old journal is still complete, try again after the next flush
+            FPLog.w(TAG, "device state journal compaction failed: " + e.getMessage());
+            tmpFile.delete();
+        }
+    }
+
+    private void replay() throws IOException {
+        if (!file.exists()) {
+            return;
+        }
+
+        long validLength = 0;
+        int records = 0;
+
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            while (true) {
+                int length;
+                try {
+                    length = in.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+
+                if (length <= 0 || length > file.length()) {
+                    break;
+                }
+
+                byte[] payload = new byte[length];
+                long checksum;
+                try {
+                    in.readFully(payload);
+                    checksum = in.readLong();
+                } catch (EOFException e) {
+                    break;
+                }
+
+                CRC32 crc = new CRC32();
+                crc.update(payload);
+                if (crc.getValue() != checksum) {
+                    break;
+                }
+
+                apply(payload);
+
+                validLength += 4 + length + 8;
+                records++;
+            }
+        } finally {
+            in.close();
+        }
+
+        if (validLength < file.length()) {
+            FPLog.w(TAG, "dropping " + (file.length() - validLength) + " bytes of an incomplete device state journal record");
+
+            RandomAccessFile raf = new RandomAccessFile(file, "rw");
+            try {
+                raf.setLength(validLength);
+                raf.getFD().sync();
+            } finally {
+                raf.close();
+            }
+        }
+
+        recordsInFile = records;
+    }
+
+    private void apply(byte[] payload) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+
+        byte op = in.readByte();
+        String deviceId = readString(in);
+
+        if (op == OP_REMOVE) {
+            state.remove(deviceId);
+            return;
+        }
+
+        int count = in.readInt();
+        Map<String, String> values = new HashMap<>();
+        for (int i = 0; i < count; i++) {
+            values.put(readString(in), readString(in));
+        }
+
+        state.put(deviceId, values);
+    }
+
+    /**
+     * Record layout: payload length, payload, crc32 of the payload
+     */
+    private static byte[] encode(byte op, String deviceId, Map<String, String> values) throws IOException {
+        ByteArrayOutputStream payloadBytes = new ByteArrayOutputStream();
+        DataOutputStream payload = new DataOutputStream(payloadBytes);
+
+        payload.writeByte(op);
+        writeString(payload, deviceId);
+
+        if (op == OP_PUT) {
+            payload.writeInt(values.size());
+            for (Map.Entry<String, String> entry : values.entrySet()) {
+                writeString(payload, entry.getKey());
+                writeString(payload, entry.getValue());
+            }
+        }
+
+        payload.flush();
+        byte[] data = payloadBytes.toByteArray();
+
+        CRC32 crc = new CRC32();
+        crc.update(data);
+
+        ByteArrayOutputStream recordBytes = new ByteArrayOutputStream(data.length + 12);
+        DataOutputStream record = new DataOutputStream(recordBytes);
+        record.writeInt(data.length);
+        record.write(data);
+        record.writeLong(crc.getValue());
+        record.flush();
+
+        return recordBytes.toByteArray();
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, UTF_8);
+    }
+
+    private void closeQuietly() {
+        try {
+            out.close();
+        } catch (IOException e) {
+            FPLog.w(TAG, "can't close device state journal: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,369 @@
+package com.fitpay.android.paymentdevice.utils.sync;
+
+import androidx.annotation.IntDef;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Commit timeouts derived from the observed commit latency.
+ * <p>
+ * Latency is tracked per commit type and per device and commit type, as an EWMA and a high percentile
+ * of the recent samples. The warning and error deadlines of a commit are derived from the most specific
+ * statistics with enough samples and clamped to floors and ceilings. Until then the connector defaults are used.
+ * <p>
+ * A commit that times out is recorded at the timeout it hit, its real latency is at least that long. Each consecutive
+ * timeout doubles the derived timeouts, so they grow back quickly when a device gets slower.
+ * <p>
+ * Off by default, turn it on with {@link #setEnabled(boolean)}.
+ */
+public final class AdaptiveCommitTimeouts {
+
+    public static final int SOURCE_DEFAULT = 0;
+    public static final int SOURCE_COMMIT_TYPE = 1;
+    public static final int SOURCE_DEVICE = 2;
+
+    @IntDef({SOURCE_DEFAULT, SOURCE_COMMIT_TYPE, SOURCE_DEVICE})
+    @Retention(RetentionPolicy.SOURCE)
+    public @interface Source {
+    }
+
+    public static final int DEFAULT_WARNING_FLOOR = 1000;
+    public static final int DEFAULT_WARNING_CEILING = 30000;
+    public static final int DEFAULT_ERROR_FLOOR = 5000;
+    public static final int DEFAULT_ERROR_CEILING = 120000;
+
+    static final int MIN_SAMPLES = 5;
+
+    private static final int WINDOW_SIZE = 64;
+    private static final int MAX_DEVICE_KEYS = 256;
+    private static final double EWMA_ALPHA = 0.2;
+    private static final double PERCENTILE = 0.95;
+
+    private static final double WARNING_PERCENTILE_FACTOR = 1.5;
+    private static final double WARNING_EWMA_FACTOR = 2;
+    private static final double ERROR_PERCENTILE_FACTOR = 4;
+    private static final double ERROR_EWMA_FACTOR = 6;
+    private static final int MAX_WIDENING_SHIFT = 10;
+
+    private static final AdaptiveCommitTimeouts sInstance = new AdaptiveCommitTimeouts();
+
+    public static AdaptiveCommitTimeouts getInstance() {
+        return sInstance;
+    }
+
+    private final Map<String, LatencyTracker> commitTypeStats = new HashMap<>();
+    private final Map<String, LatencyTracker> deviceStats = new LinkedHashMap<String, LatencyTracker>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, LatencyTracker> eldest) {
+            return size() > MAX_DEVICE_KEYS;
+        }
+    };
+
+    private volatile boolean enabled;
+
+    private int warningFloor = DEFAULT_WARNING_FLOOR;
+    private int warningCeiling = DEFAULT_WARNING_CEILING;
+    private int errorFloor = DEFAULT_ERROR_FLOOR;
+    private int errorCeiling = DEFAULT_ERROR_CEILING;
+
+    AdaptiveCommitTimeouts() {
+    }
+
+    /**
+     * Record the processing time of a successfully processed commit
+     *
+     * @param deviceId   device identifier
+     * @param commitType commit type
+     * @param latencyMs  processing time in milliseconds
+     */
+    public synchronized void record(@Nullable String deviceId, @Nullable String commitType, long latencyMs) {
+        if (commitType == null || latencyMs < 0) {
+            return;
+        }
+
+        tracker(commitTypeStats, commitType).add(latencyMs);
+
+        if (deviceId != null) {
+            tracker(deviceStats, deviceKey(deviceId, commitType)).add(latencyMs);
+        }
+    }
+
+    /**
+     * Record a commit that has not returned within its error timeout
+     *
+     * @param deviceId   device identifier
+     * @param commitType commit type
+     * @param timeoutMs  error timeout the commit hit, in milliseconds
+     */
+    public synchronized void recordTimeout(@Nullable String deviceId, @Nullable String commitType, long timeoutMs) {
+        if (commitType == null || timeoutMs < 0) {
+            return;
+        }
+
+        tracker(commitTypeStats, commitType).addTimeout(timeoutMs);
+
+        if (deviceId != null) {
+            tracker(deviceStats, deviceKey(deviceId, commitType)).addTimeout(timeoutMs);
+        }
+    }
+
+    /**
+     * Get the timeouts of a commit
+     *
+     * @param deviceId              device identifier
+     * @param commitType            commit type
+     * @param defaultWarningTimeout warning timeout used until enough samples have been recorded
+     * @param defaultErrorTimeout   error timeout used until enough samples have been recorded
+     * @return commit timeouts
+     */
+    @NonNull
+    public synchronized Budget getBudget(@Nullable String deviceId, @Nullable String commitType, int defaultWarningTimeout, int defaultErrorTimeout) {
+        Budget defaultBudget = new Budget(defaultWarningTimeout, defaultErrorTimeout, SOURCE_DEFAULT, 0);
+
+        if (!enabled || commitType == null) {
+            return defaultBudget;
+        }
+
+        LatencyTracker tracker = deviceId != null ? deviceStats.get(deviceKey(deviceId, commitType)) : null;
+        int source = SOURCE_DEVICE;
+
+        if (tracker == null || tracker.count < MIN_SAMPLES) {
+            tracker = commitTypeStats.get(commitType);
+            source = SOURCE_COMMIT_TYPE;
+        }
+
+        if (tracker == null || tracker.count < MIN_SAMPLES) {
+            return defaultBudget;
+        }
+
+        long percentile = tracker.percentile();
+        double ewma = tracker.ewma;
+        long widening = 1L << Math.min(tracker.consecutiveTimeouts, MAX_WIDENING_SHIFT);
+
+        int warning = clamp(Math.max(percentile * WARNING_PERCENTILE_FACTOR, ewma * WARNING_EWMA_FACTOR) * widening, warningFloor, warningCeiling);
+        int error = clamp(Math.max(percentile * ERROR_PERCENTILE_FACTOR, ewma * ERROR_EWMA_FACTOR) * widening, errorFloor, errorCeiling);
+
+        return new Budget(warning, Math.max(error, warning), source, tracker.count);
+    }
+
+    /**
+     * Latency statistics of a commit type, or of a commit type on a device if deviceId is set
+     *
+     * @param deviceId   device identifier, null for all devices
+     * @param commitType commit type
+     * @return statistics or null if nothing has been recorded yet
+     */
+    @Nullable
+    public synchronized LatencyStats getStats(@Nullable String deviceId, @NonNull String commitType) {
+        LatencyTracker tracker = deviceId != null ? deviceStats.get(deviceKey(deviceId, commitType)) : commitTypeStats.get(commitType);
+        return tracker != null ? new LatencyStats(tracker.count, tracker.ewma, tracker.percentile()) : null;
+    }
+
+    /**
+     * @return latency statistics of all commit types
+     */
+    @NonNull
+    public synchronized Map<String, LatencyStats> getCommitTypeStats() {
+        Map<String, LatencyStats> stats = new HashMap<>();
+        for (Map.Entry<String, LatencyTracker> entry : commitTypeStats.entrySet()) {
+            LatencyTracker tracker = entry.getValue();
+            stats.put(entry.getKey(), new LatencyStats(tracker.count, tracker.ewma, tracker.percentile()));
+        }
+        return stats;
+    }
+
+    /**
+     * Set the bounds of the derived timeouts
+     *
+     * @param warningFloor   min warning timeout, ms
+     * @param warningCeiling max warning timeout, ms
+     * @param errorFloor     min error timeout, ms
+     * @param errorCeiling   max error timeout, ms
+     */
+    public synchronized void setLimits(int warningFloor, int warningCeiling, int errorFloor, int errorCeiling) {
+        if (warningFloor <= 0 || warningCeiling < warningFloor || errorFloor <= 0 || errorCeiling < errorFloor) {
+            throw new IllegalArgumentException("invalid limits, warning: [" + warningFloor + ", " + warningCeiling
+                    + "], error: [" + errorFloor + ", " + errorCeiling + "]");
+        }
+
+        this.warningFloor = warningFloor;
+        this.warningCeiling = warningCeiling;
+        this.errorFloor = errorFloor;
+        this.errorCeiling = errorCeiling;
+    }
+
+    /**
+     * Turn the adaptive timeouts on or off, connector defaults are used when they are off.
+     * They're off by default, samples are recorded either way.
+     *
+     * @param enabled true to derive the timeouts from the observed latency
+     */
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Forget all recorded samples
+     */
+    public synchronized void clear() {
+        commitTypeStats.clear();
+        deviceStats.clear();
+    }
+
+    private static LatencyTracker tracker(Map<String, LatencyTracker> stats, String key) {
+        LatencyTracker tracker = stats.get(key);
+        if (tracker == null) {
+            tracker = new LatencyTracker();
+            stats.put(key, tracker);
+        }
+        return tracker;
+    }
+
+    private static String deviceKey(String deviceId, String commitType) {
+        return deviceId + '|' + commitType;
+    }
+
+    private static int clamp(double value, int floor, int ceiling) {
+        return (int) Math.max(floor, Math.min(ceiling, Math.ceil(value)));
+    }
+
+    /**
+     * Commit timeouts
+     */
+    public static final class Budget {
+        private final int warningTimeout;
+        private final int errorTimeout;
+        private final int source;
+        private final int samples;
+
+        private Budget(int warningTimeout, int errorTimeout, @Source int source, int samples) {
+            this.warningTimeout = warningTimeout;
+            this.errorTimeout = errorTimeout;
+            this.source = source;
+            this.samples = samples;
+        }
+
+        public int getWarningTimeout() {
+            return warningTimeout;
+        }
+
+        public int getErrorTimeout() {
+            return errorTimeout;
+        }
+
+        /**
+         * @return statistics the timeouts are derived from
+         */
+        @Source
+        public int getSource() {
+            return source;
+        }
+
+        /**
+         * @return number of samples the timeouts are derived from
+         */
+        public int getSamples() {
+            return samples;
+        }
+
+        @Override
+        public String toString() {
+            return "Budget{" +
+                    "warningTimeout=" + warningTimeout +
+                    ", errorTimeout=" + errorTimeout +
+                    ", source=" + source +
+                    ", samples=" + samples +
+                    '}';
+        }
+    }
+
+    /**
+     * Snapshot of the latency statistics
+     */
+    public static final class LatencyStats {
+        private final int count;
+        private final double ewma;
+        private final long percentile;
+
+        private LatencyStats(int count, double ewma, long percentile) {
+            this.count = count;
+            this.ewma = ewma;
+            this.percentile = percentile;
+        }
+
+        public int getCount() {
+            return count;
+        }
+
+        /**
+         * @return exponentially weighted moving average, ms
+         */
+        public double getEwma() {
+            return ewma;
+        }
+
+        /**
+         * @return 95th percentile of the recent samples, ms
+         */
+        public long getPercentile() {
+            return percentile;
+        }
+
+        @Override
+        public String toString() {
+            return "LatencyStats{" +
+                    "count=" + count +
+                    ", ewma=" + ewma +
+                    ", percentile=" + percentile +
+                    '}';
+        }
+    }
+
+    private static final class LatencyTracker {
+        private final long[] window = new long[WINDOW_SIZE];
+        private int count;
+        private double ewma;
+        private int consecutiveTimeouts;
+
+        private void add(long latency) {
+            sample(latency);
+            consecutiveTimeouts = 0;
+        }
+
+        /**
+         * Censored sample: the commit took at least the timeout
+         */
+        private void addTimeout(long timeout) {
+            sample(timeout);
+            consecutiveTimeouts++;
+        }
+
+        private void sample(long latency) {
+            ewma = count == 0 ? latency : ewma + EWMA_ALPHA * (latency - ewma);
+            window[count % WINDOW_SIZE] = latency;
+            count++;
+        }
+
+        private long percentile() {
+            int size = Math.min(count, WINDOW_SIZE);
+            if (size == 0) {
+                return 0;
+            }
+
+            long[] samples = Arrays.copyOf(window, size);
+            Arrays.sort(samples);
+            return samples[(int) Math.ceil(PERCENTILE * size) - 1];
+        }
+    }
+}
@@ -0,0 +1,316 @@
+package com.fitpay.android.paymentdevice.utils.sync;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.fitpay.android.api.callbacks.ApiCallback;
+import com.fitpay.android.api.enums.ResultCode;
+import com.fitpay.android.api.models.collection.Collections;
+import com.fitpay.android.api.models.device.Commit;
+import com.fitpay.android.api.models.device.Device;
+import com.fitpay.android.paymentdevice.DeviceOperationException;
+import com.fitpay.android.utils.FPLog;
+import com.fitpay.android.utils.StringUtils;
+
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Queue;
+
+/**
+ * Streaming source of the commits of a sync.
+ * <p>
+ * Commits are handed out one by one as soon as the first page arrives. Next pages are fetched ahead
+ * in the background while the current commits are processed, and only a bounded window of commits is
+ * held in memory, so time-to-first-commit and memory usage don't depend on the number of pending commits.
+ * <p>
+ * A page error is reported once the commits received before it have been handed out.
+ */
+public final class CommitSource {
+
+    private static final String TAG = CommitSource.class.getSimpleName();
+
+    public static final int DEFAULT_PAGE_SIZE = 50;
+    public static final int DEFAULT_MAX_BUFFERED_COMMITS = DEFAULT_PAGE_SIZE * 2;
+
+    private final PageLoader pageLoader;
+    private final int pageSize;
+    private final int maxBufferedCommits;
+
+    private final Queue<Commit> buffer = new ArrayDeque<>();
+
+    private String lastFetchedCommitId;
+    private boolean firstPage = true;
+    private boolean hasMore = true;
+    private boolean loading;
+    private boolean closed;
+    private Throwable error;
+    private Callback waitingCallback;
+
+    private int totalResults;
+    private int consumed;
+
+    /**
+     * Create a source of the device commits
+     *
+     * @param device           device
+     * @param lastCommitId     last processed commit id, null to start from the beginning
+     * @param useLastAckCommit start from the last acknowledged commit of the device if lastCommitId is empty
+     * @return commit source
+     */
+    public static CommitSource fromDevice(@NonNull Device device, @Nullable String lastCommitId, boolean useLastAckCommit) {
+        if (StringUtils.isEmpty(lastCommitId)) {
+            return new CommitSource(new DevicePageLoader(device, useLastAckCommit),
+                    null, DEFAULT_PAGE_SIZE, DEFAULT_MAX_BUFFERED_COMMITS);
+        }
+
+        return new CommitSource(new DevicePageLoader(device, false),
+                lastCommitId, DEFAULT_PAGE_SIZE, DEFAULT_MAX_BUFFERED_COMMITS);
+    }
+
+    /**
+     * @param pageLoader         page loader
+     * @param lastCommitId       last processed commit id, null to start from the beginning
+     * @param pageSize           number of commits requested per page
+     * @param maxBufferedCommits max number of commits held in memory, at least one page
+     */
+    public CommitSource(@NonNull PageLoader pageLoader, @Nullable String lastCommitId, int pageSize, int maxBufferedCommits) {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("pageSize must be greater than 0: " + pageSize);
+        }
+
+        if (maxBufferedCommits < pageSize) {
+            throw new IllegalArgumentException("maxBufferedCommits must not be less than pageSize: " + maxBufferedCommits);
+        }
+
+        this.pageLoader = pageLoader;
+        this.lastFetchedCommitId = lastCommitId;
+        this.pageSize = pageSize;
+        this.maxBufferedCommits = maxBufferedCommits;
+    }
+
+    /**
+     * Request the next commit. The callback is called right away if a commit is buffered,
+     * otherwise as soon as the next page arrives. Only one request can be pending at a time.
+     *
+     * @param callback callback
+     */
+    public void next(@NonNull Callback callback) {
+        Commit commit = null;
+        Throwable failure = null;
+        boolean completed = false;
+
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+
+            if (!buffer.isEmpty()) {
+                commit = buffer.poll();
+                consumed++;
+            } else if (error != null) {
+                failure = error;
+            } else if (!hasMore) {
+                completed = true;
+            } else {
+                waitingCallback = callback;
+            }
+        }
+
+        fetchIfNeeded();
+        deliver(callback, commit, failure, completed);
+    }
+
+    /**
+     * @return estimated number of commits that haven't been handed out yet
+     */
+    public synchronized int getRemaining() {
+        return Math.max(totalResults - consumed, buffer.size());
+    }
+
+    /**
+     * @return number of commits held in memory
+     */
+    public synchronized int getBufferedCount() {
+        return buffer.size();
+    }
+
+    /**
+     * @return true if all commits have been handed out
+     */
+    public synchronized boolean isExhausted() {
+        return !hasMore && buffer.isEmpty();
+    }
+
+    /**
+     * Drop the buffered commits and stop fetching. The pending request is never answered.
+     */
+    public synchronized void close() {
+        closed = true;
+        waitingCallback = null;
+        buffer.clear();
+    }
+
+    private void fetchIfNeeded() {
+        String after;
+
+        synchronized (this) {
+            if (closed || loading || !hasMore || error != null || buffer.size() + pageSize > maxBufferedCommits) {
+                return;
+            }
+
+            loading = true;
+            after = lastFetchedCommitId;
+        }
+
+        pageLoader.loadPage(after, pageSize, new ApiCallback<Collections.CommitsCollection>() {
+            @Override
+            public void onSuccess(Collections.CommitsCollection result) {
+                onPageLoaded(result);
+            }
+
+            @Override
+            public void onFailure(@ResultCode.Code int errorCode, String errorMessage) {
+                onPageFailed(new DeviceOperationException(errorMessage, errorCode));
+            }
+        });
+    }
+
+    private void onPageLoaded(Collections.CommitsCollection result) {
+        Callback callback;
+        Commit commit = null;
+        boolean completed = false;
+
+        synchronized (this) {
+            loading = false;
+
+            if (closed) {
+                return;
+            }
+
+            List<Commit> results = result != null ? result.getResults() : null;
+            int count = results != null ? results.size() : 0;
+
+            if (count > 0) {
+                buffer.addAll(results);
+                lastFetchedCommitId = results.get(count - 1).getCommitId();
+            }
+
+            if (firstPage) {
+                firstPage = false;
+                totalResults = result != null ? result.getTotalResults() : 0;
+            }
+
+            hasMore = count > 0 && result.hasNext();
+
+            FPLog.d(TAG, "commits page received: " + count + ", buffered: " + buffer.size() + ", hasMore: " + hasMore);
+
+            callback = waitingCallback;
+            if (callback != null) {
+                if (!buffer.isEmpty()) {
+                    commit = buffer.poll();
+                    consumed++;
+                    waitingCallback = null;
+                } else if (!hasMore) {
+                    completed = true;
+                    waitingCallback = null;
+                } else {
+                    callback = null;
+                }
+            }
+        }
+
+        fetchIfNeeded();
+        deliver(callback, commit, null, completed);
+    }
+
+    private void onPageFailed(Throwable throwable) {
+        Callback callback;
+
+        synchronized (this) {
+            loading = false;
+
+            if (closed) {
+                return;
+            }
+
+            FPLog.e(TAG, "commits page failed: " + throwable.getMessage());
+
+            error = throwable;
+            callback = waitingCallback;
+            waitingCallback = null;
+        }
+
+        deliver(callback, null, throwable, false);
+    }
+
+    private static void deliver(Callback callback, Commit commit, Throwable failure, boolean completed) {
+        if (callback == null) {
+            return;
+        }
+
+        if (commit != null) {
+            callback.onCommit(commit);
+        } else if (failure != null) {
+            callback.onError(failure);
+        } else if (completed) {
+            callback.onComplete();
+        }
+    }
+
+    /**
+     * Callback of {@link #next(Callback)}, exactly one of the methods is called per request
+     */
+    public interface Callback {
+        void onCommit(@NonNull Commit commit);
+
+        void onComplete();
+
+        void onError(@NonNull Throwable throwable);
+    }
+
+    /**
+     * Loads a single page of commits
+     */
+    public interface PageLoader {
+        /**
+         * @param lastCommitId commits after this commit id, null to start from the beginning
+         * @param limit        max number of commits
+         * @param callback     result callback
+         */
+        void loadPage(@Nullable String lastCommitId, int limit, @NonNull ApiCallback<Collections.CommitsCollection> callback);
+    }
+
+    /**
+     * Loads the pages from the device commits link, optionally starting from its last acknowledged commit
+     */
+    private static final class DevicePageLoader implements PageLoader {
+        private final Device device;
+        private boolean resolveLastAckCommit;
+
+        private DevicePageLoader(Device device, boolean useLastAckCommit) {
+            this.device = device;
+            this.resolveLastAckCommit = useLastAckCommit && device.hasLastAckCommit();
+        }
+
+        @Override
+        public void loadPage(@Nullable String lastCommitId, int limit, @NonNull ApiCallback<Collections.CommitsCollection> callback) {
+            if (!resolveLastAckCommit) {
+                device.getCommits(limit, 0, lastCommitId, callback);
+                return;
+            }
+
+            device.getLastAckCommit(new ApiCallback<Commit>() {
+                @Override
+                public void onSuccess(Commit result) {
+                    resolveLastAckCommit = false;
+                    device.getCommits(limit, 0, result != null ? result.getCommitId() : null, callback);
+                }
+
+                @Override
+                public void onFailure(@ResultCode.Code int errorCode, String errorMessage) {
+                    callback.onFailure(errorCode, errorMessage);
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,381 @@
+package com.fitpay.android.paymentdevice.utils.sync;
+
+import androidx.annotation.NonNull;
+
+import com.fitpay.android.utils.FPLog;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Executor that runs tasks one at a time per key and different keys in parallel.
+ * <p>
+ * Tasks of the same key are executed in submission order and never overlap. Up to {@code parallelism}
+ * keys run at the same time on the delegate executor. Keys with pending work are served round-robin,
+ * so a key with a long backlog gets one task at a time and can't starve the other keys. As soon as a task
+ * completes the next pending task is handed to the delegate without any added delay.
+ * <p>
+ * Tasks have a priority. A key runs its pending tasks highest priority first, and keys whose next task
+ * has a higher priority are served first. Tasks with the same priority keep the submission order and
+ * keys with the same priority keep the round-robin order.
+ *
+ * @param <K> key type
+ */
+public class KeyedSerialExecutor<K> {
+
+    private static final String TAG = KeyedSerialExecutor.class.getSimpleName();
+
+    private final Executor delegate;
+    private final int parallelism;
+    private final int keyQueueSize;
+
+    private static final Comparator<PendingTask> TASK_ORDER = (first, second) -> {
+        if (first.priority != second.priority) {
+            return first.priority > second.priority ? -1 : 1;
+        }
+        return first.sequence < second.sequence ? -1 : (first.sequence == second.sequence ? 0 : 1);
+    };
+
+    private final Map<K, Queue<PendingTask>> pending = new HashMap<>();
+    // keys waiting for a free slot, by the priority of their next task, highest first
+    private final TreeMap<Integer, Queue<K>> readyKeys = new TreeMap<>(Collections.reverseOrder());
+    private final Map<K, Integer> readyPriorities = new HashMap<>();
+    private final Set<K> running = new HashSet<>();
+    private final Map<K, Integer> runningPriorities = new HashMap<>();
+    // dispatch order of the running keys, the oldest one yields first among keys of the same priority
+    private final Map<K, Long> runningSince = new HashMap<>();
+
+    private long sequence;
+
+    /**
+     * @param delegate     executor that runs the tasks, it should have at least {@code parallelism} threads
+     * @param parallelism  max number of keys executed at the same time
+     * @param keyQueueSize max number of pending tasks per key
+     */
+    public KeyedSerialExecutor(@NonNull Executor delegate, int parallelism, int keyQueueSize) {
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException("parallelism must be greater than 0: " + parallelism);
+        }
+
+        if (keyQueueSize <= 0) {
+            throw new IllegalArgumentException("keyQueueSize must be greater than 0: " + keyQueueSize);
+        }
+
+        this.delegate = delegate;
+        this.parallelism = parallelism;
+        this.keyQueueSize = keyQueueSize;
+    }
+
+    /**
+     * Submit a task for the key with the default priority 0
+     *
+     * @param key  key
+     * @param task task
+     * @return false if the queue of the key is full and the task has been rejected
+     */
+    public boolean execute(@NonNull K key, @NonNull Runnable task) {
+        return execute(key, 0, task);
+    }
+
+    /**
+     * Submit a task for the key
+     *
+     * @param key      key
+     * @param priority task priority, higher runs first
+     * @param task     task
+     * @return false if the queue of the key is full and the task has been rejected
+     */
+    public synchronized boolean execute(@NonNull K key, int priority, @NonNull Runnable task) {
+        Queue<PendingTask> queue = pending.get(key);
+
+        if (queue == null) {
+            queue = new PriorityQueue<>(11, TASK_ORDER);
+            pending.put(key, queue);
+        } else if (queue.size() >= keyQueueSize) {
+            return false;
+        }
+
+        queue.add(new PendingTask(task, priority, sequence++));
+
+        // a running key gets rescheduled when its current task completes
+        if (!running.contains(key)) {
+            markReady(key);
+        }
+
+        dispatch();
+
+        return true;
+    }
+
+    /**
+     * Raise the priority of a pending task, the task and its key are ranked again at the new priority.
+     * The task keeps its submission order among the tasks of the same priority.
+     *
+     * @param key      key
+     * @param task     task submitted for the key
+     * @param priority new priority, a lower one is ignored
+     * @return false if the task isn't pending anymore
+     */
+    public synchronized boolean raisePriority(@NonNull K key, @NonNull Runnable task, int priority) {
+        Queue<PendingTask> queue = pending.get(key);
+        if (queue == null) {
+            return false;
+        }
+
+        for (PendingTask pendingTask : queue) {
+            if (pendingTask.task != task) {
+                continue;
+            }
+
+            if (pendingTask.priority < priority) {
+                queue.remove(pendingTask);
+                queue.add(new PendingTask(task, priority, pendingTask.sequence));
+
+                if (!running.contains(key)) {
+                    markReady(key);
+                }
+            }
+
+            return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Check whether a running task of the key should give up its slot: a task with a higher priority
+     * is waiting for the same key, or for another key while all slots are taken.
+     * <p>
+     * Only as many slots are given up as there are keys of a higher priority waiting: the running keys
+     * of the lowest priority yield first, the ones running the longest among them.
+     *
+     * @param key key
+     * @return true if the running task should yield
+     */
+    public synchronized boolean shouldYield(@NonNull K key) {
+        Integer priority = runningPriorities.get(key);
+        if (priority == null) {
+            return false;
+        }
+
+        Queue<PendingTask> queue = pending.get(key);
+        if (queue != null && !queue.isEmpty() && queue.peek().priority > priority) {
+            return true;
+        }
+
+        if (running.size() < parallelism || readyKeys.isEmpty() || readyKeys.firstKey() <= priority) {
+            return false;
+        }
+
+        List<K> candidates = new ArrayList<>(running);
+        Collections.sort(candidates, (first, second) -> {
+            int order = Integer.compare(runningPriorities.get(first), runningPriorities.get(second));
+            return order != 0 ? order : Long.compare(runningSince.get(first), runningSince.get(second));
+        });
+
+        // pair the waiting keys, highest priority first, with the running keys, lowest priority first
+        Iterator<Map.Entry<Integer, Queue<K>>> levels = readyKeys.entrySet().iterator();
+        Map.Entry<Integer, Queue<K>> level = levels.next();
+        int waiting = level.getValue().size();
+
+        for (K candidate : candidates) {
+            if (waiting == 0) {
+                if (!levels.hasNext()) {
+                    return false;
+                }
+                level = levels.next();
+                waiting = level.getValue().size();
+            }
+
+            if (level.getKey() <= runningPriorities.get(candidate)) {
+                return false;
+            }
+
+            if (candidate.equals(key)) {
+                return true;
+            }
+
+            waiting--;
+        }
+
+        return false;
+    }
+
+    /**
+     * @param key key
+     * @return true if a task of the key is running right now
+     */
+    public synchronized boolean isRunning(@NonNull K key) {
+        return running.contains(key);
+    }
+
+    /**
+     * @param key key
+     * @return number of tasks waiting for the key
+     */
+    public synchronized int getPendingCount(@NonNull K key) {
+        Queue<PendingTask> queue = pending.get(key);
+        return queue != null ? queue.size() : 0;
+    }
+
+    /**
+     * @return pending tasks plus the running one of every key with work, by key
+     */
+    public synchronized Map<K, Integer> getBacklogs() {
+        Map<K, Integer> backlogs = new HashMap<>();
+        for (Map.Entry<K, Queue<PendingTask>> entry : pending.entrySet()) {
+            backlogs.put(entry.getKey(), entry.getValue().size());
+        }
+        for (K key : running) {
+            Integer count = backlogs.get(key);
+            backlogs.put(key, count != null ? count + 1 : 1);
+        }
+        return backlogs;
+    }
+
+    /**
+     * @return number of keys running right now
+     */
+    public synchronized int getRunningCount() {
+        return running.size();
+    }
+
+    /**
+     * Drop all pending tasks. Running tasks are not affected.
+     */
+    public synchronized void clear() {
+        pending.clear();
+        readyKeys.clear();
+        readyPriorities.clear();
+    }
+
+    /**
+     * Queue the key at the priority of its next task, or move it if that priority has changed
+     */
+    private void markReady(K key) {
+        int priority = pending.get(key).peek().priority;
+        Integer readyPriority = readyPriorities.get(key);
+
+        if (readyPriority != null) {
+            if (readyPriority == priority) {
+                return;
+            }
+
+            removeReady(key, readyPriority);
+        }
+
+        Queue<K> keys = readyKeys.get(priority);
+        if (keys == null) {
+            keys = new ArrayDeque<>();
+            readyKeys.put(priority, keys);
+        }
+
+        keys.add(key);
+        readyPriorities.put(key, priority);
+    }
+
+    private void removeReady(K key, int priority) {
+        Queue<K> keys = readyKeys.get(priority);
+        if (keys != null) {
+            keys.remove(key);
+            if (keys.isEmpty()) {
+                readyKeys.remove(priority);
+            }
+        }
+    }
+
+    private void dispatch() {
+        while (running.size() < parallelism && !readyKeys.isEmpty()) {
+            Map.Entry<Integer, Queue<K>> level = readyKeys.firstEntry();
+            K key = level.getValue().poll();
+
+            if (level.getValue().isEmpty()) {
+                readyKeys.remove(level.getKey());
+            }
+
+            readyPriorities.remove(key);
+
+            Queue<PendingTask> queue = pending.get(key);
+            PendingTask task = queue != null ? queue.poll() : null;
+
+            if (task == null) {
+                pending.remove(key);
+                continue;
+            }
+
+            running.add(key);
+            runningPriorities.put(key, task.priority);
+            runningSince.put(key, sequence++);
+
+            try {
+                delegate.execute(new KeyedTask(key, task.task));
+            } catch (RejectedExecutionException e) {
+                FPLog.w(TAG, "task for key " + key + " has been rejected: " + e.getMessage());
+                running.remove(key);
+                runningPriorities.remove(key);
+                runningSince.remove(key);
+                pending.remove(key);
+            }
+        }
+    }
+
+    private synchronized void complete(K key) {
+        running.remove(key);
+        runningPriorities.remove(key);
+        runningSince.remove(key);
+
+        Queue<PendingTask> queue = pending.get(key);
+        if (queue != null && !queue.isEmpty()) {
+            // back to the end of the line, other keys of the same priority get their turn first
+            markReady(key);
+        } else {
+            pending.remove(key);
+        }
+
+        dispatch();
+    }
+
+    private static final class PendingTask {
+        private final Runnable task;
+        private final int priority;
+        private final long sequence;
+
+        private PendingTask(Runnable task, int priority, long sequence) {
+            this.task = task;
+            this.priority = priority;
+            this.sequence = sequence;
+        }
+    }
+
+    private final class KeyedTask implements Runnable {
+        private final K key;
+        private final Runnable task;
+
+        private KeyedTask(K key, Runnable task) {
+            this.key = key;
+            this.task = task;
+        }
+
+        @Override
+        public void run() {
+            try {
+                task.run();
+            } finally {
+                complete(key);
+            }
+        }
+    }
+}
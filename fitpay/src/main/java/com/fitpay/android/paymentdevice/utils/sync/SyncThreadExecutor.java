@@ -1,7 +1,6 @@
 package com.fitpay.android.paymentdevice.utils.sync;
 
 import android.content.Context;
-import android.os.Handler;
 
 import com.fitpay.android.paymentdevice.callbacks.DeviceSyncManagerCallback;
 import com.fitpay.android.paymentdevice.constants.States;
@@ -13,85 +12,134 @@ import com.fitpay.android.utils.FPLog;
 import com.fitpay.android.utils.RxBus;
 import com.fitpay.android.utils.StringUtils;
 
-import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
 /**
  * Created by Vlad on 24.07.2017.
+ * <p>
+ * Runs one sync per device at a time and syncs of different devices in parallel.
+ * Pending requests are handed out by {@link KeyedSerialExecutor} round-robin across devices,
+ * higher {@link SyncRequest#getPriority() priorities} first. A running sync yields at the next commit
+ * boundary to a waiting sync of a higher priority and is scheduled again.
  */
 
 public class SyncThreadExecutor extends ThreadPoolExecutor {
 
     private static final String TAG = SyncThreadExecutor.class.getSimpleName();
 
-    private final HashMap<String, BlockingQueue<SyncRequest>> syncBuffer;
+    private final KeyedSerialExecutor<String> deviceExecutor;
 
-    private final List<String> inWork = new ArrayList<>();
+    // requests waiting for their device, at most one per device when coalescing is enabled
+    private final Map<String, PendingSync> pendingRequests = new HashMap<>();
+    private volatile boolean coalescing;
+    private volatile boolean preemptive = true;
 
     private final Context mContext;
     private final List<DeviceSyncManagerCallback> syncManagerCallbacks;
 
-    private final int queueSize;
-
-    private Handler handler;
-
     public SyncThreadExecutor(Context context, List<DeviceSyncManagerCallback> syncManagerCallbacks, int queueSize, int threadsCount, long keepAliveTime, TimeUnit unit, BlockingQueue<Runnable> workQueue) {
         super(threadsCount, threadsCount, keepAliveTime, unit, workQueue);
         this.mContext = context;
         this.syncManagerCallbacks = syncManagerCallbacks;
-        this.queueSize = queueSize;
-        this.syncBuffer = new HashMap<>(threadsCount);
-        handler = new Handler();
+        // one running sync plus up to queueSize waiting syncs per device
+        this.deviceExecutor = new KeyedSerialExecutor<>(this::execute, threadsCount, queueSize);
     }
 
     @Override
-    protected void beforeExecute(Thread t, Runnable r) {
-        SyncWorkerTask task = (SyncWorkerTask) r;
-        inWork.add(task.getSyncRequest().getDevice().getDeviceIdentifier());
+    public List<Runnable> shutdownNow() {
+        deviceExecutor.clear();
 
-        for (DeviceSyncManagerCallback callback : syncManagerCallbacks) {
-            callback.syncTaskStarting(task.getSyncRequest());
+        synchronized (pendingRequests) {
+            pendingRequests.clear();
         }
 
-        super.beforeExecute(t, r);
+        return super.shutdownNow();
     }
 
-    @Override
-    protected void afterExecute(Runnable r, Throwable t) {
-        super.afterExecute(r, t);
+    /**
+     * Coalescing mode.
+     * All requests for a device that arrive while another request of that device is waiting are merged
+     * into the waiting one, which runs a single sync after the current one for all of them.
+     * The waiting sync takes the highest priority of the merged requests.
+     *
+     * @param coalescing true/false
+     */
+    public void setCoalescing(boolean coalescing) {
+        this.coalescing = coalescing;
+    }
+
+    public boolean isCoalescing() {
+        return coalescing;
+    }
+
+    /**
+     * Preemptive mode.
+     * A running sync stops at the next commit boundary if a sync of a higher priority is waiting
+     * for the same device, or for another device while all threads are busy. Only as many syncs yield as
+     * there are higher priority syncs waiting, the lowest priority ones first. A yielded sync continues later
+     * from its last commit pointer. Enabled by default.
+     *
+     * @param preemptive true/false
+     */
+    public void setPreemptive(boolean preemptive) {
+        this.preemptive = preemptive;
+    }
 
-        SyncWorkerTask task = (SyncWorkerTask) r;
-        inWork.remove(task.getSyncRequest().getDevice().getDeviceIdentifier());
+    public boolean isPreemptive() {
+        return preemptive;
+    }
+
+    /**
+     * Once the sync starts new requests can't be merged into it anymore
+     *
+     * @param deviceId device id
+     * @param request  sync request
+     */
+    private void removePending(String deviceId, SyncRequest request) {
+        synchronized (pendingRequests) {
+            PendingSync pendingSync = pendingRequests.get(deviceId);
+            if (pendingSync != null && pendingSync.request == request) {
+                pendingRequests.remove(deviceId);
+            }
+        }
+    }
+
+    /**
+     * Run sync task and notify callbacks.
+     * Callbacks are called on the sync thread, so syncTaskCompleted of a device always comes before
+     * syncTaskStarting of its next request.
+     *
+     * @param task sync task
+     */
+    private void runTask(SyncWorkerTask task) {
+        removePending(task.getSyncRequest().getDevice().getDeviceIdentifier(), task.getSyncRequest());
 
         for (DeviceSyncManagerCallback callback : syncManagerCallbacks) {
-            callback.syncTaskCompleted(task.getSyncRequest());
+            callback.syncTaskStarting(task.getSyncRequest());
         }
 
-        for (Iterator<Map.Entry<String, BlockingQueue<SyncRequest>>> it = syncBuffer.entrySet().iterator(); it.hasNext(); ) {
-            Map.Entry<String, BlockingQueue<SyncRequest>> entry = it.next();
-            if (!inWork.contains(entry.getKey())) {
-                BlockingQueue<SyncRequest> queue = entry.getValue();
-                SyncRequest request = entry.getValue().poll();
-                if(queue.size() == 0){
-                    it.remove();
-                }
-                if (request != null) {
-                    handler.postDelayed(()-> {
-                        if(!isShutdown() && !isTerminated() && !isTerminating()) {
-                            execute(new SyncWorkerTask(mContext, syncManagerCallbacks, request));
-                        }
-                    }, 100);
-                    break;
-                }
+        try {
+            task.run();
+        } finally {
+            for (DeviceSyncManagerCallback callback : syncManagerCallbacks) {
+                callback.syncTaskCompleted(task.getSyncRequest());
             }
         }
+
+        if (task.isYielded() && !enqueue(task.getSyncRequest(), true)) {
+            SyncRequest request = task.getSyncRequest();
+
+            RxBus.getInstance().post(request.getConnector().id(), Sync.builder()
+                    .syncId(request.getSyncId())
+                    .state(States.FAILED)
+                    .message("sync queue is full, yielded sync can't be resumed")
+                    .build());
+        }
     }
 
     /**
@@ -105,21 +153,7 @@ public class SyncThreadExecutor extends ThreadPoolExecutor {
                 callback.syncRequestAdded(request);
             }
 
-            String deviceId = request.getDevice().getDeviceIdentifier();
-            if (inWork.contains(deviceId)) {
-                BlockingQueue<SyncRequest> deviceQueue = syncBuffer.get(deviceId);
-                if (deviceQueue == null) {
-                    deviceQueue = new ArrayBlockingQueue<>(queueSize);
-                }
-                if(deviceQueue.size() < queueSize) {
-                    deviceQueue.add(request);
-                    syncBuffer.put(deviceId, deviceQueue);
-                } else {
-                    FPLog.w(TAG, "Queue is full");
-                }
-            } else {
-                execute(new SyncWorkerTask(mContext, syncManagerCallbacks, request));
-            }
+            enqueue(request, false);
 
         } else {
             for (DeviceSyncManagerCallback callback : syncManagerCallbacks) {
@@ -133,6 +167,45 @@ public class SyncThreadExecutor extends ThreadPoolExecutor {
         }
     }
 
+    /**
+     * Queue the request for its device
+     *
+     * @param request sync request
+     * @param resumed true if the request continues a yielded sync, it's not merged into a pending one
+     * @return false if the queue of the device is full
+     */
+    private boolean enqueue(SyncRequest request, boolean resumed) {
+        String deviceId = request.getDevice().getDeviceIdentifier();
+
+        // the pending request is queued under the lock, so a merged request always finds its task to re-rank
+        synchronized (pendingRequests) {
+            PendingSync pendingSync = coalescing && !resumed ? pendingRequests.get(deviceId) : null;
+            if (pendingSync != null && pendingSync.request.canCoalesce(request)) {
+                pendingSync.request.coalesce(request);
+                deviceExecutor.raisePriority(deviceId, pendingSync.task, pendingSync.request.getPriority());
+
+                FPLog.d(TAG, "syncRequest " + request.getSyncId() + " coalesced into the pending sync of device " + deviceId);
+                return true;
+            }
+
+            SyncWorkerTask task = new SyncWorkerTask(mContext, syncManagerCallbacks, request);
+            task.setResumed(resumed);
+            task.setYieldPolicy(syncRequest -> preemptive && deviceExecutor.shouldYield(deviceId));
+
+            Runnable runnable = () -> runTask(task);
+            if (!deviceExecutor.execute(deviceId, request.getPriority(), runnable)) {
+                FPLog.w(TAG, "Queue is full");
+                return false;
+            }
+
+            if (coalescing && !pendingRequests.containsKey(deviceId)) {
+                pendingRequests.put(deviceId, new PendingSync(request, runnable));
+            }
+
+            return true;
+        }
+    }
+
     /**
      * Can we execute current request
      *
@@ -194,4 +267,14 @@ public class SyncThreadExecutor extends ThreadPoolExecutor {
 
         return true;
     }
+
+    private static final class PendingSync {
+        private final SyncRequest request;
+        private final Runnable task;
+
+        private PendingSync(SyncRequest request, Runnable task) {
+            this.request = request;
+            this.task = task;
+        }
+    }
 }
@@ -6,7 +6,6 @@ import com.fitpay.android.R;
 import com.fitpay.android.api.callbacks.ApiCallback;
 import com.fitpay.android.api.enums.ResponseState;
 import com.fitpay.android.api.enums.ResultCode;
-import com.fitpay.android.api.models.collection.Collections;
 import com.fitpay.android.api.models.device.Commit;
 import com.fitpay.android.api.models.device.CommitConfirm;
 import com.fitpay.android.api.models.device.Device;
@@ -26,21 +25,17 @@ import com.fitpay.android.utils.FPLog;
 import com.fitpay.android.utils.Listener;
 import com.fitpay.android.utils.NotificationManager;
 import com.fitpay.android.utils.RxBus;
-import com.fitpay.android.utils.StringUtils;
+import com.fitpay.android.utils.TimerService;
 import com.fitpay.android.webview.events.DeviceStatusMessage;
 
 import java.util.List;
 import java.util.concurrent.CountDownLatch;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
-import io.reactivex.Single;
-import io.reactivex.SingleObserver;
-import io.reactivex.disposables.Disposable;
-
 import static com.fitpay.android.utils.Constants.SYNC_DATA;
 
 /**
@@ -51,33 +46,104 @@ import static com.fitpay.android.utils.Constants.SYNC_DATA;
 public final class SyncWorkerTask implements Runnable {
     private final static String TAG = SyncWorkerTask.class.getSimpleName();
 
+    private static final int COMMIT_PIPELINE_THREADS = 2;
+    private static final int COMMIT_PIPELINE_QUEUE_SIZE = 1000;
+    private static final long COMMIT_PIPELINE_KEEP_ALIVE_SECONDS = 30;
+
+    // commit completions of all pipelined syncs: serial per sync, syncs of different devices in parallel
+    private static final KeyedSerialExecutor<SyncWorkerTask> commitPipeline = createCommitPipeline();
+
     private final Context mContext;
     private final SyncRequest syncRequest;
-    private final ScheduledExecutorService timeoutWatcherExecutor;
+    private final boolean pipelined;
 
     private final String connectorId;
 
     private final CountDownLatch completionLatch = new CountDownLatch(1);
 
-    private ScheduledFuture<Void> commitWarningTimer;
-    private ScheduledFuture<Void> commitTimeoutTimer;
+    // commit completions and confirmations of a pipelined sync that haven't finished yet
+    private final Object confirmLock = new Object();
+    // guarded by confirmLock
+    private int pendingCompletions;
+    private int pendingConfirms;
+    private boolean pipelineClosed;
+
+    // the drain has given up, queued pointer updates are dropped
+    private volatile boolean pipelineAborted;
+
+    private TimerService.Timeout commitWarningTimer;
+    private TimerService.Timeout commitTimeoutTimer;
 
     private SyncProcess syncProcess;
 
+    // terminal sync event, replayed for the requests coalesced into this one
+    private volatile Sync syncResult;
+    // terminal sync event of a pipelined sync, reported once its commit pipeline is drained
+    private volatile Sync deferredResult;
+
+    private volatile YieldPolicy yieldPolicy;
+    private volatile boolean yielded;
+    private volatile boolean resumed;
+
     private final List<DeviceSyncManagerCallback> syncManagerCallbacks;
 
     public SyncWorkerTask(Context mContext, List<DeviceSyncManagerCallback> syncManagerCallbacks, SyncRequest syncRequest) {
         this.mContext = mContext;
         this.syncRequest = syncRequest;
         this.syncManagerCallbacks = syncManagerCallbacks;
-        this.timeoutWatcherExecutor = Executors.newScheduledThreadPool(1);
         this.connectorId = syncRequest.getConnector().id();
+        this.pipelined = syncRequest.isPipelined();
+    }
+
+    private static KeyedSerialExecutor<SyncWorkerTask> createCommitPipeline() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(COMMIT_PIPELINE_THREADS, COMMIT_PIPELINE_THREADS,
+                COMMIT_PIPELINE_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "FitPay-" + TAG + "-pipeline-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        executor.allowCoreThreadTimeOut(true);
+
+        return new KeyedSerialExecutor<>(executor, COMMIT_PIPELINE_THREADS, COMMIT_PIPELINE_QUEUE_SIZE);
     }
 
     public SyncRequest getSyncRequest() {
         return syncRequest;
     }
 
+    /**
+     * Set the policy that decides whether the sync should give way to more important syncs
+     *
+     * @param yieldPolicy yield policy
+     */
+    public void setYieldPolicy(YieldPolicy yieldPolicy) {
+        this.yieldPolicy = yieldPolicy;
+    }
+
+    /**
+     * Mark the task as the continuation of a yielded sync, it starts with {@link States#RESUMED} instead of
+     * {@link States#STARTED}
+     *
+     * @param resumed true if the sync has yielded before
+     */
+    public void setResumed(boolean resumed) {
+        this.resumed = resumed;
+    }
+
+    /**
+     * A yielded sync has stopped at a commit boundary without a final state, it has to be scheduled again
+     *
+     * @return true if the sync has yielded
+     */
+    public boolean isYielded() {
+        return yielded;
+    }
+
     @Override
     public void run() {
         SyncListener listener = new SyncListener(connectorId);
@@ -92,10 +158,18 @@ public final class SyncWorkerTask implements Runnable {
 
             completionLatch.await();
 
-            // tell the connector we're done
-            syncRequest.getConnector().syncComplete();
+            // make sure every commit pointer is stored and every commit confirmation is answered
+            // before the result is reported and the next sync can start
+            if (drainCommitPipeline()) {
+                Sync result = deferredResult;
+                if (result != null) {
+                    reportResult(result);
+                }
+            } else {
+                failSync("commit pipeline has not been drained within " + syncRequest.getConnector().getCommitErrorTimeout() + "ms");
+            }
 
-            FPLog.d(SYNC_DATA, "task completed for syncRequest: "
+            FPLog.d(SYNC_DATA, "task " + (yielded ? "yielded" : "completed") + " for syncRequest: "
                     + syncRequest
                     + ", commitSuccess: "
                     + listener.getCommitSuccessCount()
@@ -106,7 +180,139 @@ public final class SyncWorkerTask implements Runnable {
         } catch (Exception e) {
             FPLog.e(TAG, e);
         } finally {
+            drainCommitPipeline();
             NotificationManager.getInstance().removeListener(listener);
+
+            // tell the connector we're done, a yielded sync isn't: it's resumed later from its commit pointer
+            if (!yielded) {
+                try {
+                    syncRequest.getConnector().syncComplete();
+                } catch (Exception e) {
+                    FPLog.e(TAG, e);
+                }
+            }
+
+            completeCoalescedRequests();
+        }
+    }
+
+    /**
+     * Requests coalesced into this one have been served by this sync, report the same result for them
+     */
+    private void completeCoalescedRequests() {
+        if (syncResult == null) {
+            return;
+        }
+
+        for (SyncRequest coalescedRequest : syncRequest.getCoalescedRequests()) {
+            RxBus.getInstance().post(connectorId, Sync.builder()
+                    .syncId(coalescedRequest.getSyncId())
+                    .state(syncResult.getState())
+                    .value(syncResult.getValue())
+                    .message(syncResult.getMessage())
+                    .build());
+        }
+    }
+
+    /**
+     * Wait for the pending commit pointer updates and commit confirmations of a pipelined sync.
+     * Commits completed after the drain has started are completed inline.
+     * Pointer updates that haven't run by the deadline are dropped, the next sync starts from the last stored pointer.
+     *
+     * @return true if everything has been stored and confirmed in time
+     */
+    private boolean drainCommitPipeline() {
+        if (!pipelined) {
+            return true;
+        }
+
+        int drainTimeout = syncRequest.getConnector().getCommitErrorTimeout();
+        long deadline = System.currentTimeMillis() + drainTimeout;
+
+        synchronized (confirmLock) {
+            if (pipelineClosed) {
+                return true;
+            }
+
+            pipelineClosed = true;
+
+            try {
+                while (pendingCompletions > 0 || pendingConfirms > 0) {
+                    long remaining = deadline - System.currentTimeMillis();
+                    if (remaining <= 0) {
+                        FPLog.w(TAG, pendingCompletions + " commit pointer updates and " + pendingConfirms
+                                + " commit confirmations have not completed within " + drainTimeout + "ms, syncRequest: " + syncRequest);
+                        pipelineAborted = true;
+                        return false;
+                    }
+                    confirmLock.wait(remaining);
+                }
+
+                return true;
+            } catch (InterruptedException e) {
+                FPLog.e(TAG, e);
+                pipelineAborted = true;
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Post the final state of the sync. A pipelined sync holds it back until its commit pipeline is drained,
+     * see {@link #run()}: a sync has a single final state and it's reported once the commits are stored and confirmed.
+     */
+    private void postResult(Sync result) {
+        if (!pipelined) {
+            RxBus.getInstance().post(connectorId, result);
+            return;
+        }
+
+        if (deferredResult == null) {
+            deferredResult = result;
+        }
+        completionLatch.countDown();
+    }
+
+    private void reportResult(Sync result) {
+        if (syncProcess != null) {
+            syncProcess.finish();
+        }
+
+        syncResult = result;
+        RxBus.getInstance().post(connectorId, result);
+    }
+
+    /**
+     * Report a sync as failed after its commits have been processed, e.g. the commit pipeline couldn't be drained
+     */
+    private void failSync(String message) {
+        FPLog.e(TAG, message + ", syncRequest: " + syncRequest);
+
+        if (syncResult != null) {
+            // a sync has a single final state
+            FPLog.w(TAG, "sync has already been reported as " + syncResult.getState() + ", syncRequest: " + syncRequest);
+            return;
+        }
+
+        reportResult(Sync.builder()
+                .syncId(syncRequest.getSyncId())
+                .state(States.FAILED)
+                .message(message)
+                .build());
+    }
+
+    private void completionFinished() {
+        synchronized (confirmLock) {
+            pendingCompletions--;
+            confirmLock.notifyAll();
+        }
+    }
+
+    private void confirmFinished() {
+        synchronized (confirmLock) {
+            pendingConfirms--;
+            confirmLock.notifyAll();
         }
     }
 
@@ -118,9 +324,17 @@ public final class SyncWorkerTask implements Runnable {
 
         RxBus.getInstance().post(connectorId, Sync.builder()
                 .syncId(syncRequest.getSyncId())
-                .state(States.STARTED)
+                .state(resumed ? States.RESUMED : States.STARTED)
                 .build());
 
+        // requests merged into this one start with it, nothing is merged once the task runs
+        for (SyncRequest coalescedRequest : syncRequest.getCoalescedRequests()) {
+            RxBus.getInstance().post(connectorId, Sync.builder()
+                    .syncId(coalescedRequest.getSyncId())
+                    .state(resumed ? States.RESUMED : States.STARTED)
+                    .build());
+        }
+
         if (syncRequest.getUser() == null) {
             FPLog.w(TAG, "No user provided in syncRequest: " + syncRequest);
 
@@ -168,7 +382,7 @@ public final class SyncWorkerTask implements Runnable {
             return;
         }
 
-        FPLog.d(TAG, "sync initiated from thread: " + Thread.currentThread() + ", " + Thread.currentThread().getName() + ", syncRequest: " + syncRequest);
+        FPLog.d(TAG, "sync initiated from thread: {}, {}, syncRequest: {}", Thread.currentThread(), Thread.currentThread().getName(), syncRequest);
     }
 
     private void syncDevice() {
@@ -188,93 +402,87 @@ public final class SyncWorkerTask implements Runnable {
         DevicePreferenceData deviceData = DevicePreferenceData.load(mContext, deviceId);
 
         // get all the new commits from the last commit pointer processed
-        FPLog.d(TAG, "retrieving commits from the lastCommitId: " + deviceData.getLastCommitId() + ", for syncRequest: " + syncRequest);
+        FPLog.d(TAG, "retrieving commits from the lastCommitId: {}, for syncRequest: {}", deviceData.getLastCommitId(), syncRequest);
 
-        Single<Collections.CommitsCollection> observable;
+        CommitSource commitSource = CommitSource.fromDevice(device, deviceData.getLastCommitId(), syncRequest.useLastAckCommit());
+        syncProcess.setCommitSource(commitSource);
 
-        String lastCommitId = deviceData.getLastCommitId();
+        // the first commit is processed as soon as the first page arrives, next pages are fetched in the background
+        commitSource.next(new CommitSource.Callback() {
+            @Override
+            public void onCommit(Commit commit) {
+                FPLog.i(SYNC_DATA, "Commits Received: {}", syncProcess.size() + 1);
 
-        if (StringUtils.isEmpty(lastCommitId) && syncRequest.useLastAckCommit() && device.hasLastAckCommit()) {
-            observable = device.getAllCommitsAfterLastAckCommit();
-        } else {
-            observable = device.getAllCommits(lastCommitId);
-        }
+                RxBus.getInstance().post(connectorId, new DeviceStatusMessage(
+                        mContext.getString(R.string.fp_updates_available),
+                        deviceId,
+                        DeviceStatusMessage.SUCCESS));
 
-        observable.subscribe(new SingleObserver<Collections.CommitsCollection>() {
-            @Override
-            public void onSubscribe(Disposable d) {
+                RxBus.getInstance().post(connectorId, new DeviceStatusMessage(
+                        mContext.getString(R.string.fp_sync_started),
+                        deviceId,
+                        DeviceStatusMessage.PROGRESS));
 
+                processCommit(commit);
             }
 
             @Override
-            public void onSuccess(Collections.CommitsCollection commitsCollection) {
-                syncProcess.setCommits(commitsCollection.getResults());
-
-                FPLog.i(SYNC_DATA, "Commits Received: " + syncProcess.size());
+            public void onComplete() {
+                FPLog.i(SYNC_DATA, "Commits Received: 0");
 
-                if (syncProcess.size() > 0) {
-                    RxBus.getInstance().post(connectorId, new DeviceStatusMessage(
-                            mContext.getString(R.string.fp_updates_available),
-                            deviceId,
-                            DeviceStatusMessage.SUCCESS));
+                RxBus.getInstance().post(connectorId, new DeviceStatusMessage(
+                        mContext.getString(R.string.fp_no_pending_updates),
+                        deviceId,
+                        DeviceStatusMessage.SUCCESS));
 
-                    RxBus.getInstance().post(connectorId, new DeviceStatusMessage(
-                            mContext.getString(R.string.fp_sync_started),
-                            deviceId,
-                            DeviceStatusMessage.PROGRESS));
-
-                    processNextCommit();
-                } else {
-                    RxBus.getInstance().post(connectorId, new DeviceStatusMessage(
-                            mContext.getString(R.string.fp_no_pending_updates),
-                            deviceId,
-                            DeviceStatusMessage.SUCCESS));
-
-                    RxBus.getInstance().post(connectorId, Sync.builder()
-                            .syncId(syncRequest.getSyncId())
-                            .state(States.COMPLETED_NO_UPDATES)
-                            .build());
-                }
+                postResult(Sync.builder()
+                        .syncId(syncRequest.getSyncId())
+                        .state(States.COMPLETED_NO_UPDATES)
+                        .build());
             }
 
             @Override
             public void onError(Throwable throwable) {
-                FPLog.e(TAG, throwable);
+                onCommitsError(throwable);
+            }
+        });
+    }
 
-                if (throwable instanceof DeviceOperationException) {
-                    DeviceOperationException doe = (DeviceOperationException) throwable;
-                    FPLog.e(TAG, "get commits failed.  reasonCode: " + doe.getErrorCode() + ",  " + doe.getMessage());
+    private void onCommitsError(Throwable throwable) {
+        FPLog.e(TAG, throwable);
 
-                } else {
-                    FPLog.e(TAG, "get commits failed. " + throwable.getMessage());
-                }
+        if (throwable instanceof DeviceOperationException) {
+            DeviceOperationException doe = (DeviceOperationException) throwable;
+            FPLog.e(TAG, "get commits failed.  reasonCode: " + doe.getErrorCode() + ",  " + doe.getMessage());
 
-                RxBus.getInstance().post(connectorId, Sync.builder()
-                        .syncId(syncRequest.getSyncId())
-                        .state(States.FAILED)
-                        .message(throwable.getMessage())
-                        .build());
-            }
-        });
+        } else {
+            FPLog.e(TAG, "get commits failed. " + throwable.getMessage());
+        }
+
+        postResult(Sync.builder()
+                .syncId(syncRequest.getSyncId())
+                .state(States.FAILED)
+                .message(throwable.getMessage())
+                .build());
     }
 
     private void processNextCommit() {
         // cancel the current timers if they're set, this shouldn't occur... but just in case
         if (commitWarningTimer != null) {
-            boolean result = commitWarningTimer.cancel(true);
-            FPLog.d(TAG, "commitWarningTimer cancel: " + result);
+            boolean result = commitWarningTimer.cancel();
+            FPLog.d(TAG, "commitWarningTimer cancel: {}", result);
         }
 
         if (commitTimeoutTimer != null) {
-            boolean result = commitTimeoutTimer.cancel(true);
-            FPLog.d(TAG, "commitTimeoutTimer cancel: " + result);
+            boolean result = commitTimeoutTimer.cancel();
+            FPLog.d(TAG, "commitTimeoutTimer cancel: {}", result);
         }
 
         // make sure the device is still connected
         switch (syncRequest.getConnector().getState()) {
             case States.DISCONNECTED:
             case States.DISCONNECTING:
-                RxBus.getInstance().post(connectorId, Sync.builder()
+                postResult(Sync.builder()
                         .syncId(syncRequest.getSyncId())
                         .state(States.FAILED)
                         .message("Error processing next commit, device is disconnected or disconnecting")
@@ -282,56 +490,99 @@ public final class SyncWorkerTask implements Runnable {
                 return;
         }
 
-        if (syncProcess.size() > 0) {
-            RxBus.getInstance().post(connectorId, Sync.builder()
-                    .syncId(syncRequest.getSyncId())
-                    .value(syncProcess.size())
-                    .state(States.IN_PROGRESS)
-                    .build());
+        // give way to a more important sync, the commit pointer of this one is already stored
+        YieldPolicy policy = yieldPolicy;
+        if (policy != null && policy.shouldYield(syncRequest)) {
+            FPLog.i(SYNC_DATA, "sync yields at commit boundary, syncRequest: " + syncRequest);
 
-            Commit commit = syncProcess.startCommitProcessing();
+            yielded = true;
+            // the metrics of the commits processed so far, the resumed sync reports the rest
+            syncProcess.finish();
+            completionLatch.countDown();
+            return;
+        }
+
+        syncProcess.getCommitSource().next(new CommitSource.Callback() {
+            @Override
+            public void onCommit(Commit commit) {
+                processCommit(commit);
+            }
 
-            FPLog.i(SYNC_DATA, "Process Next Commit: " + commit);
+            @Override
+            public void onComplete() {
+                postResult(Sync.builder()
+                        .syncId(syncRequest.getSyncId())
+                        .state(States.COMPLETED)
+                        .build());
+            }
 
-            // start the watching timers, this first timer is responsible for producing a warning
-            // if a commit isn't responded to in a timely manner
-            boolean commitTimersEnabled = syncRequest.getConnector().isCommitTimersEnabled();
-            int commitWarningTimeout = syncRequest.getConnector().getCommitWarningTimeout();
-            int commitErrorTimeout = syncRequest.getConnector().getCommitErrorTimeout();
+            @Override
+            public void onError(Throwable throwable) {
+                onCommitsError(throwable);
+            }
+        });
+    }
 
-            if (commitTimersEnabled) {
-                commitWarningTimer = timeoutWatcherExecutor.schedule(() -> {
-                    FPLog.w(TAG, "warning, commit " + commit + " has not returned within " + commitWarningTimeout + "ms");
+    private void processCommit(final Commit commit) {
+        // the pending commit is counted as well
+        RxBus.getInstance().post(connectorId, Sync.builder()
+                .syncId(syncRequest.getSyncId())
+                .value(syncProcess.size() + 1)
+                .state(States.IN_PROGRESS)
+                .build());
 
-                    return null;
-                }, commitWarningTimeout, TimeUnit.MILLISECONDS);
+        syncProcess.startCommitProcessing(commit);
 
-                // this is the timeout timer that'll basically kill the sync if a commit isn't responded too
-                commitTimeoutTimer = timeoutWatcherExecutor.schedule(() -> {
-                    final String errorMessage = "error, commit timeout " + commit.getCommitId() + " has not returned within " + commitErrorTimeout + "ms";
-                    FPLog.e(TAG, errorMessage);
+        FPLog.i(SYNC_DATA, "Process Next Commit: {}", commit);
 
-                    CommitFailed.Builder builder = new CommitFailed.Builder().commit(commit);
-                    builder.errorMessage(errorMessage);
-                    RxBus.getInstance().post(connectorId, builder.build());
+        // start the watching timers, this first timer is responsible for producing a warning
+        // if a commit isn't responded to in a timely manner
+        boolean commitTimersEnabled = syncRequest.getConnector().isCommitTimersEnabled();
 
-                    return null;
-                }, commitErrorTimeout, TimeUnit.MILLISECONDS);
-            } else {
-                FPLog.d(TAG, "skipped commit timers, they're turned off in ApiManager configuration");
-            }
+        // the budget adapts to the latency observed for this commit type, the connector values are the defaults
+        AdaptiveCommitTimeouts.Budget budget = AdaptiveCommitTimeouts.getInstance().getBudget(
+                syncRequest.getDevice().getDeviceIdentifier(),
+                commit.getCommitType(),
+                syncRequest.getConnector().getCommitWarningTimeout(),
+                syncRequest.getConnector().getCommitErrorTimeout());
 
-            // call the payment connector
-            syncRequest.getConnector().processCommit(commit);
+        int commitWarningTimeout = budget.getWarningTimeout();
+        int commitErrorTimeout = budget.getErrorTimeout();
 
-            // expose the commit out to others who may want to take action
-            RxBus.getInstance().post(connectorId, commit);
+        if (commitTimersEnabled) {
+            commitWarningTimer = TimerService.getInstance().schedule(() ->
+                    FPLog.w(TAG, "warning, commit " + commit + " has not returned within " + commitWarningTimeout + "ms"),
+                    commitWarningTimeout, TimeUnit.MILLISECONDS);
+
+            // this is the timeout timer that'll basically kill the sync if a commit isn't responded too
+            commitTimeoutTimer = TimerService.getInstance().schedule(() -> {
+                final String errorMessage = "error, commit timeout " + commit.getCommitId() + " has not returned within " + commitErrorTimeout + "ms";
+                FPLog.e(TAG, errorMessage);
+
+                // the commit took at least this long, the next budget is widened
+                AdaptiveCommitTimeouts.getInstance().recordTimeout(
+                        syncRequest.getDevice().getDeviceIdentifier(), commit.getCommitType(), commitErrorTimeout);
+
+                CommitFailed.Builder builder = new CommitFailed.Builder().commit(commit);
+                builder.errorMessage(errorMessage);
+                RxBus.getInstance().post(connectorId, builder.build());
+            }, commitErrorTimeout, TimeUnit.MILLISECONDS);
         } else {
-            RxBus.getInstance().post(connectorId, Sync.builder()
-                    .syncId(syncRequest.getSyncId())
-                    .state(States.COMPLETED)
-                    .build());
+            FPLog.d(TAG, "skipped commit timers, they're turned off in ApiManager configuration");
         }
+
+        // call the payment connector
+        syncRequest.getConnector().processCommit(commit);
+
+        // expose the commit out to others who may want to take action
+        RxBus.getInstance().post(connectorId, commit);
+    }
+
+    /**
+     * Decides whether a running sync should stop at the next commit boundary
+     */
+    public interface YieldPolicy {
+        boolean shouldYield(SyncRequest syncRequest);
     }
 
     private class SyncListener extends Listener implements IListeners.SyncListener {
@@ -350,12 +601,18 @@ public final class SyncWorkerTask implements Runnable {
 
         @Override
         public void onSyncStateChanged(Sync syncEvent) {
-            FPLog.d(SYNC_DATA, "onSyncStateChanged: " + syncEvent);
+            FPLog.d(SYNC_DATA, "onSyncStateChanged: {}", syncEvent);
+
+            if (syncEvent.getSyncId() != null && !syncEvent.getSyncId().equals(syncRequest.getSyncId())) {
+                FPLog.d(TAG, "ignoring syncEvent of another sync: {}", syncEvent);
+                return;
+            }
 
             switch (syncEvent.getState()) {
                 case States.STARTED:
+                case States.RESUMED:
 
-                    FPLog.d(TAG, "sync started: " + syncEvent);
+                    FPLog.d(TAG, "sync started: {}", syncEvent);
                     syncProcess = new SyncProcess(syncRequest);
                     syncProcess.start();
 
@@ -367,12 +624,18 @@ public final class SyncWorkerTask implements Runnable {
                 case States.FAILED:
                 case States.SKIPPED:
                 case States.TIMEOUT:
+                    if (completionLatch.getCount() == 0) {
+                        // the sync has already finished, e.g. failed after its last commit
+                        break;
+                    }
+
                     if (syncRequest == null) {
                         FPLog.i(TAG, "no current sync request on sync event: " + syncEvent);
                     }
 
                     syncProcess.finish();
 
+                    syncResult = syncEvent;
                     completionLatch.countDown();
 
                     break;
@@ -402,16 +665,14 @@ public final class SyncWorkerTask implements Runnable {
                 return;
             }
 
-            syncProcess.finishCommitProcessing();
+            syncProcess.finishAppliedCommitProcessing();
 
-            FPLog.i(SYNC_DATA, "Commit Success: " + commitSuccess);
+            FPLog.i(SYNC_DATA, "Commit Success: {}", commitSuccess);
             commitSuccessCounter.incrementAndGet();
 
             cancelCommitTimers();
 
-            moveLastCommitPointer(commitSuccess.getCommitId());
-
-            confirmCommit(commitSuccess.getCommit(), new CommitConfirm(ResponseState.SUCCESS));
+            completeCommit(commitSuccess.getCommit(), commitSuccess.getCommitId(), new CommitConfirm(ResponseState.SUCCESS));
 
             EventCallback eventCallback = new EventCallback.Builder()
                     .setCommand(EventCallback.getCommandForCommit(commitSuccess.getCommit()))
@@ -442,9 +703,7 @@ public final class SyncWorkerTask implements Runnable {
 
             cancelCommitTimers();
 
-            moveLastCommitPointer(commitFailed.getCommitId());
-
-            confirmCommit(commitFailed.getCommit(), new CommitConfirm(ResponseState.FAILED));
+            completeCommit(commitFailed.getCommit(), commitFailed.getCommitId(), new CommitConfirm(ResponseState.FAILED));
 
             EventCallback eventCallback = new EventCallback.Builder()
                     .setCommand(EventCallback.getCommandForCommit(commitFailed.getCommit()))
@@ -471,14 +730,12 @@ public final class SyncWorkerTask implements Runnable {
 
             syncProcess.finishCommitProcessing();
 
-            FPLog.i(SYNC_DATA, "Commit Skipped: " + commitSkipped);
+            FPLog.i(SYNC_DATA, "Commit Skipped: {}", commitSkipped);
             commitSkippedCounter.incrementAndGet();
 
             cancelCommitTimers();
 
-            moveLastCommitPointer(commitSkipped.getCommitId());
-
-            confirmCommit(commitSkipped.getCommit(), new CommitConfirm(ResponseState.SKIPPED));
+            completeCommit(commitSkipped.getCommit(), commitSkipped.getCommitId(), new CommitConfirm(ResponseState.SKIPPED));
 
             EventCallback eventCallback = new EventCallback.Builder()
                     .setCommand(EventCallback.getCommandForCommit(commitSkipped.getCommit()))
@@ -490,33 +747,97 @@ public final class SyncWorkerTask implements Runnable {
             processNextCommit();
         }
 
+        /**
+         * Move the commit pointer and confirm the commit.
+         * In pipelined mode the pointer update and the confirmation request are handed off to a serial executor,
+         * so they keep their order but no longer delay the execution of the next commit.
+         * The confirmation itself is answered asynchronously in both modes.
+         *
+         * @param commit   processed commit
+         * @param commitId processed commit id
+         * @param confirm  commit confirmation
+         */
+        private void completeCommit(final Commit commit, final String commitId, final CommitConfirm confirm) {
+            Runnable completion = () -> {
+                moveLastCommitPointer(commitId);
+                confirmCommit(commit, confirm);
+            };
+
+            if (pipelined && queueCompletion(commitId, completion)) {
+                return;
+            }
+
+            completion.run();
+        }
+
         /**
          * Utilized {@link DevicePreferenceData} to move the individual devices last processed commitId forward
          *
          * @param lastCommitId
          */
         private void moveLastCommitPointer(String lastCommitId) {
-            FPLog.d(TAG, "moving lastCommitId for deviceId " + syncRequest.getDevice().getDeviceIdentifier() + " to " + lastCommitId);
+            FPLog.d(TAG, "moving lastCommitId for deviceId {} to {}", syncRequest.getDevice().getDeviceIdentifier(), lastCommitId);
 
             DevicePreferenceData deviceData = DevicePreferenceData.load(
                     mContext, syncRequest.getDevice().getDeviceIdentifier());
 
             deviceData.setLastCommitId(lastCommitId);
 
+            // durable before the commit is confirmed, concurrent syncs of other devices share the fsync
             DevicePreferenceData.store(mContext, deviceData);
         }
 
+        private boolean queueCompletion(String commitId, final Runnable completion) {
+            synchronized (confirmLock) {
+                if (pipelineClosed) {
+                    FPLog.w(TAG, "commit pipeline is already closed, completing commit " + commitId + " inline");
+                    return false;
+                }
+                pendingCompletions++;
+            }
+
+            boolean queued = commitPipeline.execute(SyncWorkerTask.this, () -> {
+                try {
+                    if (!pipelineAborted) {
+                        completion.run();
+                    }
+                } finally {
+                    completionFinished();
+                }
+            });
+
+            if (!queued) {
+                FPLog.w(TAG, "commit pipeline is full, completing commit " + commitId + " inline");
+                completionFinished();
+            }
+            return queued;
+        }
+
         private void confirmCommit(final Commit commit, final CommitConfirm confirm) {
             if (commit.canConfirmCommit()) {
+                // the confirmation is sent asynchronously, a pipelined sync waits for the answers when it's drained
+                final boolean tracked = pipelined;
+                if (tracked) {
+                    synchronized (confirmLock) {
+                        pendingConfirms++;
+                    }
+                }
+
                 commit.confirm(confirm, new ApiCallback<Void>() {
                     @Override
                     public void onSuccess(Void result) {
                         FPLog.i("commit " + commit + " successfully confirmed with " + confirm);
+                        if (tracked) {
+                            confirmFinished();
+                        }
                     }
 
                     @Override
                     public void onFailure(@ResultCode.Code int errorCode, String errorMessage) {
                         FPLog.e("error confirming commit " + commit + ", errorCode: " + errorCode + ", errorMessage: " + errorMessage);
+                        if (tracked) {
+                            confirmFinished();
+                        }
                     }
                 });
             } else {
@@ -526,17 +847,17 @@ public final class SyncWorkerTask implements Runnable {
 
         private void cancelCommitTimers() {
             if (commitWarningTimer != null) {
-                boolean result = commitWarningTimer.cancel(true);
+                boolean result = commitWarningTimer.cancel();
                 commitWarningTimer = null;
 
-                FPLog.d(TAG, "canceled commitWarningTimer: " + result);
+                FPLog.d(TAG, "canceled commitWarningTimer: {}", result);
             }
 
             if (commitTimeoutTimer != null) {
-                boolean result = commitTimeoutTimer.cancel(true);
+                boolean result = commitTimeoutTimer.cancel();
                 commitTimeoutTimer = null;
 
-                FPLog.d(TAG, "canceled commitTimeoutTimer: " + result);
+                FPLog.d(TAG, "canceled commitTimeoutTimer: {}", result);
             }
         }
 
@@ -0,0 +1,314 @@
+package com.fitpay.android.utils;
+
+import androidx.annotation.IntDef;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Asynchronous delivery of {@link FPLog} statements to the registered {@link FPLog.ILog}s.
+ * <p>
+ * Logging threads write into a preallocated lock-free ring buffer and return, a dedicated thread
+ * delivers the statements in batches. A slow log implementation doesn't stall the BLE callbacks or
+ * the sync anymore, it only fills the ring. What happens when the ring is full depends on the
+ * overflow policy.
+ * <p>
+ * Start it with {@link FPLog#startAsync(int, int)}.
+ */
+public final class AsyncLog {
+
+    /**
+     * Drop the new statement, the logging thread is never delayed
+     */
+    public static final int DROP = 0;
+
+    /**
+     * Wait until there is room, no statement is lost
+     */
+    public static final int BLOCK = 1;
+
+    @IntDef({DROP, BLOCK})
+    @Retention(RetentionPolicy.SOURCE)
+    public @interface Overflow {
+    }
+
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    static final int MAX_BATCH = 64;
+
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final long FULL_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+    private final int capacity;
+    private final int mask;
+    private final int overflow;
+
+    private final Entry[] entries;
+    // sequence of every slot: equals the position when the slot is free, position + 1 when it's written
+    private final AtomicLongArray sequences;
+
+    private final AtomicLong tail = new AtomicLong();
+    // written by the consumer only
+    private volatile long head;
+
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong delivered = new AtomicLong();
+
+    private final Thread consumer;
+    private volatile boolean consumerIdle;
+    private volatile boolean running = true;
+
+    /**
+     * @param capacity number of statements waiting for delivery, rounded up to a power of two
+     * @param overflow what to do with a new statement when the ring is full
+     */
+    AsyncLog(int capacity, @Overflow int overflow) {
+        if (capacity <= 0 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("invalid capacity: " + capacity);
+        }
+
+        if (overflow != DROP && overflow != BLOCK) {
+            throw new IllegalArgumentException("unknown overflow policy: " + overflow);
+        }
+
+        this.capacity = capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+        this.mask = this.capacity - 1;
+        this.overflow = overflow;
+
+        entries = new Entry[this.capacity];
+        sequences = new AtomicLongArray(this.capacity);
+        for (int i = 0; i < this.capacity; i++) {
+            entries[i] = new Entry();
+            sequences.set(i, i);
+        }
+
+        consumer = new Thread(this::consume, "fitpay-log");
+        consumer.setDaemon(true);
+        consumer.start();
+    }
+
+    /**
+     * Queue a statement for delivery
+     *
+     * @return false if it has been dropped
+     */
+    boolean log(@FPLog.LogLevel int level, String tag, String text, Throwable throwable) {
+        if (Thread.currentThread() == consumer) {
+            // a log implementation that logs itself, the ring could be full of its own statements
+            FPLog.deliver(level, tag, text, throwable);
+            return true;
+        }
+
+        while (!offer(level, tag, text, throwable)) {
+            if (overflow == DROP) {
+                dropped.incrementAndGet();
+                return false;
+            }
+
+            if (!running) {
+                FPLog.deliver(level, tag, text, throwable);
+                return true;
+            }
+
+            wakeConsumer();
+            LockSupport.parkNanos(FULL_PARK_NANOS);
+        }
+
+        wakeConsumer();
+        return true;
+    }
+
+    private boolean offer(int level, String tag, String text, Throwable throwable) {
+        long position = tail.get();
+        int index;
+
+        while (true) {
+            index = (int) position & mask;
+            long diff = sequences.get(index) - position;
+
+            if (diff == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    break;
+                }
+                position = tail.get();
+            } else if (diff < 0) {
+                // the slot of the previous round hasn't been delivered yet
+                return false;
+            } else {
+                position = tail.get();
+            }
+        }
+
+        Entry entry = entries[index];
+        entry.level = level;
+        entry.tag = tag;
+        entry.text = text;
+        entry.throwable = throwable;
+        sequences.lazySet(index, position + 1);
+        return true;
+    }
+
+    private void wakeConsumer() {
+        if (consumerIdle) {
+            consumerIdle = false;
+            LockSupport.unpark(consumer);
+        }
+    }
+
+    private void consume() {
+        while (running) {
+            if (drainBatch() == 0) {
+                consumerIdle = true;
+                // a statement published before the flag was set hasn't woken us up
+                if (isEmpty() && running) {
+                    LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                }
+                consumerIdle = false;
+            }
+        }
+
+        while (drainBatch() > 0) {
+            // deliver what's left
+        }
+    }
+
+    /**
+     * Deliver up to {@link #MAX_BATCH} published statements and free their slots at once
+     *
+     * @return number of delivered statements
+     */
+    private int drainBatch() {
+        long start = head;
+        int count = 0;
+
+        while (count < MAX_BATCH && sequences.get((int) (start + count) & mask) == start + count + 1) {
+            count++;
+        }
+
+        for (int i = 0; i < count; i++) {
+            Entry entry = entries[(int) (start + i) & mask];
+
+            try {
+                FPLog.deliver(entry.level, entry.tag, entry.text, entry.throwable);
+            } catch (Throwable ignored) {
+                // a failing log implementation must not stop the delivery
+            }
+
+            entry.tag = null;
+            entry.text = null;
+            entry.throwable = null;
+        }
+
+        for (int i = 0; i < count; i++) {
+            long position = start + i;
+            sequences.lazySet((int) position & mask, position + capacity);
+        }
+
+        if (count > 0) {
+            head = start + count;
+            delivered.addAndGet(count);
+        }
+
+        return count;
+    }
+
+    private boolean isEmpty() {
+        long position = head;
+        return sequences.get((int) position & mask) != position + 1;
+    }
+
+    /**
+     * Wait until the statements logged so far have been delivered
+     *
+     * @param timeout max time to wait
+     * @param unit    time unit
+     * @return false if the timeout elapsed
+     */
+    public boolean flush(long timeout, TimeUnit unit) {
+        long target = tail.get();
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+
+        while (head < target) {
+            if (!consumer.isAlive() || System.nanoTime() - deadline > 0) {
+                return head >= target;
+            }
+
+            wakeConsumer();
+            LockSupport.parkNanos(FULL_PARK_NANOS);
+        }
+
+        return true;
+    }
+
+    /**
+     * Deliver the remaining statements and stop the consumer thread
+     */
+    void shutdown(long timeout, TimeUnit unit) {
+        running = false;
+        LockSupport.unpark(consumer);
+
+        if (Thread.currentThread() != consumer) {
+            try {
+                consumer.join(unit.toMillis(timeout));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    @Overflow
+    public int getOverflow() {
+        return overflow;
+    }
+
+    /**
+     * @return number of statements waiting for delivery
+     */
+    public int getPending() {
+        return (int) Math.max(0, tail.get() - head);
+    }
+
+    /**
+     * @return number of delivered statements
+     */
+    public long getDelivered() {
+        return delivered.get();
+    }
+
+    /**
+     * @return number of statements dropped because the ring was full
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public String toString() {
+        return "AsyncLog{" +
+                "capacity=" + capacity +
+                ", overflow=" + overflow +
+                ", pending=" + getPending() +
+                ", delivered=" + delivered.get() +
+                ", dropped=" + dropped.get() +
+                '}';
+    }
+
+    private static final class Entry {
+        private int level;
+        private String tag;
+        private String text;
+        private Throwable throwable;
+    }
+}
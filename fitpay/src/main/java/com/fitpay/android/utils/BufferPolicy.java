@@ -0,0 +1,86 @@
+package com.fitpay.android.utils;
+
+import androidx.annotation.IntDef;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+
+/**
+ * Bound of the events waiting for a bus subscriber and what happens when it's reached.
+ */
+public final class BufferPolicy {
+
+    /**
+     * Drop the oldest waiting event to make room for the new one
+     */
+    public static final int DROP_OLDEST = 0;
+
+    /**
+     * Drop the new event
+     */
+    public static final int DROP_NEWEST = 1;
+
+    /**
+     * Keep only the newest event, the capacity is always 1
+     */
+    public static final int LATEST = 2;
+
+    /**
+     * Block the posting thread until there is room. The event is buffered right away and the poster waits
+     * once the event has reached every subscriber, so the buffer holds one extra event per blocked poster.
+     * A poster is never blocked where the subscriber would have to deliver the events it waits for: in the
+     * subscriber itself, on the main thread for a main thread subscriber, on the {@link EventLanes lane}
+     * of a lane subscriber, or on the thread of the latest delivery. The events are buffered beyond
+     * the capacity instead.
+     * Other single thread schedulers are only known after their first delivery, don't post to a subscriber
+     * on its own scheduler before it has received an event.
+     */
+    public static final int BLOCK = 3;
+
+    @IntDef({DROP_OLDEST, DROP_NEWEST, LATEST, BLOCK})
+    @Retention(RetentionPolicy.SOURCE)
+    public @interface Overflow {
+    }
+
+    /**
+     * No limit, the behavior of subscribers registered without a policy
+     */
+    public static final BufferPolicy UNBOUNDED = new BufferPolicy(Integer.MAX_VALUE, DROP_NEWEST);
+
+    private final int capacity;
+    private final int overflow;
+
+    /**
+     * @param capacity max number of events waiting for the subscriber
+     * @param overflow what to do with a new event when the buffer is full
+     */
+    public BufferPolicy(int capacity, @Overflow int overflow) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be greater than 0: " + capacity);
+        }
+
+        if (overflow < DROP_OLDEST || overflow > BLOCK) {
+            throw new IllegalArgumentException("unknown overflow policy: " + overflow);
+        }
+
+        this.capacity = overflow == LATEST ? 1 : capacity;
+        this.overflow = overflow;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    @Overflow
+    public int getOverflow() {
+        return overflow;
+    }
+
+    @Override
+    public String toString() {
+        return "BufferPolicy{" +
+                "capacity=" + capacity +
+                ", overflow=" + overflow +
+                '}';
+    }
+}
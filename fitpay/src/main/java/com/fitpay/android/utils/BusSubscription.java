@@ -0,0 +1,385 @@
+package com.fitpay.android.utils;
+
+import android.os.Looper;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.reactivex.Scheduler;
+import io.reactivex.android.schedulers.AndroidSchedulers;
+import io.reactivex.disposables.Disposable;
+import io.reactivex.functions.Consumer;
+
+/**
+ * Subscriber of {@link RxBus}.
+ * <p>
+ * Posted events wait in a buffer bounded by the {@link BufferPolicy} until the scheduler of the
+ * subscriber delivers them in order. The counters tell how many events have been delivered or dropped
+ * and how far the subscriber has fallen behind.
+ * <p>
+ * Handing an event over never waits, so a full subscriber doesn't hold up the other subscribers of the
+ * event or the bus locks. With {@link BufferPolicy#BLOCK} the event is buffered anyway and the poster waits
+ * for room in {@link #awaitCapacity()} once the event has been handed to every subscriber. A poster running
+ * where the subscriber's scheduler delivers its events never waits, it would wait for itself.
+ * <p>
+ * Updates of sticky events carry the sequence they have been stored with, an update older than the one
+ * already delivered for the same type and filter, or one covered by the sticky replay, is skipped.
+ *
+ * @param <T> event type
+ */
+public final class BusSubscription<T> implements Disposable {
+
+    private final Class<T> eventClass;
+    private final BufferPolicy policy;
+    private final Consumer<T> onNext;
+    private final Scheduler scheduler;
+    private final Scheduler.Worker worker;
+    private final BusSubscriptionListener listener;
+
+    // guarded by this
+    private final Queue<Object> queue = new ArrayDeque<>();
+    private int maxBuffered;
+    // events that arrived before the sticky replay has been buffered
+    private List<Object> held;
+    // sticky updates up to this sequence are covered by the replay
+    private long replayedSequence;
+    // sequence of the latest sticky update delivered, by sticky key
+    private Map<Object, Long> stickySequences;
+
+    private final AtomicInteger wip = new AtomicInteger();
+    private final AtomicLong delivered = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+
+    private volatile Disposable upstream;
+    private volatile boolean disposed;
+    private volatile Thread drainThread;
+    // thread of the latest delivery, the thread of a single thread scheduler once it has delivered
+    private volatile Thread deliveryThread;
+
+    BusSubscription(@NonNull Class<T> eventClass, @NonNull Scheduler scheduler, @NonNull Consumer<T> onNext,
+                    @NonNull BufferPolicy policy, @NonNull BusSubscriptionListener listener) {
+        this.eventClass = eventClass;
+        this.policy = policy;
+        this.onNext = onNext;
+        this.scheduler = scheduler;
+        this.worker = scheduler.createWorker();
+        this.listener = listener;
+    }
+
+    void setUpstream(Disposable upstream) {
+        this.upstream = upstream;
+        if (disposed) {
+            upstream.dispose();
+        }
+    }
+
+    /**
+     * Hold back posted events until {@link #replay(List)}
+     *
+     * @param replayedSequence sticky updates up to this sequence are part of the replay
+     */
+    synchronized void holdForReplay(long replayedSequence) {
+        this.replayedSequence = replayedSequence;
+        held = new ArrayList<>();
+    }
+
+    /**
+     * Buffer the sticky replay, then the events held back while it was being collected
+     *
+     * @param events latest sticky events
+     * @return true if the caller should wait for room, see {@link #awaitCapacity()}
+     */
+    boolean replay(List<Object> events) {
+        boolean congested = false;
+
+        synchronized (this) {
+            List<Object> live = held;
+            held = null;
+
+            if (disposed) {
+                return false;
+            }
+
+            for (Object event : events) {
+                congested |= enqueue(event);
+            }
+
+            if (live != null) {
+                for (Object event : live) {
+                    congested |= enqueue(event);
+                }
+            }
+        }
+
+        schedule();
+        return congested;
+    }
+
+    /**
+     * Buffer a posted event and schedule the delivery, never waits
+     *
+     * @param event event, {@link Wrapper} or {@link StickyEvents.Update}
+     * @return true if the buffer is over its capacity and the poster should wait for room, see {@link #awaitCapacity()}
+     */
+    boolean offer(Object event) {
+        boolean congested;
+
+        synchronized (this) {
+            if (disposed) {
+                return false;
+            }
+
+            if (held != null) {
+                held.add(event);
+                return false;
+            }
+
+            congested = enqueue(event);
+        }
+
+        schedule();
+        return congested;
+    }
+
+    /**
+     * Wait until the buffer is back within its capacity. A poster running on the scheduler of the subscriber
+     * is never blocked, see {@link #isSchedulerThread()}.
+     */
+    void awaitCapacity() {
+        if (isSchedulerThread()) {
+            return;
+        }
+
+        synchronized (this) {
+            while (queue.size() > policy.getCapacity() && !disposed) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * The subscriber can't deliver while its scheduler thread waits for it: the subscriber posting to itself,
+     * a poster on the main thread or on the lane the subscriber is delivered on, or on the thread of the
+     * latest delivery, the only one of a single thread scheduler
+     */
+    private boolean isSchedulerThread() {
+        Thread current = Thread.currentThread();
+        if (drainThread == current || deliveryThread == current) {
+            return true;
+        }
+
+        if (scheduler == AndroidSchedulers.mainThread()) {
+            Looper mainLooper = Looper.getMainLooper();
+            if (mainLooper != null && mainLooper == Looper.myLooper()) {
+                return true;
+            }
+        }
+
+        return EventLanes.getInstance().isCurrentLane(scheduler);
+    }
+
+    /**
+     * Apply the overflow policy and buffer the event, guarded by this
+     *
+     * @return true if the buffer has gone over its capacity
+     */
+    private boolean enqueue(Object event) {
+        if (event instanceof StickyEvents.Update) {
+            StickyEvents.Update update = (StickyEvents.Update) event;
+            if (!isNewer(update)) {
+                return false;
+            }
+            event = update.getEvent();
+        }
+
+        if (queue.size() >= policy.getCapacity()) {
+            switch (policy.getOverflow()) {
+                case BufferPolicy.DROP_NEWEST:
+                    dropped.incrementAndGet();
+                    return false;
+
+                case BufferPolicy.BLOCK:
+                    // the poster waits for room once every subscriber has got the event
+                    break;
+
+                default:
+                    queue.poll();
+                    dropped.incrementAndGet();
+                    break;
+            }
+        }
+
+        queue.add(event);
+        maxBuffered = Math.max(maxBuffered, queue.size());
+
+        return queue.size() > policy.getCapacity();
+    }
+
+    /**
+     * Sticky updates are stored in sequence but may be handed over out of it by concurrent posters
+     */
+    private boolean isNewer(StickyEvents.Update update) {
+        if (update.getSequence() <= replayedSequence) {
+            return false;
+        }
+
+        if (stickySequences == null) {
+            stickySequences = new HashMap<>();
+        }
+
+        Long delivered = stickySequences.get(update.getKey());
+        if (delivered != null && delivered > update.getSequence()) {
+            return false;
+        }
+
+        stickySequences.put(update.getKey(), update.getSequence());
+        return true;
+    }
+
+    private void schedule() {
+        if (wip.getAndIncrement() == 0) {
+            worker.schedule(this::drain);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void drain() {
+        drainThread = Thread.currentThread();
+        deliveryThread = drainThread;
+
+        try {
+            int missed = 1;
+
+            while (true) {
+                while (true) {
+                    Object event;
+
+                    synchronized (this) {
+                        if (disposed) {
+                            return;
+                        }
+
+                        event = queue.poll();
+                        if (event != null && policy.getOverflow() == BufferPolicy.BLOCK) {
+                            notifyAll();
+                        }
+                    }
+
+                    if (event == null) {
+                        break;
+                    }
+
+                    try {
+                        onNext.accept((T) event);
+                        delivered.incrementAndGet();
+                    } catch (Throwable throwable) {
+                        listener.onError(this, throwable);
+                        dispose();
+                        return;
+                    }
+                }
+
+                missed = wip.addAndGet(-missed);
+                if (missed == 0) {
+                    break;
+                }
+            }
+        } finally {
+            drainThread = null;
+        }
+    }
+
+    @Override
+    public void dispose() {
+        synchronized (this) {
+            if (disposed) {
+                return;
+            }
+
+            disposed = true;
+            queue.clear();
+            held = null;
+            notifyAll();
+        }
+
+        Disposable current = upstream;
+        if (current != null) {
+            current.dispose();
+        }
+
+        worker.dispose();
+        listener.onDisposed(this);
+    }
+
+    @Override
+    public boolean isDisposed() {
+        return disposed;
+    }
+
+    public Class<T> getEventClass() {
+        return eventClass;
+    }
+
+    public BufferPolicy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * @return number of events waiting for delivery
+     */
+    public synchronized int getBuffered() {
+        return queue.size();
+    }
+
+    /**
+     * @return highest number of events that have been waiting for delivery at the same time
+     */
+    public synchronized int getMaxBuffered() {
+        return maxBuffered;
+    }
+
+    /**
+     * @return number of delivered events
+     */
+    public long getDelivered() {
+        return delivered.get();
+    }
+
+    /**
+     * @return number of events dropped by the overflow policy
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    @Override
+    public String toString() {
+        return "BusSubscription{" +
+                "eventClass=" + eventClass.getSimpleName() +
+                ", policy=" + policy +
+                ", buffered=" + getBuffered() +
+                ", maxBuffered=" + getMaxBuffered() +
+                ", delivered=" + delivered.get() +
+                ", dropped=" + dropped.get() +
+                '}';
+    }
+
+    interface BusSubscriptionListener {
+        void onError(BusSubscription<?> subscription, Throwable throwable);
+
+        void onDisposed(BusSubscription<?> subscription);
+    }
+}
@@ -1,7 +1,6 @@
 package com.fitpay.android.utils;
 
 import com.fitpay.android.api.models.ErrorResponse;
-import com.fitpay.android.api.models.Links;
 import com.fitpay.android.api.models.Payload;
 import com.fitpay.android.api.models.Transaction;
 import com.fitpay.android.api.models.card.CreditCardInfo;
@@ -15,7 +14,6 @@ import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 
 import java.util.concurrent.Executor;
-import java.util.concurrent.Executors;
 
 public final class Constants {
 
@@ -43,8 +41,11 @@ public final class Constants {
 
     private static Gson gson;
 
-    private static Executor executor = Executors.newSingleThreadExecutor();
+    private static final Executor executor = EventLanes.getInstance().getExecutor(EventLanes.DEFAULT_LANE);
 
+    /**
+     * @return ordered executor of the default lane, see {@link EventLanes}
+     */
     public static Executor getExecutor() {
         return executor;
     }
@@ -54,7 +55,6 @@ public final class Constants {
             gson = new GsonBuilder()
                     .setDateFormat(Constants.DATE_FORMAT)
                     .registerTypeAdapter(ECCKeyPair.class, new ModelAdapter.KeyPairSerializer())
-                    .registerTypeAdapter(Links.class, new ModelAdapter.LinksDeserializer())
                     .registerTypeAdapter(UserInfo.class, new ModelAdapter.DataSerializer<>())
                     .registerTypeAdapter(CreditCardInfo.class, new ModelAdapter.DataSerializer<>())
                     .registerTypeAdapter(Payload.class, new ModelAdapter.PayloadDeserializer())
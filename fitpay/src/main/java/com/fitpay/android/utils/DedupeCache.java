@@ -0,0 +1,192 @@
+package com.fitpay.android.utils;
+
+import androidx.annotation.NonNull;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Thread-safe, bounded, insertion-ordered set of recently seen keys.
+ * <p>
+ * Lookup, insertion and eviction of the oldest key are O(1), so the window can grow to tens of
+ * thousands of keys. Keys optionally expire after a time-to-live.
+ *
+ * @param <K> key type
+ */
+public final class DedupeCache<K> {
+
+    private final LinkedHashMap<K, Long> entries;
+
+    private int maxSize;
+    private long timeToLiveNanos;
+
+    private long hitCount;
+    private long missCount;
+    private long evictionCount;
+    private long expirationCount;
+
+    /**
+     * @param maxSize max number of keys, the oldest key is evicted once it's exceeded
+     */
+    public DedupeCache(int maxSize) {
+        this(maxSize, 0, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @param maxSize    max number of keys, the oldest key is evicted once it's exceeded
+     * @param timeToLive time after which a key is forgotten, 0 to keep keys until they are evicted
+     * @param unit       time unit of timeToLive
+     */
+    public DedupeCache(int maxSize, long timeToLive, @NonNull TimeUnit unit) {
+        checkMaxSize(maxSize);
+
+        this.maxSize = maxSize;
+        this.timeToLiveNanos = unit.toNanos(Math.max(timeToLive, 0));
+        this.entries = new LinkedHashMap<K, Long>(16, 0.75f, false) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, Long> eldest) {
+                if (size() > DedupeCache.this.maxSize) {
+                    evictionCount++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Remember the key
+     *
+     * @param key key
+     * @return true if the key is new, false if it's a duplicate
+     */
+    public synchronized boolean add(@NonNull K key) {
+        long now = System.nanoTime();
+        expire(now);
+
+        if (entries.containsKey(key)) {
+            hitCount++;
+            return false;
+        }
+
+        missCount++;
+        entries.put(key, now);
+        return true;
+    }
+
+    /**
+     * @param key key
+     * @return true if the key has been seen and hasn't expired or been evicted yet
+     */
+    public synchronized boolean contains(@NonNull K key) {
+        expire(System.nanoTime());
+        return entries.containsKey(key);
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Change the max number of keys. Oldest keys are evicted if the cache is bigger than the new size.
+     *
+     * @param maxSize max number of keys
+     */
+    public synchronized void setMaxSize(int maxSize) {
+        checkMaxSize(maxSize);
+
+        this.maxSize = maxSize;
+
+        Iterator<K> it = entries.keySet().iterator();
+        while (entries.size() > maxSize && it.hasNext()) {
+            it.next();
+            it.remove();
+            evictionCount++;
+        }
+    }
+
+    public synchronized int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Change the time-to-live of the keys
+     *
+     * @param timeToLive time after which a key is forgotten, 0 to keep keys until they are evicted
+     * @param unit       time unit of timeToLive
+     */
+    public synchronized void setTimeToLive(long timeToLive, @NonNull TimeUnit unit) {
+        this.timeToLiveNanos = unit.toNanos(Math.max(timeToLive, 0));
+    }
+
+    /**
+     * @return number of duplicates detected
+     */
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * @return number of new keys
+     */
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * @return number of keys removed because the cache was full
+     */
+    public synchronized long getEvictionCount() {
+        return evictionCount;
+    }
+
+    /**
+     * @return number of keys removed because their time-to-live has passed
+     */
+    public synchronized long getExpirationCount() {
+        return expirationCount;
+    }
+
+    /**
+     * Keys are ordered by insertion time, so expired keys are always at the head of the map
+     */
+    private void expire(long now) {
+        if (timeToLiveNanos <= 0) {
+            return;
+        }
+
+        Iterator<Long> it = entries.values().iterator();
+        while (it.hasNext()) {
+            if (now - it.next() < timeToLiveNanos) {
+                break;
+            }
+
+            it.remove();
+            expirationCount++;
+        }
+    }
+
+    private static void checkMaxSize(int maxSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize must be greater than 0: " + maxSize);
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "DedupeCache{" +
+                "size=" + entries.size() +
+                ", maxSize=" + maxSize +
+                ", hitCount=" + hitCount +
+                ", missCount=" + missCount +
+                ", evictionCount=" + evictionCount +
+                ", expirationCount=" + expirationCount +
+                '}';
+    }
+}
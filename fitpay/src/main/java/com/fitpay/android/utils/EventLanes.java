@@ -0,0 +1,185 @@
+package com.fitpay.android.utils;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.fitpay.android.paymentdevice.utils.sync.KeyedSerialExecutor;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.reactivex.Scheduler;
+import io.reactivex.schedulers.Schedulers;
+
+/**
+ * SDK-wide background execution lanes.
+ * <p>
+ * A lane is an ordered queue of tasks, usually one per connector or device. Tasks of a lane run one
+ * at a time in submission order, different lanes run in parallel on a bounded pool of worker threads.
+ * Lanes are created on demand and cost nothing while they are idle. Work that isn't bound to a
+ * connector runs on the {@link #DEFAULT_LANE}, it's what {@link Constants#getExecutor()} returns.
+ */
+public final class EventLanes {
+
+    public static final String DEFAULT_LANE = "default";
+
+    public static final int DEFAULT_WORKERS = 4;
+
+    private static final long KEEP_ALIVE_SECONDS = 30;
+
+    private static final EventLanes sInstance = new EventLanes(DEFAULT_WORKERS);
+
+    public static EventLanes getInstance() {
+        return sInstance;
+    }
+
+    // lane of the task running on the current thread
+    private static final ThreadLocal<String> currentLane = new ThreadLocal<>();
+
+    private volatile Pool pool;
+
+    // lane executors read the current pool on every task, so they outlive a change of the workers
+    private final ConcurrentHashMap<String, Scheduler> schedulers = new ConcurrentHashMap<>();
+
+    EventLanes(int workers) {
+        pool = new Pool(workers);
+    }
+
+    /**
+     * Change the number of worker threads. Call it during the SDK setup, tasks submitted before the change
+     * finish on the old workers and may overlap with newer tasks of the same lane. Idle workers of the old
+     * pool time out on their own.
+     *
+     * @param workers max number of lanes running at the same time
+     */
+    public synchronized void setWorkers(int workers) {
+        if (workers != pool.workers) {
+            pool = new Pool(workers);
+        }
+    }
+
+    public int getWorkers() {
+        return pool.workers;
+    }
+
+    /**
+     * @param lane lane name, usually a connector id. Null for the default lane
+     * @return executor that runs its tasks in order on the lane
+     */
+    @NonNull
+    public Executor getExecutor(@Nullable String lane) {
+        return new LaneExecutor(lane != null ? lane : DEFAULT_LANE);
+    }
+
+    /**
+     * @param lane lane name, usually a connector id. Null for the default lane
+     * @return scheduler that runs its tasks in order on the lane, the same instance for every call
+     */
+    @NonNull
+    public Scheduler getScheduler(@Nullable String lane) {
+        String key = lane != null ? lane : DEFAULT_LANE;
+
+        Scheduler scheduler = schedulers.get(key);
+        if (scheduler == null) {
+            Scheduler created = Schedulers.from(new LaneExecutor(key));
+            scheduler = schedulers.putIfAbsent(key, created);
+            if (scheduler == null) {
+                scheduler = created;
+            }
+        }
+
+        return scheduler;
+    }
+
+    /**
+     * A task waiting for work of its own lane never sees it done, the lane runs one task at a time
+     *
+     * @param scheduler scheduler of a lane, see {@link #getScheduler(String)}
+     * @return true if the current thread runs a task of the lane of the scheduler
+     */
+    public boolean isCurrentLane(@NonNull Scheduler scheduler) {
+        String lane = currentLane.get();
+        return lane != null && schedulers.get(lane) == scheduler;
+    }
+
+    /**
+     * @param lane lane name, null for the default lane
+     * @return number of tasks queued or running on the lane
+     */
+    public int getBacklog(@Nullable String lane) {
+        String key = lane != null ? lane : DEFAULT_LANE;
+        Pool current = pool;
+        return current.lanes.getPendingCount(key) + (current.lanes.isRunning(key) ? 1 : 0);
+    }
+
+    /**
+     * @return number of tasks queued or running of every busy lane, by lane name
+     */
+    @NonNull
+    public Map<String, Integer> getBacklogs() {
+        return pool.lanes.getBacklogs();
+    }
+
+    private final class LaneExecutor implements Executor {
+        private final String lane;
+
+        private LaneExecutor(String lane) {
+            this.lane = lane;
+        }
+
+        @Override
+        public void execute(@NonNull Runnable task) {
+            Runnable laneTask = () -> {
+                String previous = currentLane.get();
+                currentLane.set(lane);
+                try {
+                    task.run();
+                } finally {
+                    currentLane.set(previous);
+                }
+            };
+
+            if (!pool.lanes.execute(lane, laneTask)) {
+                throw new RejectedExecutionException("lane " + lane + " is full");
+            }
+        }
+    }
+
+    private static final class Pool {
+        private final int workers;
+        private final ThreadPoolExecutor threads;
+        private final KeyedSerialExecutor<String> lanes;
+
+        private Pool(int workers) {
+            if (workers <= 0) {
+                throw new IllegalArgumentException("workers must be greater than 0: " + workers);
+            }
+
+            this.workers = workers;
+
+            threads = new ThreadPoolExecutor(workers, workers, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<>(), new LaneThreadFactory());
+            threads.allowCoreThreadTimeOut(true);
+
+            lanes = new KeyedSerialExecutor<>(threads, workers, Integer.MAX_VALUE);
+        }
+    }
+
+    private static final class LaneThreadFactory implements ThreadFactory {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(@NonNull Runnable runnable) {
+            Thread thread = new Thread(runnable, "fitpay-lane-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -1,16 +1,26 @@
 package com.fitpay.android.utils;
 
 import androidx.annotation.IntDef;
+import androidx.annotation.Nullable;
 
 import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
-import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Created by Vlad on 14.11.2016.
+ * <p>
+ * Use the {@link Message} or the {} format overloads on hot paths, the message is built only if
+ * a registered log accepts the level. The levels of the registered logs are asked on every disabled
+ * statement, so a log may change its level at any time; {@link #updateLogLevel()} only spares
+ * the statements a lowered level no longer accepts.
+ * <p>
+ * The registered logs are called on the logging thread unless {@link #startAsync(int, int)} moves
+ * the delivery to a dedicated thread.
  */
 
 public class FPLog {
@@ -28,14 +38,59 @@ public class FPLog {
     }
 
     private static boolean showHTTPLogs = false;
-    private static final List<ILog> logs = new ArrayList<>();
+    private static final List<ILog> logs = new CopyOnWriteArrayList<>();
+    // snapshot of the logs for the per-statement level check, iterating it doesn't allocate
+    private static volatile ILog[] logArray = new ILog[0];
+
+    // most verbose level of the registered logs known so far, statements up to it are enabled right away
+    private static volatile int level = NONE;
+
+    private static final long ASYNC_SHUTDOWN_TIMEOUT = 5000;
+    private static volatile AsyncLog asyncLog;
 
     public static void addLogImpl(ILog iLog) {
         logs.add(iLog);
+        logArray = logs.toArray(new ILog[0]);
+        updateLogLevel();
     }
 
     public static void clean() {
         logs.clear();
+        logArray = new ILog[0];
+        updateLogLevel();
+    }
+
+    /**
+     * Recompute the enabled log level. A raised level of a registered {@link ILog} is picked up
+     * by the next statement anyway, call it after lowering one.
+     */
+    public static void updateLogLevel() {
+        int maxLevel = NONE;
+        for (ILog l : logs) {
+            maxLevel = Math.max(maxLevel, l.logLevel());
+        }
+        level = maxLevel;
+    }
+
+    /**
+     * Check before building an expensive message, e.g. a hex dump
+     *
+     * @param logLevel level of the statement
+     * @return true if at least one log accepts the level
+     */
+    public static boolean isLoggable(@LogLevel int logLevel) {
+        if (logLevel <= level) {
+            return true;
+        }
+
+        // a log may have raised its level without telling, ask them like every statement did before
+        for (ILog l : logArray) {
+            if (logLevel <= l.logLevel()) {
+                updateLogLevel();
+                return true;
+            }
+        }
+        return false;
     }
 
     public static void v(String text) {
@@ -43,10 +98,32 @@ public class FPLog {
     }
 
     public static void v(String tag, String text) {
-        for (ILog l : logs) {
-            if (l.logLevel() >= VERBOSE) {
-                l.v(tag, text);
-            }
+        if (isLoggable(VERBOSE)) {
+            log(VERBOSE, tag, text, null);
+        }
+    }
+
+    public static void v(String tag, Message message) {
+        if (isLoggable(VERBOSE)) {
+            v(tag, message.get());
+        }
+    }
+
+    public static void v(String tag, String format, Object arg) {
+        if (isLoggable(VERBOSE)) {
+            v(tag, format(format, arg));
+        }
+    }
+
+    public static void v(String tag, String format, Object arg1, Object arg2) {
+        if (isLoggable(VERBOSE)) {
+            v(tag, format(format, arg1, arg2));
+        }
+    }
+
+    public static void v(String tag, String format, Object arg1, Object arg2, Object arg3) {
+        if (isLoggable(VERBOSE)) {
+            v(tag, format(format, arg1, arg2, arg3));
         }
     }
 
@@ -55,10 +132,32 @@ public class FPLog {
     }
 
     public static void d(String tag, String text) {
-        for (ILog l : logs) {
-            if (l.logLevel() >= DEBUG) {
-                l.d(tag, text);
-            }
+        if (isLoggable(DEBUG)) {
+            log(DEBUG, tag, text, null);
+        }
+    }
+
+    public static void d(String tag, Message message) {
+        if (isLoggable(DEBUG)) {
+            d(tag, message.get());
+        }
+    }
+
+    public static void d(String tag, String format, Object arg) {
+        if (isLoggable(DEBUG)) {
+            d(tag, format(format, arg));
+        }
+    }
+
+    public static void d(String tag, String format, Object arg1, Object arg2) {
+        if (isLoggable(DEBUG)) {
+            d(tag, format(format, arg1, arg2));
+        }
+    }
+
+    public static void d(String tag, String format, Object arg1, Object arg2, Object arg3) {
+        if (isLoggable(DEBUG)) {
+            d(tag, format(format, arg1, arg2, arg3));
         }
     }
 
@@ -67,10 +166,32 @@ public class FPLog {
     }
 
     public static void i(String tag, String text) {
-        for (ILog l : logs) {
-            if (l.logLevel() >= INFO) {
-                l.i(tag, text);
-            }
+        if (isLoggable(INFO)) {
+            log(INFO, tag, text, null);
+        }
+    }
+
+    public static void i(String tag, Message message) {
+        if (isLoggable(INFO)) {
+            i(tag, message.get());
+        }
+    }
+
+    public static void i(String tag, String format, Object arg) {
+        if (isLoggable(INFO)) {
+            i(tag, format(format, arg));
+        }
+    }
+
+    public static void i(String tag, String format, Object arg1, Object arg2) {
+        if (isLoggable(INFO)) {
+            i(tag, format(format, arg1, arg2));
+        }
+    }
+
+    public static void i(String tag, String format, Object arg1, Object arg2, Object arg3) {
+        if (isLoggable(INFO)) {
+            i(tag, format(format, arg1, arg2, arg3));
         }
     }
 
@@ -79,15 +200,39 @@ public class FPLog {
     }
 
     public static void w(String tag, String text) {
-        for (ILog l : logs) {
-            if (l.logLevel() >= WARNING) {
-                l.w(tag, text);
-            }
+        if (isLoggable(WARNING)) {
+            log(WARNING, tag, text, null);
+        }
+    }
+
+    public static void w(String tag, Message message) {
+        if (isLoggable(WARNING)) {
+            w(tag, message.get());
+        }
+    }
+
+    public static void w(String tag, String format, Object arg) {
+        if (isLoggable(WARNING)) {
+            w(tag, format(format, arg));
+        }
+    }
+
+    public static void w(String tag, String format, Object arg1, Object arg2) {
+        if (isLoggable(WARNING)) {
+            w(tag, format(format, arg1, arg2));
+        }
+    }
+
+    public static void w(String tag, String format, Object arg1, Object arg2, Object arg3) {
+        if (isLoggable(WARNING)) {
+            w(tag, format(format, arg1, arg2, arg3));
         }
     }
 
     public static void e(String text) {
-        e(Constants.FIT_PAY_TAG, new Throwable(text));
+        if (isLoggable(ERROR)) {
+            e(Constants.FIT_PAY_TAG, new Throwable(text));
+        }
     }
 
     public static void e(Throwable throwable) {
@@ -95,15 +240,118 @@ public class FPLog {
     }
 
     public static void e(String tag, String text) {
-        e(tag, new Throwable(text));
+        if (isLoggable(ERROR)) {
+            e(tag, new Throwable(text));
+        }
     }
 
     public static void e(String tag, Throwable throwable) {
+        if (isLoggable(ERROR)) {
+            log(ERROR, tag, null, throwable);
+        }
+    }
+
+    private static void log(int logLevel, String tag, String text, Throwable throwable) {
+        AsyncLog async = asyncLog;
+        if (async != null) {
+            async.log(logLevel, tag, text, throwable);
+        } else {
+            deliver(logLevel, tag, text, throwable);
+        }
+    }
+
+    /**
+     * Pass a statement to the log implementations that accept its level
+     */
+    static void deliver(int logLevel, String tag, String text, Throwable throwable) {
         for (ILog l : logs) {
-            if (l.logLevel() >= ERROR) {
-                l.e(tag, throwable);
+            if (l.logLevel() < logLevel) {
+                continue;
+            }
+
+            switch (logLevel) {
+                case VERBOSE:
+                    l.v(tag, text);
+                    break;
+                case DEBUG:
+                    l.d(tag, text);
+                    break;
+                case INFO:
+                    l.i(tag, text);
+                    break;
+                case WARNING:
+                    l.w(tag, text);
+                    break;
+                default:
+                    l.e(tag, throwable);
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Deliver the statements on a dedicated thread, logging threads only write into a ring buffer.
+     * Replaces the running asynchronous delivery, if any.
+     *
+     * @param capacity number of statements waiting for delivery, rounded up to a power of two
+     * @param overflow what to do with a new statement when the ring is full
+     * @return the asynchronous delivery, e.g. to read its counters
+     */
+    public static synchronized AsyncLog startAsync(int capacity, @AsyncLog.Overflow int overflow) {
+        AsyncLog async = new AsyncLog(capacity, overflow);
+        AsyncLog previous = asyncLog;
+        asyncLog = async;
+
+        if (previous != null) {
+            previous.shutdown(ASYNC_SHUTDOWN_TIMEOUT, TimeUnit.MILLISECONDS);
+        }
+        return async;
+    }
+
+    /**
+     * Deliver the pending statements and log on the calling threads again
+     */
+    public static synchronized void stopAsync() {
+        AsyncLog async = asyncLog;
+        asyncLog = null;
+
+        if (async != null) {
+            async.shutdown(ASYNC_SHUTDOWN_TIMEOUT, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * @return running asynchronous delivery or null if the statements are delivered on the logging threads
+     */
+    @Nullable
+    public static AsyncLog getAsyncLog() {
+        return asyncLog;
+    }
+
+    /**
+     * Replace every {} of the pattern with the next argument, byte arrays are printed as hex
+     */
+    static String format(String pattern, Object... args) {
+        if (pattern == null) {
+            return null;
+        }
+
+        StringBuilder sb = new StringBuilder(pattern.length() + 16 * args.length);
+        int start = 0;
+
+        for (Object arg : args) {
+            int index = pattern.indexOf("{}", start);
+            if (index < 0) {
+                break;
             }
+
+            sb.append(pattern, start, index);
+            sb.append(arg instanceof byte[] ? Hex.bytesToHexString((byte[]) arg) : String.valueOf(arg));
+            start = index + 2;
         }
+
+        sb.append(pattern, start, pattern.length());
+        return sb.toString();
     }
 
     public static boolean showHttpLogs() {
@@ -121,6 +369,13 @@ public class FPLog {
         return sw.toString(); // stack trace as a string
     }
 
+    /**
+     * Log message built only if the statement is enabled
+     */
+    public interface Message {
+        String get();
+    }
+
     public interface ILog {
         void v(String tag, String text);
 
@@ -1,5 +1,11 @@
 package com.fitpay.android.utils;
 
 public interface FilterCommand extends Command {
+    /**
+     * Wrapped events with this filter are delivered to the command.
+     * The value is indexed when the command is registered and must not change until it's removed.
+     *
+     * @return filter, usually the connector id
+     */
     String filter();
 }
@@ -12,6 +12,7 @@ public abstract class Listener {
 
     private String filter;
     private boolean filterApplied = false;
+    private boolean replaySticky = false;
 
     public Listener() {
         mCommands = new HashMap<>();
@@ -33,6 +34,21 @@ public abstract class Listener {
         return this;
     }
 
+    /**
+     * Receive the latest sticky events of the command types as soon as the listener is added,
+     * see {@link RxBus#addStickyType(Class)}
+     * @param replaySticky true to replay sticky events
+     * @return this
+     */
+    final public Listener setReplaySticky(boolean replaySticky) {
+        this.replaySticky = replaySticky;
+        return this;
+    }
+
+    boolean isReplaySticky() {
+        return replaySticky;
+    }
+
     /**
      * Internal usage. List of commands with applied filter.
      * @return all commands
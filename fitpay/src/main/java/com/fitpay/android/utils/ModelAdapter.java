@@ -2,8 +2,6 @@ package com.fitpay.android.utils;
 
 import com.fitpay.android.api.models.Country;
 import com.fitpay.android.api.models.ErrorResponse;
-import com.fitpay.android.api.models.Link;
-import com.fitpay.android.api.models.Links;
 import com.fitpay.android.api.models.Payload;
 import com.fitpay.android.api.models.apdu.ApduPackage;
 import com.fitpay.android.api.models.card.OfflineSeActions;
@@ -13,7 +11,6 @@ import com.fitpay.android.api.models.device.CreditCardCommit;
 import com.fitpay.android.api.models.security.ECCKeyPair;
 import com.fitpay.android.api.models.security.OAuthToken;
 import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
 import com.google.gson.JsonDeserializationContext;
 import com.google.gson.JsonDeserializer;
 import com.google.gson.JsonElement;
@@ -34,12 +31,15 @@ final class ModelAdapter {
 
     private static final String TAG = ModelAdapter.class.getSimpleName();
 
+    // decrypted payloads are parsed without the adapters of Constants.getGson(), it's thread safe and reused
+    private static final Gson PLAIN_GSON = new Gson();
+
     public static final class DataSerializer<T> implements JsonSerializer<T>, JsonDeserializer<T> {
 
         @Override
         public JsonElement serialize(T data, Type typeOfSrc, JsonSerializationContext context) {
 
-            final String encryptedString = StringUtils.getEncryptedString(KeysManager.KEY_API, new GsonBuilder().create().toJson(data));
+            final String encryptedString = StringUtils.getEncryptedString(KeysManager.KEY_API, PLAIN_GSON.toJson(data));
 
             return new JsonParser().parse(encryptedString);
         }
@@ -52,8 +52,7 @@ final class ModelAdapter {
                 final String decryptedString = StringUtils.getDecryptedString(KeysManager.KEY_API, json.getAsString());
 
                 if (!StringUtils.isEmpty(decryptedString)) {
-                    Gson gson = new Gson();
-                    return gson.fromJson(decryptedString, typeOfT);
+                    return PLAIN_GSON.fromJson(decryptedString, typeOfT);
                 }
             }
 
@@ -72,7 +71,7 @@ final class ModelAdapter {
                 if (!StringUtils.isEmpty(decryptedString)) {
 
                     Payload payload = null;
-                    Gson gson = new Gson();
+                    Gson gson = PLAIN_GSON;
                     // Deserialize to desired object type based on unique key field in each object type
                     if (decryptedString.contains("creditCardId")) {
                         CreditCardCommit creditCard = gson.fromJson(decryptedString, CreditCardCommit.class);
@@ -101,25 +100,6 @@ final class ModelAdapter {
         }
     }
 
-    public static final class LinksDeserializer implements JsonDeserializer<Links> {
-
-        @Override
-        public Links deserialize(JsonElement json, Type typeOfT, JsonDeserializationContext context) throws JsonParseException {
-
-            Links links = new Links();
-
-            Set<Map.Entry<String, JsonElement>> listsSet = json.getAsJsonObject().entrySet();
-            for (Map.Entry<String, JsonElement> entry : listsSet) {
-                JsonObject jo = entry.getValue().getAsJsonObject();
-                Boolean templated = jo.get("templated") != null && jo.get("templated").getAsBoolean();
-                Link link = new Link(jo.get("href").getAsString(), templated);
-                links.setLink(entry.getKey(), link);
-            }
-
-            return links;
-        }
-    }
-
     public static final class OauthTokenDeserializer implements JsonDeserializer<OAuthToken> {
         @Override
         public OAuthToken deserialize(JsonElement json, Type typeOfT, JsonDeserializationContext context) throws JsonParseException {
@@ -1,6 +1,9 @@
 package com.fitpay.android.utils;
 
 
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
 import com.fitpay.android.paymentdevice.constants.States;
 import com.fitpay.android.paymentdevice.enums.Sync;
 
@@ -28,6 +31,12 @@ public final class NotificationManager {
     private Map<Class, Disposable> mSubscriptions;
     private Map<Class, List<Command>> mCommands;
 
+    /**
+     * {@link FilterCommand}s indexed by event class and filter, a wrapped event is routed
+     * straight to the commands of its filter
+     */
+    private Map<Class, Map<String, List<Command>>> mFilterCommands;
+
     public static NotificationManager getInstance() {
         if (sInstance == null) {
             synchronized (NotificationManager.class) {
@@ -48,6 +57,7 @@ public final class NotificationManager {
                     subscription.dispose();
                 }
                 sInstance.mCommands.clear();
+                sInstance.mFilterCommands.clear();
                 sInstance.mListeners.clear();
                 sInstance.mSubscriptions.clear();
                 sInstance = null;
@@ -58,6 +68,7 @@ public final class NotificationManager {
     private NotificationManager() {
         mListeners = new CopyOnWriteArrayList<>();
         mCommands = new ConcurrentHashMap<>();
+        mFilterCommands = new ConcurrentHashMap<>();
         mSubscriptions = new ConcurrentHashMap<>();
     }
 
@@ -65,38 +76,141 @@ public final class NotificationManager {
      * Start listen to some events
      *
      * @param clazz     type of event
-     * @param scheduler thread for result
+     * @param scheduler thread for result, null to deliver events on the lane of their connector
+     * @param policy    bound of the events waiting for the scheduler
      */
-    private void subscribeTo(final Class clazz, final Scheduler scheduler) {
+    private void subscribeTo(final Class clazz, @Nullable final Scheduler scheduler, final BufferPolicy policy) {
         FPLog.v(TAG, "subscribeTo class: " + clazz + " from thread: " + Thread.currentThread());
 
         if (!mSubscriptions.containsKey(clazz)) {
             synchronized (this) {
                 FPLog.v(TAG, "subscribeTo doing put of class:  " + clazz + " from thread: " + Thread.currentThread());
 
-                mSubscriptions.put(clazz, RxBus.getInstance().register(clazz, scheduler, object -> {
-                    synchronized (this) {
-                        for (Command command : mCommands.get(clazz)) {
-                            if (object instanceof Wrapper) {
-                                if (command instanceof FilterCommand) {
-                                    String filter = ((FilterCommand) command).filter();
-                                    if (filter != null && filter.equals(((Wrapper) object).getFilter())) {
-                                        Object t = ((Wrapper) object).getObject();
-                                        command.execute(t);
-                                    }
-                                } else {
-                                    command.execute(((Wrapper) object).getObject());
-                                }
-                            } else if (!(command instanceof FilterCommand)) {
-                                command.execute(object);
-                            }
-                        }
-                    }
-                }));
+                if (scheduler != null) {
+                    mSubscriptions.put(clazz, RxBus.getInstance().register(clazz, scheduler, object -> dispatch(clazz, object), policy));
+                } else {
+                    // hand the event over to the lane of its connector on the posting thread, events of a connector stay in order
+                    mSubscriptions.put(clazz, RxBus.getInstance().register(clazz, Schedulers.trampoline(), object -> {
+                        String lane = object instanceof Wrapper ? ((Wrapper) object).getFilter() : null;
+                        EventLanes.getInstance().getScheduler(lane).scheduleDirect(() -> dispatch(clazz, object));
+                    }, policy));
+                }
+            }
+        }
+    }
+
+    /**
+     * Deliver an event to the commands of its class. Lock-free: the commands are a copy-on-write list,
+     * dispatch iterates a snapshot while listeners are added or removed, and events of different types
+     * never wait for each other. A wrapped event is delivered to the commands without a filter and to
+     * the filter commands of its filter only, whatever the number of filters registered for the class.
+     *
+     * @param clazz  type of event
+     * @param object event or {@link Wrapper}
+     */
+    private void dispatch(Class clazz, Object object) {
+        List<Command> commands = mCommands.get(clazz);
+
+        if (object instanceof Wrapper) {
+            Wrapper wrapper = (Wrapper) object;
+            Object data = wrapper.getObject();
+
+            if (commands != null) {
+                for (Command command : commands) {
+                    command.execute(data);
+                }
+            }
+
+            Map<String, List<Command>> filters = mFilterCommands.get(clazz);
+            List<Command> filterCommands = filters != null && wrapper.getFilter() != null ? filters.get(wrapper.getFilter()) : null;
+            if (filterCommands != null) {
+                for (Command command : filterCommands) {
+                    command.execute(data);
+                }
+            }
+        } else if (commands != null) {
+            for (Command command : commands) {
+                command.execute(object);
             }
         }
     }
 
+    /**
+     * Deliver the latest sticky events the command is interested in
+     */
+    private void replaySticky(final Listener listener, Class clazz, final Command command, @Nullable Scheduler scheduler) {
+        String filter = command instanceof FilterCommand ? ((FilterCommand) command).filter() : null;
+        if (command instanceof FilterCommand && filter == null) {
+            return;
+        }
+
+        for (final Object event : RxBus.getInstance().getStickyEvents(clazz, filter)) {
+            String lane = event instanceof Wrapper ? ((Wrapper) event).getFilter() : null;
+            Scheduler target = scheduler != null ? scheduler : EventLanes.getInstance().getScheduler(lane);
+
+            target.scheduleDirect(() -> {
+                if (mListeners.contains(listener)) {
+                    command.execute(event instanceof Wrapper ? ((Wrapper) event).getObject() : event);
+                }
+            });
+        }
+    }
+
+    private void addCommand(Class clazz, Command command) {
+        if (command instanceof FilterCommand) {
+            String filter = ((FilterCommand) command).filter();
+            if (filter == null) {
+                FPLog.w(TAG, "filter command without a filter will never be called: " + command);
+                return;
+            }
+
+            Map<String, List<Command>> filters = mFilterCommands.get(clazz);
+            if (filters == null) {
+                filters = new ConcurrentHashMap<>();
+                mFilterCommands.put(clazz, filters);
+            }
+
+            if (!filters.containsKey(filter)) {
+                filters.put(filter, new CopyOnWriteArrayList<>());
+            }
+
+            filters.get(filter).add(command);
+        } else {
+            if (!mCommands.containsKey(clazz)) {
+                mCommands.put(clazz, new CopyOnWriteArrayList<>());
+            }
+
+            mCommands.get(clazz).add(command);
+        }
+    }
+
+    /**
+     * @return true if there are no commands of the class left
+     */
+    private boolean removeCommand(Class clazz, Command command) {
+        if (command instanceof FilterCommand) {
+            Map<String, List<Command>> filters = mFilterCommands.get(clazz);
+            String filter = ((FilterCommand) command).filter();
+
+            if (filters != null && filter != null && filters.containsKey(filter)) {
+                filters.get(filter).remove(command);
+                if (filters.get(filter).size() == 0) {
+                    filters.remove(filter);
+                }
+                if (filters.size() == 0) {
+                    mFilterCommands.remove(clazz);
+                }
+            }
+        } else if (mCommands.containsKey(clazz)) {
+            mCommands.get(clazz).remove(command);
+            if (mCommands.get(clazz).size() == 0) {
+                mCommands.remove(clazz);
+            }
+        }
+
+        return !mCommands.containsKey(clazz) && !mFilterCommands.containsKey(clazz);
+    }
+
     /**
      * stop listen to events
      *
@@ -123,19 +237,41 @@ public final class NotificationManager {
 
     /**
      * Add current listener. !!! Don't forget to remove it
+     * The listener will execute in background, events of a connector are delivered in order
+     * on the connector lane, see {@link EventLanes}.
+     * <p>
+     * Only the events of one lane keep their order: events posted with a connector id go to the lane
+     * of that connector, the other ones to {@link EventLanes#DEFAULT_LANE}, and the lanes run in parallel.
+     * An event without a connector id posted after an event of a connector may be delivered first.
+     * Use a single threaded scheduler with {@link #addListener(Listener, Scheduler)} if the listener
+     * depends on the order of all events.
      *
      * @param listener listener
      */
     public void addListenerToCurrentThread(Listener listener) {
-        addListener(listener, Schedulers.from(Constants.getExecutor()));
+        addListener(listener, null);
     }
 
     /**
      * Add current listener. !!! Don't forget to remove it
      *
-     * @param listener listener
+     * @param listener          listener
+     * @param observerScheduler thread for events, null to use the connector lanes, see {@link #addListenerToCurrentThread(Listener)}
      */
-    public void addListener(Listener listener, Scheduler observerScheduler) {
+    public void addListener(Listener listener, @Nullable Scheduler observerScheduler) {
+        addListener(listener, observerScheduler, BufferPolicy.UNBOUNDED);
+    }
+
+    /**
+     * Add current listener. !!! Don't forget to remove it
+     * The policy bounds the events waiting for the scheduler, it's applied to the event types the listener
+     * is the first to subscribe to. Subscription counters are available from {@link RxBus#getSubscriptions()}.
+     *
+     * @param listener          listener
+     * @param observerScheduler thread for events, null to use the connector lanes
+     * @param policy            bound of the events waiting for delivery
+     */
+    public void addListener(Listener listener, @Nullable Scheduler observerScheduler, @NonNull BufferPolicy policy) {
         synchronized (this) {
             FPLog.v(TAG, "addListener " + listener + " on scheduler: " + observerScheduler + ", current thread: " + Thread.currentThread());
 
@@ -147,13 +283,12 @@ public final class NotificationManager {
                 for (Map.Entry<Class, Command> map : commands.entrySet()) {
                     Class clazz = map.getKey();
 
-                    subscribeTo(clazz, observerScheduler);
+                    subscribeTo(clazz, observerScheduler, policy);
+                    addCommand(clazz, map.getValue());
 
-                    if (!mCommands.containsKey(clazz)) {
-                        mCommands.put(clazz, new CopyOnWriteArrayList<>());
+                    if (listener.isReplaySticky()) {
+                        replaySticky(listener, clazz, map.getValue(), observerScheduler);
                     }
-
-                    mCommands.get(clazz).add(map.getValue());
                 }
             } else {
                 FPLog.w(TAG, "addListener skipped.  Listener already exists: " + listener);
@@ -180,11 +315,9 @@ public final class NotificationManager {
                     Class clazz = map.getKey();
                     FPLog.v(TAG, "removeListener removing value " + map.getValue() + " from thread: " + Thread.currentThread());
 
-                    mCommands.get(clazz).remove(map.getValue());
-                    if (mCommands.get(clazz).size() == 0) {
+                    if (removeCommand(clazz, map.getValue())) {
                         FPLog.v(TAG, "removeListener removing class: " + clazz + " from thread: " + Thread.currentThread());
 
-                        mCommands.remove(clazz);
                         unsubscribeFrom(clazz);
                     }
                 }
@@ -2,9 +2,16 @@ package com.fitpay.android.utils;
 
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import io.reactivex.Completable;
 import io.reactivex.CompletableTransformer;
@@ -19,12 +26,24 @@ import io.reactivex.Single;
 import io.reactivex.SingleTransformer;
 import io.reactivex.android.schedulers.AndroidSchedulers;
 import io.reactivex.disposables.Disposable;
+import io.reactivex.disposables.Disposables;
 import io.reactivex.functions.Consumer;
+import io.reactivex.processors.FlowableProcessor;
 import io.reactivex.processors.PublishProcessor;
 import io.reactivex.schedulers.Schedulers;
 
 /**
  * Created by Vlad on 28.03.2016.
+ * <p>
+ * Subscribers are indexed by their event class, a posted event is delivered only to the subscribers
+ * of its class, superclasses and interfaces. The type hierarchy of an event class is resolved once and cached.
+ * <p>
+ * Every subscriber buffers the events waiting for its scheduler, see {@link BufferPolicy} and {@link BusSubscription}.
+ * Handing an event over never waits: a poster held back by a {@link BufferPolicy#BLOCK} subscriber waits once
+ * the event has reached every subscriber, and outside of any bus lock.
+ * <p>
+ * The latest event of a sticky type is kept per filter and replayed to late subscribers, see {@link #addStickyType}.
+ * Only the store is done under the sticky lock, the update sequence keeps the replay and the live events in order.
  */
 public class RxBus {
 
@@ -38,35 +57,145 @@ public class RxBus {
         return sInstance;
     }
 
-    private final PublishProcessor<Object> mBus = PublishProcessor.create();
+    /**
+     * Subscribers indexed by the class they have been registered for
+     */
+    private final ConcurrentHashMap<Class<?>, FlowableProcessor<Object>> mChannels = new ConcurrentHashMap<>();
+
+    /**
+     * Event class to the class itself, its superclasses and all implemented interfaces
+     */
+    private final ConcurrentHashMap<Class<?>, Class<?>[]> mHierarchies = new ConcurrentHashMap<>();
+
+    private final StickyEvents mStickyEvents = new StickyEvents(StickyEvents.DEFAULT_CAPACITY);
+
+    /**
+     * Posting depth of the thread and the subscriptions it has to wait for once the outermost post is done
+     */
+    private final ThreadLocal<PostState> mPostState = new ThreadLocal<PostState>() {
+        @Override
+        protected PostState initialValue() {
+            return new PostState();
+        }
+    };
+
+    private final Set<BusSubscription<?>> mSubscriptions = Collections.newSetFromMap(new ConcurrentHashMap<BusSubscription<?>, Boolean>());
+
+    private final BusSubscription.BusSubscriptionListener mSubscriptionListener = new BusSubscription.BusSubscriptionListener() {
+        @Override
+        public void onError(BusSubscription<?> subscription, Throwable throwable) {
+            FPLog.e(throwable.toString() + ", " + getStackTrace(throwable));
+        }
+
+        @Override
+        public void onDisposed(BusSubscription<?> subscription) {
+            mSubscriptions.remove(subscription);
+        }
+    };
 
     public <T> Disposable register(final Class<T> eventClass, Consumer<T> onNext) {
         return register(eventClass, AndroidSchedulers.mainThread(), onNext);
     }
 
     public <T> Disposable register(final Class<T> eventClass, final Scheduler scheduler, final Consumer<T> onNext) {
-        return mBus
-                .toObservable()
-                .filter(event -> {
-                    if (event == null || eventClass == null) {
-                        FPLog.e(event + " " + eventClass);
-                        return false;
-                    }
-                    if (event instanceof Wrapper) {
-                        return eventClass.isAssignableFrom(((Wrapper) event).getClazz());
-                    } else {
-                        return eventClass.isAssignableFrom(event.getClass());
-                    }
-                })
-                .map(obj -> (T) obj)
-                .subscribeOn(Schedulers.from(Constants.getExecutor()))
-                .observeOn(scheduler)
-                .subscribe(onNext, throwable -> FPLog.e(throwable.toString() + ", " + getStackTrace(throwable)));
+        if (eventClass == null) {
+            FPLog.e("RxBus", "can't register a subscriber without an event class");
+            return Disposables.disposed();
+        }
+
+        return register(eventClass, scheduler, onNext, BufferPolicy.UNBOUNDED);
+    }
+
+    /**
+     * Register a subscriber with a bounded buffer
+     *
+     * @param eventClass type of event, subclasses are delivered too
+     * @param scheduler  thread for events
+     * @param onNext     event consumer, the subscription is disposed if it throws
+     * @param policy     bound of the events waiting for delivery
+     * @return subscription with delivery counters
+     */
+    public <T> BusSubscription<T> register(@NonNull final Class<T> eventClass, @NonNull final Scheduler scheduler,
+                                           @NonNull final Consumer<T> onNext, @NonNull BufferPolicy policy) {
+        BusSubscription<T> subscription = new BusSubscription<>(eventClass, scheduler, onNext, policy, mSubscriptionListener);
+        mSubscriptions.add(subscription);
+        subscription.setUpstream(subscribe(eventClass, subscription));
+        return subscription;
+    }
+
+    public <T> Disposable registerSticky(final Class<T> eventClass, final Scheduler scheduler, final Consumer<T> onNext) {
+        return registerSticky(eventClass, scheduler, onNext, BufferPolicy.UNBOUNDED);
+    }
+
+    /**
+     * Register a subscriber and replay the latest sticky events of its type, of every filter,
+     * before any new event
+     *
+     * @param eventClass type of event, subclasses are delivered too
+     * @param scheduler  thread for events
+     * @param onNext     event consumer, the subscription is disposed if it throws
+     * @param policy     bound of the events waiting for delivery
+     * @return subscription with delivery counters
+     */
+    public <T> BusSubscription<T> registerSticky(@NonNull final Class<T> eventClass, @NonNull final Scheduler scheduler,
+                                                 @NonNull final Consumer<T> onNext, @NonNull BufferPolicy policy) {
+        BusSubscription<T> subscription = new BusSubscription<>(eventClass, scheduler, onNext, policy, mSubscriptionListener);
+        mSubscriptions.add(subscription);
+
+        List<Object> replay;
+        synchronized (mStickyEvents) {
+            // updates stored so far are covered by the replay, the ones stored later are dispatched after the subscription
+            replay = mStickyEvents.find(eventClass, null);
+            subscription.holdForReplay(mStickyEvents.getSequence());
+            subscription.setUpstream(subscribe(eventClass, subscription));
+        }
+
+        PostState state = mPostState.get();
+        if (subscription.replay(replay)) {
+            state.congested.add(subscription);
+        }
+
+        if (state.depth == 0) {
+            awaitCongested(state);
+        }
+
+        return subscription;
+    }
+
+    /**
+     * @return active subscribers with their delivery counters
+     */
+    public List<BusSubscription<?>> getSubscriptions() {
+        return new ArrayList<>(mSubscriptions);
     }
 
     public void post(@NonNull Object object) {
-        FPLog.d("RxBus", "post event: " + object);
-        mBus.onNext(object);
+        if (object == null) {
+            FPLog.e("RxBus", "can't post a null event");
+            return;
+        }
+
+        FPLog.d("RxBus", "post event: {}", object);
+
+        Class<?> eventClass = object instanceof Wrapper ? ((Wrapper) object).getClazz() : object.getClass();
+        Class<?>[] hierarchy = getHierarchy(eventClass);
+
+        Class<?> stickyType = mStickyEvents.getType(eventClass, hierarchy);
+        Object event = stickyType == null ? object
+                : mStickyEvents.put(stickyType, object instanceof Wrapper ? ((Wrapper) object).getFilter() : null, object);
+
+        PostState state = mPostState.get();
+        state.depth++;
+        try {
+            dispatch(event, hierarchy);
+        } finally {
+            state.depth--;
+        }
+
+        // a post made by a subscriber delivered on the posting thread leaves the waiting to the outermost one
+        if (state.depth == 0) {
+            awaitCongested(state);
+        }
     }
 
     public <T> void post(String filter, @NonNull T object) {
@@ -77,6 +206,133 @@ public class RxBus {
         }
     }
 
+    /**
+     * Keep the latest event of the type, or of its subtypes, per filter. The event is replayed to
+     * subscribers registered with {@link #registerSticky} and to listeners that replay sticky events.
+     *
+     * @param type event type
+     */
+    public void addStickyType(@NonNull Class<?> type) {
+        mStickyEvents.addType(type);
+    }
+
+    /**
+     * Stop keeping events of the type and forget the stored ones
+     *
+     * @param type event type
+     */
+    public void removeStickyType(@NonNull Class<?> type) {
+        mStickyEvents.removeType(type);
+    }
+
+    /**
+     * @param type   sticky type
+     * @param filter filter the event has been posted with, usually a connector id
+     * @return latest event or null if there is none
+     */
+    @Nullable
+    @SuppressWarnings("unchecked")
+    public <T> T getStickyEvent(@NonNull Class<T> type, @Nullable String filter) {
+        Object event = mStickyEvents.get(type, filter);
+        return (T) (event instanceof Wrapper ? ((Wrapper) event).getObject() : event);
+    }
+
+    /**
+     * Invalidate a stored sticky event
+     *
+     * @param type   sticky type
+     * @param filter filter the event has been posted with
+     * @return true if an event has been removed
+     */
+    public boolean removeStickyEvent(@NonNull Class<?> type, @Nullable String filter) {
+        return mStickyEvents.remove(type, filter);
+    }
+
+    /**
+     * Invalidate all sticky events posted with the filter, e.g. when a connector goes away
+     *
+     * @param filter filter, usually a connector id
+     */
+    public void removeStickyEvents(@NonNull String filter) {
+        mStickyEvents.removeFilter(filter);
+    }
+
+    public void clearStickyEvents() {
+        mStickyEvents.clear();
+    }
+
+    /**
+     * @return latest sticky events, or {@link Wrapper}s of them, the subscriber is interested in
+     */
+    List<Object> getStickyEvents(@NonNull Class<?> eventClass, @Nullable String filter) {
+        return mStickyEvents.find(eventClass, filter);
+    }
+
+    private void dispatch(Object object, Class<?>[] hierarchy) {
+        for (Class<?> type : hierarchy) {
+            FlowableProcessor<Object> channel = mChannels.get(type);
+            if (channel != null && channel.hasSubscribers()) {
+                channel.onNext(object);
+            }
+        }
+    }
+
+    private Disposable subscribe(Class<?> eventClass, final BusSubscription<?> subscription) {
+        return getChannel(eventClass).subscribe(event -> {
+            if (subscription.offer(event)) {
+                mPostState.get().congested.add(subscription);
+            }
+        });
+    }
+
+    private static void awaitCongested(PostState state) {
+        if (state.congested.isEmpty()) {
+            return;
+        }
+
+        List<BusSubscription<?>> congested = new ArrayList<>(state.congested);
+        state.congested.clear();
+
+        for (BusSubscription<?> subscription : congested) {
+            subscription.awaitCapacity();
+        }
+    }
+
+    private FlowableProcessor<Object> getChannel(Class<?> eventClass) {
+        FlowableProcessor<Object> channel = mChannels.get(eventClass);
+        if (channel == null) {
+            FlowableProcessor<Object> newChannel = PublishProcessor.create().toSerialized();
+            channel = mChannels.putIfAbsent(eventClass, newChannel);
+            if (channel == null) {
+                channel = newChannel;
+            }
+        }
+        return channel;
+    }
+
+    private Class<?>[] getHierarchy(Class<?> eventClass) {
+        Class<?>[] hierarchy = mHierarchies.get(eventClass);
+        if (hierarchy == null) {
+            Set<Class<?>> types = new LinkedHashSet<>();
+            for (Class<?> type = eventClass; type != null; type = type.getSuperclass()) {
+                types.add(type);
+                addInterfaces(types, type);
+            }
+
+            hierarchy = types.toArray(new Class<?>[types.size()]);
+            mHierarchies.put(eventClass, hierarchy);
+        }
+        return hierarchy;
+    }
+
+    private static void addInterfaces(Set<Class<?>> types, Class<?> type) {
+        for (Class<?> item : type.getInterfaces()) {
+            if (types.add(item)) {
+                addInterfaces(types, item);
+            }
+        }
+    }
+
     private String getStackTrace(Throwable t) {
         StringWriter sw = new StringWriter();
         PrintWriter pw = new PrintWriter(sw);
@@ -113,4 +369,9 @@ public class RxBus {
             throw new IllegalArgumentException("Class not found. Implement your own Transformer");
         }
     }
+
+    private static final class PostState {
+        private final Set<BusSubscription<?>> congested = new LinkedHashSet<>();
+        private int depth;
+    }
 }
@@ -0,0 +1,237 @@
+package com.fitpay.android.utils;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Latest event per (sticky type, filter) posted to {@link RxBus}.
+ * <p>
+ * Only events of the registered sticky types are kept. The number of stored events is bounded,
+ * the least recently updated one is dropped first.
+ * <p>
+ * Every update gets the next sequence number. Updates are dispatched outside of the store lock,
+ * the sequence tells subscribers which of them are already covered by a replay or are out of date.
+ */
+final class StickyEvents {
+
+    static final int DEFAULT_CAPACITY = 256;
+
+    // cached result for event classes that aren't sticky
+    private static final Class<?> NOT_STICKY = Void.class;
+
+    private final int capacity;
+
+    // guarded by this
+    private final Set<Class<?>> types = new HashSet<>();
+    private final LinkedHashMap<Key, Object> events;
+    private long sequence;
+
+    // event class to the sticky type it's stored under
+    private final ConcurrentHashMap<Class<?>, Class<?>> typeCache = new ConcurrentHashMap<>();
+
+    StickyEvents(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be greater than 0: " + capacity);
+        }
+
+        this.capacity = capacity;
+        this.events = new LinkedHashMap<Key, Object>(16, 0.75f, false) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Object> eldest) {
+                return size() > StickyEvents.this.capacity;
+            }
+        };
+    }
+
+    synchronized void addType(@NonNull Class<?> type) {
+        types.add(type);
+        typeCache.clear();
+    }
+
+    synchronized void removeType(@NonNull Class<?> type) {
+        types.remove(type);
+        typeCache.clear();
+
+        Iterator<Key> iterator = events.keySet().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().type == type) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * @param eventClass class of a posted event
+     * @param hierarchy  the class, its superclasses and interfaces
+     * @return registered sticky type of the event or null if it isn't sticky
+     */
+    @Nullable
+    Class<?> getType(@NonNull Class<?> eventClass, @NonNull Class<?>[] hierarchy) {
+        Class<?> type = typeCache.get(eventClass);
+
+        if (type == null) {
+            type = NOT_STICKY;
+
+            synchronized (this) {
+                for (Class<?> item : hierarchy) {
+                    if (types.contains(item)) {
+                        type = item;
+                        break;
+                    }
+                }
+
+                typeCache.put(eventClass, type);
+            }
+        }
+
+        return type != NOT_STICKY ? type : null;
+    }
+
+    /**
+     * @param type   sticky type
+     * @param filter filter of the event, null if it isn't wrapped
+     * @param event  posted event or {@link Wrapper}
+     * @return update to dispatch to the subscribers
+     */
+    @NonNull
+    synchronized Update put(@NonNull Class<?> type, @Nullable String filter, @NonNull Object event) {
+        Key key = new Key(type, filter);
+        // re-insert, the iteration order is the update order
+        events.remove(key);
+        events.put(key, event);
+
+        return new Update(key, ++sequence, event);
+    }
+
+    /**
+     * @return sequence of the latest update, the stored events cover every update up to it
+     */
+    synchronized long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * @return posted event or {@link Wrapper}, null if there is none
+     */
+    @Nullable
+    synchronized Object get(@NonNull Class<?> type, @Nullable String filter) {
+        return events.get(new Key(type, filter));
+    }
+
+    /**
+     * @param eventClass event class a subscriber is interested in
+     * @param filter     filter of the subscriber, null for events of all filters
+     * @return matching posted events or {@link Wrapper}s, oldest update first
+     */
+    @NonNull
+    synchronized List<Object> find(@NonNull Class<?> eventClass, @Nullable String filter) {
+        List<Object> result = new ArrayList<>();
+
+        for (Map.Entry<Key, Object> entry : events.entrySet()) {
+            Object event = entry.getValue();
+            Class<?> clazz = event instanceof Wrapper ? ((Wrapper) event).getClazz() : event.getClass();
+
+            if (eventClass.isAssignableFrom(clazz) && (filter == null || filter.equals(entry.getKey().filter))) {
+                result.add(event);
+            }
+        }
+
+        return result;
+    }
+
+    synchronized boolean remove(@NonNull Class<?> type, @Nullable String filter) {
+        return events.remove(new Key(type, filter)) != null;
+    }
+
+    /**
+     * @return number of removed events
+     */
+    synchronized int removeFilter(@NonNull String filter) {
+        int removed = 0;
+
+        Iterator<Key> iterator = events.keySet().iterator();
+        while (iterator.hasNext()) {
+            if (filter.equals(iterator.next().filter)) {
+                iterator.remove();
+                removed++;
+            }
+        }
+
+        return removed;
+    }
+
+    synchronized void clear() {
+        events.clear();
+    }
+
+    synchronized int size() {
+        return events.size();
+    }
+
+    /**
+     * Stored event on its way to the subscribers
+     */
+    static final class Update {
+        private final Object key;
+        private final long sequence;
+        private final Object event;
+
+        private Update(Object key, long sequence, Object event) {
+            this.key = key;
+            this.sequence = sequence;
+            this.event = event;
+        }
+
+        Object getKey() {
+            return key;
+        }
+
+        long getSequence() {
+            return sequence;
+        }
+
+        /**
+         * @return posted event or {@link Wrapper}
+         */
+        Object getEvent() {
+            return event;
+        }
+    }
+
+    private static final class Key {
+        private final Class<?> type;
+        private final String filter;
+
+        private Key(Class<?> type, String filter) {
+            this.type = type;
+            this.filter = filter;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+
+            Key key = (Key) o;
+            return type == key.type && (filter != null ? filter.equals(key.filter) : key.filter == null);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * type.hashCode() + (filter != null ? filter.hashCode() : 0);
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package com.fitpay.android.utils;
+
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+
+/**
+ * Base of the handwritten adapters of the models parsed on hot paths, e.g. commits and APDU packages.
+ * <p>
+ * Reading sets the fields straight from the token stream, without reflection or a json tree.
+ * Writing is left to the reflective adapter so the serialized form doesn't change.
+ * Bind it to a model with {@link com.google.gson.annotations.JsonAdapter}, the model may keep its
+ * fields private by nesting the factory.
+ *
+ * @param <T> model type
+ */
+public abstract class StreamingTypeAdapterFactory<T> implements TypeAdapterFactory {
+
+    private final Class<T> clazz;
+
+    protected StreamingTypeAdapterFactory(Class<T> clazz) {
+        this.clazz = clazz;
+    }
+
+    /**
+     * Read a model, the reader is positioned at the start of a non null value
+     *
+     * @param gson gson instance, use it for nested types
+     * @param in   reader
+     * @return model
+     */
+    protected abstract T read(Gson gson, JsonReader in) throws IOException;
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <R> TypeAdapter<R> create(Gson gson, TypeToken<R> type) {
+        if (type.getRawType() != clazz) {
+            return null;
+        }
+
+        final TypeAdapter<T> delegate = gson.getDelegateAdapter(this, TypeToken.get(clazz));
+
+        return (TypeAdapter<R>) new TypeAdapter<T>() {
+            @Override
+            public void write(JsonWriter out, T value) throws IOException {
+                delegate.write(out, value);
+            }
+
+            @Override
+            public T read(JsonReader in) throws IOException {
+                if (in.peek() == JsonToken.NULL) {
+                    in.nextNull();
+                    return null;
+                }
+
+                return StreamingTypeAdapterFactory.this.read(gson, in);
+            }
+        };
+    }
+
+    protected static String nextString(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+
+        return in.nextString();
+    }
+
+    protected static Long nextLong(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+
+        return in.nextLong();
+    }
+
+    protected static int nextInt(JsonReader in, int defaultValue) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return defaultValue;
+        }
+
+        return in.nextInt();
+    }
+
+    protected static boolean nextBoolean(JsonReader in, boolean defaultValue) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return defaultValue;
+        }
+
+        if (in.peek() == JsonToken.STRING) {
+            return Boolean.parseBoolean(in.nextString());
+        }
+
+        return in.nextBoolean();
+    }
+}
@@ -0,0 +1,372 @@
+package com.fitpay.android.utils;
+
+import androidx.annotation.NonNull;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * SDK-wide timer service.
+ * <p>
+ * A hashed wheel timer driven by a single daemon thread, so the thread count stays constant no matter
+ * how many syncs, commits or gatt operations are waiting for a timeout. Scheduling and cancellation are
+ * O(1) and a single timer easily holds tens of thousands of pending timeouts.
+ * <p>
+ * Timeouts expire with a precision of one tick. The timer thread only does the bookkeeping, expired tasks
+ * are run on a small task pool, so a slow task doesn't delay the other timeouts.
+ */
+public final class TimerService {
+
+    private static final String TAG = TimerService.class.getSimpleName();
+
+    private static final long DEFAULT_TICK_DURATION_MS = 10;
+    private static final int DEFAULT_WHEEL_SIZE = 512;
+
+    // threads running expired tasks, idle ones are released
+    private static final int TASK_THREADS = 4;
+    private static final long TASK_THREAD_KEEP_ALIVE_SECONDS = 30;
+
+    // upper bound of new timeouts moved into the wheel per tick, keeps a burst from stalling expiration
+    private static final int MAX_TRANSFER_PER_TICK = 100000;
+
+    private static final TimerService sInstance = new TimerService(DEFAULT_TICK_DURATION_MS, TimeUnit.MILLISECONDS, DEFAULT_WHEEL_SIZE);
+
+    public static TimerService getInstance() {
+        return sInstance;
+    }
+
+    private final long tickDuration;
+    private final Bucket[] wheel;
+    private final int mask;
+    private final Executor taskExecutor;
+
+    private final Queue<TimeoutTask> newTimeouts = new ConcurrentLinkedQueue<>();
+    private final Queue<TimeoutTask> cancelledTimeouts = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pendingTimeouts = new AtomicInteger();
+
+    private final CountDownLatch startTimeInitialized = new CountDownLatch(1);
+    private volatile long startTime;
+    private volatile Thread workerThread;
+
+    // accessed by the worker thread only
+    private long tick;
+
+    /**
+     * Create a new timer. Use {@link #getInstance()} unless you really need a separate timer thread.
+     *
+     * @param tickDuration duration of a single tick
+     * @param unit         time unit of tickDuration
+     * @param wheelSize    number of buckets, rounded up to a power of two
+     */
+    TimerService(long tickDuration, @NonNull TimeUnit unit, int wheelSize) {
+        if (tickDuration <= 0) {
+            throw new IllegalArgumentException("tickDuration must be greater than 0: " + tickDuration);
+        }
+
+        if (wheelSize <= 0 || wheelSize > (1 << 30)) {
+            throw new IllegalArgumentException("wheelSize must be in range (0, 2^30]: " + wheelSize);
+        }
+
+        int normalizedWheelSize = 1;
+        while (normalizedWheelSize < wheelSize) {
+            normalizedWheelSize <<= 1;
+        }
+
+        this.tickDuration = unit.toNanos(tickDuration);
+        this.wheel = new Bucket[normalizedWheelSize];
+        for (int i = 0; i < wheel.length; i++) {
+            wheel[i] = new Bucket();
+        }
+        this.mask = wheel.length - 1;
+
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(TASK_THREADS, TASK_THREADS,
+                TASK_THREAD_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(@NonNull Runnable r) {
+                Thread thread = new Thread(r, "FitPay-" + TAG + "-task-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        executor.allowCoreThreadTimeOut(true);
+        this.taskExecutor = executor;
+    }
+
+    /**
+     * Schedule a task to run once after the given delay
+     *
+     * @param task  task
+     * @param delay delay
+     * @param unit  time unit of delay
+     * @return handle that can be used to cancel the task
+     */
+    public Timeout schedule(@NonNull Runnable task, long delay, @NonNull TimeUnit unit) {
+        start();
+
+        long deadline = System.nanoTime() + unit.toNanos(Math.max(delay, 0)) - startTime;
+
+        TimeoutTask timeout = new TimeoutTask(task, deadline);
+        pendingTimeouts.incrementAndGet();
+        newTimeouts.add(timeout);
+
+        return timeout;
+    }
+
+    /**
+     * @return number of scheduled timeouts that have neither expired nor been cancelled
+     */
+    public int getPendingTimeouts() {
+        return pendingTimeouts.get();
+    }
+
+    private void start() {
+        if (workerThread == null) {
+            synchronized (this) {
+                if (workerThread == null) {
+                    Thread thread = new Thread(this::runWorker, "FitPay-" + TAG);
+                    thread.setDaemon(true);
+                    thread.start();
+                    workerThread = thread;
+                }
+            }
+        }
+
+        while (startTime == 0) {
+            try {
+                startTimeInitialized.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+    }
+
+    private void runWorker() {
+        long now = System.nanoTime();
+        // zero is used as the "not started" marker
+        startTime = now == 0 ? 1 : now;
+        startTimeInitialized.countDown();
+
+        while (true) {
+            waitForNextTick();
+
+            processCancelledTimeouts();
+            transferTimeouts();
+
+            wheel[(int) (tick & mask)].expireTimeouts();
+
+            tick++;
+        }
+    }
+
+    /**
+     * Sleep until the current tick has passed
+     */
+    private void waitForNextTick() {
+        long deadline = tickDuration * (tick + 1);
+
+        while (true) {
+            long currentTime = System.nanoTime() - startTime;
+            long sleepTimeMs = (deadline - currentTime + 999999) / 1000000;
+
+            if (sleepTimeMs <= 0) {
+                return;
+            }
+
+            try {
+                Thread.sleep(sleepTimeMs);
+            } catch (InterruptedException ignored) {
+                // the timer lives as long as the process, keep ticking
+            }
+        }
+    }
+
+    private void transferTimeouts() {
+        for (int i = 0; i < MAX_TRANSFER_PER_TICK; i++) {
+            TimeoutTask timeout = newTimeouts.poll();
+            if (timeout == null) {
+                break;
+            }
+
+            if (timeout.isCancelled()) {
+                continue;
+            }
+
+            long calculated = timeout.deadline / tickDuration;
+            timeout.remainingRounds = (calculated - tick) / wheel.length;
+
+            // never schedule into the past, the timeout fires on the current tick instead
+            long ticks = Math.max(calculated, tick);
+            wheel[(int) (ticks & mask)].add(timeout);
+        }
+    }
+
+    private void processCancelledTimeouts() {
+        TimeoutTask timeout;
+        while ((timeout = cancelledTimeouts.poll()) != null) {
+            if (timeout.bucket != null) {
+                timeout.bucket.remove(timeout);
+            }
+        }
+    }
+
+    /**
+     * Handle of a scheduled task
+     */
+    public interface Timeout {
+        /**
+         * Cancel the task if it hasn't run yet
+         *
+         * @return true if the task has been cancelled by this call
+         */
+        boolean cancel();
+
+        boolean isCancelled();
+
+        boolean isExpired();
+    }
+
+    private final class TimeoutTask implements Timeout {
+        private static final int ST_INIT = 0;
+        private static final int ST_CANCELLED = 1;
+        private static final int ST_EXPIRED = 2;
+
+        private final Runnable task;
+        private final long deadline;
+        private final AtomicInteger state = new AtomicInteger(ST_INIT);
+
+        // accessed by the worker thread only
+        private long remainingRounds;
+        private TimeoutTask next;
+        private TimeoutTask prev;
+        private Bucket bucket;
+
+        private TimeoutTask(Runnable task, long deadline) {
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        @Override
+        public boolean cancel() {
+            if (!state.compareAndSet(ST_INIT, ST_CANCELLED)) {
+                return false;
+            }
+
+            pendingTimeouts.decrementAndGet();
+            cancelledTimeouts.add(this);
+            return true;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return state.get() == ST_CANCELLED;
+        }
+
+        @Override
+        public boolean isExpired() {
+            return state.get() == ST_EXPIRED;
+        }
+
+        private void expire() {
+            if (!state.compareAndSet(ST_INIT, ST_EXPIRED)) {
+                return;
+            }
+
+            pendingTimeouts.decrementAndGet();
+
+            try {
+                taskExecutor.execute(this::runTask);
+            } catch (RejectedExecutionException e) {
+                runTask();
+            }
+        }
+
+        private void runTask() {
+            try {
+                task.run();
+            } catch (Throwable t) {
+                FPLog.e(TAG, t);
+            }
+        }
+    }
+
+    /**
+     * Doubly linked list of timeouts, accessed by the worker thread only
+     */
+    private static final class Bucket {
+        private TimeoutTask head;
+        private TimeoutTask tail;
+
+        private void add(TimeoutTask timeout) {
+            timeout.bucket = this;
+
+            if (head == null) {
+                head = tail = timeout;
+            } else {
+                tail.next = timeout;
+                timeout.prev = tail;
+                tail = timeout;
+            }
+        }
+
+        private void expireTimeouts() {
+            TimeoutTask timeout = head;
+
+            while (timeout != null) {
+                TimeoutTask next = timeout.next;
+
+                if (timeout.remainingRounds <= 0) {
+                    remove(timeout);
+                    timeout.expire();
+                } else if (timeout.isCancelled()) {
+                    remove(timeout);
+                } else {
+                    timeout.remainingRounds--;
+                }
+
+                timeout = next;
+            }
+        }
+
+        private void remove(TimeoutTask timeout) {
+            if (timeout.bucket != this) {
+                return;
+            }
+
+            TimeoutTask next = timeout.next;
+
+            if (timeout.prev != null) {
+                timeout.prev.next = next;
+            }
+
+            if (timeout.next != null) {
+                timeout.next.prev = timeout.prev;
+            }
+
+            if (timeout == head) {
+                if (timeout == tail) {
+                    head = null;
+                    tail = null;
+                } else {
+                    head = next;
+                }
+            } else if (timeout == tail) {
+                tail = timeout.prev;
+            }
+
+            timeout.prev = null;
+            timeout.next = null;
+            timeout.bucket = null;
+        }
+    }
+}
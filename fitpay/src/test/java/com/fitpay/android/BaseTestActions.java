@@ -8,6 +8,7 @@ import com.fitpay.android.paymentdevice.DeviceSyncManager;
 import com.fitpay.android.utils.Constants;
 import com.fitpay.android.utils.FPLog;
 import com.fitpay.android.utils.NotificationManager;
+import com.fitpay.android.utils.RxBus;
 import com.fitpay.android.utils.SecurityProvider;
 
 import org.conscrypt.Conscrypt;
@@ -90,6 +91,7 @@ public abstract class BaseTestActions {
     private static void cleanAll() {
         DeviceSyncManager.clean();
         NotificationManager.clean();
+        RxBus.getInstance().clearStickyEvents();
         FPLog.clean();
     }
 
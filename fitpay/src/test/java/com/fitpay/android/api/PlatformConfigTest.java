@@ -1,11 +1,13 @@
 package com.fitpay.android.api;
 
 import com.fitpay.android.BaseTestActions;
+import com.fitpay.android.api.models.PlatformConfig;
 import com.fitpay.android.utils.NamedResource;
 
 import org.junit.ClassRule;
 import org.junit.Test;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 
 /**
@@ -22,4 +24,11 @@ public class PlatformConfigTest extends BaseTestActions {
         ApiManager api = ApiManager.getInstance();
         assertNotNull(api.getPlatformConfig());
     }
+
+    @Test
+    public void knownPlatformConfigIsReceived() {
+        PlatformConfig config = ApiManager.getInstance().getKnownPlatformConfig().blockingGet();
+        assertNotNull(config);
+        assertEquals(config, ApiManager.getInstance().getPlatformConfig());
+    }
 }
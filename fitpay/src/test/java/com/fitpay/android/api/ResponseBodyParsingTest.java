@@ -0,0 +1,67 @@
+package com.fitpay.android.api;
+
+import com.fitpay.android.api.models.collection.Collections;
+import com.fitpay.android.api.models.device.Commit;
+import com.fitpay.android.utils.Constants;
+import com.google.gson.JsonElement;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import okhttp3.MediaType;
+import okhttp3.ResponseBody;
+
+public class ResponseBodyParsingTest {
+
+    private static final MediaType JSON = MediaType.parse("application/json");
+
+    @Test
+    public void bodyIsParsedLikeTheJsonTree() throws Exception {
+        String json = commitsPage(50);
+
+        Collections.CommitsCollection fromTree = Constants.getGson()
+                .fromJson(Constants.getGson().fromJson(json, JsonElement.class), Collections.CommitsCollection.class);
+        Collections.CommitsCollection fromBody = ApiManager.fromBody(ResponseBody.create(JSON, json), Collections.CommitsCollection.class);
+
+        Assert.assertEquals(fromTree.getTotalResults(), fromBody.getTotalResults());
+        Assert.assertEquals(fromTree.getLimit(), fromBody.getLimit());
+        Assert.assertEquals(fromTree.getLinkUrl("next"), fromBody.getLinkUrl("next"));
+        Assert.assertEquals(50, fromBody.getResults().size());
+
+        for (int i = 0; i < 50; i++) {
+            Commit expected = fromTree.getResults().get(i);
+            Commit actual = fromBody.getResults().get(i);
+
+            Assert.assertEquals(expected.getCommitId(), actual.getCommitId());
+            Assert.assertEquals(expected.getCommitType(), actual.getCommitType());
+            Assert.assertEquals(expected.getCreatedTs(), actual.getCreatedTs());
+            Assert.assertEquals(expected.getLinkUrl("self"), actual.getLinkUrl("self"));
+        }
+    }
+
+    @Test
+    public void emptyBodyIsNull() throws Exception {
+        Assert.assertNull(ApiManager.fromBody(ResponseBody.create(JSON, ""), Commit.class));
+        Assert.assertNull(ApiManager.fromBody(null, Commit.class));
+    }
+
+    private static String commitsPage(int count) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("{\"limit\":").append(count).append(",\"offset\":0,\"totalResults\":").append(count * 3).append(",")
+                .append("\"_links\":{\"next\":{\"href\":\"https://api.fit-pay.com/commits?offset=").append(count).append("\"}},")
+                .append("\"results\":[");
+
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+
+            sb.append("{\"commitId\":\"commit-").append(i).append("\",")
+                    .append("\"commitType\":\"CREDITCARD_CREATED\",")
+                    .append("\"createdTs\":").append(1500000000000L + i).append(',')
+                    .append("\"_links\":{\"self\":{\"href\":\"https://api.fit-pay.com/commits/commit-").append(i).append("\"}}}");
+        }
+
+        return sb.append("]}").toString();
+    }
+}
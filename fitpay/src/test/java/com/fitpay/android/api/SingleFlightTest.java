@@ -0,0 +1,155 @@
+package com.fitpay.android.api;
+
+import com.fitpay.android.api.callbacks.ApiCallback;
+import com.fitpay.android.api.callbacks.ApiCallbackExt;
+import com.fitpay.android.api.enums.ResultCode;
+import com.fitpay.android.api.models.ErrorResponse;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class SingleFlightTest {
+
+    private final SingleFlight singleFlight = new SingleFlight();
+
+    @Test
+    public void concurrentCallersShareOneCall() {
+        List<String> results = new ArrayList<>();
+
+        ApiCallback<String> flight = singleFlight.join("GET user", new Collector(results, "a"));
+        Assert.assertNotNull(flight);
+
+        Assert.assertNull(singleFlight.join("GET user", new Collector(results, "b")));
+        Assert.assertNull(singleFlight.join("GET user", new Collector(results, "c")));
+        Assert.assertEquals(1, singleFlight.getInFlight());
+
+        flight.onSuccess("user");
+
+        Assert.assertEquals(3, results.size());
+        Assert.assertTrue(results.contains("a:user"));
+        Assert.assertTrue(results.contains("b:user"));
+        Assert.assertTrue(results.contains("c:user"));
+
+        Assert.assertEquals(1, singleFlight.getCalls());
+        Assert.assertEquals(2, singleFlight.getCollapsed());
+        Assert.assertEquals(0, singleFlight.getInFlight());
+    }
+
+    @Test
+    public void differentKeysDoNotCollapse() {
+        List<String> results = new ArrayList<>();
+
+        ApiCallback<String> user = singleFlight.join("GET user", new Collector(results, "a"));
+        ApiCallback<String> device = singleFlight.join("GET device", new Collector(results, "b"));
+
+        Assert.assertNotNull(user);
+        Assert.assertNotNull(device);
+        Assert.assertEquals(2, singleFlight.getInFlight());
+    }
+
+    @Test
+    public void completedCallIsNotShared() {
+        List<String> results = new ArrayList<>();
+
+        ApiCallback<String> first = singleFlight.join("GET user", new Collector(results, "a"));
+        first.onSuccess("old");
+
+        ApiCallback<String> second = singleFlight.join("GET user", new Collector(results, "b"));
+        Assert.assertNotNull(second);
+
+        // a late second completion of the first call must not complete the new one
+        first.onSuccess("late");
+        Assert.assertEquals(1, singleFlight.getInFlight());
+
+        second.onSuccess("new");
+        Assert.assertEquals(2, results.size());
+        Assert.assertEquals("b:new", results.get(1));
+    }
+
+    @Test
+    public void callAfterWriteIsNotJoined() {
+        List<String> results = new ArrayList<>();
+
+        ApiCallback<String> beforeWrite = singleFlight.join("GET user", new Collector(results, "a"));
+        singleFlight.invalidate();
+
+        ApiCallback<String> afterWrite = singleFlight.join("GET user", new Collector(results, "b"));
+        Assert.assertNotNull(afterWrite);
+        Assert.assertEquals(2, singleFlight.getInFlight());
+
+        // the call in flight before the write still completes its caller
+        beforeWrite.onSuccess("old");
+        afterWrite.onSuccess("new");
+
+        Assert.assertEquals(2, results.size());
+        Assert.assertEquals("a:old", results.get(0));
+        Assert.assertEquals("b:new", results.get(1));
+        Assert.assertEquals(0, singleFlight.getInFlight());
+    }
+
+    @Test
+    public void failureReachesEveryCaller() {
+        List<String> results = new ArrayList<>();
+        List<ErrorResponse> errors = new ArrayList<>();
+
+        ApiCallback<String> flight = singleFlight.join("GET user", new Collector(results, "a"));
+        singleFlight.join("GET user", new ApiCallbackExt<String>() {
+            @Override
+            public void onFailure(ErrorResponse apiErrorResponse) {
+                errors.add(apiErrorResponse);
+            }
+
+            @Override
+            public void onSuccess(String result) {
+                Assert.fail();
+            }
+        });
+
+        ((ApiCallbackExt<String>) flight).onFailure(new ErrorResponse(ResultCode.NOT_FOUND, "not found"));
+
+        Assert.assertEquals("a:404", results.get(0));
+        Assert.assertEquals(1, errors.size());
+        Assert.assertEquals(0, singleFlight.getInFlight());
+    }
+
+    @Test
+    public void failingCallerDoesNotStopTheOthers() {
+        List<String> results = new ArrayList<>();
+
+        ApiCallback<String> flight = singleFlight.join("GET user", new Collector(results, "a") {
+            @Override
+            public void onSuccess(String result) {
+                throw new IllegalStateException("test");
+            }
+        });
+        singleFlight.join("GET user", new Collector(results, "b"));
+
+        flight.onSuccess("user");
+
+        Assert.assertEquals(1, results.size());
+        Assert.assertEquals("b:user", results.get(0));
+    }
+
+    private static class Collector implements ApiCallback<String> {
+        private final List<String> results;
+        private final String name;
+
+        private Collector(List<String> results, String name) {
+            this.results = results;
+            this.name = name;
+        }
+
+        @Override
+        public void onSuccess(String result) {
+            results.add(name + ":" + result);
+        }
+
+        @Override
+        public void onFailure(int errorCode, String errorMessage) {
+            results.add(name + ":" + errorCode);
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package com.fitpay.android.api;
+
+import com.fitpay.android.api.callbacks.ApiCallback;
+import com.fitpay.android.api.models.device.Commit;
+import com.fitpay.android.api.services.FitPayClient;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.HashMap;
+
+import okhttp3.OkHttpClient;
+import okhttp3.ResponseBody;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import retrofit2.Call;
+import retrofit2.Retrofit;
+
+public class ValidationCacheTest {
+
+    private static final String KEY = "GET commit";
+    private static final String COMMIT = "{\"commitId\":\"commit-1\",\"commitType\":\"CREDITCARD_CREATED\",\"createdTs\":1500000000000}";
+    private static final String LAST_MODIFIED = "Wed, 21 Oct 2015 07:28:00 GMT";
+
+    private MockWebServer server;
+    private FitPayClient client;
+    private ValidationCache cache;
+
+    @Before
+    public void init() throws IOException {
+        server = new MockWebServer();
+        server.start();
+
+        client = new Retrofit.Builder()
+                .baseUrl(server.url("/"))
+                .client(new OkHttpClient())
+                .build()
+                .create(FitPayClient.class);
+
+        cache = new ValidationCache(10);
+    }
+
+    @After
+    public void shutdown() throws IOException {
+        server.shutdown();
+    }
+
+    @Test
+    public void notModifiedIsServedFromCache() throws Exception {
+        server.enqueue(new MockResponse().setBody(COMMIT).setHeader("ETag", "\"v1\""));
+        server.enqueue(new MockResponse().setResponseCode(304).setHeader("ETag", "\"v1\""));
+
+        Result first = get();
+        Assert.assertNull(server.takeRequest().getHeader("If-None-Match"));
+        Assert.assertEquals("commit-1", first.commit.getCommitId());
+
+        Result second = get();
+        Assert.assertEquals("\"v1\"", server.takeRequest().getHeader("If-None-Match"));
+        Assert.assertSame(first.commit, second.commit);
+
+        Assert.assertEquals(1, cache.getHits());
+        Assert.assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    public void lastModifiedIsRevalidated() throws Exception {
+        server.enqueue(new MockResponse().setBody(COMMIT).setHeader("Last-Modified", LAST_MODIFIED));
+        server.enqueue(new MockResponse().setResponseCode(304));
+
+        Result first = get();
+        server.takeRequest();
+
+        Result second = get();
+        RecordedRequest request = server.takeRequest();
+        Assert.assertEquals(LAST_MODIFIED, request.getHeader("If-Modified-Since"));
+        Assert.assertNull(request.getHeader("If-None-Match"));
+        Assert.assertSame(first.commit, second.commit);
+    }
+
+    @Test
+    public void changedResourceReplacesEntry() throws Exception {
+        server.enqueue(new MockResponse().setBody(COMMIT).setHeader("ETag", "\"v1\""));
+        server.enqueue(new MockResponse().setBody(COMMIT.replace("commit-1", "commit-2")).setHeader("ETag", "\"v2\""));
+
+        Result first = get();
+        Result second = get();
+
+        Assert.assertNotSame(first.commit, second.commit);
+        Assert.assertEquals("commit-2", second.commit.getCommitId());
+        Assert.assertEquals("\"v2\"", cache.get(KEY).etag);
+        Assert.assertEquals(2, cache.getMisses());
+    }
+
+    @Test
+    public void responseWithoutValidatorsIsNotKept() throws Exception {
+        server.enqueue(new MockResponse().setBody(COMMIT));
+
+        Assert.assertNotNull(get().commit);
+        Assert.assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void failureKeepsEntry() throws Exception {
+        server.enqueue(new MockResponse().setBody(COMMIT).setHeader("ETag", "\"v1\""));
+        server.enqueue(new MockResponse().setResponseCode(500).setBody("{\"message\":\"error\"}"));
+
+        get();
+        Result failed = get();
+
+        Assert.assertNull(failed.commit);
+        Assert.assertEquals(500, failed.errorCode);
+        Assert.assertNotNull(cache.get(KEY));
+    }
+
+    @Test
+    public void leastRecentlyUsedIsDropped() {
+        ValidationCache small = new ValidationCache(2);
+        small.put("a", new ValidationCache.Entry("a", null, "a"));
+        small.put("b", new ValidationCache.Entry("b", null, "b"));
+        small.get("a");
+        small.put("c", new ValidationCache.Entry("c", null, "c"));
+
+        Assert.assertNotNull(small.get("a"));
+        Assert.assertNull(small.get("b"));
+        Assert.assertNotNull(small.get("c"));
+    }
+
+    private Result get() throws IOException {
+        ValidationCache.Entry entry = cache.get(KEY);
+        Call<ResponseBody> call = client.get(ValidationCache.getHeaders(null, entry), "commit", new HashMap<String, Object>());
+
+        final Result result = new Result();
+        cache.newCallback(KEY, entry, Commit.class, result, null).onResponse(call, call.execute());
+        return result;
+    }
+
+    private static class Result implements ApiCallback<Commit> {
+        private Commit commit;
+        private int errorCode;
+
+        @Override
+        public void onSuccess(Commit result) {
+            commit = result;
+        }
+
+        @Override
+        public void onFailure(int errorCode, String errorMessage) {
+            this.errorCode = errorCode;
+        }
+    }
+}
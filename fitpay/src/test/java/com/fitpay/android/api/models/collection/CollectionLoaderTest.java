@@ -0,0 +1,140 @@
+package com.fitpay.android.api.models.collection;
+
+import com.fitpay.android.api.callbacks.ApiCallback;
+import com.fitpay.android.api.enums.ResultCode;
+import com.fitpay.android.paymentdevice.DeviceOperationException;
+import com.fitpay.android.utils.Constants;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import io.reactivex.observers.TestObserver;
+import io.reactivex.subscribers.TestSubscriber;
+
+public class CollectionLoaderTest {
+
+    private static final int TOTAL = 95;
+    private static final int LIMIT = 10;
+
+    @Test
+    public void pagesAreLoadedInParallelAndKeptInOrder() {
+        Source source = new Source();
+
+        TestObserver<Collections.CommitsCollection> observer = CollectionLoader
+                .getAll(page(0, LIMIT, TOTAL), 3, source)
+                .test();
+
+        Assert.assertEquals(3, source.pending.size());
+
+        // complete the pages in reverse order of the requests
+        while (!source.pending.isEmpty()) {
+            Request request = source.pending.remove(source.pending.size() - 1);
+            request.callback.onSuccess(page(request.offset, request.limit, TOTAL));
+        }
+
+        Assert.assertEquals(3, source.maxInFlight);
+        Assert.assertEquals(9, source.requests);
+
+        observer.assertComplete();
+        Collections.CommitsCollection all = observer.values().get(0);
+
+        Assert.assertEquals(TOTAL, all.getResults().size());
+        Assert.assertEquals(TOTAL, all.getTotalResults());
+        for (int i = 0; i < TOTAL; i++) {
+            Assert.assertEquals("commit-" + i, all.getResults().get(i).getCommitId());
+        }
+    }
+
+    @Test
+    public void pagesAreEmittedAsTheyComeInOrder() {
+        Source source = new Source();
+
+        TestSubscriber<Collections.CommitsCollection> subscriber = CollectionLoader
+                .getPages(page(0, LIMIT, 30), 2, source)
+                .test();
+
+        subscriber.assertValueCount(1);
+
+        Request second = source.pending.get(0);
+        Request third = source.pending.get(1);
+
+        third.callback.onSuccess(page(third.offset, third.limit, 30));
+        subscriber.assertValueCount(1);
+
+        second.callback.onSuccess(page(second.offset, second.limit, 30));
+        subscriber.assertValueCount(3);
+        subscriber.assertComplete();
+
+        Assert.assertEquals(20, subscriber.values().get(2).getOffset());
+    }
+
+    @Test
+    public void singlePageIsNotRequestedAgain() {
+        Source source = new Source();
+
+        CollectionLoader.getAll(page(0, LIMIT, 7), 3, source)
+                .test()
+                .assertComplete();
+
+        Assert.assertEquals(0, source.requests);
+    }
+
+    @Test
+    public void failedPageFailsTheCollection() {
+        Source source = new Source();
+
+        TestObserver<Collections.CommitsCollection> observer = CollectionLoader
+                .getAll(page(0, LIMIT, 40), 3, source)
+                .test();
+
+        source.pending.get(1).callback.onFailure(ResultCode.NOT_FOUND, "not found");
+        // a late page of a failed load is ignored
+        Request first = source.pending.get(0);
+        first.callback.onSuccess(page(first.offset, first.limit, 40));
+
+        observer.assertError(DeviceOperationException.class);
+        Assert.assertEquals(ResultCode.NOT_FOUND, ((DeviceOperationException) observer.errors().get(0)).getErrorCode());
+    }
+
+    private static Collections.CommitsCollection page(int offset, int limit, int total) {
+        StringBuilder sb = new StringBuilder("{\"limit\":").append(limit).append(",\"offset\":").append(offset)
+                .append(",\"totalResults\":").append(total).append(",\"results\":[");
+
+        for (int i = offset; i < Math.min(offset + limit, total); i++) {
+            if (i > offset) {
+                sb.append(',');
+            }
+            sb.append("{\"commitId\":\"commit-").append(i).append("\"}");
+        }
+
+        return Constants.getGson().fromJson(sb.append("]}").toString(), Collections.CommitsCollection.class);
+    }
+
+    private static class Request {
+        private final int offset;
+        private final int limit;
+        private final ApiCallback<Collections.CommitsCollection> callback;
+
+        private Request(int offset, int limit, ApiCallback<Collections.CommitsCollection> callback) {
+            this.offset = offset;
+            this.limit = limit;
+            this.callback = callback;
+        }
+    }
+
+    private static class Source implements CollectionLoader.PageSource<Collections.CommitsCollection> {
+        private final List<Request> pending = new ArrayList<>();
+        private int requests;
+        private int maxInFlight;
+
+        @Override
+        public void getPage(int offset, int limit, ApiCallback<Collections.CommitsCollection> callback) {
+            requests++;
+            pending.add(new Request(offset, limit, callback));
+            maxInFlight = Math.max(maxInFlight, pending.size());
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package com.fitpay.android.api.models.collection;
+
+import com.fitpay.android.api.callbacks.ApiCallback;
+import com.fitpay.android.api.enums.ResultCode;
+import com.fitpay.android.api.models.device.Commit;
+import com.fitpay.android.paymentdevice.DeviceOperationException;
+import com.fitpay.android.utils.Constants;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import io.reactivex.subscribers.TestSubscriber;
+
+public class CollectionPagerTest {
+
+    private static final int LIMIT = 10;
+
+    @Test
+    public void pagesAreLoadedOnDemand() {
+        Source source = new Source(35);
+        TestSubscriber<Commit> subscriber = CollectionLoader.getResults(page(0, 35), source).test(0);
+
+        Assert.assertEquals(0, source.requests);
+
+        subscriber.request(5);
+        subscriber.assertValueCount(5);
+        // one page ahead
+        Assert.assertEquals(1, source.requests);
+
+        subscriber.request(6);
+        subscriber.assertValueCount(10);
+
+        source.complete();
+        subscriber.assertValueCount(11);
+        Assert.assertEquals(2, source.requests);
+
+        subscriber.assertNotComplete();
+        Assert.assertEquals("commit-10", subscriber.values().get(10).getCommitId());
+    }
+
+    @Test
+    public void allResultsAreEmittedInOrder() {
+        Source source = new Source(35);
+        source.immediate = true;
+
+        TestSubscriber<Commit> subscriber = CollectionLoader.getResults(page(0, 35), source).test();
+
+        subscriber.assertComplete();
+        subscriber.assertValueCount(35);
+        for (int i = 0; i < 35; i++) {
+            Assert.assertEquals("commit-" + i, subscriber.values().get(i).getCommitId());
+        }
+        Assert.assertEquals(3, source.requests);
+    }
+
+    @Test
+    public void singlePageCompletes() {
+        Source source = new Source(7);
+
+        CollectionLoader.getResults(page(0, 7), source)
+                .test()
+                .assertComplete()
+                .assertValueCount(7);
+
+        Assert.assertEquals(0, source.requests);
+    }
+
+    @Test
+    public void failedPageFailsTheResults() {
+        Source source = new Source(35);
+        TestSubscriber<Commit> subscriber = CollectionLoader.getResults(page(0, 35), source).test();
+
+        source.pending.remove(0).onFailure(ResultCode.NOT_FOUND, "not found");
+
+        subscriber.assertValueCount(10);
+        subscriber.assertError(DeviceOperationException.class);
+    }
+
+    @Test
+    public void cancelStopsLoading() {
+        Source source = new Source(35);
+        TestSubscriber<Commit> subscriber = CollectionLoader.getResults(page(0, 35), source).test(3);
+
+        subscriber.cancel();
+        source.complete();
+
+        subscriber.assertValueCount(3);
+        Assert.assertEquals(1, source.requests);
+    }
+
+    private static Collections.CommitsCollection page(int offset, int total) {
+        StringBuilder sb = new StringBuilder("{\"limit\":").append(LIMIT).append(",\"offset\":").append(offset)
+                .append(",\"totalResults\":").append(total).append(",\"results\":[");
+
+        for (int i = offset; i < Math.min(offset + LIMIT, total); i++) {
+            if (i > offset) {
+                sb.append(',');
+            }
+            sb.append("{\"commitId\":\"commit-").append(i).append("\"}");
+        }
+        sb.append(']');
+
+        if (offset + LIMIT < total) {
+            sb.append(",\"_links\":{\"next\":{\"href\":\"https://api.fit-pay.com/commits?offset=").append(offset + LIMIT).append("\"}}");
+        }
+
+        return Constants.getGson().fromJson(sb.append('}').toString(), Collections.CommitsCollection.class);
+    }
+
+    private static class Source implements CollectionPager.NextPageSource<Collections.CommitsCollection> {
+        private final int total;
+        private final List<ApiCallback<Collections.CommitsCollection>> pending = new ArrayList<>();
+        private final List<Integer> offsets = new ArrayList<>();
+        private boolean immediate;
+        private int requests;
+
+        private Source(int total) {
+            this.total = total;
+        }
+
+        @Override
+        public void getNext(Collections.CommitsCollection page, ApiCallback<Collections.CommitsCollection> callback) {
+            requests++;
+
+            if (immediate) {
+                callback.onSuccess(page(page.getOffset() + LIMIT, total));
+            } else {
+                pending.add(callback);
+                offsets.add(page.getOffset() + LIMIT);
+            }
+        }
+
+        private void complete() {
+            ApiCallback<Collections.CommitsCollection> callback = pending.remove(0);
+            callback.onSuccess(page(offsets.remove(0), total));
+        }
+    }
+}
@@ -6,6 +6,7 @@ import com.fitpay.android.utils.Constants;
 import com.fitpay.android.utils.HttpLogging;
 
 import java.lang.reflect.ParameterizedType;
+import java.util.concurrent.Executor;
 
 import okhttp3.Interceptor;
 import okhttp3.OkHttpClient;
@@ -58,4 +59,15 @@ public abstract class GenericClient<T> extends BaseClient {
     public T getClient() {
         return client;
     }
+
+    /**
+     * Retrofit calls back on the network thread outside of Android
+     */
+    public T getNetworkThreadClient() {
+        return client;
+    }
+
+    public Executor getCallbackExecutor() {
+        return null;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,100 @@
+package com.fitpay.android.api.services;
+
+import android.content.Context;
+
+import com.fitpay.android.configs.FitpayConfig;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.io.File;
+
+import okhttp3.OkHttpClient;
+
+public class SharedHttpClientTest {
+
+    private Context previousContext;
+
+    @Before
+    public void before() {
+        previousContext = FitpayConfig.appContext;
+
+        Context context = Mockito.mock(Context.class);
+        Mockito.when(context.getCacheDir()).thenReturn(new File(System.getProperty("java.io.tmpdir")));
+        FitpayConfig.appContext = context;
+
+        BaseClient.resetSharedClient();
+    }
+
+    @After
+    public void after() {
+        FitpayConfig.Http.maxIdleConnections = 5;
+        FitpayConfig.Http.maxRequestsPerHost = 5;
+        FitpayConfig.appContext = previousContext;
+
+        BaseClient.resetSharedClient();
+    }
+
+    @Test
+    public void serviceClientsShareTheRuntime() {
+        OkHttpClient api = BaseClient.getOkHttpClient(true).build();
+        OkHttpClient stream = BaseClient.getStreamOkHttpClient().build();
+
+        OkHttpClient shared = BaseClient.getSharedClient();
+
+        Assert.assertSame(shared.connectionPool(), api.connectionPool());
+        Assert.assertSame(shared.connectionPool(), stream.connectionPool());
+        Assert.assertSame(shared.dispatcher(), api.dispatcher());
+        // long lived streams don't take the per host slots of the API calls
+        Assert.assertNotSame(shared.dispatcher(), stream.dispatcher());
+        Assert.assertSame(stream.dispatcher(), BaseClient.getStreamOkHttpClient().build().dispatcher());
+        Assert.assertNotNull(shared.cache());
+        Assert.assertSame(shared.cache(), api.cache());
+        Assert.assertSame(shared.cache(), stream.cache());
+
+        // the logging interceptor stays on the derived client
+        Assert.assertEquals(shared.interceptors().size() + 1, api.interceptors().size());
+        Assert.assertEquals(shared.interceptors().size(), stream.interceptors().size());
+    }
+
+    @Test
+    public void cacheIsKeptAcrossResets() {
+        OkHttpClient first = BaseClient.getSharedClient();
+
+        BaseClient.resetSharedClient();
+
+        Assert.assertNotNull(first.cache());
+        Assert.assertSame(first.cache(), BaseClient.getSharedClient().cache());
+    }
+
+    @Test
+    public void sharedClientIsCreatedOnce() {
+        Assert.assertSame(BaseClient.getSharedClient(), BaseClient.getSharedClient());
+    }
+
+    @Test
+    public void resetAppliesNewSettings() {
+        OkHttpClient first = BaseClient.getSharedClient();
+
+        FitpayConfig.Http.maxRequestsPerHost = 2;
+        BaseClient.resetSharedClient();
+
+        OkHttpClient second = BaseClient.getSharedClient();
+
+        Assert.assertNotSame(first, second);
+        Assert.assertNotSame(first.connectionPool(), second.connectionPool());
+        Assert.assertEquals(2, second.dispatcher().getMaxRequestsPerHost());
+    }
+
+    @Test
+    public void statsAreReported() {
+        HttpStats stats = BaseClient.getHttpStats();
+
+        Assert.assertEquals(0, stats.getConnectionCount());
+        Assert.assertEquals(0, stats.getRunningCallsCount());
+        Assert.assertEquals(FitpayConfig.Http.cacheSize, stats.getCacheMaxSize());
+    }
+}
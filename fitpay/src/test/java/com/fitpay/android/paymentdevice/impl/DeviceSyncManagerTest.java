@@ -5,6 +5,7 @@ import android.content.SharedPreferences;
 import com.fitpay.android.TestActions;
 import com.fitpay.android.TestConstants;
 import com.fitpay.android.TestUtils;
+import com.fitpay.android.api.enums.SyncPriority;
 import com.fitpay.android.api.models.apdu.ApduPackage;
 import com.fitpay.android.api.models.card.CreditCard;
 import com.fitpay.android.api.models.card.CreditCardInfo;
@@ -304,6 +305,92 @@ public class DeviceSyncManagerTest extends TestActions {
                         .count());
     }
 
+    @Test
+    public void yieldedSyncIsResumed() throws Exception {
+        SavePoint sp = new SavePoint();
+
+        if (!TestConstants.testConfig.useRealTests()) {
+            mockAPDUValidation();
+        }
+
+        syncManager.setPreemptiveSyncs(true);
+
+        final String backgroundSyncId = "background-" + TestUtils.getRandomLengthString(5, 10);
+        final String interactiveSyncId = "interactive-" + TestUtils.getRandomLengthString(5, 10);
+
+        // background segment, interactive sync, resumed background sync
+        executionLatch = new CountDownLatch(3);
+
+        DeviceSyncManagerCallback interactiveSyncTrigger = new DeviceSyncManagerCallback() {
+            @Override
+            public void syncRequestAdded(SyncRequest request) {
+            }
+
+            @Override
+            public void syncRequestFailed(SyncRequest request) {
+            }
+
+            @Override
+            public void syncTaskStarting(SyncRequest request) {
+            }
+
+            @Override
+            public void syncTaskStarted(SyncRequest request) {
+                // the background sync yields at its first commit boundary
+                if (backgroundSyncId.equals(request.getSyncId())) {
+                    syncManager.removeDeviceSyncManagerCallback(this);
+                    syncManager.add(SyncRequest.builder()
+                            .setSyncId(interactiveSyncId)
+                            .setPriority(SyncPriority.INTERACTIVE)
+                            .setConnector(mockPaymentDevice)
+                            .setUser(user)
+                            .setDevice(device)
+                            .build());
+                }
+            }
+
+            @Override
+            public void syncTaskCompleted(SyncRequest request) {
+            }
+        };
+        syncManager.registerDeviceSyncManagerCallback(interactiveSyncTrigger);
+
+        syncManager.add(SyncRequest.builder()
+                .setSyncId(backgroundSyncId)
+                .setPriority(SyncPriority.BACKGROUND)
+                .setConnector(mockPaymentDevice)
+                .setUser(user)
+                .setDevice(device)
+                .build());
+
+        executionLatch.await();
+
+        //wait for new event
+        TestConstants.waitForAction();
+
+        mockPaymentDevice.disconnect();
+
+        sp.rollback();
+
+        List<Integer> backgroundStates = new ArrayList<>();
+        for (Sync syncEvent : new ArrayList<>(listener.getSyncEvents())) {
+            if (backgroundSyncId.equals(syncEvent.getSyncId())) {
+                backgroundStates.add(syncEvent.getState());
+            }
+        }
+
+        // started once, resumed once, and one final state
+        assertEquals(3, backgroundStates.size());
+        assertEquals(States.STARTED, (int) backgroundStates.get(0));
+        assertEquals(States.RESUMED, (int) backgroundStates.get(1));
+        assertTrue(backgroundStates.get(2) == States.COMPLETED || backgroundStates.get(2) == States.COMPLETED_NO_UPDATES);
+
+        assertEquals(1, listener.getSyncEvents().stream()
+                .filter(syncEvent -> interactiveSyncId.equals(syncEvent.getSyncId()))
+                .filter(syncEvent -> syncEvent.getState() == States.STARTED)
+                .count());
+    }
+
     private void mockAPDUValidation() {
         new MockUp<ApduPackage>() {
             @Mock
@@ -0,0 +1,208 @@
+package com.fitpay.android.paymentdevice.utils;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class DeviceStateJournalTest {
+
+    private File file;
+
+    @Before
+    public void before() throws Exception {
+        file = File.createTempFile("device_state", ".journal");
+        Assert.assertTrue(file.delete());
+    }
+
+    @After
+    public void after() {
+        file.delete();
+        new File(file.getPath() + ".tmp").delete();
+    }
+
+    @Test
+    public void stateIsRestoredAfterReopen() throws Exception {
+        DeviceStateJournal journal = new DeviceStateJournal(file, 1000);
+        journal.put("device1", values("lastCommitId", "1"));
+        journal.put("device2", values("lastCommitId", "2"));
+        journal.put("device1", values("lastCommitId", "3"));
+        journal.put("device3", values("lastCommitId", "4"));
+        journal.remove("device3");
+        journal.close();
+
+        DeviceStateJournal reopened = new DeviceStateJournal(file, 1000);
+        Assert.assertEquals("3", reopened.get("device1").get("lastCommitId"));
+        Assert.assertEquals("2", reopened.get("device2").get("lastCommitId"));
+        Assert.assertNull(reopened.get("device3"));
+        reopened.close();
+    }
+
+    @Test
+    public void tornRecordIsDropped() throws Exception {
+        DeviceStateJournal journal = new DeviceStateJournal(file, 1000);
+        journal.put("device", values("lastCommitId", "1"));
+        journal.put("device", values("lastCommitId", "2"));
+        journal.close();
+
+        long length = file.length();
+
+        // simulate a crash in the middle of the last write
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        raf.setLength(length - 5);
+        raf.close();
+
+        DeviceStateJournal reopened = new DeviceStateJournal(file, 1000);
+        Assert.assertEquals("1", reopened.get("device").get("lastCommitId"));
+
+        // the journal is still writable after the torn record has been dropped
+        reopened.put("device", values("lastCommitId", "3"));
+        reopened.close();
+
+        DeviceStateJournal reopenedAgain = new DeviceStateJournal(file, 1000);
+        Assert.assertEquals("3", reopenedAgain.get("device").get("lastCommitId"));
+        reopenedAgain.close();
+    }
+
+    @Test
+    public void garbageAtTheEndIsDropped() throws Exception {
+        DeviceStateJournal journal = new DeviceStateJournal(file, 1000);
+        journal.put("device", values("lastCommitId", "1"));
+        journal.close();
+
+        FileOutputStream out = new FileOutputStream(file, true);
+        out.write(new byte[]{0, 0, 0, 10, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 0, 0, 0, 0, 0, 0, 0, 0});
+        out.close();
+
+        DeviceStateJournal reopened = new DeviceStateJournal(file, 1000);
+        Assert.assertEquals("1", reopened.get("device").get("lastCommitId"));
+        reopened.close();
+    }
+
+    @Test
+    public void journalIsCompacted() throws Exception {
+        DeviceStateJournal journal = new DeviceStateJournal(file, 100);
+
+        for (int i = 0; i < 1000; i++) {
+            journal.put("device" + (i % 5), values("lastCommitId", String.valueOf(i)));
+        }
+
+        Assert.assertTrue(journal.getCompactionCount() > 0);
+        journal.close();
+
+        // 5 devices, at most one round of records on top of the snapshot
+        DeviceStateJournal reopened = new DeviceStateJournal(file, 100);
+        for (int d = 0; d < 5; d++) {
+            Assert.assertEquals(String.valueOf(995 + d), reopened.get("device" + d).get("lastCommitId"));
+        }
+        reopened.close();
+
+        Assert.assertFalse(new File(file.getPath() + ".tmp").exists());
+    }
+
+    @Test
+    public void concurrentWritersShareSyncs() throws Exception {
+        DeviceStateJournal journal = new DeviceStateJournal(file, 100000);
+
+        int threads = 8;
+        int writesPerThread = 200;
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> writers = new ArrayList<>();
+        List<Throwable> errors = new ArrayList<>();
+
+        for (int t = 0; t < threads; t++) {
+            final String deviceId = "device" + t;
+            Thread writer = new Thread(() -> {
+                try {
+                    start.await();
+                    for (int i = 0; i < writesPerThread; i++) {
+                        journal.put(deviceId, values("lastCommitId", String.valueOf(i)));
+                    }
+                } catch (Throwable e) {
+                    synchronized (errors) {
+                        errors.add(e);
+                    }
+                }
+            });
+            writer.start();
+            writers.add(writer);
+        }
+
+        start.countDown();
+        for (Thread writer : writers) {
+            writer.join();
+        }
+
+        Assert.assertTrue(errors.toString(), errors.isEmpty());
+        Assert.assertTrue("every write has been synced separately", journal.getSyncCount() < threads * writesPerThread);
+        journal.close();
+
+        DeviceStateJournal reopened = new DeviceStateJournal(file, 100000);
+        for (int t = 0; t < threads; t++) {
+            Assert.assertEquals(String.valueOf(writesPerThread - 1), reopened.get("device" + t).get("lastCommitId"));
+        }
+        reopened.close();
+    }
+
+    @Test
+    public void deferredWritesShareASync() throws Exception {
+        DeviceStateJournal journal = new DeviceStateJournal(file, 100000);
+        AtomicBoolean failed = new AtomicBoolean();
+        for (int i = 0; i < 50; i++) {
+            journal.putDeferred("device", values("lastCommitId", String.valueOf(i)), () -> failed.set(true));
+        }
+
+        Assert.assertEquals("49", journal.get("device").get("lastCommitId"));
+        Assert.assertEquals(0, journal.getSyncCount());
+
+        // synced by the scheduled flush
+        long deadline = System.currentTimeMillis() + DeviceStateJournal.FLUSH_DELAY_MS * 20;
+        while (journal.getSyncCount() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(1, journal.getSyncCount());
+
+        journal.putDeferred("device", values("lastCommitId", "50"), () -> failed.set(true));
+        journal.flush();
+        Assert.assertEquals(2, journal.getSyncCount());
+        Assert.assertFalse(failed.get());
+        journal.close();
+
+        DeviceStateJournal reopened = new DeviceStateJournal(file, 100000);
+        Assert.assertEquals("50", reopened.get("device").get("lastCommitId"));
+        reopened.close();
+    }
+
+    @Test
+    public void failedDeferredFlushCallsTheFallback() throws Exception {
+        DeviceStateJournal journal = new DeviceStateJournal(file, 100000);
+        CountDownLatch fallback = new CountDownLatch(1);
+
+        journal.putDeferred("device", values("lastCommitId", "1"), fallback::countDown);
+        // the scheduled flush fails with an IOException
+        journal.close();
+
+        Assert.assertTrue(fallback.await(DeviceStateJournal.FLUSH_DELAY_MS * 20, TimeUnit.MILLISECONDS));
+        Assert.assertTrue(journal.isFailed());
+        // the state is still there to be moved elsewhere
+        Assert.assertEquals("1", journal.getAll().get("device").get("lastCommitId"));
+    }
+
+    private static Map<String, String> values(String key, String value) {
+        Map<String, String> values = new HashMap<>();
+        values.put(key, value);
+        values.put("paymentDeviceServiceType", "mock");
+        return values;
+    }
+}
@@ -0,0 +1,152 @@
+package com.fitpay.android.paymentdevice.utils.sync;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class AdaptiveCommitTimeoutsTest {
+
+    private static final int DEFAULT_WARNING = 5000;
+    private static final int DEFAULT_ERROR = 30000;
+
+    private AdaptiveCommitTimeouts timeouts;
+
+    @Before
+    public void before() {
+        timeouts = new AdaptiveCommitTimeouts();
+        timeouts.setEnabled(true);
+    }
+
+    @Test
+    public void disabledByDefault() {
+        Assert.assertFalse(new AdaptiveCommitTimeouts().isEnabled());
+    }
+
+    @Test
+    public void budgetRecoversFromALatencyIncrease() {
+        for (int i = 0; i < 20; i++) {
+            timeouts.record("device", "APDU_PACKAGE", 100);
+        }
+        Assert.assertEquals(AdaptiveCommitTimeouts.DEFAULT_ERROR_FLOOR,
+                timeouts.getBudget("device", "APDU_PACKAGE", DEFAULT_WARNING, DEFAULT_ERROR).getErrorTimeout());
+
+        // the device gets slower than the learned budget
+        long latency = 20000;
+        int timedOut = 0;
+        for (int i = 0; i < 10; i++) {
+            AdaptiveCommitTimeouts.Budget budget = timeouts.getBudget("device", "APDU_PACKAGE", DEFAULT_WARNING, DEFAULT_ERROR);
+            if (latency > budget.getErrorTimeout()) {
+                timeouts.recordTimeout("device", "APDU_PACKAGE", budget.getErrorTimeout());
+                timedOut++;
+            } else {
+                timeouts.record("device", "APDU_PACKAGE", latency);
+            }
+        }
+
+        Assert.assertTrue("timeouts: " + timedOut, timedOut <= 2);
+        Assert.assertTrue(timeouts.getBudget("device", "APDU_PACKAGE", DEFAULT_WARNING, DEFAULT_ERROR).getErrorTimeout() >= latency);
+    }
+
+    @Test
+    public void defaultsAreUsedUntilEnoughSamples() {
+        for (int i = 0; i < AdaptiveCommitTimeouts.MIN_SAMPLES - 1; i++) {
+            timeouts.record("device", "CREDITCARD_METADATA_UPDATED", 100);
+        }
+
+        AdaptiveCommitTimeouts.Budget budget = timeouts.getBudget("device", "CREDITCARD_METADATA_UPDATED", DEFAULT_WARNING, DEFAULT_ERROR);
+
+        Assert.assertEquals(AdaptiveCommitTimeouts.SOURCE_DEFAULT, budget.getSource());
+        Assert.assertEquals(DEFAULT_WARNING, budget.getWarningTimeout());
+        Assert.assertEquals(DEFAULT_ERROR, budget.getErrorTimeout());
+    }
+
+    @Test
+    public void budgetsFollowCommitTypeLatency() {
+        for (int i = 0; i < 50; i++) {
+            timeouts.record("device", "CREDITCARD_METADATA_UPDATED", 200);
+            timeouts.record("device", "APDU_PACKAGE", 8000 + i * 10);
+        }
+
+        AdaptiveCommitTimeouts.Budget fast = timeouts.getBudget("device", "CREDITCARD_METADATA_UPDATED", DEFAULT_WARNING, DEFAULT_ERROR);
+        AdaptiveCommitTimeouts.Budget slow = timeouts.getBudget("device", "APDU_PACKAGE", DEFAULT_WARNING, DEFAULT_ERROR);
+
+        // fast commits are clamped to the floors
+        Assert.assertEquals(AdaptiveCommitTimeouts.DEFAULT_WARNING_FLOOR, fast.getWarningTimeout());
+        Assert.assertEquals(AdaptiveCommitTimeouts.DEFAULT_ERROR_FLOOR, fast.getErrorTimeout());
+
+        // slow commits get more than the fixed default
+        Assert.assertTrue(slow.getWarningTimeout() > DEFAULT_WARNING);
+        Assert.assertTrue(slow.getErrorTimeout() > DEFAULT_ERROR);
+        Assert.assertTrue(slow.getErrorTimeout() <= AdaptiveCommitTimeouts.DEFAULT_ERROR_CEILING);
+        Assert.assertTrue(slow.getErrorTimeout() >= slow.getWarningTimeout());
+    }
+
+    @Test
+    public void ceilingsAreApplied() {
+        for (int i = 0; i < 10; i++) {
+            timeouts.record("device", "APDU_PACKAGE", 300000);
+        }
+
+        AdaptiveCommitTimeouts.Budget budget = timeouts.getBudget("device", "APDU_PACKAGE", DEFAULT_WARNING, DEFAULT_ERROR);
+
+        Assert.assertEquals(AdaptiveCommitTimeouts.DEFAULT_WARNING_CEILING, budget.getWarningTimeout());
+        Assert.assertEquals(AdaptiveCommitTimeouts.DEFAULT_ERROR_CEILING, budget.getErrorTimeout());
+    }
+
+    @Test
+    public void deviceStatsTakePrecedence() {
+        for (int i = 0; i < 20; i++) {
+            timeouts.record("fastDevice", "APDU_PACKAGE", 1000);
+            timeouts.record("slowDevice", "APDU_PACKAGE", 10000);
+        }
+
+        AdaptiveCommitTimeouts.Budget fast = timeouts.getBudget("fastDevice", "APDU_PACKAGE", DEFAULT_WARNING, DEFAULT_ERROR);
+        AdaptiveCommitTimeouts.Budget slow = timeouts.getBudget("slowDevice", "APDU_PACKAGE", DEFAULT_WARNING, DEFAULT_ERROR);
+        AdaptiveCommitTimeouts.Budget unknown = timeouts.getBudget("newDevice", "APDU_PACKAGE", DEFAULT_WARNING, DEFAULT_ERROR);
+
+        Assert.assertEquals(AdaptiveCommitTimeouts.SOURCE_DEVICE, fast.getSource());
+        Assert.assertEquals(AdaptiveCommitTimeouts.SOURCE_DEVICE, slow.getSource());
+        Assert.assertTrue(slow.getErrorTimeout() > fast.getErrorTimeout());
+
+        // a new device falls back to the stats of all devices
+        Assert.assertEquals(AdaptiveCommitTimeouts.SOURCE_COMMIT_TYPE, unknown.getSource());
+        Assert.assertEquals(40, unknown.getSamples());
+    }
+
+    @Test
+    public void statsAreExposed() {
+        for (int i = 1; i <= 100; i++) {
+            timeouts.record("device", "APDU_PACKAGE", i);
+        }
+
+        AdaptiveCommitTimeouts.LatencyStats stats = timeouts.getStats(null, "APDU_PACKAGE");
+
+        Assert.assertNotNull(stats);
+        Assert.assertEquals(100, stats.getCount());
+        // only the recent window is used for the percentile
+        Assert.assertTrue(stats.getPercentile() >= 95 && stats.getPercentile() <= 100);
+        Assert.assertTrue(stats.getEwma() > 90);
+
+        Assert.assertNotNull(timeouts.getStats("device", "APDU_PACKAGE"));
+        Assert.assertNull(timeouts.getStats("device", "UNKNOWN"));
+        Assert.assertEquals(1, timeouts.getCommitTypeStats().size());
+    }
+
+    @Test
+    public void disabledReturnsDefaults() {
+        for (int i = 0; i < 20; i++) {
+            timeouts.record("device", "APDU_PACKAGE", 100);
+        }
+
+        timeouts.setEnabled(false);
+
+        AdaptiveCommitTimeouts.Budget budget = timeouts.getBudget("device", "APDU_PACKAGE", DEFAULT_WARNING, DEFAULT_ERROR);
+        Assert.assertEquals(DEFAULT_WARNING, budget.getWarningTimeout());
+        Assert.assertEquals(DEFAULT_ERROR, budget.getErrorTimeout());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidLimitsAreRejected() {
+        timeouts.setLimits(1000, 500, 5000, 10000);
+    }
+}
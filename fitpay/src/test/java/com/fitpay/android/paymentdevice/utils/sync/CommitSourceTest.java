@@ -0,0 +1,204 @@
+package com.fitpay.android.paymentdevice.utils.sync;
+
+import com.fitpay.android.api.callbacks.ApiCallback;
+import com.fitpay.android.api.enums.ResultCode;
+import com.fitpay.android.api.models.collection.Collections;
+import com.fitpay.android.api.models.device.Commit;
+import com.fitpay.android.utils.Constants;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class CommitSourceTest {
+
+    @Test
+    public void firstCommitIsReadyAfterFirstPage() {
+        FakePageLoader loader = new FakePageLoader(500);
+        CommitSource source = new CommitSource(loader, null, 50, 100);
+
+        RecordingCallback callback = new RecordingCallback();
+        source.next(callback);
+
+        Assert.assertEquals("first page has not been requested", 1, loader.requests.size());
+
+        loader.respond();
+
+        Assert.assertEquals("0", callback.commits.get(0).getCommitId());
+        Assert.assertEquals(499, source.getRemaining());
+    }
+
+    @Test
+    public void allCommitsAreHandedOutInOrderWithBoundedWindow() {
+        int total = 1000;
+        FakePageLoader loader = new FakePageLoader(total);
+        CommitSource source = new CommitSource(loader, null, 50, 100);
+
+        RecordingCallback callback = new RecordingCallback();
+        int maxBuffered = 0;
+
+        while (!callback.completed) {
+            source.next(callback);
+
+            // pages arrive asynchronously, answer them between two commits
+            while (loader.hasPendingRequest()) {
+                loader.respond();
+            }
+
+            maxBuffered = Math.max(maxBuffered, source.getBufferedCount());
+        }
+
+        Assert.assertEquals(total, callback.commits.size());
+        for (int i = 0; i < total; i++) {
+            Assert.assertEquals(String.valueOf(i), callback.commits.get(i).getCommitId());
+        }
+
+        Assert.assertTrue("window exceeded: " + maxBuffered, maxBuffered <= 100);
+        Assert.assertTrue(source.isExhausted());
+    }
+
+    @Test
+    public void nextPageIsPrefetched() {
+        FakePageLoader loader = new FakePageLoader(200);
+        CommitSource source = new CommitSource(loader, "start", 50, 100);
+
+        RecordingCallback callback = new RecordingCallback();
+        source.next(callback);
+        loader.respond();
+
+        // the second page is requested while the first one is processed
+        Assert.assertEquals(2, loader.requests.size());
+        Assert.assertEquals("start", loader.requests.get(0));
+        Assert.assertEquals("49", loader.requests.get(1));
+    }
+
+    @Test
+    public void emptyFirstPageCompletes() {
+        FakePageLoader loader = new FakePageLoader(0);
+        CommitSource source = new CommitSource(loader, null, 50, 100);
+
+        RecordingCallback callback = new RecordingCallback();
+        source.next(callback);
+        loader.respond();
+
+        Assert.assertTrue(callback.completed);
+        Assert.assertTrue(callback.commits.isEmpty());
+    }
+
+    @Test
+    public void pageErrorIsReportedAfterBufferedCommits() {
+        FakePageLoader loader = new FakePageLoader(200);
+        CommitSource source = new CommitSource(loader, null, 50, 100);
+
+        RecordingCallback callback = new RecordingCallback();
+        source.next(callback);
+        loader.respond();
+        loader.fail();
+
+        for (int i = 0; i < 49; i++) {
+            source.next(callback);
+        }
+
+        Assert.assertEquals(50, callback.commits.size());
+        Assert.assertNull(callback.error);
+
+        source.next(callback);
+
+        Assert.assertNotNull(callback.error);
+        Assert.assertFalse(callback.completed);
+    }
+
+    @Test
+    public void closedSourceStopsFetching() {
+        FakePageLoader loader = new FakePageLoader(200);
+        CommitSource source = new CommitSource(loader, null, 50, 100);
+
+        RecordingCallback callback = new RecordingCallback();
+        source.next(callback);
+        source.close();
+        loader.respond();
+
+        Assert.assertTrue(callback.commits.isEmpty());
+        Assert.assertEquals(0, source.getBufferedCount());
+        Assert.assertEquals(1, loader.requests.size());
+    }
+
+    private static Commit commit(int id) {
+        return Constants.getGson().fromJson("{\"commitId\":\"" + id + "\",\"commitType\":\"CREDITCARD_CREATED\"}", Commit.class);
+    }
+
+    private static class FakePageLoader implements CommitSource.PageLoader {
+        private final int total;
+        private final List<String> requests = new ArrayList<>();
+        private final List<ApiCallback<Collections.CommitsCollection>> callbacks = new ArrayList<>();
+        private final List<Integer> limits = new ArrayList<>();
+
+        private FakePageLoader(int total) {
+            this.total = total;
+        }
+
+        @Override
+        public void loadPage(String lastCommitId, int limit, ApiCallback<Collections.CommitsCollection> callback) {
+            requests.add(lastCommitId);
+            limits.add(limit);
+            callbacks.add(callback);
+        }
+
+        private boolean hasPendingRequest() {
+            return callbacks.size() > 0 && callbacks.get(callbacks.size() - 1) != null;
+        }
+
+        private void respond() {
+            int index = callbacks.size() - 1;
+            ApiCallback<Collections.CommitsCollection> callback = callbacks.set(index, null);
+
+            String lastCommitId = requests.get(index);
+            int from = lastCommitId == null || "start".equals(lastCommitId) ? 0 : Integer.parseInt(lastCommitId) + 1;
+            int to = Math.min(from + limits.get(index), total);
+
+            StringBuilder json = new StringBuilder("{\"totalResults\":").append(total - from).append(",\"results\":[");
+            for (int i = from; i < to; i++) {
+                if (i > from) {
+                    json.append(',');
+                }
+                json.append(Constants.getGson().toJson(commit(i)));
+            }
+            json.append(']');
+            if (to < total) {
+                json.append(",\"_links\":{\"next\":{\"href\":\"https://api.fit-pay.com/commits?commitsAfter=").append(to - 1).append("\"}}");
+            }
+            json.append('}');
+
+            callback.onSuccess(Constants.getGson().fromJson(json.toString(), Collections.CommitsCollection.class));
+        }
+
+        private void fail() {
+            int index = callbacks.size() - 1;
+            ApiCallback<Collections.CommitsCollection> callback = callbacks.set(index, null);
+            callback.onFailure(ResultCode.REQUEST_FAILED, "page failed");
+        }
+    }
+
+    private static class RecordingCallback implements CommitSource.Callback {
+        private final List<Commit> commits = new ArrayList<>();
+        private boolean completed;
+        private Throwable error;
+
+        @Override
+        public void onCommit(Commit commit) {
+            commits.add(commit);
+        }
+
+        @Override
+        public void onComplete() {
+            completed = true;
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            error = throwable;
+        }
+    }
+}
@@ -0,0 +1,376 @@
+package com.fitpay.android.paymentdevice.utils.sync;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class KeyedSerialExecutorTest {
+
+    private static final int THREADS = 8;
+
+    private ExecutorService pool;
+
+    @Before
+    public void before() {
+        pool = Executors.newFixedThreadPool(THREADS);
+    }
+
+    @After
+    public void after() {
+        pool.shutdownNow();
+    }
+
+    @Test
+    public void stressTestWithHundredsOfDevices() throws Exception {
+        final int devices = 300;
+        final int syncsPerDevice = 10;
+
+        KeyedSerialExecutor<String> executor = new KeyedSerialExecutor<>(pool, THREADS, syncsPerDevice);
+
+        Map<String, AtomicInteger> activePerDevice = new ConcurrentHashMap<>();
+        Map<String, List<Integer>> executionOrder = new ConcurrentHashMap<>();
+        AtomicInteger active = new AtomicInteger();
+        AtomicInteger maxActive = new AtomicInteger();
+        AtomicInteger overlaps = new AtomicInteger();
+        CountDownLatch latch = new CountDownLatch(devices * syncsPerDevice);
+
+        List<Thread> producers = new ArrayList<>();
+        for (int p = 0; p < 4; p++) {
+            final int producer = p;
+            producers.add(new Thread(() -> {
+                Random random = new Random(producer);
+                for (int d = producer; d < devices; d += 4) {
+                    String deviceId = "device-" + d;
+                    activePerDevice.put(deviceId, new AtomicInteger());
+                    executionOrder.put(deviceId, new CopyOnWriteArrayList<>());
+
+                    for (int s = 0; s < syncsPerDevice; s++) {
+                        final int syncNumber = s;
+                        final int work = random.nextInt(200);
+                        Assert.assertTrue(executor.execute(deviceId, () -> {
+                            if (activePerDevice.get(deviceId).incrementAndGet() > 1) {
+                                overlaps.incrementAndGet();
+                            }
+
+                            int current = active.incrementAndGet();
+                            maxActive.accumulateAndGet(current, Math::max);
+
+                            executionOrder.get(deviceId).add(syncNumber);
+                            busyWork(work);
+
+                            active.decrementAndGet();
+                            activePerDevice.get(deviceId).decrementAndGet();
+                            latch.countDown();
+                        }));
+                    }
+                }
+            }));
+        }
+
+        for (Thread producer : producers) {
+            producer.start();
+        }
+
+        for (Thread producer : producers) {
+            producer.join();
+        }
+
+        Assert.assertTrue("not all syncs completed", latch.await(60, TimeUnit.SECONDS));
+
+        Assert.assertEquals("syncs of the same device overlapped", 0, overlaps.get());
+        Assert.assertTrue("parallelism exceeded the pool size", maxActive.get() <= THREADS);
+        Assert.assertTrue("different devices were not executed in parallel", maxActive.get() > 1);
+
+        for (Map.Entry<String, List<Integer>> entry : executionOrder.entrySet()) {
+            List<Integer> order = entry.getValue();
+            Assert.assertEquals(syncsPerDevice, order.size());
+
+            List<Integer> sorted = new ArrayList<>(order);
+            Collections.sort(sorted);
+            Assert.assertEquals("syncs of " + entry.getKey() + " executed out of order", sorted, order);
+        }
+
+        Assert.assertEquals(0, executor.getRunningCount());
+    }
+
+    @Test
+    public void chattyDeviceDoesNotStarveOthers() throws Exception {
+        KeyedSerialExecutor<String> executor = new KeyedSerialExecutor<>(pool, 1, 100);
+
+        List<String> executed = new CopyOnWriteArrayList<>();
+        CountDownLatch blocker = new CountDownLatch(1);
+        CountDownLatch latch = new CountDownLatch(52);
+
+        // occupy the only slot so everything else queues up
+        executor.execute("blocker", () -> {
+            await(blocker);
+            latch.countDown();
+        });
+
+        for (int i = 0; i < 50; i++) {
+            executor.execute("chatty", () -> {
+                executed.add("chatty");
+                latch.countDown();
+            });
+        }
+
+        executor.execute("quiet", () -> {
+            executed.add("quiet");
+            latch.countDown();
+        });
+
+        blocker.countDown();
+
+        Assert.assertTrue(latch.await(10, TimeUnit.SECONDS));
+        Assert.assertTrue("quiet device waited for the whole chatty backlog", executed.indexOf("quiet") <= 1);
+    }
+
+    @Test
+    public void fullDeviceQueueRejectsRequest() {
+        KeyedSerialExecutor<String> executor = new KeyedSerialExecutor<>(pool, 1, 2);
+        CountDownLatch blocker = new CountDownLatch(1);
+
+        Assert.assertTrue(executor.execute("device", () -> await(blocker)));
+        Assert.assertTrue(executor.execute("device", () -> {}));
+        Assert.assertTrue(executor.execute("device", () -> {}));
+        Assert.assertFalse(executor.execute("device", () -> {}));
+
+        Assert.assertTrue(executor.isRunning("device"));
+        Assert.assertEquals(2, executor.getPendingCount("device"));
+
+        blocker.countDown();
+    }
+
+    @Test
+    public void nextRequestIsHandedOffWithoutDelay() throws Exception {
+        int syncs = 100;
+        KeyedSerialExecutor<String> executor = new KeyedSerialExecutor<>(pool, THREADS, syncs);
+
+        CountDownLatch latch = new CountDownLatch(syncs);
+        long start = System.nanoTime();
+
+        for (int i = 0; i < syncs; i++) {
+            executor.execute("device", latch::countDown);
+        }
+
+        Assert.assertTrue(latch.await(5, TimeUnit.SECONDS));
+        // the old implementation waited 100ms between two syncs of the same device
+        Assert.assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < syncs * 10);
+    }
+
+    @Test
+    public void interactiveKeyRunsAheadOfBackgroundKeys() throws Exception {
+        KeyedSerialExecutor<String> executor = new KeyedSerialExecutor<>(pool, 1, 10);
+
+        List<String> executed = new CopyOnWriteArrayList<>();
+        CountDownLatch blocker = new CountDownLatch(1);
+        CountDownLatch latch = new CountDownLatch(6);
+
+        executor.execute("blocker", 0, () -> {
+            await(blocker);
+            latch.countDown();
+        });
+
+        for (int i = 0; i < 4; i++) {
+            final String key = "background" + i;
+            executor.execute(key, 0, () -> {
+                executed.add(key);
+                latch.countDown();
+            });
+        }
+
+        executor.execute("interactive", 2, () -> {
+            executed.add("interactive");
+            latch.countDown();
+        });
+
+        blocker.countDown();
+
+        Assert.assertTrue(latch.await(10, TimeUnit.SECONDS));
+        Assert.assertEquals("interactive", executed.get(0));
+        // background keys keep their round-robin order
+        Assert.assertEquals("background0", executed.get(1));
+        Assert.assertEquals("background3", executed.get(4));
+    }
+
+    @Test
+    public void interactiveTaskOfTheSameKeyRunsAheadOfQueuedBackgroundTasks() throws Exception {
+        KeyedSerialExecutor<String> executor = new KeyedSerialExecutor<>(pool, 2, 10);
+
+        List<String> executed = new CopyOnWriteArrayList<>();
+        CountDownLatch blocker = new CountDownLatch(1);
+        CountDownLatch latch = new CountDownLatch(4);
+
+        executor.execute("device", 0, () -> {
+            await(blocker);
+            latch.countDown();
+        });
+
+        executor.execute("device", 0, () -> {
+            executed.add("background1");
+            latch.countDown();
+        });
+
+        executor.execute("device", 0, () -> {
+            executed.add("background2");
+            latch.countDown();
+        });
+
+        executor.execute("device", 2, () -> {
+            executed.add("interactive");
+            latch.countDown();
+        });
+
+        blocker.countDown();
+
+        Assert.assertTrue(latch.await(10, TimeUnit.SECONDS));
+        Assert.assertEquals(Arrays.asList("interactive", "background1", "background2"), executed);
+    }
+
+    @Test
+    public void runningTaskShouldYieldToHigherPriority() throws Exception {
+        KeyedSerialExecutor<String> executor = new KeyedSerialExecutor<>(pool, 1, 10);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch blocker = new CountDownLatch(1);
+
+        executor.execute("device", 0, () -> {
+            started.countDown();
+            await(blocker);
+        });
+
+        Assert.assertTrue(started.await(5, TimeUnit.SECONDS));
+        Assert.assertFalse(executor.shouldYield("device"));
+
+        // same priority doesn't preempt
+        executor.execute("other", 0, () -> {});
+        Assert.assertFalse(executor.shouldYield("device"));
+
+        // another device is waiting for the only slot
+        executor.execute("urgent", 2, () -> {});
+        Assert.assertTrue(executor.shouldYield("device"));
+        Assert.assertFalse(executor.shouldYield("idle"));
+
+        blocker.countDown();
+    }
+
+    @Test
+    public void runningTaskShouldYieldToHigherPriorityOfTheSameKey() throws Exception {
+        KeyedSerialExecutor<String> executor = new KeyedSerialExecutor<>(pool, THREADS, 10);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch blocker = new CountDownLatch(1);
+
+        executor.execute("device", 1, () -> {
+            started.countDown();
+            await(blocker);
+        });
+
+        Assert.assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        executor.execute("device", 1, () -> {});
+        Assert.assertFalse(executor.shouldYield("device"));
+
+        executor.execute("device", 2, () -> {});
+        Assert.assertTrue(executor.shouldYield("device"));
+
+        blocker.countDown();
+    }
+
+    @Test
+    public void onlyAsManyKeysYieldAsHigherPriorityKeysWait() throws Exception {
+        KeyedSerialExecutor<String> executor = new KeyedSerialExecutor<>(pool, 3, 10);
+        CountDownLatch blocker = new CountDownLatch(1);
+
+        for (String key : Arrays.asList("oldest", "newest", "normal")) {
+            CountDownLatch started = new CountDownLatch(1);
+            executor.execute(key, key.equals("normal") ? 1 : 0, () -> {
+                started.countDown();
+                await(blocker);
+            });
+            Assert.assertTrue(started.await(5, TimeUnit.SECONDS));
+        }
+
+        // the oldest key of the lowest priority gives up its slot
+        executor.execute("urgent1", 2, () -> {});
+        Assert.assertTrue(executor.shouldYield("oldest"));
+        Assert.assertFalse(executor.shouldYield("newest"));
+        Assert.assertFalse(executor.shouldYield("normal"));
+
+        executor.execute("urgent2", 2, () -> {});
+        Assert.assertTrue(executor.shouldYield("oldest"));
+        Assert.assertTrue(executor.shouldYield("newest"));
+        Assert.assertFalse(executor.shouldYield("normal"));
+
+        // a waiting key of priority 1 doesn't preempt the running key of the same priority
+        executor.execute("normal2", 1, () -> {});
+        Assert.assertFalse(executor.shouldYield("normal"));
+
+        blocker.countDown();
+    }
+
+    @Test
+    public void raisedTaskIsRankedAgain() throws Exception {
+        KeyedSerialExecutor<String> executor = new KeyedSerialExecutor<>(pool, 1, 10);
+
+        List<String> executed = new CopyOnWriteArrayList<>();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch blocker = new CountDownLatch(1);
+        CountDownLatch latch = new CountDownLatch(2);
+
+        executor.execute("blocker", 0, () -> {
+            started.countDown();
+            await(blocker);
+        });
+        Assert.assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        executor.execute("other", 0, () -> {
+            executed.add("other");
+            latch.countDown();
+        });
+
+        Runnable task = () -> {
+            executed.add("device");
+            latch.countDown();
+        };
+        executor.execute("device", 0, task);
+        Assert.assertFalse(executor.shouldYield("blocker"));
+
+        Assert.assertTrue(executor.raisePriority("device", task, 2));
+        Assert.assertTrue(executor.shouldYield("blocker"));
+        Assert.assertFalse(executor.raisePriority("device", () -> {}, 2));
+
+        blocker.countDown();
+
+        Assert.assertTrue(latch.await(10, TimeUnit.SECONDS));
+        Assert.assertEquals(Arrays.asList("device", "other"), executed);
+    }
+
+    private static void busyWork(int micros) {
+        long end = System.nanoTime() + TimeUnit.MICROSECONDS.toNanos(micros);
+        while (System.nanoTime() < end) {
+            Thread.yield();
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
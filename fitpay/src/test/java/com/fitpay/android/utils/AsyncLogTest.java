@@ -0,0 +1,240 @@
+package com.fitpay.android.utils;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class AsyncLogTest {
+
+    private static final String TAG = "AsyncLogTest";
+
+    private final List<String> messages = new CopyOnWriteArrayList<>();
+    private final Map<String, Thread> threads = new ConcurrentHashMap<>();
+    private volatile long sinkDelay;
+    private volatile CountDownLatch sinkBlocker;
+
+    @Before
+    public void before() {
+        FPLog.clean();
+        FPLog.addLogImpl(new FPLog.ILog() {
+            @Override
+            public void v(String tag, String text) {
+                add(text);
+            }
+
+            @Override
+            public void d(String tag, String text) {
+                add(text);
+            }
+
+            @Override
+            public void i(String tag, String text) {
+                add(text);
+            }
+
+            @Override
+            public void w(String tag, String text) {
+                add(text);
+            }
+
+            @Override
+            public void e(String tag, Throwable throwable) {
+                add(throwable.getMessage());
+            }
+
+            @Override
+            public int logLevel() {
+                return FPLog.VERBOSE;
+            }
+        });
+    }
+
+    @After
+    public void after() {
+        CountDownLatch blocker = sinkBlocker;
+        if (blocker != null) {
+            blocker.countDown();
+        }
+
+        FPLog.stopAsync();
+        FPLog.clean();
+    }
+
+    @Test
+    public void slowSinkDoesNotDelayLoggingThreads() throws Exception {
+        sinkDelay = 20;
+        AsyncLog async = FPLog.startAsync(256, AsyncLog.DROP);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < 100; i++) {
+            FPLog.d(TAG, "packet " + i);
+        }
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        // delivered synchronously the statements would take 2 seconds
+        Assert.assertTrue("logging took " + elapsed + "ms", elapsed < 500);
+
+        sinkDelay = 0;
+        Assert.assertTrue(async.flush(10, TimeUnit.SECONDS));
+        Assert.assertEquals(100, messages.size());
+        Assert.assertEquals(100, async.getDelivered());
+        Assert.assertEquals(0, async.getDropped());
+    }
+
+    @Test
+    public void statementsAreDeliveredInOrderOnTheLogThread() throws Exception {
+        AsyncLog async = FPLog.startAsync(16, AsyncLog.BLOCK);
+
+        for (int i = 0; i < 1000; i++) {
+            FPLog.i(TAG, String.valueOf(i));
+        }
+        FPLog.e(TAG, "error");
+
+        Assert.assertTrue(async.flush(10, TimeUnit.SECONDS));
+
+        Assert.assertEquals(1001, messages.size());
+        for (int i = 0; i < 1000; i++) {
+            Assert.assertEquals(String.valueOf(i), messages.get(i));
+        }
+        Assert.assertEquals("error", messages.get(1000));
+        Assert.assertEquals("fitpay-log", threads.get("0").getName());
+    }
+
+    @Test
+    public void fullRingDropsNewStatements() throws Exception {
+        CountDownLatch blocker = new CountDownLatch(1);
+        sinkBlocker = blocker;
+        AsyncLog async = FPLog.startAsync(8, AsyncLog.DROP);
+
+        FPLog.d(TAG, "first");
+        waitFor(() -> threads.containsKey("first"));
+
+        // the consumer is stuck in the sink, the slot of the first statement is still taken
+        for (int i = 0; i < 20; i++) {
+            FPLog.d(TAG, String.valueOf(i));
+        }
+
+        Assert.assertEquals(8, async.getPending());
+        Assert.assertEquals(13, async.getDropped());
+
+        blocker.countDown();
+        Assert.assertTrue(async.flush(10, TimeUnit.SECONDS));
+
+        Assert.assertEquals(8, messages.size());
+        Assert.assertEquals("first", messages.get(0));
+        Assert.assertEquals("6", messages.get(7));
+    }
+
+    @Test
+    public void blockingProducersLoseNothing() throws Exception {
+        AsyncLog async = FPLog.startAsync(4, AsyncLog.BLOCK);
+
+        int producers = 4;
+        int statements = 2000;
+        List<Thread> workers = new ArrayList<>();
+
+        for (int p = 0; p < producers; p++) {
+            final String prefix = "p" + p + "-";
+            Thread worker = new Thread(() -> {
+                for (int i = 0; i < statements; i++) {
+                    FPLog.d(TAG, prefix + i);
+                }
+            });
+            workers.add(worker);
+            worker.start();
+        }
+
+        for (Thread worker : workers) {
+            worker.join(10000);
+        }
+
+        Assert.assertTrue(async.flush(10, TimeUnit.SECONDS));
+        Assert.assertEquals(producers * statements, messages.size());
+        Assert.assertEquals(0, async.getDropped());
+
+        // statements of every producer keep their order
+        for (int p = 0; p < producers; p++) {
+            int next = 0;
+            for (String message : messages) {
+                if (message.startsWith("p" + p + "-")) {
+                    Assert.assertEquals("p" + p + "-" + next, message);
+                    next++;
+                }
+            }
+            Assert.assertEquals(statements, next);
+        }
+    }
+
+    @Test
+    public void stopDeliversPendingStatements() {
+        sinkDelay = 1;
+        FPLog.startAsync(64, AsyncLog.DROP);
+
+        for (int i = 0; i < 50; i++) {
+            FPLog.w(TAG, String.valueOf(i));
+        }
+
+        FPLog.stopAsync();
+        Assert.assertNull(FPLog.getAsyncLog());
+        Assert.assertEquals(50, messages.size());
+
+        FPLog.w(TAG, "sync");
+        Assert.assertEquals("sync", messages.get(50));
+        Assert.assertEquals(Thread.currentThread(), threads.get("sync"));
+    }
+
+    @Test
+    public void capacityIsRoundedUp() {
+        Assert.assertEquals(16, FPLog.startAsync(10, AsyncLog.DROP).getCapacity());
+        Assert.assertEquals(1, FPLog.startAsync(1, AsyncLog.DROP).getCapacity());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidCapacityIsRejected() {
+        FPLog.startAsync(0, AsyncLog.DROP);
+    }
+
+    private void add(String text) {
+        threads.put(text, Thread.currentThread());
+
+        CountDownLatch blocker = sinkBlocker;
+        if (blocker != null) {
+            try {
+                blocker.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        if (sinkDelay > 0) {
+            try {
+                Thread.sleep(sinkDelay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        messages.add(text);
+    }
+
+    private static void waitFor(Condition condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.isMet()) {
+            Assert.assertTrue(System.currentTimeMillis() < deadline);
+            Thread.sleep(5);
+        }
+    }
+
+    private interface Condition {
+        boolean isMet();
+    }
+}
@@ -0,0 +1,295 @@
+package com.fitpay.android.utils;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import io.reactivex.disposables.Disposable;
+import io.reactivex.schedulers.Schedulers;
+import io.reactivex.schedulers.TestScheduler;
+
+public class BusSubscriptionTest {
+
+    private TestScheduler scheduler;
+    private List<Integer> received;
+    private List<Disposable> disposables;
+
+    @Before
+    public void before() {
+        scheduler = new TestScheduler();
+        received = new CopyOnWriteArrayList<>();
+        disposables = new ArrayList<>();
+    }
+
+    @After
+    public void after() {
+        for (Disposable disposable : disposables) {
+            disposable.dispose();
+        }
+    }
+
+    @Test
+    public void dropOldestKeepsTheNewestEvents() {
+        BusSubscription<TickEvent> subscription = register(new BufferPolicy(3, BufferPolicy.DROP_OLDEST));
+
+        post(10);
+        scheduler.triggerActions();
+
+        Assert.assertEquals(Arrays.asList(7, 8, 9), received);
+        Assert.assertEquals(7, subscription.getDropped());
+        Assert.assertEquals(3, subscription.getDelivered());
+        Assert.assertEquals(3, subscription.getMaxBuffered());
+        Assert.assertEquals(0, subscription.getBuffered());
+    }
+
+    @Test
+    public void dropNewestKeepsTheOldestEvents() {
+        BusSubscription<TickEvent> subscription = register(new BufferPolicy(3, BufferPolicy.DROP_NEWEST));
+
+        post(10);
+        Assert.assertEquals(3, subscription.getBuffered());
+
+        scheduler.triggerActions();
+
+        Assert.assertEquals(Arrays.asList(0, 1, 2), received);
+        Assert.assertEquals(7, subscription.getDropped());
+    }
+
+    @Test
+    public void latestKeepsOnlyTheLastEvent() {
+        BusSubscription<TickEvent> subscription = register(new BufferPolicy(100, BufferPolicy.LATEST));
+
+        post(10);
+        scheduler.triggerActions();
+
+        Assert.assertEquals(Arrays.asList(9), received);
+        Assert.assertEquals(9, subscription.getDropped());
+        Assert.assertEquals(1, subscription.getPolicy().getCapacity());
+    }
+
+    @Test
+    public void blockWaitsForRoom() throws Exception {
+        BusSubscription<TickEvent> subscription = register(new BufferPolicy(2, BufferPolicy.BLOCK));
+
+        Thread producer = new Thread(() -> post(3));
+        producer.start();
+
+        producer.join(300);
+        Assert.assertTrue("producer was not blocked", producer.isAlive());
+        // the third event is buffered, its poster waits for room
+        Assert.assertEquals(3, subscription.getBuffered());
+
+        scheduler.triggerActions();
+        producer.join(5000);
+        Assert.assertFalse(producer.isAlive());
+
+        scheduler.triggerActions();
+
+        Assert.assertEquals(Arrays.asList(0, 1, 2), received);
+        Assert.assertEquals(0, subscription.getDropped());
+    }
+
+    @Test
+    public void disposeReleasesBlockedProducer() throws Exception {
+        BusSubscription<TickEvent> subscription = register(new BufferPolicy(1, BufferPolicy.BLOCK));
+
+        Thread producer = new Thread(() -> post(3));
+        producer.start();
+        producer.join(300);
+        Assert.assertTrue(producer.isAlive());
+
+        subscription.dispose();
+        producer.join(5000);
+
+        Assert.assertFalse(producer.isAlive());
+        Assert.assertFalse(RxBus.getInstance().getSubscriptions().contains(subscription));
+    }
+
+    @Test
+    public void blockedSubscriberDoesNotHoldUpOtherSubscribers() throws Exception {
+        register(new BufferPolicy(1, BufferPolicy.BLOCK));
+
+        List<Integer> other = new CopyOnWriteArrayList<>();
+        disposables.add(RxBus.getInstance().register(TickEvent.class, Schedulers.trampoline(),
+                event -> other.add(event.value), BufferPolicy.UNBOUNDED));
+
+        Thread producer = new Thread(() -> post(2));
+        producer.start();
+        producer.join(300);
+
+        Assert.assertTrue("producer was not blocked", producer.isAlive());
+        // the event the producer waits with has already been delivered to the other subscriber
+        Assert.assertEquals(Arrays.asList(0, 1), other);
+
+        scheduler.triggerActions();
+        producer.join(5000);
+        Assert.assertFalse(producer.isAlive());
+    }
+
+    @Test
+    public void blockedPosterDoesNotHoldTheStickyLock() throws Exception {
+        RxBus.getInstance().addStickyType(TickEvent.class);
+        try {
+            register(new BufferPolicy(1, BufferPolicy.BLOCK));
+
+            Thread producer = new Thread(() -> post(2));
+            producer.start();
+            producer.join(300);
+            Assert.assertTrue("producer was not blocked", producer.isAlive());
+
+            // another thread can register a sticky subscriber meanwhile
+            List<Integer> replayed = new CopyOnWriteArrayList<>();
+            Thread registrar = new Thread(() -> disposables.add(RxBus.getInstance().registerSticky(TickEvent.class,
+                    Schedulers.trampoline(), event -> replayed.add(event.value))));
+            registrar.start();
+            registrar.join(5000);
+
+            Assert.assertFalse("sticky lock is held by the blocked poster", registrar.isAlive());
+            Assert.assertEquals(Arrays.asList(1), replayed);
+
+            scheduler.triggerActions();
+            producer.join(5000);
+            Assert.assertFalse(producer.isAlive());
+        } finally {
+            RxBus.getInstance().removeStickyType(TickEvent.class);
+        }
+    }
+
+    @Test
+    public void posterOnTheLaneOfTheSubscriberIsNotBlocked() throws Exception {
+        String lane = "block-" + System.nanoTime();
+        BusSubscription<TickEvent> subscription = RxBus.getInstance().register(TickEvent.class,
+                EventLanes.getInstance().getScheduler(lane), event -> received.add(event.value),
+                new BufferPolicy(1, BufferPolicy.BLOCK));
+        disposables.add(subscription);
+
+        // the events can only be delivered once the posting task of the lane is done
+        CountDownLatch posted = new CountDownLatch(1);
+        EventLanes.getInstance().getExecutor(lane).execute(() -> {
+            post(3);
+            posted.countDown();
+        });
+
+        Assert.assertTrue("poster on the lane was blocked", posted.await(5, TimeUnit.SECONDS));
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (received.size() < 3 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(Arrays.asList(0, 1, 2), received);
+        Assert.assertEquals(0, subscription.getDropped());
+    }
+
+    @Test
+    public void posterOnTheDeliveryThreadIsNotBlocked() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            CountDownLatch firstDelivery = new CountDownLatch(1);
+            BusSubscription<TickEvent> subscription = RxBus.getInstance().register(TickEvent.class,
+                    Schedulers.from(executor), event -> {
+                        received.add(event.value);
+                        firstDelivery.countDown();
+                    }, new BufferPolicy(1, BufferPolicy.BLOCK));
+            disposables.add(subscription);
+
+            post(1);
+            Assert.assertTrue(firstDelivery.await(5, TimeUnit.SECONDS));
+
+            Future<?> poster = executor.submit(() -> post(3));
+            poster.get(5, TimeUnit.SECONDS);
+
+            long deadline = System.currentTimeMillis() + 5000;
+            while (received.size() < 4 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            Assert.assertEquals(Arrays.asList(0, 0, 1, 2), received);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void outdatedStickyUpdateIsSkipped() {
+        StickyEvents store = new StickyEvents(10);
+        StickyEvents.Update first = store.put(TickEvent.class, null, new TickEvent(1));
+        StickyEvents.Update second = store.put(TickEvent.class, null, new TickEvent(2));
+        StickyEvents.Update other = store.put(TickEvent.class, "connector", new TickEvent(3));
+
+        BusSubscription<TickEvent> subscription = register(BufferPolicy.UNBOUNDED);
+
+        // concurrent posters hand the updates over out of their store order
+        subscription.offer(second);
+        subscription.offer(other);
+        subscription.offer(first);
+        scheduler.triggerActions();
+
+        Assert.assertEquals(Arrays.asList(2, 3), received);
+    }
+
+    @Test
+    public void defaultSubscriptionIsUnbounded() {
+        Disposable disposable = RxBus.getInstance().register(TickEvent.class, scheduler, event -> received.add(event.value));
+        disposables.add(disposable);
+
+        Assert.assertTrue(disposable instanceof BusSubscription);
+
+        post(1000);
+        Assert.assertEquals(1000, ((BusSubscription) disposable).getBuffered());
+
+        scheduler.triggerActions();
+        Assert.assertEquals(1000, received.size());
+        Assert.assertEquals(0, ((BusSubscription) disposable).getDropped());
+    }
+
+    @Test
+    public void failingSubscriberIsDisposed() {
+        BusSubscription<TickEvent> subscription = RxBus.getInstance().register(TickEvent.class, scheduler, event -> {
+            throw new IllegalStateException("test");
+        }, BufferPolicy.UNBOUNDED);
+        disposables.add(subscription);
+
+        post(2);
+        scheduler.triggerActions();
+
+        Assert.assertTrue(subscription.isDisposed());
+        Assert.assertEquals(0, subscription.getDelivered());
+        Assert.assertFalse(RxBus.getInstance().getSubscriptions().contains(subscription));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidCapacityIsRejected() {
+        new BufferPolicy(0, BufferPolicy.DROP_OLDEST);
+    }
+
+    private BusSubscription<TickEvent> register(BufferPolicy policy) {
+        BusSubscription<TickEvent> subscription = RxBus.getInstance().register(TickEvent.class, scheduler,
+                event -> received.add(event.value), policy);
+        disposables.add(subscription);
+        return subscription;
+    }
+
+    private static void post(int count) {
+        for (int i = 0; i < count; i++) {
+            RxBus.getInstance().post(new TickEvent(i));
+        }
+    }
+
+    private static class TickEvent {
+        private final int value;
+
+        private TickEvent(int value) {
+            this.value = value;
+        }
+    }
+}
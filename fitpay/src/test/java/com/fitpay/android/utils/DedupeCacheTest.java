@@ -0,0 +1,70 @@
+package com.fitpay.android.utils;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+public class DedupeCacheTest {
+
+    @Test
+    public void duplicatesAreDetected() {
+        DedupeCache<String> cache = new DedupeCache<>(10);
+
+        Assert.assertTrue(cache.add("sync1"));
+        Assert.assertFalse(cache.add("sync1"));
+        Assert.assertTrue(cache.add("sync2"));
+
+        Assert.assertEquals(2, cache.size());
+        Assert.assertEquals(1, cache.getHitCount());
+        Assert.assertEquals(2, cache.getMissCount());
+    }
+
+    @Test
+    public void oldestKeyIsEvicted() {
+        DedupeCache<String> cache = new DedupeCache<>(3);
+
+        for (int i = 0; i < 5; i++) {
+            cache.add("sync" + i);
+        }
+
+        Assert.assertEquals(3, cache.size());
+        Assert.assertEquals(2, cache.getEvictionCount());
+        Assert.assertFalse(cache.contains("sync0"));
+        Assert.assertFalse(cache.contains("sync1"));
+        Assert.assertTrue(cache.contains("sync4"));
+
+        cache.setMaxSize(1);
+        Assert.assertEquals(1, cache.size());
+        Assert.assertEquals(4, cache.getEvictionCount());
+        Assert.assertTrue(cache.contains("sync4"));
+    }
+
+    @Test
+    public void keysExpire() throws Exception {
+        DedupeCache<String> cache = new DedupeCache<>(100, 50, TimeUnit.MILLISECONDS);
+
+        Assert.assertTrue(cache.add("sync1"));
+        Assert.assertFalse(cache.add("sync1"));
+
+        Thread.sleep(100);
+
+        Assert.assertFalse(cache.contains("sync1"));
+        Assert.assertTrue(cache.add("sync1"));
+        Assert.assertEquals(1, cache.getExpirationCount());
+    }
+
+    @Test
+    public void largeWindow() {
+        int size = 50000;
+        DedupeCache<String> cache = new DedupeCache<>(size);
+
+        for (int i = 0; i < size * 2; i++) {
+            Assert.assertTrue(cache.add("sync" + i));
+        }
+
+        Assert.assertEquals(size, cache.size());
+        Assert.assertEquals(size, cache.getEvictionCount());
+        Assert.assertFalse(cache.add("sync" + (size * 2 - 1)));
+    }
+}
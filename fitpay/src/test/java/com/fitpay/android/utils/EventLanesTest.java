@@ -0,0 +1,161 @@
+package com.fitpay.android.utils;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class EventLanesTest {
+
+    @Test
+    public void tasksOfALaneKeepTheirOrder() throws Exception {
+        EventLanes lanes = new EventLanes(4);
+
+        int connectors = 20;
+        int events = 200;
+        Map<String, List<Integer>> delivered = new ConcurrentHashMap<>();
+        CountDownLatch latch = new CountDownLatch(connectors * events);
+
+        for (int c = 0; c < connectors; c++) {
+            delivered.put("connector-" + c, new CopyOnWriteArrayList<>());
+        }
+
+        for (int i = 0; i < events; i++) {
+            for (int c = 0; c < connectors; c++) {
+                final String lane = "connector-" + c;
+                final int event = i;
+                lanes.getExecutor(lane).execute(() -> {
+                    delivered.get(lane).add(event);
+                    latch.countDown();
+                });
+            }
+        }
+
+        Assert.assertTrue(latch.await(10, TimeUnit.SECONDS));
+
+        for (Map.Entry<String, List<Integer>> entry : delivered.entrySet()) {
+            List<Integer> sorted = new ArrayList<>(entry.getValue());
+            Collections.sort(sorted);
+            Assert.assertEquals("events of " + entry.getKey() + " are out of order", sorted, entry.getValue());
+            Assert.assertEquals(events, sorted.size());
+        }
+    }
+
+    @Test
+    public void lanesRunInParallel() throws Exception {
+        EventLanes lanes = new EventLanes(4);
+
+        CountDownLatch blocker = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch otherLane = new CountDownLatch(1);
+
+        lanes.getExecutor("slow").execute(() -> {
+            started.countDown();
+            await(blocker);
+        });
+
+        Assert.assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        lanes.getExecutor("fast").execute(otherLane::countDown);
+        Assert.assertTrue("a busy lane blocked another one", otherLane.await(5, TimeUnit.SECONDS));
+
+        blocker.countDown();
+    }
+
+    @Test
+    public void parallelismIsBounded() throws Exception {
+        EventLanes lanes = new EventLanes(2);
+
+        int count = 50;
+        AtomicInteger active = new AtomicInteger();
+        AtomicInteger maxActive = new AtomicInteger();
+        CountDownLatch latch = new CountDownLatch(count);
+
+        for (int i = 0; i < count; i++) {
+            lanes.getExecutor("lane-" + i).execute(() -> {
+                int current = active.incrementAndGet();
+                maxActive.accumulateAndGet(current, Math::max);
+                sleep(2);
+                active.decrementAndGet();
+                latch.countDown();
+            });
+        }
+
+        Assert.assertTrue(latch.await(10, TimeUnit.SECONDS));
+        Assert.assertTrue(maxActive.get() <= 2);
+    }
+
+    @Test
+    public void backlogIsReported() throws Exception {
+        EventLanes lanes = new EventLanes(1);
+
+        CountDownLatch blocker = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(1);
+        Executor lane = lanes.getExecutor("connector");
+
+        lane.execute(() -> {
+            started.countDown();
+            await(blocker);
+        });
+        Assert.assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        lane.execute(() -> {});
+        lane.execute(() -> {});
+        lanes.getExecutor(null).execute(() -> {});
+
+        Assert.assertEquals(3, lanes.getBacklog("connector"));
+        Assert.assertEquals(1, lanes.getBacklog(null));
+        Assert.assertEquals(0, lanes.getBacklog("idle"));
+
+        Map<String, Integer> backlogs = lanes.getBacklogs();
+        Assert.assertEquals(Integer.valueOf(3), backlogs.get("connector"));
+        Assert.assertEquals(Integer.valueOf(1), backlogs.get(EventLanes.DEFAULT_LANE));
+
+        blocker.countDown();
+    }
+
+    @Test
+    public void schedulerIsCreatedOncePerLane() throws Exception {
+        EventLanes lanes = new EventLanes(2);
+
+        Assert.assertSame(lanes.getScheduler("connector"), lanes.getScheduler("connector"));
+        Assert.assertSame(lanes.getScheduler(null), lanes.getScheduler(EventLanes.DEFAULT_LANE));
+        Assert.assertNotSame(lanes.getScheduler("connector"), lanes.getScheduler(null));
+
+        // a cached scheduler runs on the new workers after a change
+        lanes.setWorkers(3);
+        CountDownLatch latch = new CountDownLatch(1);
+        lanes.getScheduler("connector").scheduleDirect(latch::countDown);
+        Assert.assertTrue(latch.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidWorkersAreRejected() {
+        new EventLanes(0);
+    }
+
+    private static void sleep(long ms) {
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
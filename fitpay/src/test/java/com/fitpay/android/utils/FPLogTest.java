@@ -0,0 +1,189 @@
+package com.fitpay.android.utils;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+public class FPLogTest {
+
+    private static final String TAG = "FPLogTest";
+
+    private static final int ITERATIONS = 100_000;
+
+    private final List<String> messages = new ArrayList<>();
+    private int logLevel;
+
+    @Before
+    public void before() {
+        FPLog.clean();
+        FPLog.addLogImpl(new FPLog.ILog() {
+            @Override
+            public void v(String tag, String text) {
+                messages.add("V " + text);
+            }
+
+            @Override
+            public void d(String tag, String text) {
+                messages.add("D " + text);
+            }
+
+            @Override
+            public void i(String tag, String text) {
+                messages.add("I " + text);
+            }
+
+            @Override
+            public void w(String tag, String text) {
+                messages.add("W " + text);
+            }
+
+            @Override
+            public void e(String tag, Throwable throwable) {
+                messages.add("E " + throwable.getMessage());
+            }
+
+            @Override
+            public int logLevel() {
+                return logLevel;
+            }
+        });
+    }
+
+    @After
+    public void after() {
+        FPLog.clean();
+    }
+
+    @Test
+    public void levelIsRecomputed() {
+        setLevel(FPLog.INFO);
+        Assert.assertTrue(FPLog.isLoggable(FPLog.INFO));
+        Assert.assertFalse(FPLog.isLoggable(FPLog.DEBUG));
+
+        setLevel(FPLog.VERBOSE);
+        Assert.assertTrue(FPLog.isLoggable(FPLog.VERBOSE));
+
+        FPLog.clean();
+        Assert.assertFalse(FPLog.isLoggable(FPLog.ERROR));
+    }
+
+    @Test
+    public void raisedLevelIsPickedUpWithoutUpdate() {
+        setLevel(FPLog.WARNING);
+        Assert.assertFalse(FPLog.isLoggable(FPLog.DEBUG));
+
+        // the log changes its level without calling updateLogLevel
+        logLevel = FPLog.DEBUG;
+
+        FPLog.d(TAG, "debug {}", "enabled");
+        Assert.assertEquals(1, messages.size());
+        Assert.assertEquals("D debug enabled", messages.get(0));
+        Assert.assertFalse(FPLog.isLoggable(FPLog.VERBOSE));
+    }
+
+    @Test
+    public void enabledStatementsAreFormatted() {
+        setLevel(FPLog.DEBUG);
+
+        FPLog.d(TAG, "packet [{}], length [{}]", new byte[]{0x0a, (byte) 0xff}, 2);
+        FPLog.i(TAG, () -> "lazy " + 42);
+        FPLog.w(TAG, "{} and {} and {}", "a", null, 'c');
+        FPLog.d(TAG, "no placeholder", "ignored");
+        FPLog.d(TAG, "missing {} {}", "one");
+        FPLog.v(TAG, "disabled {}", "verbose");
+
+        Assert.assertEquals("D packet [0aff], length [2]", messages.get(0));
+        Assert.assertEquals("I lazy 42", messages.get(1));
+        Assert.assertEquals("W a and null and c", messages.get(2));
+        Assert.assertEquals("D no placeholder", messages.get(3));
+        Assert.assertEquals("D missing one {}", messages.get(4));
+        Assert.assertEquals(5, messages.size());
+    }
+
+    @Test
+    public void disabledSupplierIsNotCalled() {
+        setLevel(FPLog.WARNING);
+
+        FPLog.d(TAG, () -> {
+            throw new AssertionError("message of a disabled statement was built");
+        });
+
+        Assert.assertTrue(messages.isEmpty());
+    }
+
+    @Test
+    public void disabledStatementsDoNotAllocate() {
+        com.sun.management.ThreadMXBean threadBean = getThreadBean();
+
+        setLevel(FPLog.WARNING);
+
+        byte[] packet = new byte[20];
+        Object commit = new Object();
+        Thread thread = Thread.currentThread();
+
+        // warm up, the counter covers the compiled code only
+        logHotPaths(packet, commit, thread, ITERATIONS);
+
+        long before = threadBean.getThreadAllocatedBytes(thread.getId());
+        logHotPaths(packet, commit, thread, ITERATIONS);
+        long allocated = threadBean.getThreadAllocatedBytes(thread.getId()) - before;
+
+        // the counter call itself allocates a little
+        Assert.assertTrue("disabled statements allocated " + allocated + " bytes", allocated < 1024);
+        Assert.assertTrue(messages.isEmpty());
+    }
+
+    @Test
+    public void concatenationAllocates() {
+        com.sun.management.ThreadMXBean threadBean = getThreadBean();
+
+        setLevel(FPLog.WARNING);
+
+        byte[] packet = new byte[20];
+        Thread thread = Thread.currentThread();
+
+        long before = threadBean.getThreadAllocatedBytes(thread.getId());
+        for (int i = 0; i < 1000; i++) {
+            FPLog.d(TAG, "continuation data packet received [" + Hex.bytesToHexString(packet) + "]");
+        }
+        long allocated = threadBean.getThreadAllocatedBytes(thread.getId()) - before;
+
+        // baseline of the eager style the hot paths used before
+        Assert.assertTrue(allocated > 1000 * 40);
+    }
+
+    /**
+     * Statements shaped like the BLE continuation and commit processing ones
+     */
+    private static void logHotPaths(byte[] packet, Object commit, Thread thread, int iterations) {
+        for (int i = 0; i < iterations; i++) {
+            FPLog.d(TAG, "continuation data packet received [{}]", packet);
+            FPLog.d(TAG, "continuation control write received [{}], length [{}]", packet, packet.length);
+            FPLog.d(TAG, "Characteristic {} written to on device {}", commit, TAG);
+            FPLog.i(TAG, "Process Next Commit: {}", commit);
+            FPLog.i(TAG, "Commit Success: {}", commit);
+            FPLog.d(TAG, "sync initiated from thread: {}, {}, syncRequest: {}", thread, TAG, commit);
+            FPLog.v(TAG, "verbose {}", commit);
+        }
+    }
+
+    private void setLevel(@FPLog.LogLevel int level) {
+        logLevel = level;
+        FPLog.updateLogLevel();
+    }
+
+    private static com.sun.management.ThreadMXBean getThreadBean() {
+        Assume.assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+
+        com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(threadBean.isThreadAllocatedMemorySupported());
+        threadBean.setThreadAllocatedMemoryEnabled(true);
+        return threadBean;
+    }
+}
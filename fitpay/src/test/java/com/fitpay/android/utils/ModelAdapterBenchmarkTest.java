@@ -0,0 +1,264 @@
+package com.fitpay.android.utils;
+
+import com.fitpay.android.api.models.Link;
+import com.fitpay.android.api.models.Links;
+import com.fitpay.android.api.models.Payload;
+import com.fitpay.android.api.models.apdu.ApduCommand;
+import com.fitpay.android.api.models.apdu.ApduPackage;
+import com.fitpay.android.api.models.collection.Collections;
+import com.fitpay.android.api.models.device.Commit;
+import com.fitpay.android.api.models.security.ECCKeyPair;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonDeserializer;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Compares the streaming adapters of the hot models with the reflective binding and the json tree
+ * links deserializer used before. The benchmarks depend on the machine, run them manually
+ */
+public class ModelAdapterBenchmarkTest {
+
+    private static final int ITERATIONS = 200;
+
+    // not registered, passing it to getDelegateAdapter skips the @JsonAdapter bindings
+    private static final TypeAdapterFactory UNREGISTERED = new TypeAdapterFactory() {
+        @Override
+        public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type) {
+            return null;
+        }
+    };
+
+    private static final TypeAdapterFactory REFLECTIVE = new TypeAdapterFactory() {
+        @Override
+        public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type) {
+            Class<?> clazz = type.getRawType();
+            if (clazz == Commit.class || clazz == ApduPackage.class || clazz == ApduCommand.class) {
+                return gson.getDelegateAdapter(UNREGISTERED, type);
+            }
+            return null;
+        }
+    };
+
+    private static final JsonDeserializer<Links> TREE_LINKS = (json, typeOfT, context) -> {
+        Links links = new Links();
+        for (Map.Entry<String, JsonElement> entry : json.getAsJsonObject().entrySet()) {
+            JsonObject jo = entry.getValue().getAsJsonObject();
+            boolean templated = jo.get("templated") != null && jo.get("templated").getAsBoolean();
+            links.setLink(entry.getKey(), new Link(jo.get("href").getAsString(), templated));
+        }
+        return links;
+    };
+
+    private final Gson streaming = Constants.getGson();
+
+    private final Gson reflective = new GsonBuilder()
+            .registerTypeAdapterFactory(REFLECTIVE)
+            .registerTypeAdapter(Links.class, TREE_LINKS)
+            .registerTypeAdapter(Payload.class, new ModelAdapter.PayloadDeserializer())
+            .create();
+
+    @After
+    public void after() {
+        KeysManager.getInstance().removePairForType(KeysManager.KEY_API);
+    }
+
+    @Test
+    public void commitPageIsParsedTheSame() throws Exception {
+        // both sides decrypt the payload with the same key
+        ECCKeyPair keyPair = KeysManager.getInstance().createPairForType(KeysManager.KEY_API);
+        keyPair.setServerPublicKey(keyPair.getPublicKey());
+
+        String json = commitsPage(100, StringUtils.getEncryptedString(KeysManager.KEY_API, apduPackage(2)));
+
+        Collections.CommitsCollection expected = reflective.fromJson(json, Collections.CommitsCollection.class);
+        Collections.CommitsCollection actual = streaming.fromJson(json, Collections.CommitsCollection.class);
+
+        Assert.assertEquals(expected.getResults().size(), actual.getResults().size());
+        for (int i = 0; i < expected.getResults().size(); i++) {
+            Commit expectedCommit = expected.getResults().get(i);
+            Commit actualCommit = actual.getResults().get(i);
+
+            Assert.assertEquals(expectedCommit.toString(), actualCommit.toString());
+            Assert.assertNotNull(actualCommit.getPayload());
+            Assert.assertEquals(expectedCommit.getPayload().toString(), actualCommit.getPayload().toString());
+            Assert.assertEquals(expectedCommit.getLinkUrl("self"), actualCommit.getLinkUrl("self"));
+            Assert.assertEquals(expectedCommit.getLinkUrl("confirm"), actualCommit.getLinkUrl("confirm"));
+        }
+    }
+
+    @Test
+    public void apduPackageIsParsedTheSame() {
+        String json = apduPackage(20);
+
+        ApduPackage expected = reflective.fromJson(json, ApduPackage.class);
+        ApduPackage actual = streaming.fromJson(json, ApduPackage.class);
+
+        Assert.assertEquals(expected.toString(), actual.toString());
+        Assert.assertEquals(expected.getMetadata(), actual.getMetadata());
+        Assert.assertEquals("apdu-response", actual.getLinkUrl("apduResponse"));
+    }
+
+    @Test
+    public void writingKeepsTheReflectiveForm() {
+        ApduPackage apduPackage = streaming.fromJson(apduPackage(2), ApduPackage.class);
+        Assert.assertEquals(reflective.toJson(apduPackage), streaming.toJson(apduPackage));
+    }
+
+    @Ignore("benchmark")
+    @Test
+    public void commitPageBenchmark() {
+        compare("commits", commitsPage(100, null), Collections.CommitsCollection.class);
+    }
+
+    @Ignore("benchmark")
+    @Test
+    public void apduPackageBenchmark() {
+        compare("apdu package", apduPackage(50), ApduPackage.class);
+    }
+
+    @Ignore("benchmark")
+    @Test
+    public void walletBenchmark() {
+        compare("wallet", creditCardsPage(50), Collections.CreditCardCollection.class);
+    }
+
+    private void compare(String name, String json, Class<?> clazz) {
+        // warm up
+        run(reflective, json, clazz, ITERATIONS);
+        run(streaming, json, clazz, ITERATIONS);
+
+        Result before = run(reflective, json, clazz, ITERATIONS);
+        Result after = run(streaming, json, clazz, ITERATIONS);
+
+        System.out.println(String.format(Locale.US, "%s: reflective %.0f parses/s %d bytes/parse, streaming %.0f parses/s %d bytes/parse",
+                name, before.throughput(), before.bytesPerParse, after.throughput(), after.bytesPerParse));
+
+        if (before.bytesPerParse > 0) {
+            Assert.assertTrue(name + " allocates more than the reflective path", after.bytesPerParse <= before.bytesPerParse);
+        }
+    }
+
+    private static Result run(Gson gson, String json, Class<?> clazz, int iterations) {
+        long startBytes = allocatedBytes();
+        long start = System.nanoTime();
+
+        for (int i = 0; i < iterations; i++) {
+            Assert.assertNotNull(gson.fromJson(json, clazz));
+        }
+
+        long elapsed = System.nanoTime() - start;
+        long bytes = allocatedBytes() - startBytes;
+
+        return new Result(iterations, elapsed, startBytes < 0 ? -1 : bytes / iterations);
+    }
+
+    private static long allocatedBytes() {
+        if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+            if (threadBean.isThreadAllocatedMemorySupported()) {
+                return threadBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+            }
+        }
+        return -1;
+    }
+
+    private static String links(String... rels) {
+        StringBuilder sb = new StringBuilder("{");
+        for (int i = 0; i < rels.length; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append('"').append(rels[i]).append("\":{\"href\":\"https://api.fit-pay.com/").append(rels[i]).append("\"}");
+        }
+        return sb.append('}').toString();
+    }
+
+    /**
+     * @param encryptedData payload of every commit, null for commits without one
+     */
+    private static String commitsPage(int count, String encryptedData) {
+        StringBuilder sb = new StringBuilder("{\"limit\":").append(count).append(",\"offset\":0,\"totalResults\":").append(count)
+                .append(",\"_links\":").append(links("self", "next", "last")).append(",\"results\":[");
+
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append("{\"commitId\":\"commit-").append(i)
+                    .append("\",\"commitType\":\"").append(encryptedData != null ? "APDU_PACKAGE" : "CREDITCARD_ACTIVATED")
+                    .append("\",\"createdTs\":").append(1500000000000L + i);
+            if (encryptedData != null) {
+                sb.append(",\"encryptedData\":\"").append(encryptedData).append('"');
+            }
+            sb.append(",\"_links\":").append(links("self", "confirm", "apduResponse")).append('}');
+        }
+
+        return sb.append("]}").toString();
+    }
+
+    private static String apduPackage(int commands) {
+        StringBuilder sb = new StringBuilder("{\"seIdType\":\"cplc\",\"targetDeviceType\":\"fitpay.gandd.model.Device\",")
+                .append("\"targetDeviceId\":\"device-1\",\"packageId\":\"package-1\",\"seId\":\"se-1\",\"targetAid\":\"A000000004\",")
+                .append("\"validUntil\":\"2030-01-01T00:00:00.000Z\",\"apduPackageUrl\":\"https://api.fit-pay.com/apdu\",")
+                .append("\"category\":\"PROVISIONING\",\"operation\":\"PERSO\",\"metadata\":{\"cardId\":\"card-1\",\"count\":3},")
+                .append("\"_links\":{\"apduResponse\":{\"href\":\"apdu-response\"}},\"commandApdus\":[");
+
+        for (int i = 0; i < commands; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append("{\"commandId\":\"command-").append(i).append("\",\"groupId\":").append(i / 5)
+                    .append(",\"sequence\":").append(i).append(",\"command\":\"00A4040008A00000000410101100\",")
+                    .append("\"type\":\"PUT_DATA\",\"injected\":false,\"continueOnFailure\":").append(i % 2 == 0).append('}');
+        }
+
+        return sb.append("]}").toString();
+    }
+
+    private static String creditCardsPage(int count) {
+        StringBuilder sb = new StringBuilder("{\"limit\":").append(count).append(",\"offset\":0,\"totalResults\":").append(count)
+                .append(",\"_links\":").append(links("self")).append(",\"results\":[");
+
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append("{\"creditCardId\":\"card-").append(i).append("\",\"userId\":\"user-1\",\"createdTsEpoch\":1500000000000,")
+                    .append("\"state\":\"ACTIVE\",\"cardType\":\"VISA\",\"targetDeviceId\":\"device-1\",\"tokenLastFour\":\"1234\",")
+                    .append("\"_links\":").append(links("self", "acceptTerms", "declineTerms", "deactivate", "makeDefault", "transactions"))
+                    .append('}');
+        }
+
+        return sb.append("]}").toString();
+    }
+
+    private static final class Result {
+        private final int iterations;
+        private final long elapsedNanos;
+        private final long bytesPerParse;
+
+        private Result(int iterations, long elapsedNanos, long bytesPerParse) {
+            this.iterations = iterations;
+            this.elapsedNanos = elapsedNanos;
+            this.bytesPerParse = bytesPerParse;
+        }
+
+        private double throughput() {
+            return iterations * 1_000_000_000d / Math.max(1, elapsedNanos);
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package com.fitpay.android.utils;
+
+import com.fitpay.android.BaseTestActions;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.reactivex.schedulers.Schedulers;
+
+/**
+ * Delivery cost of connector-scoped events while the number of registered connectors grows.
+ */
+public class NotificationRoutingBenchmarkTest extends BaseTestActions {
+
+    private static final int EVENTS = 20000;
+
+    @Test
+    public void deliveryCostWith1Connector() {
+        benchmark(1);
+    }
+
+    @Test
+    public void deliveryCostWith10Connectors() {
+        benchmark(10);
+    }
+
+    @Test
+    public void deliveryCostWith100Connectors() {
+        benchmark(100);
+    }
+
+    @Test
+    public void deliveryCostWith500Connectors() {
+        benchmark(500);
+    }
+
+    @Test
+    public void wrappedEventReachesOnlyItsConnectorAndUnfilteredListeners() {
+        NotificationManager manager = NotificationManager.getInstance();
+
+        CountingListener first = new CountingListener("connector-1");
+        CountingListener second = new CountingListener("connector-2");
+        CountingListener all = new CountingListener(null);
+
+        manager.addListener(first, Schedulers.trampoline());
+        manager.addListener(second, Schedulers.trampoline());
+        manager.addListener(all, Schedulers.trampoline());
+
+        RxBus.getInstance().post("connector-1", new ConnectorEvent());
+        RxBus.getInstance().post("connector-3", new ConnectorEvent());
+        RxBus.getInstance().post(new ConnectorEvent());
+
+        Assert.assertEquals(1, first.received.get());
+        Assert.assertEquals(0, second.received.get());
+        Assert.assertEquals(3, all.received.get());
+
+        manager.removeListener(first);
+        RxBus.getInstance().post("connector-1", new ConnectorEvent());
+        Assert.assertEquals(1, first.received.get());
+
+        manager.removeListener(second);
+        manager.removeListener(all);
+    }
+
+    private void benchmark(int connectors) {
+        NotificationManager manager = NotificationManager.getInstance();
+
+        List<CountingListener> listeners = new ArrayList<>();
+        for (int i = 0; i < connectors; i++) {
+            CountingListener listener = new CountingListener("connector-" + i);
+            manager.addListener(listener, Schedulers.trampoline());
+            listeners.add(listener);
+        }
+
+        ConnectorEvent event = new ConnectorEvent();
+        String target = "connector-" + (connectors - 1);
+
+        // warm up
+        for (int i = 0; i < EVENTS; i++) {
+            RxBus.getInstance().post(target, event);
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < EVENTS; i++) {
+            RxBus.getInstance().post(target, event);
+        }
+        long time = System.nanoTime() - start;
+
+        for (int i = 0; i < connectors; i++) {
+            CountingListener listener = listeners.get(i);
+            Assert.assertEquals(i == connectors - 1 ? 2 * EVENTS : 0, listener.received.get());
+            manager.removeListener(listener);
+        }
+
+        FPLog.i("NotificationManager", connectors + " connectors: " + time / EVENTS + " ns/event");
+    }
+
+    private static class ConnectorEvent {
+    }
+
+    private static class CountingListener extends Listener {
+        private final AtomicInteger received = new AtomicInteger();
+
+        private CountingListener(String connectorId) {
+            super(connectorId);
+            mCommands.put(ConnectorEvent.class, data -> received.incrementAndGet());
+        }
+    }
+}
@@ -110,6 +110,45 @@ public class NotificationsTest extends BaseTestActions {
         Assert.assertEquals(0, commands.size());
     }
 
+    @Test
+    public void test05_slowListenerDoesNotBlockOtherEventTypes() throws InterruptedException {
+        NotificationManager manager = NotificationManager.getInstance();
+
+        CountDownLatch slowStarted = new CountDownLatch(1);
+        CountDownLatch slowBlocker = new CountDownLatch(1);
+        CountDownLatch fastReceived = new CountDownLatch(1);
+
+        Listener slowListener = new Listener() {
+        };
+        slowListener.addCommand(Long.class, data -> {
+            slowStarted.countDown();
+            try {
+                slowBlocker.await(TIMEOUT, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+
+        Listener fastListener = new Listener() {
+        };
+        fastListener.addCommand(Integer.class, data -> fastReceived.countDown());
+
+        manager.addListener(slowListener, Schedulers.newThread());
+        manager.addListener(fastListener, Schedulers.newThread());
+
+        try {
+            RxBus.getInstance().post(1L);
+            Assert.assertTrue("slow listener was not called", slowStarted.await(5, TimeUnit.SECONDS));
+
+            RxBus.getInstance().post(1);
+            Assert.assertTrue("event was blocked by a slow listener of another type", fastReceived.await(5, TimeUnit.SECONDS));
+        } finally {
+            slowBlocker.countDown();
+            manager.removeListener(slowListener);
+            manager.removeListener(fastListener);
+        }
+    }
+
     private static Object getPrivateField(Object from, String fieldName) {
         try {
             Field field = from.getClass().getDeclaredField(fieldName);
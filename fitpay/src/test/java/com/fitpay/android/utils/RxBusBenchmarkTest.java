@@ -0,0 +1,145 @@
+package com.fitpay.android.utils;
+
+import com.fitpay.android.BaseTestActions;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.reactivex.disposables.Disposable;
+import io.reactivex.processors.PublishProcessor;
+import io.reactivex.schedulers.Schedulers;
+
+/**
+ * Post throughput with a growing number of subscribers, compared with a single processor
+ * that filters every event for every subscriber.
+ */
+public class RxBusBenchmarkTest extends BaseTestActions {
+
+    private static final int POSTS = 20000;
+
+    // subscribers are spread evenly over these event types, only one of them is posted
+    private static final Class<?>[] EVENT_TYPES = {
+            String.class, Integer.class, Long.class, Double.class, Float.class,
+            Short.class, Byte.class, Character.class, Boolean.class, TargetEvent.class
+    };
+
+    @Test
+    public void throughputWith10Subscribers() {
+        benchmark(10);
+    }
+
+    @Test
+    public void throughputWith100Subscribers() {
+        benchmark(100);
+    }
+
+    @Test
+    public void throughputWith1000Subscribers() {
+        benchmark(1000);
+    }
+
+    @Test
+    public void eventIsDeliveredToSuperclassAndInterfaceSubscribers() {
+        AtomicInteger classReceived = new AtomicInteger();
+        AtomicInteger superclassReceived = new AtomicInteger();
+        AtomicInteger interfaceReceived = new AtomicInteger();
+        AtomicInteger wrappedReceived = new AtomicInteger();
+        AtomicInteger otherReceived = new AtomicInteger();
+
+        List<Disposable> disposables = new ArrayList<>();
+        disposables.add(RxBus.getInstance().register(ChildEvent.class, Schedulers.trampoline(), event -> classReceived.incrementAndGet()));
+        disposables.add(RxBus.getInstance().register(TargetEvent.class, Schedulers.trampoline(), event -> superclassReceived.incrementAndGet()));
+        disposables.add(RxBus.getInstance().register(Marker.class, Schedulers.trampoline(), event -> interfaceReceived.incrementAndGet()));
+        disposables.add(RxBus.getInstance().register(Wrapper.class, Schedulers.trampoline(), event -> wrappedReceived.incrementAndGet()));
+        disposables.add(RxBus.getInstance().register(String.class, Schedulers.trampoline(), event -> otherReceived.incrementAndGet()));
+
+        RxBus.getInstance().post(new ChildEvent());
+        RxBus.getInstance().post("filter", new ChildEvent());
+
+        Assert.assertEquals(2, classReceived.get());
+        Assert.assertEquals(2, superclassReceived.get());
+        Assert.assertEquals(2, interfaceReceived.get());
+        // wrapped events are routed by the class of the wrapped object
+        Assert.assertEquals(0, wrappedReceived.get());
+        Assert.assertEquals(0, otherReceived.get());
+
+        for (Disposable disposable : disposables) {
+            disposable.dispose();
+        }
+
+        RxBus.getInstance().post(new ChildEvent());
+        Assert.assertEquals(2, classReceived.get());
+    }
+
+    private void benchmark(int subscribers) {
+        AtomicInteger indexedReceived = new AtomicInteger();
+        AtomicInteger filteredReceived = new AtomicInteger();
+
+        List<Disposable> disposables = new ArrayList<>();
+        PublishProcessor<Object> filteredBus = PublishProcessor.create();
+
+        for (int i = 0; i < subscribers; i++) {
+            final Class<?> eventClass = EVENT_TYPES[i % EVENT_TYPES.length];
+
+            disposables.add(RxBus.getInstance().register(eventClass, Schedulers.trampoline(), event -> indexedReceived.incrementAndGet()));
+
+            // the previous implementation, every subscriber checks every event
+            disposables.add(filteredBus.toObservable()
+                    .filter(event -> eventClass.isAssignableFrom(event instanceof Wrapper ? ((Wrapper) event).getClazz() : event.getClass()))
+                    .observeOn(Schedulers.trampoline())
+                    .subscribe(event -> filteredReceived.incrementAndGet()));
+        }
+
+        TargetEvent event = new TargetEvent();
+
+        // warm up
+        for (int i = 0; i < POSTS; i++) {
+            RxBus.getInstance().post(event);
+            filteredBus.onNext(event);
+        }
+
+        indexedReceived.set(0);
+        filteredReceived.set(0);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < POSTS; i++) {
+            RxBus.getInstance().post(event);
+        }
+        long indexedTime = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < POSTS; i++) {
+            filteredBus.onNext(event);
+        }
+        long filteredTime = System.nanoTime() - start;
+
+        for (Disposable disposable : disposables) {
+            disposable.dispose();
+        }
+
+        int interested = subscribers / EVENT_TYPES.length;
+        Assert.assertEquals(POSTS * interested, indexedReceived.get());
+        Assert.assertEquals(POSTS * interested, filteredReceived.get());
+
+        FPLog.i("RxBus", subscribers + " subscribers: indexed " + throughput(indexedTime) + " posts/s, filtered "
+                + throughput(filteredTime) + " posts/s");
+    }
+
+    private static long throughput(long nanos) {
+        return POSTS * TimeUnit.SECONDS.toNanos(1) / Math.max(1, nanos);
+    }
+
+    interface Marker {
+    }
+
+    static class TargetEvent implements Marker {
+    }
+
+    static class ChildEvent extends TargetEvent {
+    }
+}
@@ -0,0 +1,155 @@
+package com.fitpay.android.utils;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import io.reactivex.disposables.Disposable;
+import io.reactivex.schedulers.Schedulers;
+import io.reactivex.schedulers.TestScheduler;
+
+public class StickyEventsTest {
+
+    private List<Disposable> disposables;
+
+    @Before
+    public void before() {
+        disposables = new ArrayList<>();
+        RxBus.getInstance().addStickyType(StateEvent.class);
+    }
+
+    @After
+    public void after() {
+        for (Disposable disposable : disposables) {
+            disposable.dispose();
+        }
+
+        RxBus.getInstance().removeStickyType(StateEvent.class);
+    }
+
+    @Test
+    public void latestEventIsKeptPerTypeAndFilter() {
+        StickyEvents events = new StickyEvents(10);
+        events.addType(StateEvent.class);
+
+        Class<?> type = events.getType(SubStateEvent.class, new Class<?>[]{SubStateEvent.class, StateEvent.class, Object.class});
+        Assert.assertEquals(StateEvent.class, type);
+        Assert.assertNull(events.getType(String.class, new Class<?>[]{String.class, Object.class}));
+
+        events.put(StateEvent.class, "connector-1", new Wrapper<>("connector-1", new StateEvent(1)));
+        events.put(StateEvent.class, "connector-1", new Wrapper<>("connector-1", new StateEvent(2)));
+        events.put(StateEvent.class, "connector-2", new Wrapper<>("connector-2", new StateEvent(3)));
+        events.put(StateEvent.class, null, new StateEvent(4));
+
+        Assert.assertEquals(3, events.size());
+        Assert.assertEquals(2, ((StateEvent) ((Wrapper) events.get(StateEvent.class, "connector-1")).getObject()).value);
+        Assert.assertEquals(1, events.find(StateEvent.class, "connector-2").size());
+        Assert.assertEquals(3, events.find(StateEvent.class, null).size());
+        Assert.assertEquals(0, events.find(SubStateEvent.class, null).size());
+    }
+
+    @Test
+    public void memoryIsBounded() {
+        StickyEvents events = new StickyEvents(3);
+
+        for (int i = 0; i < 10; i++) {
+            events.put(StateEvent.class, "connector-" + i, new StateEvent(i));
+        }
+
+        Assert.assertEquals(3, events.size());
+        Assert.assertNull(events.get(StateEvent.class, "connector-0"));
+        Assert.assertNotNull(events.get(StateEvent.class, "connector-9"));
+    }
+
+    @Test
+    public void eventsAreInvalidated() {
+        StickyEvents events = new StickyEvents(10);
+
+        events.put(StateEvent.class, "connector-1", new StateEvent(1));
+        events.put(String.class, "connector-1", "state");
+        events.put(StateEvent.class, "connector-2", new StateEvent(2));
+
+        Assert.assertEquals(2, events.removeFilter("connector-1"));
+        Assert.assertTrue(events.remove(StateEvent.class, "connector-2"));
+        Assert.assertFalse(events.remove(StateEvent.class, "connector-2"));
+        Assert.assertEquals(0, events.size());
+    }
+
+    @Test
+    public void lateSubscriberGetsTheLatestState() {
+        RxBus.getInstance().post("connector-1", new StateEvent(1));
+        RxBus.getInstance().post("connector-1", new StateEvent(2));
+        RxBus.getInstance().post("connector-2", new SubStateEvent(3));
+
+        TestScheduler scheduler = new TestScheduler();
+        List<Integer> received = new CopyOnWriteArrayList<>();
+        disposables.add(RxBus.getInstance().registerSticky(StateEvent.class, scheduler,
+                event -> received.add(valueOf(event))));
+
+        RxBus.getInstance().post("connector-1", new StateEvent(4));
+        scheduler.triggerActions();
+
+        // the replay comes first, then live events
+        Assert.assertEquals(Arrays.asList(2, 3, 4), received);
+
+        Assert.assertTrue(RxBus.getInstance().getStickyEvent(StateEvent.class, "connector-2") instanceof SubStateEvent);
+        Assert.assertEquals(4, RxBus.getInstance().getStickyEvent(StateEvent.class, "connector-1").value);
+
+        RxBus.getInstance().removeStickyEvents("connector-1");
+        Assert.assertNull(RxBus.getInstance().getStickyEvent(StateEvent.class, "connector-1"));
+    }
+
+    @Test
+    public void regularSubscriberGetsNoReplay() {
+        RxBus.getInstance().post("connector-1", new StateEvent(1));
+
+        List<Object> received = new CopyOnWriteArrayList<>();
+        disposables.add(RxBus.getInstance().register(StateEvent.class, Schedulers.trampoline(), received::add));
+
+        Assert.assertTrue(received.isEmpty());
+    }
+
+    @Test
+    public void listenerReplaysStickyEventsOfItsFilter() {
+        RxBus.getInstance().post("connector-1", new StateEvent(1));
+        RxBus.getInstance().post("connector-2", new StateEvent(2));
+
+        List<Integer> received = new CopyOnWriteArrayList<>();
+        Listener listener = new Listener("connector-2") {
+        };
+        listener.addCommand(StateEvent.class, data -> received.add(((StateEvent) data).value));
+        listener.setReplaySticky(true);
+
+        NotificationManager.getInstance().addListener(listener, Schedulers.trampoline());
+        try {
+            Assert.assertEquals(Arrays.asList(2), received);
+        } finally {
+            NotificationManager.getInstance().removeListener(listener);
+        }
+    }
+
+    private static int valueOf(Object event) {
+        // subscribers receive connector-scoped events wrapped
+        return ((StateEvent) ((Wrapper) event).getObject()).value;
+    }
+
+    private static class StateEvent {
+        private final int value;
+
+        private StateEvent(int value) {
+            this.value = value;
+        }
+    }
+
+    private static class SubStateEvent extends StateEvent {
+        private SubStateEvent(int value) {
+            super(value);
+        }
+    }
+}
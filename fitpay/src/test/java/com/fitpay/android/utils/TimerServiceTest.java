@@ -0,0 +1,94 @@
+package com.fitpay.android.utils;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class TimerServiceTest {
+
+    @Test
+    public void timeoutFiresAfterDelay() throws Exception {
+        CountDownLatch latch = new CountDownLatch(1);
+        long start = System.currentTimeMillis();
+
+        TimerService.Timeout timeout = TimerService.getInstance().schedule(latch::countDown, 100, TimeUnit.MILLISECONDS);
+
+        Assert.assertTrue("timeout has not fired", latch.await(5, TimeUnit.SECONDS));
+        Assert.assertTrue("timeout fired too early", System.currentTimeMillis() - start >= 100);
+        Assert.assertTrue(timeout.isExpired());
+        Assert.assertFalse(timeout.cancel());
+    }
+
+    @Test
+    public void cancelledTimeoutDoesNotFire() throws Exception {
+        AtomicInteger counter = new AtomicInteger();
+
+        TimerService.Timeout timeout = TimerService.getInstance().schedule(counter::incrementAndGet, 50, TimeUnit.MILLISECONDS);
+        Assert.assertTrue(timeout.cancel());
+        Assert.assertTrue(timeout.isCancelled());
+
+        Thread.sleep(200);
+
+        Assert.assertEquals(0, counter.get());
+        Assert.assertFalse(timeout.isExpired());
+    }
+
+    @Test
+    public void manyPendingTimeoutsOnSingleThread() throws Exception {
+        TimerService timer = new TimerService(10, TimeUnit.MILLISECONDS, 64);
+
+        int count = 20000;
+        AtomicInteger fired = new AtomicInteger();
+        CountDownLatch latch = new CountDownLatch(count / 2);
+        TimerService.Timeout[] timeouts = new TimerService.Timeout[count];
+
+        int threadsBefore = Thread.activeCount();
+
+        for (int i = 0; i < count; i++) {
+            // delays are spread over several wheel rotations
+            timeouts[i] = timer.schedule(() -> {
+                fired.incrementAndGet();
+                latch.countDown();
+            }, 500 + (i % 1500), TimeUnit.MILLISECONDS);
+        }
+
+        Assert.assertTrue("only one timer thread expected", Thread.activeCount() - threadsBefore <= 1);
+
+        for (int i = 1; i < count; i += 2) {
+            Assert.assertTrue(timeouts[i].cancel());
+        }
+
+        Assert.assertTrue("not all timeouts fired", latch.await(10, TimeUnit.SECONDS));
+
+        Thread.sleep(100);
+
+        Assert.assertEquals(count / 2, fired.get());
+        Assert.assertEquals(0, timer.getPendingTimeouts());
+    }
+
+    @Test
+    public void slowTaskDoesNotDelayOtherTimeouts() throws Exception {
+        TimerService timer = new TimerService(10, TimeUnit.MILLISECONDS, 64);
+
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch fired = new CountDownLatch(1);
+
+        timer.schedule(() -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, 10, TimeUnit.MILLISECONDS);
+        timer.schedule(fired::countDown, 50, TimeUnit.MILLISECONDS);
+
+        try {
+            Assert.assertTrue("timeout delayed by a blocked task", fired.await(1, TimeUnit.SECONDS));
+        } finally {
+            release.countDown();
+        }
+    }
+}